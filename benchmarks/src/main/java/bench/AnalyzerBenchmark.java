@@ -0,0 +1,29 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * KotlinAnalyzer.analyze, the work behind every inspection refresh.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class AnalyzerBenchmark {
+    private MethodHandle analyze;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        analyze = Targets.method(Targets.create("KotlinAnalyzer", new Class<?>[0]), "analyze", String.class);
+    }
+
+    @Benchmark
+    public Object analyze(ScriptState script) throws Throwable {
+        return analyze.invoke(script.text);
+    }
+}
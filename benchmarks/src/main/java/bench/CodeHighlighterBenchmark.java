@@ -0,0 +1,44 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
+import javax.swing.text.StyledDocument;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CodeHighlighter.applyUnderlines with the diagnostics of the generated script: removing the previous
+ * underlines and adding one highlight per diagnostic. The method hands its work to the EDT, so each
+ * call waits for the EDT to finish it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class CodeHighlighterBenchmark {
+    private MethodHandle applyUnderlines;
+    private Object result;
+
+    @Setup(Level.Trial)
+    public void setup(ScriptState script) throws Throwable {
+        JTextPane pane = new JTextPane();
+        StyledDocument document = (StyledDocument) Targets.create("SnapshotDocument", new Class<?>[0]);
+        pane.setStyledDocument(document);
+        document.insertString(0, script.text, null);
+
+        Object analyzer = Targets.create("KotlinAnalyzer", new Class<?>[0]);
+        result = Targets.method(analyzer, "analyze", String.class).invoke(script.text);
+        Object highlighter = Targets.create("CodeHighlighter", new Class<?>[]{JTextPane.class}, pane);
+        applyUnderlines = Targets.method(highlighter, "applyUnderlines", Targets.type("AnalysisResult"));
+    }
+
+    @Benchmark
+    public void applyUnderlines() throws Throwable {
+        applyUnderlines.invoke(result);
+        SwingUtilities.invokeAndWait(() -> { });
+    }
+}
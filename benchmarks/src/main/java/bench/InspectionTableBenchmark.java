@@ -0,0 +1,36 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InspectionPanel's table model taking a new set of diagnostics: copying and sorting them by severity
+ * and line. The model is used on its own, without a table listening to it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class InspectionTableBenchmark {
+    private MethodHandle setDiagnostics;
+    private List<?> diagnostics;
+
+    @Setup(Level.Trial)
+    public void setup(ScriptState script) throws Throwable {
+        Object analyzer = Targets.create("KotlinAnalyzer", new Class<?>[0]);
+        Object result = Targets.method(analyzer, "analyze", String.class).invoke(script.text);
+        diagnostics = (List<?>) Targets.method(result, "getDiagnostics").invoke();
+        Object model = Targets.create("InspectionPanel$InspectionTableModel", new Class<?>[0]);
+        setDiagnostics = Targets.method(model, "setDiagnostics", List.class);
+    }
+
+    @Benchmark
+    public void setDiagnostics() throws Throwable {
+        setDiagnostics.invoke(diagnostics);
+    }
+}
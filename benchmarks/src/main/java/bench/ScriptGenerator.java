@@ -0,0 +1,107 @@
+package bench;
+
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic Kotlin scripts for the benchmarks. The same size, mix and seed always give the
+ * same text, so results from different runs and machines describe the same input.
+ */
+public final class ScriptGenerator {
+
+    /** Kind of line the script is mostly made of. */
+    public enum Mix {
+        /** Declarations, calls, strings and comments in roughly the proportions of a hand-written script. */
+        MIXED(15, 15, 40),
+        /** Mostly // comments, some containing keywords and quotes. */
+        COMMENTS(70, 10, 10),
+        /** Mostly string literals with escapes and templates. */
+        STRINGS(5, 70, 15),
+        /** Mostly calls, half of them to functions that are never declared. */
+        CALLS(5, 5, 80);
+
+        final int commentPercent;
+        final int stringPercent;
+        final int callPercent;
+
+        Mix(int commentPercent, int stringPercent, int callPercent) {
+            this.commentPercent = commentPercent;
+            this.stringPercent = stringPercent;
+            this.callPercent = callPercent;
+        }
+    }
+
+    public static final long DEFAULT_SEED = 42;
+
+    private static final String[] WORDS = {
+        "value", "count", "index", "name", "items", "total", "result", "buffer", "node", "key"
+    };
+
+    private ScriptGenerator() {
+    }
+
+    public static String generate(int lines, Mix mix) {
+        return generate(lines, mix, DEFAULT_SEED);
+    }
+
+    /**
+     * Returns a script of exactly the given number of lines. Bodies are always closed, so the bracket
+     * structure is balanced.
+     */
+    public static String generate(int lines, Mix mix, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder sb = new StringBuilder(lines * 40);
+        int written = 0;
+        int function = 0;
+        while (written < lines) {
+            int remaining = lines - written;
+            if (remaining < 3) {
+                for (int i = 0; i < remaining; i++) {
+                    sb.append("// end\n");
+                }
+                break;
+            }
+
+            boolean inClass = remaining > 8 && random.nextInt(5) == 0;
+            int body = Math.min(remaining - (inClass ? 5 : 3), 4 + random.nextInt(16));
+            if (inClass) {
+                sb.append("class Holder").append(function).append("(val id: Int) {\n");
+                written++;
+            }
+            String indent = inClass ? "    " : "";
+            sb.append(indent).append("fun f").append(function).append("(a: Int, b: String): Int {\n");
+            written++;
+            for (int i = 0; i < body; i++) {
+                appendStatement(sb, indent + "    ", mix, random, function, i);
+            }
+            written += body;
+            sb.append(indent).append("    return a\n");
+            sb.append(indent).append("}\n");
+            written += 2;
+            if (inClass) {
+                sb.append("}\n");
+                written++;
+            }
+            function++;
+        }
+        return sb.toString();
+    }
+
+    private static void appendStatement(StringBuilder sb, String indent, Mix mix, SplittableRandom random, int function, int index) {
+        int roll = random.nextInt(100);
+        String word = WORDS[random.nextInt(WORDS.length)];
+        sb.append(indent);
+        if (roll < mix.commentPercent) {
+            sb.append("// ").append(word).append(" is checked before the loop, see \"notes\" for fun details\n");
+        } else if (roll < mix.commentPercent + mix.stringPercent) {
+            sb.append("val ").append(word).append(index).append(" = \"")
+                .append(word).append(" \\\"quoted\\\" ${a} and $b, done\"\n");
+        } else if (roll < mix.commentPercent + mix.stringPercent + mix.callPercent) {
+            // Every other call goes to a function that does not exist, for the undefined-function check
+            String callee = random.nextBoolean() ? "f" + random.nextInt(function + 1) : "missing" + random.nextInt(50);
+            sb.append("println(").append(callee).append("(a + ").append(index).append(", listOf(1, 2, 3).toString()))\n");
+        } else {
+            sb.append("var ").append(word).append(index).append(" = a * ").append(index)
+                .append(" + b.length // unused unless read below\n");
+        }
+    }
+}
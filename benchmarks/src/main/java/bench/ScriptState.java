@@ -0,0 +1,26 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The generated script every benchmark works on, once per size and mix.
+ */
+@State(Scope.Benchmark)
+public class ScriptState {
+    @Param({"1000", "10000", "100000"})
+    public int lines;
+
+    @Param({"MIXED", "COMMENTS", "STRINGS", "CALLS"})
+    public ScriptGenerator.Mix mix;
+
+    public String text;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        text = ScriptGenerator.generate(lines, mix);
+    }
+}
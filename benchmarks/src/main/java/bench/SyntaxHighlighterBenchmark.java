@@ -0,0 +1,57 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.JTextPane;
+import javax.swing.text.StyledDocument;
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The two halves of SyntaxHighlighter.highlightAll: finding the style runs (background thread) and
+ * applying them to the document (EDT), plus both together. Here they run on the benchmark thread;
+ * the editor is never shown, so no painting is involved.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Djava.awt.headless=true"})
+@State(Scope.Benchmark)
+public class SyntaxHighlighterBenchmark {
+    private MethodHandle computeStyleRuns;
+    private MethodHandle applyStyleRuns;
+    private Object snapshot;
+    private List<?> runs;
+
+    @Setup(Level.Trial)
+    public void setup(ScriptState script) throws Throwable {
+        JTextPane pane = new JTextPane();
+        Object document = Targets.create("SnapshotDocument", new Class<?>[0]);
+        pane.setStyledDocument((StyledDocument) document);
+        ((StyledDocument) document).insertString(0, script.text, null);
+
+        Object highlighter = Targets.create("SyntaxHighlighter", new Class<?>[]{JTextPane.class}, pane);
+        Class<?> snapshotType = Targets.type("TextSnapshot");
+        computeStyleRuns = Targets.method(highlighter, "computeStyleRuns", snapshotType);
+        applyStyleRuns = Targets.method(highlighter, "applyStyleRuns", snapshotType, List.class);
+        snapshot = Targets.method(document, "snapshot").invoke();
+        runs = (List<?>) computeStyleRuns.invoke(snapshot);
+    }
+
+    @Benchmark
+    public Object computeStyleRuns() throws Throwable {
+        return computeStyleRuns.invoke(snapshot);
+    }
+
+    @Benchmark
+    public void applyStyleRuns() throws Throwable {
+        applyStyleRuns.invoke(snapshot, runs);
+    }
+
+    @Benchmark
+    public void highlightAll() throws Throwable {
+        applyStyleRuns.invoke(snapshot, (List<?>) computeStyleRuns.invoke(snapshot));
+    }
+}
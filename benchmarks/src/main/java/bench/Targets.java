@@ -0,0 +1,48 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/**
+ * Access to the IDE classes, which live in the unnamed package and so cannot be imported here
+ * (JMH does not accept benchmarks in the unnamed package either). Handles are looked up once in
+ * setup methods, so a benchmark call costs one MethodHandle invocation on top of the measured work.
+ */
+final class Targets {
+
+    private Targets() {
+    }
+
+    static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("IDE class " + name + " is not on the classpath", e);
+        }
+    }
+
+    static Object create(String className, Class<?>[] parameterTypes, Object... args) {
+        try {
+            Constructor<?> constructor = type(className).getDeclaredConstructor(parameterTypes);
+            constructor.setAccessible(true);
+            return constructor.newInstance(args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create " + className, e);
+        }
+    }
+
+    /**
+     * Handle to a method of the given object, private ones included, with the receiver already bound.
+     */
+    static MethodHandle method(Object receiver, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = receiver.getClass().getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method).bindTo(receiver);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No method " + name + " on " + receiver.getClass().getName(), e);
+        }
+    }
+}
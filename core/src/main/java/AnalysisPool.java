@@ -0,0 +1,147 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Worker threads shared by every editor for analysis, highlighting and search, so opening more editors
+ * queues more work but starts no more threads. Each editor submits through its own {@link Client};
+ * work of foreground clients is taken before work of background ones, and otherwise in submission
+ * order. Delayed work waits on one shared timer thread and only then joins the queue. Idle workers
+ * stop after a while.
+ */
+public final class AnalysisPool {
+    private static final int DEFAULT_THREADS = Integer.getInteger("kotlin.ide.analysisThreads",
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+    private static final long IDLE_SECONDS = 30;
+
+    private static AnalysisPool shared;
+
+    private final ThreadPoolExecutor workers;
+    private final AtomicLong sequence = new AtomicLong();
+    private ScheduledExecutorService timer;
+
+    /**
+     * Submits work on behalf of one editor, at the priority the editor currently has.
+     */
+    public final class Client {
+        private volatile boolean foreground = true;
+
+        private Client() {
+        }
+
+        public Future<?> submit(Runnable work) {
+            Task task = new Task(this, work);
+            enqueue(task);
+            return task;
+        }
+
+        /**
+         * Queues the work once the delay is up; cancelling the returned future before then drops it.
+         */
+        public Future<?> schedule(Runnable work, long delayMillis) {
+            Task task = new Task(this, work);
+            task.delay = timer().schedule(() -> enqueue(task), delayMillis, TimeUnit.MILLISECONDS);
+            return task;
+        }
+
+        public boolean isForeground() {
+            return foreground;
+        }
+
+        /**
+         * Changes the priority of this client's future work and of its work still waiting in the queue.
+         */
+        public void setForeground(boolean foreground) {
+            if (this.foreground == foreground)
+                return;
+            this.foreground = foreground;
+            for (Runnable queued : workers.getQueue().toArray(new Runnable[0])) {
+                Task task = (Task) queued;
+                if (task.client == this && workers.remove(task))
+                    enqueue(task);
+            }
+        }
+    }
+
+    private final class Task extends FutureTask<Void> implements Comparable<Task> {
+        final Client client;
+        final long order = sequence.incrementAndGet();
+        // The client's priority when queued; the queue's order must not change under it
+        boolean foreground;
+        volatile ScheduledFuture<?> delay;
+
+        Task(Client client, Runnable work) {
+            super(work, null);
+            this.client = client;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (foreground != other.foreground)
+                return foreground ? -1 : 1;
+            return Long.compare(order, other.order);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            ScheduledFuture<?> pending = delay;
+            if (pending != null)
+                pending.cancel(false);
+            // Otherwise it would stay queued, and keep its text reachable, until a worker takes it
+            workers.remove(this);
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    public AnalysisPool(int threads) {
+        workers = new ThreadPoolExecutor(threads, threads, IDLE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), daemonThreads("analysis-worker"));
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * The pool every editor of this JVM shares; sized by -Dkotlin.ide.analysisThreads.
+     */
+    public static synchronized AnalysisPool shared() {
+        if (shared == null)
+            shared = new AnalysisPool(DEFAULT_THREADS);
+        return shared;
+    }
+
+    public Client newClient() {
+        return new Client();
+    }
+
+    public int getThreadCount() {
+        return workers.getMaximumPoolSize();
+    }
+
+    private void enqueue(Task task) {
+        if (task.isCancelled())
+            return;
+        task.foreground = task.client.foreground;
+        workers.execute(task);
+    }
+
+    // Started on first use, so a pool only used for immediate work costs no timer thread
+    private synchronized ScheduledExecutorService timer() {
+        if (timer == null)
+            timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("analysis-timer"));
+        return timer;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
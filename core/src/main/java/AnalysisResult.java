@@ -0,0 +1,134 @@
+import java.util.*;
+
+public class AnalysisResult {
+    private final List<Diagnostic> diagnostics;
+    private final SymbolTable symbolTable;
+    private final List<InspectionCost> costs;
+    // Set on partial results only
+    private final Set<String> regionInspections;
+    private final int regionStart;
+    private final int regionEnd;
+    
+    /**
+     * What one inspection cost in one analysis: time and bytes allocated while its visitor ran.
+     * The entry with {@link #DRIVER} covers the shared pass that feeds the inspections.
+     */
+    public static final class InspectionCost {
+        public static final String DRIVER = "(shared pass)";
+        
+        final String inspectionId;
+        final long nanos;
+        final long allocatedBytes;
+        final int findings;
+        
+        InspectionCost(String inspectionId, long nanos, long allocatedBytes, int findings) {
+            this.inspectionId = inspectionId;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.findings = findings;
+        }
+        
+        public String getInspectionId() {
+            return inspectionId;
+        }
+        
+        public long getNanos() {
+            return nanos;
+        }
+        
+        /**
+         * Bytes allocated by the analysis thread, or 0 where the JVM cannot count them.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+        
+        public int getFindings() {
+            return findings;
+        }
+    }
+    
+    public AnalysisResult(List<Diagnostic> diagnostics) {
+        this(diagnostics, null);
+    }
+    
+    public AnalysisResult(List<Diagnostic> diagnostics, SymbolTable symbolTable) {
+        this(diagnostics, symbolTable, Collections.emptyList());
+    }
+    
+    public AnalysisResult(List<Diagnostic> diagnostics, SymbolTable symbolTable, List<InspectionCost> costs) {
+        this(diagnostics, symbolTable, costs, null, 0, 0);
+    }
+    
+    private AnalysisResult(List<Diagnostic> diagnostics, SymbolTable symbolTable, List<InspectionCost> costs,
+                           Set<String> regionInspections, int regionStart, int regionEnd) {
+        this.diagnostics = diagnostics;
+        this.symbolTable = symbolTable;
+        this.costs = costs;
+        this.regionInspections = regionInspections;
+        this.regionStart = regionStart;
+        this.regionEnd = regionEnd;
+    }
+    
+    /**
+     * What the given inspections found between two offsets, published while the rest of the text is
+     * still being analyzed. It replaces their earlier findings in that region only.
+     */
+    public static AnalysisResult partial(List<Diagnostic> diagnostics, Set<String> inspectionIds,
+                                         int regionStart, int regionEnd) {
+        return new AnalysisResult(diagnostics, null, Collections.emptyList(), inspectionIds, regionStart, regionEnd);
+    }
+    
+    public boolean isPartial() {
+        return regionInspections != null;
+    }
+    
+    /**
+     * Ids of the inspections a partial result speaks for; empty for a complete result.
+     */
+    public Set<String> getRegionInspections() {
+        return regionInspections != null ? regionInspections : Collections.emptySet();
+    }
+    
+    public int getRegionStart() {
+        return regionStart;
+    }
+    
+    /**
+     * End of the region of a partial result, exclusive.
+     */
+    public int getRegionEnd() {
+        return regionEnd;
+    }
+    
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+    
+    /**
+     * Symbol table built for the analyzed text, or null if analysis failed.
+     */
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+    
+    /**
+     * Cost of each inspection that ran, in run order, then the shared pass.
+     */
+    public List<InspectionCost> getCosts() {
+        return costs;
+    }
+    
+    public int getErrorCount() {
+        return (int) diagnostics.stream()
+            .filter(d -> d.getSeverity() == Diagnostic.Severity.ERROR)
+            .count();
+    }
+    
+    public int getWarningCount() {
+        return (int) diagnostics.stream()
+            .filter(d -> d.getSeverity() == Diagnostic.Severity.WARNING)
+            .count();
+    }
+}
+
@@ -0,0 +1,539 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tree of the bracket pairs ({}, (), []) in a Kotlin source, built from the {@link KotlinLexer} token
+ * stream so brackets inside strings and comments are ignored. Braces that follow a fun, class,
+ * interface or object header are marked as declaration bodies, which is what folding and the outline
+ * work from. Unclosed blocks run to the end of their parent; closing brackets without a partner become
+ * stray blocks of length 1.
+ *
+ * Block offsets are stored relative to the parent's opening bracket. An edit re-lexes only the stretch
+ * between the nearest unchanged bodies around it inside the innermost block that encloses it, replaces
+ * the blocks of that stretch, and shifts the later siblings on the path to the root. It falls back to a
+ * full rebuild when the edit changes how the surrounding brackets pair up, or when the stretch does not
+ * begin and end in plain code, since lexing it on its own would then not match lexing the whole text.
+ */
+public final class BlockStructure {
+
+    public static final class Block {
+        private final char open;
+        private Block parent;
+        private int start;
+        private int length;
+        private boolean closed;
+        // An opener or closer of this block was lexed inside a string template ("${...}")
+        private boolean inString;
+        private final List<Block> children = new ArrayList<>();
+        private String declarationKind;
+        private String declarationName;
+        private int headerStart;
+
+        Block(char open) {
+            this.open = open;
+        }
+
+        /** '{', '(' or '['; the closing bracket itself for a stray closer; 0 for the root. */
+        public char getOpen() {
+            return open;
+        }
+
+        public Block getParent() {
+            return parent;
+        }
+
+        public List<Block> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        public boolean isStray() {
+            return open == '}' || open == ')' || open == ']';
+        }
+
+        /** "fun", "class", "interface" or "object" if this is a declaration body, otherwise null. */
+        public String getDeclarationKind() {
+            return declarationKind;
+        }
+
+        /** Declared name, or null for anonymous objects. */
+        public String getDeclarationName() {
+            return declarationName;
+        }
+
+        /** Offset of the opening bracket; O(depth). */
+        public int getOpenOffset() {
+            int offset = 0;
+            for (Block b = this; b != null; b = b.parent) {
+                offset += b.start;
+            }
+            return offset;
+        }
+
+        /** Offset of the closing bracket, or -1 if the block is not closed. */
+        public int getCloseOffset() {
+            return closed ? getOpenOffset() + length - 1 : -1;
+        }
+
+        /** Offset of the keyword that starts the declaration header. */
+        public int getHeaderOffset() {
+            return getOpenOffset() + headerStart;
+        }
+
+        @Override
+        public String toString() {
+            return open + "@" + getOpenOffset() + (declarationKind != null ? " " + declarationKind + " " + declarationName : "");
+        }
+    }
+
+    private static final Set<String> DECLARATION_KEYWORDS = new HashSet<>(Arrays.asList(
+            "fun", "class", "interface", "object"));
+
+    // Keywords that start a new statement, so a header seen before them had no body
+    private static final Set<String> STATEMENT_KEYWORDS = new HashSet<>(Arrays.asList(
+            "val", "var", "if", "else", "for", "while", "do", "when", "try", "return", "throw",
+            "break", "continue", "package", "typealias"));
+
+    private final Block root = new Block('\0');
+    private int lastRelexedLength;
+    // An unclosed bracket pairs with closers far away from any edit, so such trees are rebuilt
+    private boolean balanced;
+
+    private BlockStructure() {
+        root.closed = true;
+    }
+
+    public static BlockStructure build(CharSequence text) {
+        return build(text, KotlinLexer.tokenize(text));
+    }
+
+    /** Builds the tree from the tokens of the whole text, lexed by the caller. */
+    static BlockStructure build(CharSequence text, List<KotlinLexer.Token> tokens) {
+        BlockStructure structure = new BlockStructure();
+        structure.rebuild(text, tokens);
+        return structure;
+    }
+
+    public Block getRoot() {
+        return root;
+    }
+
+    /** Number of characters re-lexed by the last build or edit. */
+    int getLastRelexedLength() {
+        return lastRelexedLength;
+    }
+
+    /**
+     * Updates the tree after text at offset was replaced: removedLength characters of the old text
+     * gave way to insertedLength characters. The text is the document after the edit.
+     * Only the text between the nearest enclosing braces is re-lexed while all brackets are balanced;
+     * otherwise the whole text is parsed again.
+     */
+    public void applyEdit(CharSequence text, int offset, int removedLength, int insertedLength) {
+        if (!balanced || !update(root, 0, offset, offset + removedLength, insertedLength - removedLength, text))
+            rebuild(text);
+    }
+
+    private void rebuild(CharSequence text) {
+        rebuild(text, KotlinLexer.tokenize(text));
+    }
+
+    private void rebuild(CharSequence text, List<KotlinLexer.Token> tokens) {
+        root.children.clear();
+        root.length = text.length();
+        lastRelexedLength = text.length();
+        Parser parser = new Parser(0, text.length(), true);
+        parser.parse(tokens, Integer.MAX_VALUE);
+        attach(root, 0, parser.children, 0);
+        balanced = !parser.unbalanced;
+    }
+
+    private boolean update(Block node, int nodeOffset, int editStart, int editEnd, int delta, CharSequence text) {
+        boolean isRoot = node == root;
+        List<Block> children = node.children;
+
+        // Children are sorted by offset; find the last one opening before the edit
+        int low = 0;
+        int high = children.size() - 1;
+        int before = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (nodeOffset + children.get(mid).start < editStart) {
+                before = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        // Text between brackets that sit in a string template is not lexed on its own
+        if (node.inString)
+            return false;
+
+        // Edits strictly inside a closed child are handled there
+        if (before >= 0) {
+            Block child = children.get(before);
+            int childOffset = nodeOffset + child.start;
+            if (child.closed && !child.isStray() && editEnd <= childOffset + child.length - 1
+                    && update(child, childOffset, editStart, editEnd, delta, text)) {
+                shift(children, before + 1, nodeOffset, editStart, delta);
+                node.length += delta;
+                return true;
+            }
+        }
+
+        // Otherwise re-lex from the closest untouched body before the edit to the closest one after it
+        int previous = before;
+        while (previous >= 0 && !(isAnchor(children.get(previous))
+                && nodeOffset + children.get(previous).start + children.get(previous).length <= editStart)) {
+            previous--;
+        }
+        int next = before + 1;
+        while (next < children.size() && !(isAnchor(children.get(next))
+                && nodeOffset + children.get(next).start >= editEnd)) {
+            next++;
+        }
+        boolean hasNext = next < children.size();
+
+        int regionStart = previous >= 0
+                ? nodeOffset + children.get(previous).start + children.get(previous).length
+                : (isRoot ? 0 : nodeOffset + 1);
+        int regionEnd;
+        if (hasNext)
+            regionEnd = nodeOffset + children.get(next).start + 1; // through the next body's '{'
+        else if (isRoot)
+            regionEnd = node.length;
+        else if (node.closed)
+            regionEnd = nodeOffset + node.length; // through this block's closer
+        else
+            return false;
+        regionEnd += delta;
+
+        List<KotlinLexer.Token> tokens = KotlinLexer.tokenize(text.subSequence(regionStart, regionEnd));
+        lastRelexedLength = regionEnd - regionStart;
+        int count = tokens.size();
+        if (hasNext || !isRoot) {
+            // The region must still end with the same delimiter, otherwise the edit changed the pairing
+            String expected = hasNext ? "{" : String.valueOf(closerFor(node.open));
+            if (count == 0)
+                return false;
+            KotlinLexer.Token last = tokens.get(count - 1);
+            if (!last.is(expected) || regionStart + last.getStart() != regionEnd - 1)
+                return false;
+            // A string still open at the delimiter would carry on into the text after the region
+            for (int i = 0; i < count - 1; i++) {
+                KotlinLexer.Token token = tokens.get(i);
+                if (token.getType() == KotlinLexer.Type.STRING && token.getEnd() > last.getStart())
+                    return false;
+            }
+            count--;
+        }
+
+        Parser parser = new Parser(regionStart, regionEnd, isRoot);
+        parser.parse(tokens, count);
+        if (parser.failed || parser.unbalanced)
+            return false;
+
+        int removeEnd = hasNext ? next : children.size();
+        children.subList(previous + 1, removeEnd).clear();
+        shift(children, previous + 1, nodeOffset, editStart, delta);
+        if (hasNext) {
+            Block body = children.get(previous + 1);
+            Frame owner = parser.stack.get(0); // popped back to the owner, holding the header state
+            body.declarationKind = owner.pendingKind;
+            body.declarationName = owner.pendingName;
+            body.headerStart = owner.pendingKind != null ? owner.pendingHeader - (regionEnd - 1) : 0;
+        }
+        attach(node, nodeOffset, parser.children, previous + 1);
+        node.length += delta;
+        return true;
+    }
+
+    // A body whose braces are plain code, so the lexer is in the same state on either side of it
+    private static boolean isAnchor(Block block) {
+        return block.open == '{' && block.closed && !block.inString;
+    }
+
+    private static void shift(List<Block> children, int from, int nodeOffset, int editStart, int delta) {
+        for (int i = from; i < children.size(); i++) {
+            Block child = children.get(i);
+            // A header can start before the edit, e.g. when the parameter list was edited
+            if (child.declarationKind != null && nodeOffset + child.start + child.headerStart < editStart)
+                child.headerStart -= delta;
+            child.start += delta;
+        }
+    }
+
+    // New blocks carry absolute offsets until they are attached
+    private static void attach(Block parent, int parentOffset, List<Block> blocks, int index) {
+        for (Block block : blocks) {
+            makeRelative(block, parent, parentOffset);
+        }
+        parent.children.addAll(index, blocks);
+    }
+
+    private static void makeRelative(Block block, Block parent, int parentOffset) {
+        int offset = block.start;
+        block.start = offset - parentOffset;
+        block.parent = parent;
+        for (Block child : block.children) {
+            makeRelative(child, block, offset);
+        }
+    }
+
+    /**
+     * Returns the offsets of the bracket next to the caret and its partner, preferring the bracket just
+     * before the caret, or null. Descends the tree by binary search, so O(depth * log(width)).
+     */
+    public int[] findMatchingBrackets(int caret) {
+        int[] match = pairAt(caret - 1);
+        return match != null ? match : pairAt(caret);
+    }
+
+    /**
+     * Returns the offsets of the opening and closing bracket of the pair that has a bracket at the
+     * offset, or null if there is none or it has no partner.
+     */
+    public int[] pairAt(int offset) {
+        if (offset < 0)
+            return null;
+        Block node = root;
+        int nodeOffset = 0;
+        while (true) {
+            Block child = childAtOrBefore(node, nodeOffset, offset);
+            if (child == null)
+                return null;
+            int open = nodeOffset + child.start;
+            if (child.isStray())
+                return null;
+            int close = child.closed ? open + child.length - 1 : -1;
+            if (open == offset)
+                return child.closed ? new int[]{open, close} : null;
+            if (close == offset)
+                return new int[]{open, close};
+            if (offset > open + child.length - 1 && child.closed)
+                return null;
+            node = child;
+            nodeOffset = open;
+        }
+    }
+
+    private static Block childAtOrBefore(Block node, int nodeOffset, int offset) {
+        List<Block> children = node.children;
+        int low = 0;
+        int high = children.size() - 1;
+        Block found = null;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (nodeOffset + children.get(mid).start <= offset) {
+                found = children.get(mid);
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Innermost declaration body (fun or class) containing the offset, or null.
+     */
+    public Block declarationAt(int offset) {
+        Block result = null;
+        Block node = root;
+        int nodeOffset = 0;
+        while (true) {
+            Block child = childAtOrBefore(node, nodeOffset, offset);
+            if (child == null)
+                return result;
+            int open = nodeOffset + child.start;
+            if (offset >= open + child.length)
+                return result;
+            if (child.declarationKind != null)
+                result = child;
+            node = child;
+            nodeOffset = open;
+        }
+    }
+
+    /**
+     * All declaration bodies, outermost first in document order.
+     */
+    public List<Block> getDeclarations() {
+        List<Block> result = new ArrayList<>();
+        collectDeclarations(root, result);
+        return result;
+    }
+
+    private static void collectDeclarations(Block block, List<Block> result) {
+        for (Block child : block.children) {
+            if (child.declarationKind != null)
+                result.add(child);
+            collectDeclarations(child, result);
+        }
+    }
+
+    /**
+     * Unclosed openers and stray closers, in document order.
+     */
+    public List<Block> findUnbalanced() {
+        List<Block> result = new ArrayList<>();
+        collectUnbalanced(root, result);
+        return result;
+    }
+
+    private static void collectUnbalanced(Block block, List<Block> result) {
+        for (Block child : block.children) {
+            if (!child.closed)
+                result.add(child);
+            collectUnbalanced(child, result);
+        }
+    }
+
+    static char closerFor(char open) {
+        switch (open) {
+            case '{': return '}';
+            case '(': return ')';
+            case '[': return ']';
+            default: return '\0';
+        }
+    }
+
+    private static final class Frame {
+        final Block block;
+        final List<Block> children;
+        String pendingKind;
+        String pendingName;
+        int pendingHeader;
+        boolean nameFixed;
+
+        Frame(Block block, List<Block> children) {
+            this.block = block;
+            this.children = children;
+        }
+
+        void clearPending() {
+            pendingKind = null;
+            pendingName = null;
+            nameFixed = false;
+        }
+    }
+
+    /**
+     * Pairs brackets in one region. Blocks get absolute offsets; the bottom frame stands for the
+     * block that owns the region.
+     */
+    private static final class Parser {
+        final int base;
+        final int regionEnd;
+        final boolean ownerIsRoot;
+        final List<Block> children = new ArrayList<>();
+        final List<Frame> stack = new ArrayList<>();
+        // End of the furthest string literal so far; brackets before it are in a template
+        int stringEnd;
+        boolean unbalanced;
+        boolean failed;
+
+        Parser(int base, int regionEnd, boolean ownerIsRoot) {
+            this.base = base;
+            this.regionEnd = regionEnd;
+            this.ownerIsRoot = ownerIsRoot;
+            stack.add(new Frame(null, children));
+        }
+
+        void parse(List<KotlinLexer.Token> tokens, int count) {
+            int n = Math.min(count, tokens.size());
+            for (int i = 0; i < n; i++) {
+                KotlinLexer.Token token = tokens.get(i);
+                int offset = base + token.getStart();
+                Frame frame = stack.get(stack.size() - 1);
+                String text = token.getText();
+
+                if (token.getType() == KotlinLexer.Type.STRING) {
+                    stringEnd = Math.max(stringEnd, base + token.getEnd());
+                } else if (token.getType() == KotlinLexer.Type.KEYWORD) {
+                    if (DECLARATION_KEYWORDS.contains(text)) {
+                        frame.clearPending();
+                        frame.pendingKind = text;
+                        frame.pendingHeader = offset;
+                    } else if (STATEMENT_KEYWORDS.contains(text)) {
+                        frame.clearPending();
+                    }
+                } else if (token.getType() == KotlinLexer.Type.IDENTIFIER) {
+                    // A fun's name is the last identifier before its parameter list ("fun String.name(")
+                    if (frame.pendingKind != null && !frame.nameFixed) {
+                        frame.pendingName = text;
+                        if (!frame.pendingKind.equals("fun"))
+                            frame.nameFixed = true;
+                    }
+                } else if (token.getType() == KotlinLexer.Type.OPERATOR && text.length() == 1) {
+                    char c = text.charAt(0);
+                    if (c == '{' || c == '(' || c == '[') {
+                        open(frame, c, offset);
+                    } else if (c == '}' || c == ')' || c == ']') {
+                        close(c, offset);
+                    } else if (c == '=' && "fun".equals(frame.pendingKind) && frame.nameFixed) {
+                        frame.clearPending(); // expression body
+                    }
+                }
+            }
+            // Whatever is still open runs to the end of the region
+            while (stack.size() > 1) {
+                Frame frame = stack.remove(stack.size() - 1);
+                frame.block.length = regionEnd - frame.block.start;
+                unbalanced = true;
+            }
+        }
+
+        private void open(Frame frame, char c, int offset) {
+            Block block = new Block(c);
+            block.start = offset;
+            block.inString = offset < stringEnd;
+            if (c == '{' && frame.pendingKind != null) {
+                block.declarationKind = frame.pendingKind;
+                block.declarationName = frame.pendingName;
+                block.headerStart = frame.pendingHeader - offset;
+                frame.clearPending();
+            } else if (c == '(' && frame.pendingKind != null) {
+                frame.nameFixed = true;
+            }
+            frame.children.add(block);
+            stack.add(new Frame(block, block.children));
+        }
+
+        private void close(char c, int offset) {
+            int match = stack.size() - 1;
+            while (match > 0 && closerFor(stack.get(match).block.open) != c) match--;
+            if (match == 0) {
+                if (!ownerIsRoot) {
+                    failed = true; // would close the region's owner early
+                    return;
+                }
+                Block stray = new Block(c);
+                stray.start = offset;
+                stray.length = 1;
+                stray.inString = offset < stringEnd;
+                stack.get(stack.size() - 1).children.add(stray);
+                unbalanced = true;
+                return;
+            }
+            // Blocks opened after the match are left unclosed and end at this closer
+            while (stack.size() - 1 > match) {
+                Block unclosed = stack.remove(stack.size() - 1).block;
+                unclosed.length = offset - unclosed.start;
+                unbalanced = true;
+            }
+            Block block = stack.remove(match).block;
+            block.length = offset - block.start + 1;
+            block.closed = true;
+            block.inString |= offset < stringEnd;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.*;
+
+/**
+ * The inspections that come with the IDE.
+ */
+public final class BuiltInInspections {
+
+    private BuiltInInspections() {
+    }
+
+    public static List<Inspection> all() {
+        return Arrays.asList(
+            new UnclosedString(),
+            new UndefinedFunction(),
+            new UnusedVariable(),
+            new UnclosedBracket(),
+            new UnmatchedBracket()
+        );
+    }
+
+    private abstract static class Base implements Inspection {
+        private final String id;
+        private final String description;
+        private final Diagnostic.Severity severity;
+        private final Set<Event> events;
+
+        Base(String id, String description, Diagnostic.Severity severity, Event first, Event... rest) {
+            this.id = id;
+            this.description = description;
+            this.severity = severity;
+            this.events = Collections.unmodifiableSet(EnumSet.of(first, rest));
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public Diagnostic.Severity getDefaultSeverity() {
+            return severity;
+        }
+
+        @Override
+        public Set<Event> getEvents() {
+            return events;
+        }
+    }
+
+    static final class UnclosedString extends Base {
+        UnclosedString() {
+            super("unclosed-string", "String literal without a closing quote", Diagnostic.Severity.ERROR, Event.LINES);
+        }
+
+        @Override
+        public boolean isLineScoped() {
+            return true;
+        }
+
+        @Override
+        public Visitor start(Context context) {
+            return new Visitor() {
+                @Override
+                public void line(int lineIndex, int lineOffset, String line) {
+                    int quoteCount = 0;
+                    boolean escaped = false;
+                    for (int i = 0; i < line.length(); i++) {
+                        char c = line.charAt(i);
+                        if (c == '\\' && !escaped) {
+                            escaped = true;
+                        } else if (c == '"' && !escaped) {
+                            quoteCount++;
+                        } else {
+                            escaped = false;
+                        }
+                    }
+
+                    // Odd number of quotes means unclosed string
+                    if (quoteCount % 2 != 0) {
+                        int firstQuote = line.indexOf('"');
+                        if (firstQuote >= 0)
+                            context.report(lineOffset + firstQuote, lineOffset + line.length(), "Unclosed string literal");
+                    }
+                }
+            };
+        }
+    }
+
+    static final class UndefinedFunction extends Base {
+        UndefinedFunction() {
+            super("undefined-function", "Call to a function that is not declared or known", Diagnostic.Severity.ERROR, Event.CALLS);
+        }
+
+        @Override
+        public boolean isLineScoped() {
+            return true;
+        }
+
+        @Override
+        public Visitor start(Context context) {
+            return new Visitor() {
+                @Override
+                public void call(String name, int startOffset, int endOffset) {
+                    if (!KotlinKeywords.KEYWORDS.contains(name) &&
+                        name.charAt(0) >= 'a' && name.charAt(0) <= 'z' &&
+                        !context.isDeclaredFunction(name) &&
+                        !context.isKnownFunction(name)) {
+                        context.report(startOffset, endOffset, "Undefined function: " + name);
+                    }
+                }
+            };
+        }
+    }
+
+    static final class UnusedVariable extends Base {
+        UnusedVariable() {
+            super("unused-variable", "Variable that is declared but never read", Diagnostic.Severity.WARNING, Event.SYMBOLS);
+        }
+
+        @Override
+        public Visitor start(Context context) {
+            return new Visitor() {
+                @Override
+                public void symbols(SymbolTable symbolTable) {
+                    // Resolved per scope, so a shadowed name is not hidden by its twin
+                    for (SymbolTable.Symbol variable : symbolTable.findUnusedVariables()) {
+                        context.report(variable.getDeclarationStart(), variable.getDeclarationEnd(),
+                            "Unused variable: " + variable.getName());
+                    }
+                }
+            };
+        }
+    }
+
+    // The block tree is built from tokens, so brackets in strings and comments don't count
+    static final class UnclosedBracket extends Base {
+        UnclosedBracket() {
+            super("unclosed-bracket", "Opening bracket without a partner", Diagnostic.Severity.ERROR, Event.BLOCKS);
+        }
+
+        @Override
+        public Visitor start(Context context) {
+            return new Visitor() {
+                @Override
+                public void blocks(BlockStructure blocks) {
+                    for (BlockStructure.Block block : blocks.findUnbalanced()) {
+                        if (!block.isStray())
+                            context.report(block.getOpenOffset(), block.getOpenOffset() + 1, "Unclosed '" + block.getOpen() + "'");
+                    }
+                }
+            };
+        }
+    }
+
+    static final class UnmatchedBracket extends Base {
+        UnmatchedBracket() {
+            super("unmatched-bracket", "Closing bracket without a partner", Diagnostic.Severity.ERROR, Event.BLOCKS);
+        }
+
+        @Override
+        public Visitor start(Context context) {
+            return new Visitor() {
+                @Override
+                public void blocks(BlockStructure blocks) {
+                    for (BlockStructure.Block block : blocks.findUnbalanced()) {
+                        if (block.isStray())
+                            context.report(block.getOpenOffset(), block.getOpenOffset() + 1, "Unmatched '" + block.getOpen() + "'");
+                    }
+                }
+            };
+        }
+    }
+}
@@ -10,14 +10,21 @@ public class Diagnostic {
     private final int column;
     private final int startOffset;
     private final int endOffset;
+    private final String inspectionId;
     
     public Diagnostic(Severity severity, String message, int line, int column, int startOffset, int endOffset) {
+        this(severity, message, line, column, startOffset, endOffset, null);
+    }
+    
+    public Diagnostic(Severity severity, String message, int line, int column, int startOffset, int endOffset,
+                      String inspectionId) {
         this.severity = severity;
         this.message = message;
         this.line = line;
         this.column = column;
         this.startOffset = startOffset;
         this.endOffset = endOffset;
+        this.inspectionId = inspectionId;
     }
     
     public Severity getSeverity() {
@@ -44,6 +51,13 @@ public class Diagnostic {
         return endOffset;
     }
     
+    /**
+     * Id of the {@link Inspection} that reported this, or null.
+     */
+    public String getInspectionId() {
+        return inspectionId;
+    }
+    
     @Override
     public String toString() {
         return String.format("[%s] Line %d:%d - %s", severity, line, column, message);
@@ -0,0 +1,123 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary on-disk copy of a {@link ProjectIndex}, so a restart only has to re-parse the files that changed.
+ *
+ * Layout: magic, format version, project root, file count, then per file its path relative to the
+ * root, modification time, size, CRC32C of the contents and the declared function names.
+ * Strings are stored as an unsigned short byte count followed by UTF-8 bytes.
+ */
+public final class IndexStore {
+    private static final int MAGIC = 0x4B494458; // "KIDX"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final File INDEX_DIR = new File(System.getProperty("user.home"), ".kotlin-ide/index");
+
+    private IndexStore() {}
+
+    /**
+     * Where the index of the given project root is kept. Projects are told apart by a hash of their path.
+     */
+    public static Path locationFor(Path root) {
+        CRC32C crc = new CRC32C();
+        crc.update(root.toString().getBytes(StandardCharsets.UTF_8));
+        String name = root.getFileName() != null ? root.getFileName().toString() : "root";
+        return INDEX_DIR.toPath().resolve(name + "-" + Long.toHexString(crc.getValue()) + ".idx");
+    }
+
+    public static int hash(byte[] content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads a stored index. Returns an empty map when there is no usable index, in which case the caller
+     * simply indexes everything. The file is streamed rather than memory-mapped: every entry is copied
+     * into the map anyway, and on Windows a mapped file could not be replaced by the next {@link #save}.
+     */
+    public static Map<Path, ProjectIndex.FileEntry> load(Path indexFile, Path root) {
+        Map<Path, ProjectIndex.FileEntry> entries = new HashMap<>();
+        if (!Files.isRegularFile(indexFile))
+            return entries;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+                return entries;
+            if (!readString(in).equals(root.toString()))
+                return entries;
+
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                Path file = root.resolve(readString(in));
+                long modified = in.readLong();
+                long size = in.readLong();
+                int hash = in.readInt();
+                int symbolCount = in.readInt();
+                Set<String> symbols = new HashSet<>(symbolCount * 2);
+                for (int j = 0; j < symbolCount; j++) {
+                    symbols.add(readString(in));
+                }
+                entries.put(file, new ProjectIndex.FileEntry(modified, size, hash, symbols));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // A truncated or foreign file is treated like a missing one
+            System.err.println("Ignoring unreadable index " + indexFile + ": " + e);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the index to a temporary file and moves it into place, so a crash never leaves a torn index.
+     */
+    public static void save(Path indexFile, Path root, Map<Path, ProjectIndex.FileEntry> entries) throws IOException {
+        Files.createDirectories(indexFile.getParent());
+        Path temp = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, root.toString());
+                out.writeInt(entries.size());
+                for (Map.Entry<Path, ProjectIndex.FileEntry> e : entries.entrySet()) {
+                    ProjectIndex.FileEntry entry = e.getValue();
+                    writeString(out, root.relativize(e.getKey()).toString());
+                    out.writeLong(entry.modified);
+                    out.writeLong(entry.size);
+                    out.writeInt(entry.hash);
+                    out.writeInt(entry.symbols.size());
+                    for (String symbol : entry.symbols) {
+                        writeString(out, symbol);
+                    }
+                }
+            }
+            try {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF)
+            throw new IOException("String too long for index: " + s.length() + " chars");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
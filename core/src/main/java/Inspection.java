@@ -0,0 +1,88 @@
+import java.util.Set;
+
+/**
+ * One check run by the {@link KotlinAnalyzer}. An inspection says which parts of the analysis it needs
+ * and gets them from a single pass over the text shared by all enabled inspections, so adding one does
+ * not add another pass. Built-in inspections are in {@link BuiltInInspections}; others are found with
+ * {@link java.util.ServiceLoader} under META-INF/services/Inspection.
+ *
+ * An inspection object is shared by concurrent analyses; state for one run lives in its {@link Visitor}.
+ */
+public interface Inspection {
+
+    /**
+     * What the driver feeds to a visitor. Work for an event is only done if an enabled inspection asks for it.
+     */
+    enum Event {
+        /** Every line that is not a line comment, in order unless the inspection is {@link #isLineScoped}. */
+        LINES,
+        /** Every call-like name followed by '(' on those lines. */
+        CALLS,
+        /** The symbol table, once. */
+        SYMBOLS,
+        /** The bracket structure, once. */
+        BLOCKS
+    }
+
+    /**
+     * Stable identifier, used in profiles and reports.
+     */
+    String getId();
+
+    String getDescription();
+
+    Diagnostic.Severity getDefaultSeverity();
+
+    Set<Event> getEvents();
+
+    /**
+     * Whether every finding is reported from the line or call event it is about, without waiting for
+     * other lines. Such inspections get the lines on screen first, in any order, and their findings are
+     * shown before the rest of the file is analyzed.
+     */
+    default boolean isLineScoped() {
+        return false;
+    }
+
+    /**
+     * Starts one analysis run; findings are reported to the context.
+     */
+    Visitor start(Context context);
+
+    /**
+     * Receives the events the inspection asked for, then {@link #finish}. Offsets are into the analyzed text.
+     */
+    interface Visitor {
+        default void line(int lineIndex, int lineOffset, String line) {
+        }
+
+        default void call(String name, int startOffset, int endOffset) {
+        }
+
+        default void symbols(SymbolTable symbolTable) {
+        }
+
+        default void blocks(BlockStructure blocks) {
+        }
+
+        default void finish() {
+        }
+    }
+
+    /**
+     * The run an inspection reports into. The severity comes from the profile.
+     */
+    interface Context {
+        void report(int startOffset, int endOffset, String message);
+
+        /**
+         * Whether the analyzed text declares a function of that name. Complete from the start of the run.
+         */
+        boolean isDeclaredFunction(String name);
+
+        /**
+         * Whether a function of that name exists outside the analyzed text: the stdlib or the project.
+         */
+        boolean isKnownFunction(String name);
+    }
+}
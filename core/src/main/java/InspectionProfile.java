@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Which inspections run and at what severity. Inspections not mentioned run at their default severity.
+ * Profiles are immutable, so the analyzer can use one while the settings dialog makes the next.
+ *
+ * Stored as properties: {@code <id>.enabled=false} and {@code <id>.severity=warning}.
+ */
+public final class InspectionProfile {
+    public static final Path DEFAULT_FILE = Paths.get(System.getProperty("user.home"), ".kotlin-ide", "inspections.properties");
+
+    private static final InspectionProfile DEFAULTS = new InspectionProfile(Collections.emptySet(), Collections.emptyMap());
+
+    private final Set<String> disabled;
+    private final Map<String, Diagnostic.Severity> severities;
+
+    private InspectionProfile(Set<String> disabled, Map<String, Diagnostic.Severity> severities) {
+        this.disabled = disabled;
+        this.severities = severities;
+    }
+
+    public static InspectionProfile defaults() {
+        return DEFAULTS;
+    }
+
+    public boolean isEnabled(Inspection inspection) {
+        return !disabled.contains(inspection.getId());
+    }
+
+    public Diagnostic.Severity getSeverity(Inspection inspection) {
+        return severities.getOrDefault(inspection.getId(), inspection.getDefaultSeverity());
+    }
+
+    public InspectionProfile withEnabled(String id, boolean enabled) {
+        Set<String> changed = new TreeSet<>(disabled);
+        if (enabled)
+            changed.remove(id);
+        else
+            changed.add(id);
+        return new InspectionProfile(changed, severities);
+    }
+
+    public InspectionProfile withSeverity(String id, Diagnostic.Severity severity) {
+        Map<String, Diagnostic.Severity> changed = new TreeMap<>(severities);
+        changed.put(id, severity);
+        return new InspectionProfile(disabled, changed);
+    }
+
+    /**
+     * Reads a profile, or gives the defaults if the file does not exist.
+     */
+    public static InspectionProfile load(Path file) throws IOException {
+        if (!Files.exists(file))
+            return DEFAULTS;
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        Set<String> disabled = new TreeSet<>();
+        Map<String, Diagnostic.Severity> severities = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            if (key.endsWith(".enabled")) {
+                if (!Boolean.parseBoolean(value))
+                    disabled.add(key.substring(0, key.length() - ".enabled".length()));
+            } else if (key.endsWith(".severity")) {
+                try {
+                    severities.put(key.substring(0, key.length() - ".severity".length()),
+                            Diagnostic.Severity.valueOf(value.toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ": unknown severity '" + value + "' for " + key);
+                }
+            }
+        }
+        return new InspectionProfile(disabled, severities);
+    }
+
+    public void save(Path file) throws IOException {
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        StringBuilder sb = new StringBuilder("# Kotlin IDE inspection profile\n");
+        for (String id : disabled) {
+            sb.append(id).append(".enabled=false\n");
+        }
+        for (Map.Entry<String, Diagnostic.Severity> entry : severities.entrySet()) {
+            sb.append(entry.getKey()).append(".severity=")
+              .append(entry.getValue().name().toLowerCase(Locale.ROOT)).append('\n');
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(sb.toString());
+        }
+    }
+}
@@ -0,0 +1,320 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Timing of the IDE's subsystems. Every measured operation is committed as a JFR event (category
+ * "Kotlin IDE", so a recording started with -XX:StartFlightRecording shows them next to GC and
+ * allocation data) and kept in a rolling window per subsystem for the metrics panel. Stalls reported by
+ * the UI's EDT watchdog are kept here as well. Thread-safe.
+ */
+public final class Instrumentation {
+    static final int WINDOW_SIZE = 1024;
+    private static final int MAX_STALLS = 100;
+
+    public enum Subsystem {
+        ANALYSIS("Analysis", "chars", AnalysisEvent::new),
+        HIGHLIGHT("Highlighting", "style runs", HighlightEvent::new),
+        UNDERLINES("Underlines", "diagnostics", UnderlineEvent::new),
+        INSPECTION_TABLE("Inspection table", "diagnostics", InspectionTableEvent::new),
+        OUTPUT("Output", "chars", OutputEvent::new),
+        SCRIPT_RUN("Script run", "output lines", ScriptRunEvent::new);
+
+        private final String label;
+        private final String unit;
+        private final Supplier<SubsystemEvent> events;
+
+        Subsystem(String label, String unit, Supplier<SubsystemEvent> events) {
+            this.label = label;
+            this.unit = unit;
+            this.events = events;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+    }
+
+    @Category("Kotlin IDE")
+    @StackTrace(false)
+    abstract static class SubsystemEvent extends Event {
+        @Label("Size")
+        @Description("Amount of work, counted in the unit")
+        long size;
+
+        @Label("Unit")
+        String unit;
+    }
+
+    @Name("kotlinide.Analysis")
+    @Label("Analysis")
+    static final class AnalysisEvent extends SubsystemEvent {
+    }
+
+    @Name("kotlinide.Highlight")
+    @Label("Highlight Pass")
+    static final class HighlightEvent extends SubsystemEvent {
+    }
+
+    @Name("kotlinide.Underlines")
+    @Label("Underline Application")
+    static final class UnderlineEvent extends SubsystemEvent {
+    }
+
+    @Name("kotlinide.InspectionTable")
+    @Label("Inspection Table Update")
+    static final class InspectionTableEvent extends SubsystemEvent {
+    }
+
+    @Name("kotlinide.Output")
+    @Label("Output Flush")
+    static final class OutputEvent extends SubsystemEvent {
+    }
+
+    @Name("kotlinide.ScriptRun")
+    @Label("Script Run")
+    static final class ScriptRunEvent extends SubsystemEvent {
+    }
+
+    @Name("kotlinide.EdtStall")
+    @Label("EDT Stall")
+    @Category("Kotlin IDE")
+    @StackTrace(false)
+    static final class EdtStallEvent extends Event {
+        @Label("Stall")
+        @Timespan
+        long stallNanos;
+
+        @Label("AWT Event")
+        String eventType;
+
+        @Label("EDT Stack")
+        @Description("The EDT's stack when the dispatch passed the threshold")
+        String stack;
+    }
+
+    /**
+     * One operation in progress; {@link #end} records it.
+     */
+    public static final class Timing {
+        private final Subsystem subsystem;
+        private final SubsystemEvent event;
+        private final long startNanos = System.nanoTime();
+
+        private Timing(Subsystem subsystem) {
+            this.subsystem = subsystem;
+            this.event = subsystem.events.get();
+            event.begin();
+        }
+
+        public void end(long size) {
+            long elapsed = System.nanoTime() - startNanos;
+            if (event.shouldCommit()) {
+                event.size = size;
+                event.unit = subsystem.unit;
+                event.commit();
+            }
+            windows.get(subsystem).add(System.currentTimeMillis(), elapsed, size);
+        }
+    }
+
+    /**
+     * Percentiles of the durations in a subsystem's window, in milliseconds.
+     */
+    public static final class Summary {
+        final long count;
+        final double p50;
+        final double p95;
+        final double p99;
+        final double max;
+        final long lastSize;
+
+        Summary(long count, double p50, double p95, double p99, double max, long lastSize) {
+            this.count = count;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+            this.lastSize = lastSize;
+        }
+    }
+
+    /**
+     * An EDT event that ran longer than the watchdog's threshold. The duration is filled in once the
+     * event finishes.
+     */
+    public static final class Stall {
+        final long atMillis;
+        final String eventType;
+        final StackTraceElement[] stack;
+        volatile long durationNanos = -1;
+
+        Stall(long atMillis, String eventType, StackTraceElement[] stack) {
+            this.atMillis = atMillis;
+            this.eventType = eventType;
+            this.stack = stack;
+        }
+
+        public String stackText() {
+            StringBuilder sb = new StringBuilder();
+            for (StackTraceElement frame : stack) {
+                sb.append("at ").append(frame).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    // Fixed-size ring of the latest samples
+    private static final class Window {
+        private final long[] atMillis = new long[WINDOW_SIZE];
+        private final long[] nanos = new long[WINDOW_SIZE];
+        private final long[] sizes = new long[WINDOW_SIZE];
+        private long count;
+
+        synchronized void add(long at, long elapsed, long size) {
+            int slot = (int) (count % WINDOW_SIZE);
+            atMillis[slot] = at;
+            nanos[slot] = elapsed;
+            sizes[slot] = size;
+            count++;
+        }
+
+        synchronized Summary summarize() {
+            int filled = (int) Math.min(count, WINDOW_SIZE);
+            if (filled == 0)
+                return new Summary(0, 0, 0, 0, 0, 0);
+            long[] sorted = Arrays.copyOf(nanos, filled);
+            Arrays.sort(sorted);
+            return new Summary(count, percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99),
+                    sorted[filled - 1] / 1e6, sizes[(int) ((count - 1) % WINDOW_SIZE)]);
+        }
+
+        // Oldest first, as {atMillis, nanos, size}
+        synchronized List<long[]> samples() {
+            int filled = (int) Math.min(count, WINDOW_SIZE);
+            List<long[]> samples = new ArrayList<>(filled);
+            for (long i = count - filled; i < count; i++) {
+                int slot = (int) (i % WINDOW_SIZE);
+                samples.add(new long[]{atMillis[slot], nanos[slot], sizes[slot]});
+            }
+            return samples;
+        }
+
+        synchronized void clear() {
+            count = 0;
+        }
+    }
+
+    private static final Map<Subsystem, Window> windows = new EnumMap<>(Subsystem.class);
+    private static final ArrayDeque<Stall> stalls = new ArrayDeque<>();
+
+    static {
+        for (Subsystem subsystem : Subsystem.values()) {
+            windows.put(subsystem, new Window());
+        }
+    }
+
+    private Instrumentation() {
+    }
+
+    public static Timing begin(Subsystem subsystem) {
+        return new Timing(subsystem);
+    }
+
+    public static Summary summarize(Subsystem subsystem) {
+        return windows.get(subsystem).summarize();
+    }
+
+    static void recordStall(Stall stall) {
+        synchronized (stalls) {
+            stalls.addLast(stall);
+            if (stalls.size() > MAX_STALLS)
+                stalls.removeFirst();
+        }
+    }
+
+    static void stallFinished(Stall stall, long durationNanos) {
+        stall.durationNanos = durationNanos;
+        EdtStallEvent event = new EdtStallEvent();
+        if (event.shouldCommit()) {
+            event.stallNanos = durationNanos;
+            event.eventType = stall.eventType;
+            event.stack = stall.stackText();
+            event.commit();
+        }
+    }
+
+    /**
+     * Recent stalls, newest first.
+     */
+    public static List<Stall> getStalls() {
+        synchronized (stalls) {
+            List<Stall> recent = new ArrayList<>(stalls);
+            Collections.reverse(recent);
+            return recent;
+        }
+    }
+
+    public static void clear() {
+        for (Window window : windows.values()) {
+            window.clear();
+        }
+        synchronized (stalls) {
+            stalls.clear();
+        }
+    }
+
+    /**
+     * Every sample still in the windows and every recent stall, for offline analysis.
+     */
+    public static String toJson() {
+        StringBuilder sb = new StringBuilder("{\n  \"subsystems\": [\n");
+        Subsystem[] subsystems = Subsystem.values();
+        for (int i = 0; i < subsystems.length; i++) {
+            Subsystem subsystem = subsystems[i];
+            sb.append("    {\"name\": ").append(Json.quote(subsystem.name()))
+              .append(", \"unit\": ").append(Json.quote(subsystem.unit))
+              .append(", \"samples\": [");
+            String separator = "";
+            for (long[] sample : windows.get(subsystem).samples()) {
+                sb.append(separator).append("\n      {\"at\": ").append(sample[0])
+                  .append(", \"durationMs\": ").append(sample[1] / 1e6)
+                  .append(", \"size\": ").append(sample[2]).append('}');
+                separator = ",";
+            }
+            sb.append("]}").append(i < subsystems.length - 1 ? "," : "").append('\n');
+        }
+        sb.append("  ],\n  \"stalls\": [");
+        String separator = "";
+        for (Stall stall : getStalls()) {
+            sb.append(separator).append("\n    {\"at\": ").append(stall.atMillis)
+              .append(", \"durationMs\": ").append(stall.durationNanos < 0 ? "null" : String.valueOf(stall.durationNanos / 1e6))
+              .append(", \"event\": ").append(Json.quote(stall.eventType))
+              .append(", \"stack\": ").append(Json.quote(stall.stackText())).append('}');
+            separator = ",";
+        }
+        return sb.append("\n  ]\n}\n").toString();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(rank - 1, sorted.length - 1))] / 1e6;
+    }
+}
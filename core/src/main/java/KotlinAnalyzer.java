@@ -0,0 +1,580 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.regex.*;
+
+public class KotlinAnalyzer {
+    private final AnalysisPool.Client analysisClient;
+    private Future<?> pendingAnalysis;
+    private volatile ProjectIndex projectIndex;
+    private volatile Path currentFile;
+    private volatile Set<String> knownFunctions;
+    private volatile InspectionProfile profile = InspectionProfile.defaults();
+    
+    /** Quiet time after the last change before {@link #analyzeAsync} starts; language clients use it too. */
+    public static final int ANALYSIS_DELAY_MS = 500;
+    
+    private static List<Inspection> installed;
+    
+    // Below this many lines a whole analysis is quick enough that partial results would only add repaints
+    private static final int PROGRESSIVE_MIN_LINES = 2000;
+    private static final int REGION_LINES = 1000;
+    // Lines analyzed with the focus above and below it, for code scrolled into view next
+    private static final int FOCUS_MARGIN_LINES = 50;
+    private static final long PUBLISH_INTERVAL_MS = 50;
+    
+    static final Pattern FUN_PATTERN = Pattern.compile("\\bfun\\s+(\\w+)\\s*\\(");
+    private static final Pattern CALL_PATTERN = Pattern.compile("\\b(\\w+)\\s*\\(");
+    
+    // Always known, even if the bundled stdlib database cannot be loaded
+    private static final Set<String> STDLIB_FUNCTIONS = new HashSet<>(Arrays.asList(
+        "println", "print", "listOf", "forEach"
+    ));
+    
+    public KotlinAnalyzer() {
+        this(AnalysisPool.shared().newClient());
+    }
+    
+    /**
+     * An analyzer whose {@link #analyzeAsync} work runs for the given client, at its priority.
+     */
+    public KotlinAnalyzer(AnalysisPool.Client analysisClient) {
+        this.analysisClient = analysisClient;
+    }
+    
+    /**
+     * Lets the undefined-function check see functions declared in other project files.
+     * The current file is left out of the lookup, since its editor text is analyzed directly.
+     */
+    public void setProjectContext(ProjectIndex projectIndex, Path currentFile) {
+        this.projectIndex = projectIndex;
+        this.currentFile = currentFile;
+    }
+    
+    /**
+     * Names of functions declared outside the analyzed text, for runs without a {@link ProjectIndex}.
+     */
+    public void setKnownFunctions(Set<String> knownFunctions) {
+        this.knownFunctions = knownFunctions;
+    }
+    
+    /** Sets which inspections run and at what severity. */
+    public void setProfile(InspectionProfile profile) {
+        this.profile = profile;
+    }
+    
+    public InspectionProfile getProfile() {
+        return profile;
+    }
+    
+    /**
+     * The built-in inspections followed by those registered as services, in that order.
+     */
+    public static synchronized List<Inspection> installedInspections() {
+        if (installed == null) {
+            List<Inspection> inspections = new ArrayList<>(BuiltInInspections.all());
+            Set<String> ids = new HashSet<>();
+            for (Inspection inspection : inspections) {
+                ids.add(inspection.getId());
+            }
+            try {
+                for (Inspection inspection : ServiceLoader.load(Inspection.class)) {
+                    if (ids.add(inspection.getId()))
+                        inspections.add(inspection);
+                    else
+                        System.err.println("Ignoring inspection " + inspection.getClass().getName()
+                            + ": id " + inspection.getId() + " is taken");
+                }
+            } catch (ServiceConfigurationError e) {
+                System.err.println("Cannot load inspections: " + e.getMessage());
+            }
+            installed = Collections.unmodifiableList(inspections);
+        }
+        return installed;
+    }
+    
+    /**
+     * Runs every enabled inspection over the code in one pass. Diagnostics come out in text order.
+     */
+    public AnalysisResult analyze(String code) {
+        return analyze(code, 0, 0, null);
+    }
+    
+    /**
+     * Like {@link #analyze(String)}, but on large texts line-scoped inspections first check the lines
+     * between the focus offsets, usually the ones on screen, then the rest of the file region by region.
+     * Their findings go to the progress callback as partial results along the way, the first one as soon
+     * as the focus lines are done; the whole-file checks run after that.
+     */
+    public AnalysisResult analyze(String code, int focusStart, int focusEnd, Consumer<AnalysisResult> progress) {
+        Instrumentation.Timing timing = Instrumentation.begin(Instrumentation.Subsystem.ANALYSIS);
+        try {
+            return runInspections(code, focusStart, focusEnd, progress);
+        } catch (Exception e) {
+            System.err.println("Analysis error: " + e.getMessage());
+            e.printStackTrace();
+            return new AnalysisResult(new ArrayList<>());
+        } finally {
+            timing.end(code.length());
+        }
+    }
+    
+    private AnalysisResult runInspections(String code, int focusStart, int focusEnd, Consumer<AnalysisResult> progress) {
+        long startNanos = System.nanoTime();
+        long startBytes = allocatedBytes();
+        
+        String[] lines = code.split("\n", -1);
+        int[] lineOffsets = lineOffsets(lines);
+        Set<String> declaredFunctions = new HashSet<>();
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        
+        InspectionProfile profile = this.profile;
+        List<Slot> slots = new ArrayList<>();
+        List<Slot> lineSlots = new ArrayList<>();
+        List<Slot> scopedLineSlots = new ArrayList<>();
+        List<Slot> symbolSlots = new ArrayList<>();
+        List<Slot> blockSlots = new ArrayList<>();
+        Set<String> scopedIds = new HashSet<>();
+        for (Inspection inspection : installedInspections()) {
+            if (!profile.isEnabled(inspection))
+                continue;
+            Slot slot = new Slot(inspection, profile.getSeverity(inspection), lineOffsets, declaredFunctions, diagnostics);
+            slots.add(slot);
+            Set<Inspection.Event> events = inspection.getEvents();
+            boolean scoped = inspection.isLineScoped();
+            if (scoped) scopedIds.add(inspection.getId());
+            slot.wantsLines = events.contains(Inspection.Event.LINES);
+            slot.wantsCalls = events.contains(Inspection.Event.CALLS);
+            if (slot.wantsLines || slot.wantsCalls) (scoped ? scopedLineSlots : lineSlots).add(slot);
+            if (events.contains(Inspection.Event.SYMBOLS)) symbolSlots.add(slot);
+            if (events.contains(Inspection.Event.BLOCKS)) blockSlots.add(slot);
+        }
+        for (Slot slot : slots) {
+            slot.start();
+        }
+        
+        // Declarations first, so a call can be resolved on its own line whichever line is checked first
+        if (!slots.isEmpty()) {
+            for (String line : lines) {
+                if (line.contains("fun") && !isLineComment(line)) {
+                    Matcher funMatcher = FUN_PATTERN.matcher(line);
+                    while (funMatcher.find()) {
+                        declaredFunctions.add(funMatcher.group(1));
+                    }
+                }
+            }
+        }
+        
+        if (!scopedLineSlots.isEmpty()) {
+            if (progress != null && lines.length > PROGRESSIVE_MIN_LINES) {
+                new RegionPass(lines, lineOffsets, scopedLineSlots, diagnostics,
+                    Collections.unmodifiableSet(scopedIds), progress).run(focusStart, focusEnd);
+            } else {
+                visitLines(lines, lineOffsets, 0, lines.length, scopedLineSlots);
+            }
+        }
+        
+        // Lexed once for both structures. The table is always built: completion and navigation use it
+        // even with every inspection off
+        List<KotlinLexer.Token> tokens = KotlinLexer.tokenize(code);
+        SymbolTable symbolTable = SymbolTable.build(tokens, code.length());
+        
+        visitLines(lines, lineOffsets, 0, lines.length, lineSlots);
+        for (Slot slot : symbolSlots) {
+            slot.symbols(symbolTable);
+        }
+        if (!blockSlots.isEmpty()) {
+            BlockStructure blocks = BlockStructure.build(code, tokens);
+            for (Slot slot : blockSlots) {
+                slot.blocks(blocks);
+            }
+        }
+        for (Slot slot : slots) {
+            slot.finish();
+        }
+        
+        // Stable, so findings at the same offset keep the order of the inspections
+        diagnostics.sort(Comparator.comparingInt(Diagnostic::getStartOffset));
+        
+        List<AnalysisResult.InspectionCost> costs = new ArrayList<>(slots.size() + 1);
+        long inspectionNanos = 0;
+        long inspectionBytes = 0;
+        for (Slot slot : slots) {
+            costs.add(new AnalysisResult.InspectionCost(slot.inspection.getId(), slot.nanos, slot.bytes, slot.findings));
+            inspectionNanos += slot.nanos;
+            inspectionBytes += slot.bytes;
+        }
+        costs.add(new AnalysisResult.InspectionCost(AnalysisResult.InspectionCost.DRIVER,
+            System.nanoTime() - startNanos - inspectionNanos,
+            allocatedBytes() - startBytes - inspectionBytes,
+            0));
+        return new AnalysisResult(diagnostics, symbolTable, costs);
+    }
+    
+    // Feeds lines [from, to) and the calls on them to the slots, one inspection after the other
+    private static void visitLines(String[] lines, int[] lineOffsets, int from, int to, List<Slot> slots) {
+        if (slots.isEmpty() || from >= to)
+            return;
+        boolean calls = false;
+        for (Slot slot : slots) {
+            calls |= slot.wantsCalls;
+        }
+        LineRange range = new LineRange(lines, lineOffsets, from, to, calls);
+        for (Slot slot : slots) {
+            slot.lines(range);
+        }
+    }
+    
+    /**
+     * Lines [from, to) with the comment lines marked and, if asked for, the calls on each line found,
+     * so every inspection walking the range shares one scan of it.
+     */
+    private static final class LineRange {
+        final String[] lines;
+        final int[] lineOffsets;
+        final int from;
+        final int to;
+        private final boolean[] comment;
+        // firstCall[i - from] is the index of the first call on line i; one more entry marks the end
+        final int[] firstCall;
+        String[] callNames = new String[16];
+        int[] callStarts = new int[16];
+        int[] callEnds = new int[16];
+        
+        LineRange(String[] lines, int[] lineOffsets, int from, int to, boolean findCalls) {
+            this.lines = lines;
+            this.lineOffsets = lineOffsets;
+            this.from = from;
+            this.to = to;
+            comment = new boolean[to - from];
+            firstCall = new int[to - from + 1];
+            int count = 0;
+            Matcher callMatcher = CALL_PATTERN.matcher("");
+            for (int lineNum = from; lineNum < to; lineNum++) {
+                firstCall[lineNum - from] = count;
+                String line = lines[lineNum];
+                comment[lineNum - from] = isLineComment(line);
+                if (!findCalls || comment[lineNum - from])
+                    continue;
+                int lineOffset = lineOffsets[lineNum];
+                callMatcher.reset(line);
+                while (callMatcher.find()) {
+                    if (count == callNames.length) {
+                        callNames = Arrays.copyOf(callNames, count * 2);
+                        callStarts = Arrays.copyOf(callStarts, count * 2);
+                        callEnds = Arrays.copyOf(callEnds, count * 2);
+                    }
+                    callNames[count] = callMatcher.group(1);
+                    callStarts[count] = lineOffset + callMatcher.start(1);
+                    callEnds[count] = lineOffset + callMatcher.end(1);
+                    count++;
+                }
+            }
+            firstCall[to - from] = count;
+        }
+        
+        boolean isComment(int lineNum) {
+            return comment[lineNum - from];
+        }
+    }
+    
+    /**
+     * Runs the line-scoped inspections over the focus lines, then over the regions below them and
+     * finally those above, publishing what was found each time the focus is done, a stretch of regions
+     * has taken {@link #PUBLISH_INTERVAL_MS}, or the pass wraps around to the top of the file. Each
+     * partial result covers one contiguous range of lines.
+     */
+    private static final class RegionPass {
+        private final String[] lines;
+        private final int[] lineOffsets;
+        private final List<Slot> lineSlots;
+        private final List<Diagnostic> diagnostics;
+        private final Set<String> inspectionIds;
+        private final Consumer<AnalysisResult> progress;
+        private int publishedFindings;
+        private int stretchStart = -1;
+        private int stretchEnd;
+        private long lastPublishNanos;
+        
+        RegionPass(String[] lines, int[] lineOffsets, List<Slot> lineSlots, List<Diagnostic> diagnostics,
+                   Set<String> inspectionIds, Consumer<AnalysisResult> progress) {
+            this.lines = lines;
+            this.lineOffsets = lineOffsets;
+            this.lineSlots = lineSlots;
+            this.diagnostics = diagnostics;
+            this.inspectionIds = inspectionIds;
+            this.progress = progress;
+        }
+        
+        void run(int focusStart, int focusEnd) {
+            int focusFirst = Math.max(0, lineOf(focusStart) - FOCUS_MARGIN_LINES);
+            int focusLast = Math.min(lines.length, lineOf(Math.max(focusStart, focusEnd)) + FOCUS_MARGIN_LINES + 1);
+            visitLines(lines, lineOffsets, focusFirst, focusLast, lineSlots);
+            stretchStart = focusFirst;
+            stretchEnd = focusLast;
+            publish();
+            for (int from = focusLast; from < lines.length; from += REGION_LINES) {
+                visit(from, Math.min(lines.length, from + REGION_LINES));
+            }
+            publish();
+            for (int from = 0; from < focusFirst; from += REGION_LINES) {
+                visit(from, Math.min(focusFirst, from + REGION_LINES));
+            }
+            publish();
+        }
+        
+        private void visit(int from, int to) {
+            if (from >= to)
+                return;
+            visitLines(lines, lineOffsets, from, to, lineSlots);
+            if (stretchStart < 0)
+                stretchStart = from;
+            stretchEnd = to;
+            if (System.nanoTime() - lastPublishNanos >= TimeUnit.MILLISECONDS.toNanos(PUBLISH_INTERVAL_MS))
+                publish();
+        }
+        
+        private void publish() {
+            if (stretchStart < 0)
+                return;
+            List<Diagnostic> found = new ArrayList<>(diagnostics.subList(publishedFindings, diagnostics.size()));
+            found.sort(Comparator.comparingInt(Diagnostic::getStartOffset));
+            int endOffset = stretchEnd < lines.length ? lineOffsets[stretchEnd] : Integer.MAX_VALUE;
+            progress.accept(AnalysisResult.partial(found, inspectionIds, lineOffsets[stretchStart], endOffset));
+            publishedFindings = diagnostics.size();
+            stretchStart = -1;
+            lastPublishNanos = System.nanoTime();
+        }
+        
+        private int lineOf(int offset) {
+            int index = Arrays.binarySearch(lineOffsets, offset);
+            return index >= 0 ? index : Math.max(0, -index - 2);
+        }
+    }
+    
+    // Same as line.trim().startsWith("//") without copying the line
+    private static boolean isLineComment(String line) {
+        int i = 0;
+        while (i < line.length() && line.charAt(i) <= ' ') {
+            i++;
+        }
+        return line.startsWith("//", i);
+    }
+    
+    /**
+     * One enabled inspection in one analysis run. Each phase of the inspection is timed as a whole (a
+     * range of lines counts as one phase), and the bytes the thread allocates meanwhile are counted
+     * against it. An inspection that throws is dropped for the rest of the run rather than failing the
+     * analysis.
+     */
+    private final class Slot implements Inspection.Context {
+        final Inspection inspection;
+        private final Diagnostic.Severity severity;
+        private final int[] lineOffsets;
+        private final Set<String> declaredFunctions;
+        private final List<Diagnostic> diagnostics;
+        private Inspection.Visitor visitor;
+        boolean wantsLines;
+        boolean wantsCalls;
+        long nanos;
+        long bytes;
+        int findings;
+        
+        Slot(Inspection inspection, Diagnostic.Severity severity, int[] lineOffsets,
+             Set<String> declaredFunctions, List<Diagnostic> diagnostics) {
+            this.inspection = inspection;
+            this.severity = severity;
+            this.lineOffsets = lineOffsets;
+            this.declaredFunctions = declaredFunctions;
+            this.diagnostics = diagnostics;
+        }
+        
+        void start() {
+            long t = System.nanoTime();
+            long a = allocatedBytes();
+            try {
+                visitor = inspection.start(this);
+            } catch (RuntimeException e) {
+                failed(e);
+            }
+            charge(t, a);
+        }
+        
+        // Each line goes to the visitor before the calls on it
+        void lines(LineRange range) {
+            Inspection.Visitor visitor = this.visitor;
+            if (visitor == null)
+                return;
+            long t = System.nanoTime();
+            long a = allocatedBytes();
+            try {
+                for (int lineNum = range.from; lineNum < range.to; lineNum++) {
+                    if (range.isComment(lineNum))
+                        continue;
+                    if (wantsLines)
+                        visitor.line(lineNum, range.lineOffsets[lineNum], range.lines[lineNum]);
+                    if (wantsCalls) {
+                        int end = range.firstCall[lineNum - range.from + 1];
+                        for (int c = range.firstCall[lineNum - range.from]; c < end; c++) {
+                            visitor.call(range.callNames[c], range.callStarts[c], range.callEnds[c]);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                failed(e);
+            }
+            charge(t, a);
+        }
+        
+        void symbols(SymbolTable symbolTable) {
+            if (visitor == null)
+                return;
+            long t = System.nanoTime();
+            long a = allocatedBytes();
+            try {
+                visitor.symbols(symbolTable);
+            } catch (RuntimeException e) {
+                failed(e);
+            }
+            charge(t, a);
+        }
+        
+        void blocks(BlockStructure blocks) {
+            if (visitor == null)
+                return;
+            long t = System.nanoTime();
+            long a = allocatedBytes();
+            try {
+                visitor.blocks(blocks);
+            } catch (RuntimeException e) {
+                failed(e);
+            }
+            charge(t, a);
+        }
+        
+        void finish() {
+            if (visitor == null)
+                return;
+            long t = System.nanoTime();
+            long a = allocatedBytes();
+            try {
+                visitor.finish();
+            } catch (RuntimeException e) {
+                failed(e);
+            }
+            charge(t, a);
+        }
+        
+        private void charge(long startNanos, long startBytes) {
+            nanos += System.nanoTime() - startNanos;
+            bytes += allocatedBytes() - startBytes;
+        }
+        
+        private void failed(RuntimeException e) {
+            System.err.println("Inspection " + inspection.getId() + " failed: " + e);
+            e.printStackTrace();
+            visitor = null;
+        }
+        
+        @Override
+        public void report(int startOffset, int endOffset, String message) {
+            int[] lineCol = offsetToLineColumn(lineOffsets, startOffset);
+            diagnostics.add(new Diagnostic(severity, message, lineCol[0], lineCol[1], startOffset, endOffset,
+                inspection.getId()));
+            findings++;
+        }
+        
+        @Override
+        public boolean isDeclaredFunction(String name) {
+            return declaredFunctions.contains(name);
+        }
+        
+        @Override
+        public boolean isKnownFunction(String name) {
+            return STDLIB_FUNCTIONS.contains(name) || StdlibSymbols.contains(name) || isDefinedInProject(name);
+        }
+    }
+    
+    // Loading java.lang.management is left to the first analysis, which runs off the EDT
+    private static final class AllocationCounter {
+        static final com.sun.management.ThreadMXBean BEAN = allocationCounter();
+    }
+    
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) bean;
+            if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled())
+                return counter;
+        }
+        return null;
+    }
+    
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean counter = AllocationCounter.BEAN;
+        return counter != null ? counter.getCurrentThreadAllocatedBytes() : 0;
+    }
+    
+    private boolean isDefinedInProject(String name) {
+        ProjectIndex index = projectIndex;
+        Set<String> known = knownFunctions;
+        return index != null && index.isFunctionDefined(name, currentFile)
+            || known != null && known.contains(name);
+    }
+    
+    // Start offset of every line, computed once; summing lengths per line was quadratic on large scripts
+    private int[] lineOffsets(String[] lines) {
+        int[] offsets = new int[lines.length];
+        int offset = 0;
+        for (int i = 0; i < lines.length; i++) {
+            offsets[i] = offset;
+            offset += lines[i].length() + 1; // +1 for newline
+        }
+        return offsets;
+    }
+    
+    private int[] offsetToLineColumn(int[] lineOffsets, int offset) {
+        int index = Arrays.binarySearch(lineOffsets, offset);
+        int line = index >= 0 ? index : -index - 2;
+        return new int[]{line + 1, offset - lineOffsets[line] + 1};
+    }
+    
+    /**
+     * Analyzes the code after a short debounce delay on the shared {@link AnalysisPool}; a call before
+     * the analysis has started replaces the pending one. The code may be a snapshot that is only turned
+     * into a String on the analysis thread. The callback runs on that thread.
+     */
+    public void analyzeAsync(CharSequence code, Consumer<AnalysisResult> callback) {
+        analyzeAsync(code, 0, 0, null, callback);
+    }
+    
+    /**
+     * Like {@link #analyzeAsync(CharSequence, Consumer)}, with the focus and partial results of
+     * {@link #analyze(String, int, int, Consumer)}. Both callbacks run on the analysis thread.
+     */
+    public synchronized void analyzeAsync(CharSequence code, int focusStart, int focusEnd,
+                                          Consumer<AnalysisResult> progress, Consumer<AnalysisResult> callback) {
+        cancelPending();
+        pendingAnalysis = analysisClient.schedule(() -> {
+            try {
+                AnalysisResult result = analyze(code.toString(), focusStart, focusEnd, progress);
+                callback.accept(result);
+            } catch (Exception ex) {
+                System.err.println("Async analysis error: " + ex.getMessage());
+                ex.printStackTrace();
+            }
+        }, ANALYSIS_DELAY_MS);
+    }
+    
+    /**
+     * Drops an analysis that is waiting for its delay or for a worker.
+     */
+    public synchronized void cancelPending() {
+        if (pendingAnalysis != null) {
+            pendingAnalysis.cancel(false);
+            pendingAnalysis = null;
+        }
+    }
+}
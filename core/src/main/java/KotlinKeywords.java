@@ -0,0 +1,30 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keyword lists shared by the highlighter, the analyzer, the lexer and code completion.
+ */
+public final class KotlinKeywords {
+
+    /** Keywords that are highlighted, never reported as undefined calls, and offered by completion. */
+    public static final Set<String> KEYWORDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "break", "catch", "class", "const", "constructor", "continue",
+            "do", "else", "enum", "false", "finally", "for", "fun", "if", "import", "in", "inline", "interface",
+            "null", "override", "private", "protected", "public", "return", "super",
+            "this", "throw", "true", "try", "val", "var", "while"
+    )));
+
+    /** Length of the longest entry in {@link #KEYWORDS} ("constructor"). */
+    public static final int MAX_KEYWORD_LENGTH = 11;
+
+    /** Hard keywords, which can never be identifiers. Soft keywords such as "get" or "by" are not included. */
+    public static final Set<String> HARD_KEYWORDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "as", "break", "class", "continue", "do", "else", "false", "for", "fun", "if", "in",
+            "interface", "is", "null", "object", "package", "return", "super", "this", "throw",
+            "true", "try", "typealias", "typeof", "val", "var", "when", "while"
+    )));
+
+    private KotlinKeywords() {}
+}
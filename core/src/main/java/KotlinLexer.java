@@ -0,0 +1,246 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Small tokenizer for Kotlin source. Comments and whitespace are dropped, string literals become
+ * single STRING tokens, and identifiers inside string templates ("$name", "${expr}") are emitted as
+ * regular tokens so they count as usages.
+ */
+public final class KotlinLexer {
+
+    public enum Type {
+        IDENTIFIER,
+        KEYWORD,
+        NUMBER,
+        STRING,
+        OPERATOR
+    }
+
+    public static final class Token {
+        private final Type type;
+        private final String text;
+        private final int start;
+        private final int end;
+        private final boolean newlineBefore;
+
+        Token(Type type, String text, int start, int end, boolean newlineBefore) {
+            this.type = type;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.newlineBefore = newlineBefore;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /** Token text; string literals only carry their opening quote. */
+        public String getText() {
+            return text;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        /** Whether a line break separates this token from the previous one. */
+        public boolean isNewlineBefore() {
+            return newlineBefore;
+        }
+
+        public boolean is(String s) {
+            return text.equals(s);
+        }
+
+        @Override
+        public String toString() {
+            return type + " '" + text + "' @" + start;
+        }
+    }
+
+    private static final String[] OPERATORS = {
+            "?.", "?:", "::", "->", "..", "==", "!=", "<=", ">=", "&&", "||", "++", "--", "+=", "-=", "*=", "/=", "!!"
+    };
+
+    private final CharSequence code;
+    private final List<Token> tokens = new ArrayList<>();
+    private int pos;
+    private boolean newline;
+
+    private KotlinLexer(CharSequence code) {
+        this.code = code;
+    }
+
+    public static List<Token> tokenize(CharSequence code) {
+        KotlinLexer lexer = new KotlinLexer(code);
+        lexer.lexCode(false);
+        return lexer.tokens;
+    }
+
+    /**
+     * Lexes code until the end of input or, inside a "${...}" template, until its closing brace.
+     */
+    private void lexCode(boolean inTemplate) {
+        int braceDepth = 0;
+        int length = code.length();
+        while (pos < length) {
+            char c = code.charAt(pos);
+            if (c == '\n') {
+                newline = true;
+                pos++;
+            } else if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (c == '/' && peek(1) == '/') {
+                while (pos < length && code.charAt(pos) != '\n') pos++;
+            } else if (c == '/' && peek(1) == '*') {
+                skipBlockComment();
+            } else if (c == '"') {
+                lexString();
+            } else if (c == '\'') {
+                lexChar();
+            } else if (c == '`') {
+                lexBacktickIdentifier();
+            } else if (Character.isJavaIdentifierStart(c) && c != '$') {
+                int start = pos;
+                while (pos < length && Character.isJavaIdentifierPart(code.charAt(pos)) && code.charAt(pos) != '$') pos++;
+                String word = code.subSequence(start, pos).toString();
+                add(KotlinKeywords.HARD_KEYWORDS.contains(word) ? Type.KEYWORD : Type.IDENTIFIER, word, start, pos);
+            } else if (Character.isDigit(c)) {
+                int start = pos;
+                while (pos < length && (Character.isLetterOrDigit(code.charAt(pos)) || code.charAt(pos) == '_'
+                        || (code.charAt(pos) == '.' && pos + 1 < length && Character.isDigit(code.charAt(pos + 1))))) {
+                    pos++;
+                }
+                add(Type.NUMBER, code.subSequence(start, pos).toString(), start, pos);
+            } else {
+                if (inTemplate) {
+                    if (c == '{') {
+                        braceDepth++;
+                    } else if (c == '}' && braceDepth-- == 0) {
+                        pos++;
+                        return;
+                    }
+                }
+                lexOperator();
+            }
+        }
+    }
+
+    private void lexOperator() {
+        int start = pos;
+        for (String op : OPERATORS) {
+            if (startsWith(op)) {
+                pos += op.length();
+                add(Type.OPERATOR, op, start, pos);
+                return;
+            }
+        }
+        pos++;
+        add(Type.OPERATOR, String.valueOf(code.charAt(start)), start, pos);
+    }
+
+    private void lexString() {
+        int start = pos;
+        boolean raw = startsWith("\"\"\"");
+        pos += raw ? 3 : 1;
+        // The literal is emitted first so tokens stay ordered by offset; its end is fixed up below
+        int index = tokens.size();
+        add(Type.STRING, "\"", start, pos);
+
+        int length = code.length();
+        while (pos < length) {
+            char c = code.charAt(pos);
+            if (raw && startsWith("\"\"\"")) {
+                pos += 3;
+                // Quotes directly before the closing delimiter belong to the string
+                while (pos < length && code.charAt(pos) == '"') pos++;
+                break;
+            } else if (!raw && c == '"') {
+                pos++;
+                break;
+            } else if (!raw && c == '\n') {
+                break; // unterminated literal ends at the line end
+            } else if (!raw && c == '\\') {
+                pos += 2;
+            } else if (c == '$' && peek(1) == '{') {
+                pos += 2;
+                lexCode(true);
+            } else if (c == '$' && Character.isJavaIdentifierStart(peek(1)) && peek(1) != '$') {
+                int nameStart = ++pos;
+                while (pos < length && Character.isJavaIdentifierPart(code.charAt(pos)) && code.charAt(pos) != '$') pos++;
+                String name = code.subSequence(nameStart, pos).toString();
+                add(KotlinKeywords.HARD_KEYWORDS.contains(name) ? Type.KEYWORD : Type.IDENTIFIER, name, nameStart, pos);
+            } else {
+                pos++;
+            }
+        }
+        pos = Math.min(pos, length);
+        Token literal = tokens.get(index);
+        tokens.set(index, new Token(Type.STRING, "\"", literal.start, pos, literal.newlineBefore));
+    }
+
+    private void lexChar() {
+        int start = pos++;
+        int length = code.length();
+        while (pos < length && code.charAt(pos) != '\'' && code.charAt(pos) != '\n') {
+            if (code.charAt(pos) == '\\') pos++;
+            pos++;
+        }
+        if (pos < length && code.charAt(pos) == '\'') pos++;
+        pos = Math.min(pos, length);
+        add(Type.STRING, "'", start, pos);
+    }
+
+    private void lexBacktickIdentifier() {
+        int start = pos++;
+        int length = code.length();
+        while (pos < length && code.charAt(pos) != '`' && code.charAt(pos) != '\n') pos++;
+        String name = code.subSequence(start + 1, pos).toString();
+        if (pos < length && code.charAt(pos) == '`') pos++;
+        add(Type.IDENTIFIER, name, start, pos);
+    }
+
+    private void skipBlockComment() {
+        // Kotlin block comments nest
+        int depth = 0;
+        int length = code.length();
+        while (pos < length) {
+            if (startsWith("/*")) {
+                depth++;
+                pos += 2;
+            } else if (startsWith("*/")) {
+                pos += 2;
+                if (--depth == 0)
+                    return;
+            } else {
+                if (code.charAt(pos) == '\n') newline = true;
+                pos++;
+            }
+        }
+    }
+
+    private void add(Type type, String text, int start, int end) {
+        tokens.add(new Token(type, text, start, end, newline));
+        newline = false;
+    }
+
+    private char peek(int ahead) {
+        int i = pos + ahead;
+        return i < code.length() ? code.charAt(i) : '\0';
+    }
+
+    private boolean startsWith(String s) {
+        if (pos + s.length() > code.length())
+            return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (code.charAt(pos + i) != s.charAt(i))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,386 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+
+/**
+ * Index of the functions declared in every .kts/.kt file below a project directory.
+ * The initial scan parses files in parallel on all cores; afterwards a WatchService keeps
+ * the index current by re-parsing only the files that changed. The index is persisted with
+ * {@link IndexStore}, so on the next start only files whose size, modification time and
+ * contents hash no longer match are parsed again.
+ */
+public class ProjectIndex {
+
+    public interface IndexListener {
+        void onIndexed(int fileCount, int symbolCount, int parsedCount, long elapsedMillis);
+        void onFileChanged(Path file);
+        void onError(Exception e);
+    }
+
+    /**
+     * What the index knows about one file. Immutable; replaced whenever the file is re-indexed.
+     */
+    static final class FileEntry {
+        final long modified;
+        final long size;
+        final int hash;
+        final Set<String> symbols;
+
+        FileEntry(long modified, long size, int hash, Set<String> symbols) {
+            this.modified = modified;
+            this.size = size;
+            this.hash = hash;
+            this.symbols = symbols;
+        }
+    }
+
+    // Changes are written out once the watcher has been idle this long
+    private static final long SAVE_DELAY_MS = 2000;
+
+    private final Path root;
+    private final Path storeFile;
+    private final IndexListener listener;
+
+    // file -> functions it declares, and the reverse map used for lookups. Most names are declared
+    // in a single file, so the per-name sets are small immutable copies rather than concurrent sets.
+    private final Map<Path, FileEntry> fileSymbols = new ConcurrentHashMap<>();
+    private final Map<String, Set<Path>> definitions = new ConcurrentHashMap<>();
+
+    private volatile WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private Thread watcherThread;
+    private volatile boolean dirty;
+
+    public ProjectIndex(Path root, IndexListener listener) {
+        this.root = root.toAbsolutePath().normalize();
+        this.storeFile = IndexStore.locationFor(this.root);
+        this.listener = listener;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Indexes the project in the background and then starts watching it for changes.
+     */
+    public void start() {
+        watcherThread = new Thread(() -> {
+            try {
+                watchService = root.getFileSystem().newWatchService();
+                long startTime = System.nanoTime();
+                int parsed = indexAll(IndexStore.load(storeFile, root));
+                listener.onIndexed(fileSymbols.size(), definitions.size(), parsed,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                saveIfDirty();
+                watchLoop();
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                // Project was closed
+            } catch (Exception e) {
+                listener.onError(e);
+            }
+        }, "project-index");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    public void close() {
+        saveIfDirty();
+        try {
+            if (watchService != null)
+                watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (watcherThread != null)
+            watcherThread.interrupt();
+    }
+
+    /**
+     * Returns whether a function with this name is declared in a project file other than the excluded one.
+     * The file open in the editor is excluded so that its unsaved text, not its saved copy, decides.
+     */
+    public boolean isFunctionDefined(String name, Path excludedFile) {
+        Set<Path> files = definitions.get(name);
+        if (files == null || files.isEmpty())
+            return false;
+        if (excludedFile == null)
+            return true;
+        Path excluded = excludedFile.toAbsolutePath().normalize();
+        for (Path file : files) {
+            if (!file.equals(excluded))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * All indexed source files, sorted by path.
+     */
+    public List<Path> getFiles() {
+        List<Path> files = new ArrayList<>(fileSymbols.keySet());
+        Collections.sort(files);
+        return files;
+    }
+
+    public static boolean isSourceFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".kts") || name.endsWith(".kt");
+    }
+
+    /**
+     * Brings the index in line with the files on disk. Known entries whose size and modification time
+     * still match are taken over without reading the file. Returns the number of files that were read.
+     */
+    private int indexAll(Map<Path, FileEntry> known) throws IOException, InterruptedException {
+        List<Path> files = new ArrayList<>();
+        Set<Path> seen = new HashSet<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (isSkipped(dir))
+                    return FileVisitResult.SKIP_SUBTREE;
+                register(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || !isSourceFile(file))
+                    return FileVisitResult.CONTINUE;
+                Path key = file.toAbsolutePath().normalize();
+                seen.add(key);
+                FileEntry entry = known.get(key);
+                if (entry != null && entry.size == attrs.size() && entry.modified == attrs.lastModifiedTime().toMillis()) {
+                    if (fileSymbols.get(key) != entry)
+                        putEntry(key, entry);
+                } else {
+                    files.add(key);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // Parsing is independent per file, so the initial scan uses every core
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "project-index-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>(files.size());
+            for (Path file : files) {
+                tasks.add(() -> {
+                    indexFile(file, known.get(file));
+                    return null;
+                });
+            }
+            pool.invokeAll(tasks);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        for (Path file : new ArrayList<>(fileSymbols.keySet())) {
+            if (!seen.contains(file))
+                removeFile(file);
+        }
+        if (known.size() != seen.size())
+            dirty = true; // files were deleted while the stored index was not watching
+        return files.size();
+    }
+
+    private void register(Path dir) throws IOException {
+        WatchKey key = dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedDirectories.put(key, dir);
+    }
+
+    private void watchLoop() throws InterruptedException, IOException {
+        while (true) {
+            WatchKey key = watchService.poll(SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+            if (key == null) {
+                saveIfDirty();
+                continue;
+            }
+            Path dir = watchedDirectories.get(key);
+            if (dir == null) {
+                key.reset();
+                continue;
+            }
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were lost, only a full rescan is safe
+                    long startTime = System.nanoTime();
+                    int parsed = indexAll(new HashMap<>(fileSymbols));
+                    listener.onIndexed(fileSymbols.size(), definitions.size(), parsed,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                    continue;
+                }
+
+                Path changed = dir.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                    indexDirectory(changed);
+                } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    removeUnder(changed);
+                    listener.onFileChanged(changed);
+                } else if (isSourceFile(changed)) {
+                    indexFile(changed, null);
+                    listener.onFileChanged(changed);
+                }
+            }
+
+            if (!key.reset())
+                watchedDirectories.remove(key);
+        }
+    }
+
+    // Hidden directories such as .git or .idea are neither indexed nor watched
+    private boolean isSkipped(Path dir) {
+        return !dir.equals(root) && dir.getFileName().toString().startsWith(".");
+    }
+
+    private void indexDirectory(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                if (isSkipped(d))
+                    return FileVisitResult.SKIP_SUBTREE;
+                register(d);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && isSourceFile(file)) {
+                    indexFile(file, null);
+                    listener.onFileChanged(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Re-reads one file. When its contents hash matches the previous entry (e.g. the file was only
+     * touched or checked out again) the stored symbols are kept and the file is not parsed.
+     */
+    private void indexFile(Path file, FileEntry previous) {
+        Path key = file.toAbsolutePath().normalize();
+        FileEntry entry;
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(key, BasicFileAttributes.class);
+            byte[] content = Files.readAllBytes(key);
+            int hash = IndexStore.hash(content);
+            if (previous == null)
+                previous = fileSymbols.get(key);
+
+            Set<String> symbols = previous != null && previous.size == content.length && previous.hash == hash
+                    ? previous.symbols
+                    // Decoding leniently keeps one file with broken encoding from dropping out of the index
+                    : extractFunctions(new String(content, StandardCharsets.UTF_8));
+            entry = new FileEntry(attrs.lastModifiedTime().toMillis(), content.length, hash, symbols);
+        } catch (IOException e) {
+            // Deleted or unreadable between the event and now
+            removeFile(key);
+            return;
+        }
+        putEntry(key, entry);
+    }
+
+    private void putEntry(Path key, FileEntry entry) {
+        FileEntry previous = fileSymbols.put(key, entry);
+        dirty = true;
+        if (previous != null) {
+            for (String name : previous.symbols) {
+                if (!entry.symbols.contains(name))
+                    removeDefinition(name, key);
+            }
+        }
+        for (String name : entry.symbols) {
+            definitions.compute(name, (n, files) -> {
+                if (files == null)
+                    return Set.of(key);
+                if (files.contains(key))
+                    return files;
+                Set<Path> copy = new HashSet<>(files);
+                copy.add(key);
+                return Collections.unmodifiableSet(copy);
+            });
+        }
+    }
+
+    private synchronized void saveIfDirty() {
+        if (!dirty)
+            return;
+        dirty = false;
+        try {
+            IndexStore.save(storeFile, root, new HashMap<>(fileSymbols));
+        } catch (IOException e) {
+            // The index still works in memory, the next start just has more to parse
+            System.err.println("Could not save project index: " + e.getMessage());
+        }
+    }
+
+    private void removeUnder(Path path) {
+        Path prefix = path.toAbsolutePath().normalize();
+        for (Path file : new ArrayList<>(fileSymbols.keySet())) {
+            if (file.startsWith(prefix))
+                removeFile(file);
+        }
+        watchedDirectories.values().removeIf(dir -> dir.startsWith(prefix));
+    }
+
+    private void removeFile(Path file) {
+        FileEntry previous = fileSymbols.remove(file);
+        if (previous == null)
+            return;
+        dirty = true;
+        for (String name : previous.symbols) {
+            removeDefinition(name, file);
+        }
+    }
+
+    private void removeDefinition(String name, Path file) {
+        definitions.computeIfPresent(name, (n, files) -> {
+            if (!files.contains(file))
+                return files;
+            Set<Path> copy = new HashSet<>(files);
+            copy.remove(file);
+            return copy.isEmpty() ? null : Collections.unmodifiableSet(copy);
+        });
+    }
+
+    /**
+     * Names of the functions declared in the given source, using the same rules as the analyzer.
+     */
+    static Set<String> extractFunctions(String code) {
+        Set<String> functions = new HashSet<>();
+        for (String line : code.split("\n", -1)) {
+            if (line.trim().startsWith("//"))
+                continue;
+            Matcher matcher = KotlinAnalyzer.FUN_PATTERN.matcher(line);
+            while (matcher.find()) {
+                functions.add(matcher.group(1));
+            }
+        }
+        return functions;
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Read-only database of the function names declared by the Kotlin standard library, used by the
+ * undefined-function inspection. The bundled resource is produced by StdlibSymbolsGenerator in tools/.
+ *
+ * Names are stored sorted and front-coded in blocks of {@link #BLOCK_SIZE}: the first name of a block
+ * is stored in full, every following one as the length of the prefix it shares with its predecessor
+ * plus the remaining bytes. A lookup binary-searches the block heads and scans a single block, so the
+ * database stays a single byte array instead of a set with one object per name.
+ *
+ * Resource layout (everything after the magic is deflated): magic, format version, name count,
+ * block count, block offsets into the data, data.
+ */
+public final class StdlibSymbols {
+    static final String RESOURCE = "/stdlib-symbols.bin";
+    static final int MAGIC = 0x4B53594D; // "KSYM"
+    static final int FORMAT_VERSION = 1;
+    static final int BLOCK_SIZE = 16;
+
+    private final int count;
+    private final int[] blockOffsets;
+    private final byte[] data;
+
+    private StdlibSymbols(int count, int[] blockOffsets, byte[] data) {
+        this.count = count;
+        this.blockOffsets = blockOffsets;
+        this.data = data;
+    }
+
+    // Loaded on first lookup, not when the analyzer is created
+    private static final class Holder {
+        static final StdlibSymbols INSTANCE = load();
+    }
+
+    /**
+     * Returns whether the standard library declares a function (or method) with this name.
+     */
+    public static boolean contains(String name) {
+        return Holder.INSTANCE.lookup(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static int size() {
+        return Holder.INSTANCE.count;
+    }
+
+    /**
+     * All names in the database, in sorted order. Decodes every block, so meant for one-off use
+     * such as seeding the completion index.
+     */
+    public static List<String> names() {
+        StdlibSymbols db = Holder.INSTANCE;
+        List<String> names = new ArrayList<>(db.count);
+        for (int block = 0; block < db.blockOffsets.length; block++) {
+            int[] pos = {db.blockOffsets[block]};
+            int entries = Math.min(BLOCK_SIZE, db.count - block * BLOCK_SIZE);
+            byte[] current = new byte[0];
+            for (int i = 0; i < entries; i++) {
+                int shared = i == 0 ? 0 : readVarInt(db.data, pos);
+                int suffix = readVarInt(db.data, pos);
+                byte[] name = Arrays.copyOf(current, shared + suffix);
+                System.arraycopy(db.data, pos[0], name, shared, suffix);
+                pos[0] += suffix;
+                names.add(new String(name, StandardCharsets.UTF_8));
+                current = name;
+            }
+        }
+        return names;
+    }
+
+    private static StdlibSymbols load() {
+        try (InputStream in = StdlibSymbols.class.getResourceAsStream(RESOURCE)) {
+            if (in == null)
+                throw new IOException("resource " + RESOURCE + " not found");
+            if (readInt(in) != MAGIC)
+                throw new IOException("not a symbol database");
+
+            byte[] body = new InflaterInputStream(in).readAllBytes();
+            int[] pos = {0};
+            if (readInt(body, pos) != FORMAT_VERSION)
+                throw new IOException("unsupported symbol database version");
+            int count = readInt(body, pos);
+            int[] blockOffsets = new int[readInt(body, pos)];
+            for (int i = 0; i < blockOffsets.length; i++) {
+                blockOffsets[i] = readInt(body, pos);
+            }
+            // Offsets are stored relative to the start of the data
+            for (int i = 0; i < blockOffsets.length; i++) {
+                blockOffsets[i] += pos[0];
+            }
+            return new StdlibSymbols(count, blockOffsets, body);
+        } catch (IOException e) {
+            // The inspection still works, it just knows fewer names
+            System.err.println("Could not load stdlib symbols: " + e.getMessage());
+            return new StdlibSymbols(0, new int[0], new byte[0]);
+        }
+    }
+
+    private boolean lookup(byte[] name) {
+        // Last block whose first name is <= name
+        int low = 0;
+        int high = blockOffsets.length - 1;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compareBlockHead(mid, name);
+            if (c == 0)
+                return true;
+            if (c < 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return block >= 0 && scanBlock(block, name);
+    }
+
+    private int compareBlockHead(int block, byte[] name) {
+        int[] pos = {blockOffsets[block]};
+        int length = readVarInt(data, pos);
+        return compare(data, pos[0], length, name, name.length);
+    }
+
+    private boolean scanBlock(int block, byte[] name) {
+        int[] pos = {blockOffsets[block]};
+        int entries = Math.min(BLOCK_SIZE, count - block * BLOCK_SIZE);
+        byte[] current = new byte[256];
+        int currentLength = 0;
+
+        for (int i = 0; i < entries; i++) {
+            int shared = i == 0 ? 0 : readVarInt(data, pos);
+            int suffix = readVarInt(data, pos);
+            if (shared + suffix > current.length) {
+                byte[] grown = new byte[Math.max(current.length * 2, shared + suffix)];
+                System.arraycopy(current, 0, grown, 0, currentLength);
+                current = grown;
+            }
+            System.arraycopy(data, pos[0], current, shared, suffix);
+            pos[0] += suffix;
+            currentLength = shared + suffix;
+
+            int c = compare(current, 0, currentLength, name, name.length);
+            if (c == 0)
+                return true;
+            if (c > 0)
+                return false; // sorted, so the name cannot come later
+        }
+        return false;
+    }
+
+    static int compare(byte[] a, int aStart, int aLength, byte[] b, int bLength) {
+        int n = Math.min(aLength, bLength);
+        for (int i = 0; i < n; i++) {
+            int c = (a[aStart + i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0)
+                return c;
+        }
+        return aLength - bLength;
+    }
+
+    static int readVarInt(byte[] bytes, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readInt(InputStream in) throws IOException {
+        byte[] bytes = in.readNBytes(4);
+        if (bytes.length < 4)
+            throw new IOException("truncated symbol database");
+        int[] pos = {0};
+        return readInt(bytes, pos);
+    }
+
+    private static int readInt(byte[] bytes, int[] pos) {
+        int p = pos[0];
+        pos[0] += 4;
+        return ((bytes[p] & 0xFF) << 24) | ((bytes[p + 1] & 0xFF) << 16) | ((bytes[p + 2] & 0xFF) << 8) | (bytes[p + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,632 @@
+import java.util.*;
+
+/**
+ * Scope-aware table of the declarations in a script and every identifier occurrence that refers to them.
+ * Scopes follow the brace structure; function, lambda, catch and for-loop parameters belong to the block
+ * they introduce. Local variables are only visible after their declaring statement, while functions,
+ * classes and class members are visible throughout their scope, so shadowed names resolve to the
+ * innermost declaration in effect at the use site.
+ *
+ * The table is immutable once built; {@link #symbolAt(int)} and {@link Symbol#getReferences()} answer
+ * from precomputed arrays without touching the text again.
+ */
+public final class SymbolTable {
+
+    public enum Kind {
+        VARIABLE,
+        PARAMETER,
+        FUNCTION,
+        CLASS
+    }
+
+    public static final class Symbol {
+        private final String name;
+        private final Kind kind;
+        private final int declarationStart;
+        private final int declarationEnd;
+        private final boolean property;
+        private final List<Integer> references = new ArrayList<>();
+        private int visibleFrom;
+
+        Symbol(String name, Kind kind, int declarationStart, int declarationEnd, boolean property) {
+            this.name = name;
+            this.kind = kind;
+            this.declarationStart = declarationStart;
+            this.declarationEnd = declarationEnd;
+            this.property = property;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public int getDeclarationStart() {
+            return declarationStart;
+        }
+
+        public int getDeclarationEnd() {
+            return declarationEnd;
+        }
+
+        /** Whether this is a class member or constructor property, which may also be used as obj.name. */
+        public boolean isProperty() {
+            return property;
+        }
+
+        /** Start offsets of the identifiers that refer to this symbol, in document order. */
+        public List<Integer> getReferences() {
+            return Collections.unmodifiableList(references);
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + name + " @" + declarationStart;
+        }
+    }
+
+    private static final class Scope {
+        final Scope parent;
+        final boolean classBody;
+        final boolean expression;
+        final int braceDepth;
+        final int parenDepth;
+        final Map<String, List<Symbol>> symbols = new HashMap<>();
+
+        Scope(Scope parent, boolean classBody, boolean expression, int braceDepth, int parenDepth) {
+            this.parent = parent;
+            this.classBody = classBody;
+            this.expression = expression;
+            this.braceDepth = braceDepth;
+            this.parenDepth = parenDepth;
+        }
+
+        void declare(Symbol symbol) {
+            symbols.computeIfAbsent(symbol.name, n -> new ArrayList<>(1)).add(symbol);
+        }
+    }
+
+    private final List<Symbol> symbols;
+    private final Set<String> memberNames;
+    // Declarations and references sorted by start offset
+    private final int[] occurrenceStarts;
+    private final int[] occurrenceEnds;
+    private final Symbol[] occurrenceSymbols;
+
+    private SymbolTable(List<Symbol> symbols, Set<String> memberNames, List<int[]> occurrences, List<Symbol> owners) {
+        this.symbols = Collections.unmodifiableList(symbols);
+        this.memberNames = memberNames;
+        int n = occurrences.size();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingInt(i -> occurrences.get(i)[0]));
+
+        occurrenceStarts = new int[n];
+        occurrenceEnds = new int[n];
+        occurrenceSymbols = new Symbol[n];
+        for (int i = 0; i < n; i++) {
+            occurrenceStarts[i] = occurrences.get(order[i])[0];
+            occurrenceEnds[i] = occurrences.get(order[i])[1];
+            occurrenceSymbols[i] = owners.get(order[i]);
+        }
+    }
+
+    public static SymbolTable build(CharSequence code) {
+        return build(KotlinLexer.tokenize(code), code.length());
+    }
+
+    /** Builds the table from tokens already lexed from a text of the given length. */
+    static SymbolTable build(List<KotlinLexer.Token> tokens, int textLength) {
+        return new Builder(tokens, textLength).build();
+    }
+
+    public List<Symbol> getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Number of declarations and references, each an entry in the offset index.
+     */
+    public int getOccurrenceCount() {
+        return occurrenceStarts.length;
+    }
+
+    /**
+     * Returns the symbol declared or referenced at the given offset, or null. An offset directly
+     * after an identifier also counts, so a caret at the end of a name finds it.
+     */
+    public Symbol symbolAt(int offset) {
+        int low = 0;
+        int high = occurrenceStarts.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (occurrenceStarts[mid] <= offset) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (found >= 0 && offset <= occurrenceEnds[found])
+            return occurrenceSymbols[found];
+        return null;
+    }
+
+    /**
+     * Variables that are never read. Properties also count as used when their name appears after a dot.
+     */
+    public List<Symbol> findUnusedVariables() {
+        List<Symbol> unused = new ArrayList<>();
+        for (Symbol symbol : symbols) {
+            if (symbol.kind != Kind.VARIABLE || symbol.name.equals("_") || !symbol.references.isEmpty())
+                continue;
+            if (symbol.property && memberNames.contains(symbol.name))
+                continue;
+            unused.add(symbol);
+        }
+        return unused;
+    }
+
+    /**
+     * Single pass over the tokens that builds scopes and declarations; references are resolved at the end,
+     * once every scope is complete, so functions can be used before they are declared.
+     */
+    private static final class Builder {
+        private final List<KotlinLexer.Token> tokens;
+        private final int textLength;
+
+        private final List<Symbol> symbols = new ArrayList<>();
+        private final Set<String> memberNames = new HashSet<>();
+        private final List<int[]> occurrences = new ArrayList<>();
+        private final List<Symbol> owners = new ArrayList<>();
+
+        // Unresolved references: token index and the scope they appear in
+        private final List<Integer> referenceTokens = new ArrayList<>();
+        private final List<Scope> referenceScopes = new ArrayList<>();
+
+        // Token index -> symbol it declares, filled by lookahead before the main loop reaches it
+        private final Map<Integer, Symbol> declarationTokens = new HashMap<>();
+        // Local variables whose declaring statement has not ended yet: symbol, brace depth, paren depth
+        private final List<Object[]> awaitingVisibility = new ArrayList<>();
+
+        private Scope scope;
+        private int braceDepth;
+        private int parenDepth;
+
+        // Parameters waiting for the block (or expression body) they belong to
+        private List<Symbol> pendingParameters;
+        private int pendingArmedAfter = -1;
+        private boolean pendingClassBody;
+        private boolean pendingExpressionBody;
+
+        Builder(List<KotlinLexer.Token> tokens, int textLength) {
+            this.tokens = tokens;
+            this.textLength = textLength;
+            this.scope = new Scope(null, false, false, 0, 0);
+        }
+
+        SymbolTable build() {
+            for (int i = 0; i < tokens.size(); i++) {
+                KotlinLexer.Token token = tokens.get(i);
+                closeFinishedStatements(i, token);
+                handle(i, token);
+            }
+            for (Object[] waiting : awaitingVisibility) {
+                ((Symbol) waiting[0]).visibleFrom = textLength;
+            }
+            resolveReferences();
+            return new SymbolTable(symbols, memberNames, occurrences, owners);
+        }
+
+        private void closeFinishedStatements(int i, KotlinLexer.Token token) {
+            boolean statementBreak = token.is(";")
+                    || (token.isNewlineBefore() && !isContinuation(i));
+
+            // Expression scopes (expression bodies, brace-less loop bodies) end with their statement
+            while (scope.expression) {
+                boolean sameLevel = braceDepth == scope.braceDepth && parenDepth == scope.parenDepth;
+                boolean leaving = (token.is("}") && braceDepth == scope.braceDepth)
+                        || ((token.is(")") || token.is("]")) && parenDepth == scope.parenDepth);
+                if ((sameLevel && statementBreak) || leaving)
+                    scope = scope.parent;
+                else
+                    break;
+            }
+
+            Iterator<Object[]> it = awaitingVisibility.iterator();
+            while (it.hasNext()) {
+                Object[] waiting = it.next();
+                int declBrace = (Integer) waiting[1];
+                int declParen = (Integer) waiting[2];
+                boolean ended = (statementBreak && braceDepth == declBrace && parenDepth == declParen)
+                        || (token.is("}") && braceDepth == declBrace)
+                        || ((token.is(")") || token.is("]")) && parenDepth == declParen && braceDepth == declBrace);
+                if (ended) {
+                    ((Symbol) waiting[0]).visibleFrom = token.getStart();
+                    it.remove();
+                }
+            }
+
+            if (pendingParameters != null && i > pendingArmedAfter && pendingArmedAfter >= 0) {
+                boolean continuesHeader = token.is("{") || token.is("=") || token.is(":") || token.is("where");
+                if ((token.isNewlineBefore() && !continuesHeader) || token.is(";") || token.is("}"))
+                    pendingParameters = null;
+            }
+        }
+
+        private void handle(int i, KotlinLexer.Token token) {
+            String text = token.getText();
+
+            if (declarationTokens.containsKey(i)) {
+                Symbol symbol = declarationTokens.get(i);
+                if (symbol.kind == Kind.VARIABLE && !scope.classBody && !symbol.property) {
+                    symbol.visibleFrom = Integer.MAX_VALUE;
+                    awaitingVisibility.add(new Object[]{symbol, braceDepth, parenDepth});
+                }
+                return;
+            }
+
+            if (token.getType() == KotlinLexer.Type.KEYWORD) {
+                switch (text) {
+                    case "val":
+                    case "var":
+                        declareVariables(i + 1, scope.classBody);
+                        break;
+                    case "fun":
+                        declareFunction(i);
+                        break;
+                    case "class":
+                    case "interface":
+                    case "object":
+                        declareClass(i);
+                        break;
+                    case "for":
+                        declareLoopVariables(i);
+                        break;
+                    default:
+                        break;
+                }
+                return;
+            }
+
+            if (token.getType() == KotlinLexer.Type.IDENTIFIER) {
+                if (text.equals("catch")) {
+                    declareCatchParameter(i);
+                } else if (isMemberAccess(i)) {
+                    memberNames.add(text);
+                } else if (!isNamedArgument(i)) {
+                    referenceTokens.add(i);
+                    referenceScopes.add(scope);
+                }
+                return;
+            }
+
+            if (token.getType() != KotlinLexer.Type.OPERATOR)
+                return;
+
+            switch (text) {
+                case "{": {
+                    braceDepth++;
+                    boolean armed = pendingParameters != null && i > pendingArmedAfter;
+                    Scope block = new Scope(scope, armed && pendingClassBody, false, braceDepth, parenDepth);
+                    if (armed) {
+                        for (Symbol parameter : pendingParameters) block.declare(parameter);
+                        pendingParameters = null;
+                    }
+                    scope = block;
+                    declareLambdaParameters(i);
+                    break;
+                }
+                case "}":
+                    while (scope.parent != null && scope.braceDepth >= braceDepth) {
+                        scope = scope.parent;
+                    }
+                    braceDepth = Math.max(0, braceDepth - 1);
+                    break;
+                case "=":
+                    if (pendingParameters != null && i > pendingArmedAfter && pendingExpressionBody) {
+                        openExpressionScope(pendingParameters);
+                        pendingParameters = null;
+                    }
+                    break;
+                case "(":
+                case "[":
+                    parenDepth++;
+                    break;
+                case ")":
+                case "]":
+                    parenDepth = Math.max(0, parenDepth - 1);
+                    // A brace-less for body gets its own scope for the loop variables
+                    if (pendingParameters != null && i == pendingArmedAfter && !pendingClassBody
+                            && !pendingExpressionBody && !nextIs(i, "{")) {
+                        openExpressionScope(pendingParameters);
+                        pendingParameters = null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void openExpressionScope(List<Symbol> parameters) {
+            Scope expression = new Scope(scope, false, true, braceDepth, parenDepth);
+            for (Symbol parameter : parameters) expression.declare(parameter);
+            scope = expression;
+        }
+
+        private void declareVariables(int i, boolean property) {
+            // Constructor properties were already declared with the parameter list
+            if (i >= tokens.size() || declarationTokens.containsKey(i))
+                return;
+            KotlinLexer.Token token = tokens.get(i);
+            if (token.is("(")) {
+                // Destructuring declaration: val (a, b) = ...
+                int close = matching(i);
+                for (int j = i + 1; j < close; j++) {
+                    if (isIdentifier(j) && (tokens.get(j - 1).is("(") || tokens.get(j - 1).is(",")))
+                        declareInScope(j, Kind.VARIABLE, property);
+                }
+                return;
+            }
+            if (token.is("<"))
+                i = skipTypeParameters(i);
+            // Extension properties (val String.size) are named after the last dot
+            int name = -1;
+            for (int j = i; j < tokens.size() && isIdentifier(j); j += 2) {
+                name = j;
+                if (j + 1 >= tokens.size() || !tokens.get(j + 1).is("."))
+                    break;
+            }
+            if (name >= 0)
+                declareInScope(name, Kind.VARIABLE, property);
+        }
+
+        private void declareFunction(int i) {
+            int j = i + 1;
+            if (j < tokens.size() && tokens.get(j).is("<"))
+                j = skipTypeParameters(j);
+            int name = -1;
+            while (j < tokens.size() && !tokens.get(j).is("(")) {
+                if (isIdentifier(j))
+                    name = j;
+                else if (tokens.get(j).is("<"))
+                    j = skipTypeParameters(j) - 1;
+                else if (!tokens.get(j).is(".") && !tokens.get(j).is("?"))
+                    return;
+                j++;
+            }
+            if (j >= tokens.size())
+                return;
+            if (name >= 0)
+                declareInScope(name, Kind.FUNCTION, false);
+            collectParameters(j, false);
+            pendingExpressionBody = true;
+        }
+
+        private void declareClass(int i) {
+            int j = i + 1;
+            if (!isIdentifier(j))
+                return; // companion object, object expressions
+            declareInScope(j, Kind.CLASS, false);
+            j++;
+            if (j < tokens.size() && tokens.get(j).is("<"))
+                j = skipTypeParameters(j);
+            if (j < tokens.size() && isIdentifier(j) && tokens.get(j).is("constructor"))
+                j++;
+            if (j < tokens.size() && tokens.get(j).is("(")) {
+                collectParameters(j, true);
+            } else {
+                pendingParameters = new ArrayList<>();
+                pendingArmedAfter = i;
+            }
+            pendingClassBody = true;
+            pendingExpressionBody = false;
+        }
+
+        private void declareLoopVariables(int i) {
+            int open = i + 1;
+            if (open >= tokens.size() || !tokens.get(open).is("("))
+                return;
+            int close = matching(open);
+            List<Symbol> variables = new ArrayList<>();
+            for (int j = open + 1; j < close && !tokens.get(j).is("in"); j++) {
+                KotlinLexer.Token previous = tokens.get(j - 1);
+                if (isIdentifier(j) && (previous.is("(") || previous.is(",")))
+                    variables.add(declare(j, Kind.PARAMETER, false));
+            }
+            setPending(variables, close, false, false);
+        }
+
+        private void declareCatchParameter(int i) {
+            int open = i + 1;
+            if (open >= tokens.size() || !tokens.get(open).is("("))
+                return;
+            int close = matching(open);
+            List<Symbol> parameters = new ArrayList<>();
+            if (isIdentifier(open + 1) && open + 2 < close && tokens.get(open + 2).is(":"))
+                parameters.add(declare(open + 1, Kind.PARAMETER, false));
+            setPending(parameters, close, false, false);
+        }
+
+        /**
+         * Records the parameters of a function or primary constructor. The main loop still walks the
+         * parameter list, so references in types and default values are resolved as usual.
+         */
+        private void collectParameters(int open, boolean constructor) {
+            int close = matching(open);
+            List<Symbol> parameters = new ArrayList<>();
+            int depth = 0;
+            boolean atStart = true;
+            boolean property = false;
+            for (int j = open + 1; j < close; j++) {
+                KotlinLexer.Token token = tokens.get(j);
+                if (token.is("(") || token.is("<") || token.is("[")) depth++;
+                else if (token.is(")") || token.is(">") || token.is("]")) depth--;
+                else if (depth == 0 && token.is(",")) {
+                    atStart = true;
+                    property = false;
+                } else if (depth == 0 && atStart) {
+                    if (token.is("val") || token.is("var")) {
+                        property = constructor;
+                    } else if (isIdentifier(j) && j + 1 < close && tokens.get(j + 1).is(":")) {
+                        parameters.add(declare(j, property ? Kind.VARIABLE : Kind.PARAMETER, property));
+                        atStart = false;
+                    }
+                }
+            }
+            setPending(parameters, close, constructor, !constructor);
+        }
+
+        /**
+         * Lambda parameters: { a, b -> ... } or { (key, value): Pair<..> -> ... }
+         */
+        private void declareLambdaParameters(int open) {
+            int arrow = -1;
+            for (int j = open + 1; j < tokens.size() && j < open + 64; j++) {
+                KotlinLexer.Token token = tokens.get(j);
+                if (token.is("->")) {
+                    arrow = j;
+                    break;
+                }
+                boolean allowed = token.getType() == KotlinLexer.Type.IDENTIFIER
+                        || token.is(",") || token.is(":") || token.is("(") || token.is(")")
+                        || token.is("<") || token.is(">") || token.is(".") || token.is("?");
+                if (!allowed)
+                    return;
+            }
+            if (arrow < 0)
+                return;
+            for (int j = open + 1; j < arrow; j++) {
+                KotlinLexer.Token previous = tokens.get(j - 1);
+                KotlinLexer.Token next = tokens.get(j + 1);
+                if (isIdentifier(j) && (previous.is("{") || previous.is(",") || previous.is("("))
+                        && (next.is(",") || next.is(":") || next.is(")") || next.is("->"))) {
+                    scope.declare(declare(j, Kind.PARAMETER, false));
+                }
+            }
+        }
+
+        private void setPending(List<Symbol> parameters, int armedAfter, boolean classBody, boolean expressionBody) {
+            pendingParameters = parameters;
+            pendingArmedAfter = armedAfter;
+            pendingClassBody = classBody;
+            pendingExpressionBody = expressionBody;
+        }
+
+        /**
+         * Creates a symbol without adding it to a scope; parameters join the scope they introduce once it opens.
+         */
+        private Symbol declare(int tokenIndex, Kind kind, boolean property) {
+            KotlinLexer.Token token = tokens.get(tokenIndex);
+            Symbol symbol = new Symbol(token.getText(), kind, token.getStart(), token.getEnd(), property);
+            symbols.add(symbol);
+            declarationTokens.put(tokenIndex, symbol);
+            occurrences.add(new int[]{token.getStart(), token.getEnd()});
+            owners.add(symbol);
+            return symbol;
+        }
+
+        private Symbol declareInScope(int tokenIndex, Kind kind, boolean property) {
+            Symbol symbol = declare(tokenIndex, kind, property);
+            scope.declare(symbol);
+            return symbol;
+        }
+
+        private void resolveReferences() {
+            for (int r = 0; r < referenceTokens.size(); r++) {
+                KotlinLexer.Token token = tokens.get(referenceTokens.get(r));
+                Symbol symbol = lookup(referenceScopes.get(r), token.getText(), token.getStart());
+                if (symbol == null)
+                    continue;
+                symbol.references.add(token.getStart());
+                occurrences.add(new int[]{token.getStart(), token.getEnd()});
+                owners.add(symbol);
+            }
+        }
+
+        private Symbol lookup(Scope from, String name, int offset) {
+            for (Scope s = from; s != null; s = s.parent) {
+                List<Symbol> candidates = s.symbols.get(name);
+                if (candidates == null)
+                    continue;
+                Symbol best = null;
+                for (Symbol candidate : candidates) {
+                    if (candidate.visibleFrom <= offset && (best == null || candidate.visibleFrom >= best.visibleFrom))
+                        best = candidate;
+                }
+                if (best != null)
+                    return best;
+            }
+            return null;
+        }
+
+        private boolean isMemberAccess(int i) {
+            if (i == 0)
+                return false;
+            KotlinLexer.Token previous = tokens.get(i - 1);
+            if (previous.is(".") || previous.is("?."))
+                return true;
+            // Type::member, but a bare ::function is a reference
+            return previous.is("::") && i >= 2 && previous.getStart() == tokens.get(i - 2).getEnd();
+        }
+
+        private boolean isNamedArgument(int i) {
+            if (parenDepth == 0 || i == 0 || i + 1 >= tokens.size())
+                return false;
+            KotlinLexer.Token previous = tokens.get(i - 1);
+            return (previous.is("(") || previous.is(",")) && tokens.get(i + 1).is("=");
+        }
+
+        /**
+         * Whether the token at index i continues the previous line's statement instead of starting a new one.
+         */
+        private boolean isContinuation(int i) {
+            if (i == 0)
+                return false;
+            KotlinLexer.Token previous = tokens.get(i - 1);
+            KotlinLexer.Token token = tokens.get(i);
+            if (previous.getType() == KotlinLexer.Type.OPERATOR && !previous.is(")") && !previous.is("]")
+                    && !previous.is("}") && !previous.is("!!") && !previous.is("++") && !previous.is("--"))
+                return true;
+            switch (token.getText()) {
+                case ".": case "?.": case "?:": case "&&": case "||": case ":": case "->": case "=":
+                case "==": case "!=": case "as": case "is": case "else": case "catch": case "finally":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private boolean nextIs(int i, String text) {
+            return i + 1 < tokens.size() && tokens.get(i + 1).is(text);
+        }
+
+        private boolean isIdentifier(int i) {
+            return i >= 0 && i < tokens.size() && tokens.get(i).getType() == KotlinLexer.Type.IDENTIFIER;
+        }
+
+        private int skipTypeParameters(int open) {
+            int depth = 0;
+            for (int j = open; j < tokens.size(); j++) {
+                if (tokens.get(j).is("<")) depth++;
+                else if (tokens.get(j).is(">") && --depth == 0) return j + 1;
+            }
+            return tokens.size();
+        }
+
+        private int matching(int open) {
+            String openText = tokens.get(open).getText();
+            String closeText = openText.equals("(") ? ")" : openText.equals("[") ? "]" : "}";
+            int depth = 0;
+            for (int j = open; j < tokens.size(); j++) {
+                if (tokens.get(j).is(openText)) depth++;
+                else if (tokens.get(j).is(closeText) && --depth == 0) return j;
+            }
+            return tokens.size();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * An edited tree must always equal the tree built from scratch on the same text.
+ */
+class BlockStructureTest {
+
+    // Brackets, string and template delimiters, comments and declaration headers, in pieces that
+    // can end up anywhere, including inside each other
+    private static final String[] FRAGMENTS = {
+            "(", ")", "{", "}", "[", "]", "\"", "\"${", "${", "$x", "}\"", "\"\"\"", "/*", "*/", "//", "\n",
+            " ", "x", "fun f", "class C", "object ", "val a = ", "= 1", "'c'", "'", "\\", "`id`", "if (a) ",
+            "foo(1)", "interface I", "fun g() {\n}\n", "\"s\"", "}}", "))"
+    };
+
+    @Test
+    void editInsideBracketsThatCloseInATemplate() {
+        // The ')' sits in the template of a string that runs to the end, until the edit removes the string
+        String text = "( \"${va x ) } */foo()";
+        BlockStructure structure = BlockStructure.build(text);
+        String edited = text.substring(0, 2) + text.substring(7);
+        structure.applyEdit(edited, 2, 5, 0);
+
+        assertEquals(describe(BlockStructure.build(edited)), describe(structure));
+        assertEquals(1, structure.findUnbalanced().size());
+    }
+
+    @Test
+    void randomEditsMatchFullBuild() {
+        for (int seed = 0; seed < 3000; seed++) {
+            Random random = new Random(seed);
+            String text = fragments(random, 20 + random.nextInt(60));
+            BlockStructure structure = BlockStructure.build(text);
+            for (int step = 0; step < 60; step++) {
+                int offset = random.nextInt(text.length() + 1);
+                int removed = random.nextInt(4) == 0 ? Math.min(text.length() - offset, random.nextInt(8)) : 0;
+                String inserted = random.nextInt(3) == 0 ? "" : fragments(random, 1 + random.nextInt(3));
+                if (removed == 0 && inserted.isEmpty())
+                    continue;
+                String before = text;
+                text = text.substring(0, offset) + inserted + text.substring(offset + removed);
+                structure.applyEdit(text, offset, removed, inserted.length());
+
+                assertEquals(describe(BlockStructure.build(text)), describe(structure),
+                        "seed " + seed + ", step " + step + ": replacing " + removed + " chars at " + offset
+                                + " with \"" + inserted + "\" in \"" + before + "\"");
+            }
+        }
+    }
+
+    private static String fragments(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        }
+        return text.toString();
+    }
+
+    // Offsets, closedness and declaration of every block, in tree order
+    private static String describe(BlockStructure structure) {
+        StringBuilder out = new StringBuilder();
+        describe(structure.getRoot(), out);
+        return out.toString();
+    }
+
+    private static void describe(BlockStructure.Block block, StringBuilder out) {
+        for (BlockStructure.Block child : block.getChildren()) {
+            out.append(child.getOpen()).append(child.getOpenOffset()).append(':').append(child.getCloseOffset());
+            if (child.getDeclarationKind() != null)
+                out.append(' ').append(child.getDeclarationKind()).append(' ').append(child.getDeclarationName())
+                        .append('@').append(child.getHeaderOffset());
+            if (!child.getChildren().isEmpty()) {
+                out.append(" [");
+                describe(child, out);
+                out.append(']');
+            }
+            out.append(' ');
+        }
+    }
+}
@@ -0,0 +1,499 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Language server over stdio, so other editors get the IDE's analysis: the same inspections, debounce
+ * and profile as the Swing editor. Documents are synced incrementally and diagnostics are pushed once
+ * the text has been quiet for the debounce time. Definition, references and document symbols run
+ * on worker threads and can be cancelled with $/cancelRequest.
+ *
+ * Usage: java -cp core.jar:lsp.jar LanguageServer
+ *
+ * initializationOptions may set "debounceMs" and "inspectionProfile" (a properties file as written by
+ * the IDE; ~/.kotlin-ide/inspections.properties by default). With a rootUri, calls into other
+ * .kts/.kt files of the workspace resolve through a {@link ProjectIndex}.
+ */
+public class LanguageServer {
+    static final int PARSE_ERROR = -32700;
+    static final int INVALID_REQUEST = -32600;
+    static final int METHOD_NOT_FOUND = -32601;
+    static final int INVALID_PARAMS = -32602;
+    static final int INTERNAL_ERROR = -32603;
+    static final int SERVER_NOT_INITIALIZED = -32002;
+    static final int REQUEST_CANCELLED = -32800;
+
+    private static final int SYNC_INCREMENTAL = 2;
+    private static final int SEVERITY_ERROR = 1;
+    private static final int SEVERITY_WARNING = 2;
+    private static final String SOURCE = "kotlin-ide";
+
+    private final LspConnection connection;
+    private final PrintStream log;
+    private final Map<String, OpenDocument> documents = new ConcurrentHashMap<>();
+    private final Map<Object, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService analysisExecutor = Executors.newSingleThreadScheduledExecutor(
+            daemonThreads("lsp-analysis"));
+    private final ExecutorService requestExecutor = Executors.newFixedThreadPool(2, daemonThreads("lsp-request"));
+
+    private volatile InspectionProfile profile = InspectionProfile.defaults();
+    private volatile ProjectIndex projectIndex;
+    private volatile int debounceMillis = KotlinAnalyzer.ANALYSIS_DELAY_MS;
+    private boolean initialized;
+    private boolean shutdownRequested;
+
+    /**
+     * A document the client has open. Each has its own analyzer, so the project lookup can leave out
+     * the document's own file; the analyzers share the analysis thread.
+     */
+    private static final class OpenDocument {
+        final String uri;
+        final Path path;
+        final LspDocument document;
+        final KotlinAnalyzer analyzer = new KotlinAnalyzer();
+        ScheduledFuture<?> pendingAnalysis;
+        // Symbols of the latest analyzed version, for requests that arrive before the next one
+        volatile SymbolTable symbolTable;
+        volatile int symbolTableVersion = -1;
+
+        OpenDocument(String uri, Path path, LspDocument document) {
+            this.uri = uri;
+            this.path = path;
+            this.document = document;
+        }
+    }
+
+    private static final class PendingRequest {
+        volatile Future<?> future;
+    }
+
+    private interface RequestHandler {
+        Object handle(Map<String, Object> params) throws Exception;
+    }
+
+    public LanguageServer(LspConnection connection, PrintStream log) {
+        this.connection = connection;
+        this.log = log;
+    }
+
+    public static void main(String[] args) {
+        // stdout carries the protocol; anything else printed there would corrupt it
+        PrintStream protocolOut = System.out;
+        System.setOut(System.err);
+        LanguageServer server = new LanguageServer(new LspConnection(System.in, protocolOut), System.err);
+        System.exit(server.run());
+    }
+
+    /**
+     * Serves until the client sends exit or closes the stream. Returns the process exit code: 0 after
+     * an orderly shutdown, 1 otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    public int run() {
+        try {
+            while (true) {
+                Map<String, Object> message;
+                try {
+                    message = connection.read();
+                } catch (IllegalArgumentException e) {
+                    connection.respondError(null, PARSE_ERROR, e.getMessage());
+                    continue;
+                }
+                if (message == null)
+                    return 1;
+
+                String method = (String) message.get("method");
+                Object id = message.get("id");
+                Object params = message.get("params");
+                Map<String, Object> paramMap = params instanceof Map ? (Map<String, Object>) params : new HashMap<>();
+                if (method == null) {
+                    // A response to a server request; this server sends none
+                    continue;
+                }
+                if (method.equals("exit"))
+                    return shutdownRequested ? 0 : 1;
+                if (id != null)
+                    handleRequest(id, method, paramMap);
+                else
+                    handleNotification(method, paramMap);
+            }
+        } catch (IOException e) {
+            log.println("Language server connection failed: " + e.getMessage());
+            return 1;
+        } finally {
+            analysisExecutor.shutdownNow();
+            requestExecutor.shutdownNow();
+            ProjectIndex index = projectIndex;
+            if (index != null)
+                index.close();
+        }
+    }
+
+    private void handleRequest(Object id, String method, Map<String, Object> params) throws IOException {
+        if (method.equals("initialize")) {
+            connection.respond(id, initialize(params));
+            initialized = true;
+            return;
+        }
+        if (!initialized) {
+            connection.respondError(id, SERVER_NOT_INITIALIZED, "initialize has not been called");
+            return;
+        }
+        if (shutdownRequested) {
+            connection.respondError(id, INVALID_REQUEST, "Server is shutting down");
+            return;
+        }
+        switch (method) {
+            case "shutdown":
+                shutdownRequested = true;
+                connection.respond(id, null);
+                break;
+            case "textDocument/definition":
+                submit(id, this::definition, params);
+                break;
+            case "textDocument/references":
+                submit(id, this::references, params);
+                break;
+            case "textDocument/documentSymbol":
+                submit(id, this::documentSymbols, params);
+                break;
+            default:
+                connection.respondError(id, METHOD_NOT_FOUND, "Unsupported method " + method);
+        }
+    }
+
+    /**
+     * Runs a request on a worker. Whoever removes it from the pending map answers it: the worker with
+     * the result, or $/cancelRequest with a cancellation error. So each request gets exactly one answer.
+     */
+    private void submit(Object id, RequestHandler handler, Map<String, Object> params) {
+        PendingRequest pending = new PendingRequest();
+        pendingRequests.put(id, pending);
+        pending.future = requestExecutor.submit(() -> {
+            Object result;
+            try {
+                result = handler.handle(params);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                if (pendingRequests.remove(id, pending))
+                    sendError(id, e instanceof IllegalArgumentException || e instanceof ClassCastException
+                            || e instanceof NullPointerException ? INVALID_PARAMS : INTERNAL_ERROR, e.toString());
+                return;
+            }
+            if (pendingRequests.remove(id, pending)) {
+                try {
+                    connection.respond(id, result);
+                } catch (IOException e) {
+                    log.println("Cannot send response: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void sendError(Object id, int code, String message) {
+        try {
+            connection.respondError(id, code, message);
+        } catch (IOException e) {
+            log.println("Cannot send response: " + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handleNotification(String method, Map<String, Object> params) throws IOException {
+        if (!initialized)
+            return;
+        switch (method) {
+            case "textDocument/didOpen":
+                didOpen((Map<String, Object>) params.get("textDocument"));
+                break;
+            case "textDocument/didChange":
+                didChange(params);
+                break;
+            case "textDocument/didClose":
+                didClose((String) ((Map<String, Object>) params.get("textDocument")).get("uri"));
+                break;
+            case "$/cancelRequest":
+                cancel(params.get("id"));
+                break;
+            default:
+                // initialized, didSave, $/setTrace and the like need nothing
+        }
+    }
+
+    private Map<String, Object> initialize(Map<String, Object> params) {
+        Object options = params.get("initializationOptions");
+        if (options instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) options;
+            if (map.get("debounceMs") instanceof Number)
+                debounceMillis = Math.max(0, ((Number) map.get("debounceMs")).intValue());
+            if (map.get("inspectionProfile") instanceof String)
+                profile = loadProfile(Paths.get((String) map.get("inspectionProfile")));
+            else
+                profile = loadProfile(InspectionProfile.DEFAULT_FILE);
+        } else {
+            profile = loadProfile(InspectionProfile.DEFAULT_FILE);
+        }
+        Path root = toPath(params.get("rootUri") instanceof String ? (String) params.get("rootUri") : null);
+        if (root != null && Files.isDirectory(root))
+            openProject(root);
+
+        Map<String, Object> sync = new LinkedHashMap<>();
+        sync.put("openClose", true);
+        sync.put("change", SYNC_INCREMENTAL);
+        Map<String, Object> capabilities = new LinkedHashMap<>();
+        capabilities.put("textDocumentSync", sync);
+        capabilities.put("definitionProvider", true);
+        capabilities.put("referencesProvider", true);
+        capabilities.put("documentSymbolProvider", true);
+        Map<String, Object> serverInfo = new LinkedHashMap<>();
+        serverInfo.put("name", SOURCE);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("capabilities", capabilities);
+        result.put("serverInfo", serverInfo);
+        return result;
+    }
+
+    private InspectionProfile loadProfile(Path file) {
+        try {
+            return InspectionProfile.load(file);
+        } catch (IOException e) {
+            log.println("Cannot load inspection profile, using defaults: " + e.getMessage());
+            return InspectionProfile.defaults();
+        }
+    }
+
+    private void openProject(Path root) {
+        ProjectIndex index = new ProjectIndex(root, new ProjectIndex.IndexListener() {
+            @Override
+            public void onIndexed(int fileCount, int symbolCount, int parsedCount, long elapsedMillis) {
+                log.printf("Indexed %d files (%d parsed) in %d ms%n", fileCount, parsedCount, elapsedMillis);
+                reanalyzeAll();
+            }
+
+            @Override
+            public void onFileChanged(Path file) {
+                reanalyzeAll();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                log.println("Project index error: " + e.getMessage());
+            }
+        });
+        projectIndex = index;
+        index.start();
+    }
+
+    private void didOpen(Map<String, Object> textDocument) {
+        String uri = (String) textDocument.get("uri");
+        int version = ((Number) textDocument.getOrDefault("version", 0)).intValue();
+        OpenDocument open = new OpenDocument(uri, toPath(uri),
+                new LspDocument((String) textDocument.get("text"), version));
+        open.analyzer.setProfile(profile);
+        open.analyzer.setProjectContext(projectIndex, open.path);
+        documents.put(uri, open);
+        scheduleAnalysis(open, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void didChange(Map<String, Object> params) {
+        Map<String, Object> textDocument = (Map<String, Object>) params.get("textDocument");
+        OpenDocument open = documents.get((String) textDocument.get("uri"));
+        if (open == null)
+            return;
+        for (Object change : (List<Object>) params.get("contentChanges")) {
+            open.document.applyChange((Map<String, Object>) change);
+        }
+        if (textDocument.get("version") instanceof Number)
+            open.document.setVersion(((Number) textDocument.get("version")).intValue());
+        scheduleAnalysis(open, debounceMillis);
+    }
+
+    private void didClose(String uri) throws IOException {
+        OpenDocument open = documents.remove(uri);
+        if (open == null)
+            return;
+        synchronized (open) {
+            if (open.pendingAnalysis != null)
+                open.pendingAnalysis.cancel(false);
+        }
+        publish(uri, null, Collections.emptyList());
+    }
+
+    private void cancel(Object id) {
+        PendingRequest pending = id != null ? pendingRequests.remove(id) : null;
+        if (pending == null)
+            return;
+        Future<?> future = pending.future;
+        if (future != null)
+            future.cancel(true);
+        sendError(id, REQUEST_CANCELLED, "Request cancelled");
+    }
+
+    private void reanalyzeAll() {
+        for (OpenDocument open : documents.values()) {
+            open.analyzer.setProjectContext(projectIndex, open.path);
+            scheduleAnalysis(open, 0);
+        }
+    }
+
+    // An edit before the delay is up replaces the pending analysis, as in the editor
+    private void scheduleAnalysis(OpenDocument open, long delayMillis) {
+        synchronized (open) {
+            if (open.pendingAnalysis != null)
+                open.pendingAnalysis.cancel(false);
+            open.pendingAnalysis = analysisExecutor.schedule(() -> analyze(open), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void analyze(OpenDocument open) {
+        try {
+            LspDocument.Snapshot snapshot = open.document.snapshot();
+            AnalysisResult result = open.analyzer.analyze(snapshot.getText());
+            if (result.getSymbolTable() != null) {
+                open.symbolTable = result.getSymbolTable();
+                open.symbolTableVersion = snapshot.getVersion();
+            }
+            // A newer edit has its own analysis coming; these offsets would not match the client's text
+            if (documents.get(open.uri) != open || open.document.getVersion() != snapshot.getVersion())
+                return;
+            List<Object> diagnostics = new ArrayList<>();
+            for (Diagnostic diag : result.getDiagnostics()) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("range", snapshot.range(diag.getStartOffset(), diag.getEndOffset()));
+                item.put("severity", diag.getSeverity() == Diagnostic.Severity.ERROR ? SEVERITY_ERROR : SEVERITY_WARNING);
+                if (diag.getInspectionId() != null)
+                    item.put("code", diag.getInspectionId());
+                item.put("source", SOURCE);
+                item.put("message", diag.getMessage());
+                diagnostics.add(item);
+            }
+            publish(open.uri, snapshot.getVersion(), diagnostics);
+        } catch (Exception e) {
+            log.println("Analysis of " + open.uri + " failed: " + e);
+            e.printStackTrace(log);
+        }
+    }
+
+    private void publish(String uri, Integer version, List<Object> diagnostics) throws IOException {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("uri", uri);
+        if (version != null)
+            params.put("version", version);
+        params.put("diagnostics", diagnostics);
+        connection.notify("textDocument/publishDiagnostics", params);
+    }
+
+    // The symbol at the request's position, resolved against the current text
+    @SuppressWarnings("unchecked")
+    private SymbolTable.Symbol symbolAt(OpenDocument open, LspDocument.Snapshot snapshot, Map<String, Object> params) {
+        int offset = snapshot.offsetAt((Map<String, Object>) params.get("position"));
+        return symbols(open, snapshot).symbolAt(offset);
+    }
+
+    // The analyzer's table when it is current; otherwise one built for this text, as the editor does
+    private SymbolTable symbols(OpenDocument open, LspDocument.Snapshot snapshot) {
+        SymbolTable table = open.symbolTable;
+        if (table != null && open.symbolTableVersion == snapshot.getVersion())
+            return table;
+        return SymbolTable.build(snapshot.getText());
+    }
+
+    @SuppressWarnings("unchecked")
+    private OpenDocument document(Map<String, Object> params) {
+        String uri = (String) ((Map<String, Object>) params.get("textDocument")).get("uri");
+        OpenDocument open = documents.get(uri);
+        if (open == null)
+            throw new IllegalArgumentException("Document is not open: " + uri);
+        return open;
+    }
+
+    private Object definition(Map<String, Object> params) {
+        OpenDocument open = document(params);
+        LspDocument.Snapshot snapshot = open.document.snapshot();
+        SymbolTable.Symbol symbol = symbolAt(open, snapshot, params);
+        if (symbol == null)
+            return null;
+        return location(open.uri, snapshot.range(symbol.getDeclarationStart(), symbol.getDeclarationEnd()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object references(Map<String, Object> params) throws InterruptedException {
+        OpenDocument open = document(params);
+        LspDocument.Snapshot snapshot = open.document.snapshot();
+        SymbolTable.Symbol symbol = symbolAt(open, snapshot, params);
+        List<Object> locations = new ArrayList<>();
+        if (symbol == null)
+            return locations;
+        Map<String, Object> context = (Map<String, Object>) params.get("context");
+        if (context != null && Boolean.TRUE.equals(context.get("includeDeclaration")))
+            locations.add(location(open.uri, snapshot.range(symbol.getDeclarationStart(), symbol.getDeclarationEnd())));
+        int length = symbol.getName().length();
+        for (int offset : symbol.getReferences()) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            locations.add(location(open.uri, snapshot.range(offset, offset + length)));
+        }
+        return locations;
+    }
+
+    private Object documentSymbols(Map<String, Object> params) throws InterruptedException {
+        OpenDocument open = document(params);
+        LspDocument.Snapshot snapshot = open.document.snapshot();
+        List<Object> result = new ArrayList<>();
+        for (SymbolTable.Symbol symbol : symbols(open, snapshot).getSymbols()) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            if (symbol.getKind() == SymbolTable.Kind.PARAMETER)
+                continue;
+            Map<String, Object> range = snapshot.range(symbol.getDeclarationStart(), symbol.getDeclarationEnd());
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("name", symbol.getName());
+            item.put("kind", symbolKind(symbol));
+            item.put("range", range);
+            item.put("selectionRange", range);
+            result.add(item);
+        }
+        return result;
+    }
+
+    // SymbolKind values from the protocol
+    private static int symbolKind(SymbolTable.Symbol symbol) {
+        switch (symbol.getKind()) {
+            case FUNCTION: return 12;
+            case CLASS:    return 5;
+            default:       return symbol.isProperty() ? 7 : 13;
+        }
+    }
+
+    private static Map<String, Object> location(String uri, Map<String, Object> range) {
+        Map<String, Object> location = new LinkedHashMap<>();
+        location.put("uri", uri);
+        location.put("range", range);
+        return location;
+    }
+
+    private static Path toPath(String uri) {
+        if (uri == null || !uri.startsWith("file:"))
+            return null;
+        try {
+            return Paths.get(new URI(uri)).toAbsolutePath().normalize();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
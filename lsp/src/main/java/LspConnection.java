@@ -0,0 +1,105 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The base protocol of the Language Server Protocol: JSON-RPC messages, each preceded by a
+ * Content-Length header and a blank line. Reads happen on one thread; writes may come from any.
+ */
+public class LspConnection {
+    private final InputStream in;
+    private final OutputStream out;
+
+    public LspConnection(InputStream in, OutputStream out) {
+        this.in = new BufferedInputStream(in);
+        this.out = out;
+    }
+
+    /**
+     * The next message, or null once the client has closed the stream.
+     *
+     * @throws IllegalArgumentException if the content is not JSON; the stream stays usable
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> read() throws IOException {
+        int length = -1;
+        while (true) {
+            String header = readHeaderLine();
+            if (header == null)
+                return null;
+            if (header.isEmpty())
+                break;
+            int colon = header.indexOf(':');
+            if (colon > 0 && header.substring(0, colon).trim().toLowerCase(Locale.ROOT).equals("content-length"))
+                length = Integer.parseInt(header.substring(colon + 1).trim());
+        }
+        if (length < 0)
+            throw new IOException("Message without Content-Length");
+
+        byte[] content = in.readNBytes(length);
+        if (content.length < length)
+            throw new EOFException("Stream ended inside a message");
+        Object message = Json.parse(new String(content, StandardCharsets.UTF_8));
+        if (!(message instanceof Map))
+            throw new IllegalArgumentException("Message is not a JSON object");
+        return (Map<String, Object>) message;
+    }
+
+    // Header lines end with \r\n; null at the end of the stream before any header byte
+    private String readHeaderLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int end = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, end, StandardCharsets.US_ASCII);
+            }
+            line.write(b);
+        }
+        if (line.size() > 0)
+            throw new EOFException("Stream ended inside a header");
+        return null;
+    }
+
+    public synchronized void send(Map<String, Object> message) throws IOException {
+        byte[] content = Json.write(message).getBytes(StandardCharsets.UTF_8);
+        out.write(("Content-Length: " + content.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(content);
+        out.flush();
+    }
+
+    public void notify(String method, Object params) throws IOException {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("jsonrpc", "2.0");
+        message.put("method", method);
+        message.put("params", params);
+        send(message);
+    }
+
+    public void respond(Object id, Object result) throws IOException {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("jsonrpc", "2.0");
+        message.put("id", id);
+        message.put("result", result);
+        send(message);
+    }
+
+    public void respondError(Object id, int code, String text) throws IOException {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", code);
+        error.put("message", text);
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("jsonrpc", "2.0");
+        message.put("id", id);
+        message.put("error", error);
+        send(message);
+    }
+}
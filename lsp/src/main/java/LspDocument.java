@@ -0,0 +1,125 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The text of a document open in the client, kept in sync by applying the client's edits. Positions
+ * are LSP positions: zero-based line and UTF-16 offset in the line, which is a Java char index.
+ * Thread-safe; analysis and requests take {@link #snapshot}s.
+ */
+public class LspDocument {
+    private final StringBuilder text;
+    private int version;
+    private int[] lineStarts;
+
+    /**
+     * The text at one version, with its line index.
+     */
+    public static final class Snapshot {
+        final String text;
+        final int version;
+        private final int[] lineStarts;
+
+        Snapshot(String text, int version, int[] lineStarts) {
+            this.text = text;
+            this.version = version;
+            this.lineStarts = lineStarts;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public int offsetAt(Map<String, Object> position) {
+            return LspDocument.offsetAt(lineStarts, text.length(), position);
+        }
+
+        public Map<String, Object> positionAt(int offset) {
+            int index = Arrays.binarySearch(lineStarts, offset);
+            int line = index >= 0 ? index : -index - 2;
+            Map<String, Object> position = new LinkedHashMap<>();
+            position.put("line", line);
+            position.put("character", offset - lineStarts[line]);
+            return position;
+        }
+
+        public Map<String, Object> range(int startOffset, int endOffset) {
+            Map<String, Object> range = new LinkedHashMap<>();
+            range.put("start", positionAt(Math.max(0, Math.min(startOffset, text.length()))));
+            range.put("end", positionAt(Math.max(0, Math.min(endOffset, text.length()))));
+            return range;
+        }
+    }
+
+    public LspDocument(String text, int version) {
+        this.text = new StringBuilder(text);
+        this.version = version;
+    }
+
+    /**
+     * Applies one entry of a didChange's contentChanges: a replaced range, or the whole text when
+     * there is no range.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void applyChange(Map<String, Object> change) {
+        String replacement = (String) change.get("text");
+        Map<String, Object> range = (Map<String, Object>) change.get("range");
+        if (range == null) {
+            text.setLength(0);
+            text.append(replacement);
+        } else {
+            int[] starts = lineStarts();
+            int start = offsetAt(starts, text.length(), (Map<String, Object>) range.get("start"));
+            int end = offsetAt(starts, text.length(), (Map<String, Object>) range.get("end"));
+            text.replace(start, Math.max(start, end), replacement);
+        }
+        lineStarts = null;
+    }
+
+    public synchronized void setVersion(int version) {
+        this.version = version;
+    }
+
+    public synchronized int getVersion() {
+        return version;
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(text.toString(), version, lineStarts());
+    }
+
+    // Rebuilt on the first position lookup after an edit
+    private int[] lineStarts() {
+        if (lineStarts == null) {
+            int count = 1;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n')
+                    count++;
+            }
+            int[] starts = new int[count];
+            int line = 1;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n')
+                    starts[line++] = i + 1;
+            }
+            lineStarts = starts;
+        }
+        return lineStarts;
+    }
+
+    // Positions past the end of a line or of the document are clamped, as the protocol asks
+    private static int offsetAt(int[] lineStarts, int length, Map<String, Object> position) {
+        int line = ((Number) position.get("line")).intValue();
+        int character = ((Number) position.get("character")).intValue();
+        if (line < 0)
+            return 0;
+        if (line >= lineStarts.length)
+            return length;
+        int lineEnd = line + 1 < lineStarts.length ? lineStarts[line + 1] - 1 : length;
+        return Math.min(lineStarts[line] + Math.max(0, character), lineEnd);
+    }
+}
@@ -0,0 +1,377 @@
+import java.io.*;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Build-time tool that produces the {@link StdlibSymbols} resource from a kotlin-stdlib jar.
+ *
+ * Top-level Kotlin functions compile to static methods of file facade classes, so the methods of
+ * every class in the selected packages cover top-level and extension functions as well as members.
+ * Private methods are included on purpose: inline-only functions such as println, let and require
+ * are compiled as private methods. Methods of the JDK types Kotlin maps its built-ins to are added too.
+ *
+ * JVM names are not always the Kotlin names: sumOf compiles to sumOfInt, sumOfLong and so on, and
+ * intrinsics such as arrayOf and enumValues have no method at all. So the Kotlin names are also read
+ * from the metadata the compiler writes: the @kotlin.Metadata protobuf of every class, and the
+ * .kotlin_builtins files that describe the built-in declarations.
+ *
+ * Usage: java -cp core/target/classes:tools/target/classes StdlibSymbolsGenerator
+ *        path/to/kotlin-stdlib.jar core/src/main/resources/stdlib-symbols.bin
+ */
+public class StdlibSymbolsGenerator {
+    private static final Set<String> PACKAGES = new HashSet<>(Arrays.asList(
+            "kotlin", "kotlin.collections", "kotlin.comparisons", "kotlin.io", "kotlin.text",
+            "kotlin.ranges", "kotlin.sequences", "kotlin.math", "kotlin.random", "kotlin.system",
+            "kotlin.concurrent", "kotlin.time", "kotlin.properties", "kotlin.reflect"
+    ));
+
+    // Kotlin built-ins such as String, List and Map are JDK classes at runtime
+    private static final List<Class<?>> MAPPED_TYPES = Arrays.asList(
+            Object.class, String.class, CharSequence.class, StringBuilder.class, Comparable.class,
+            Number.class, Integer.class, Long.class, Double.class, Float.class, Character.class,
+            Iterable.class, Iterator.class, ListIterator.class, Collection.class, List.class,
+            Set.class, Map.class, Map.Entry.class, Throwable.class
+    );
+
+    // Skips mangled names such as "constructor-impl" and synthetic "access$..." accessors
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: StdlibSymbolsGenerator <kotlin-stdlib.jar> <output.bin>");
+            System.exit(2);
+        }
+        Path jar = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+
+        SortedSet<String> names = new TreeSet<>(StdlibSymbolsGenerator::compareUtf8);
+        try (JarFile jarFile = new JarFile(jar.toFile());
+             URLClassLoader loader = new URLClassLoader(new URL[]{jar.toUri().toURL()}, null)) {
+            for (JarEntry entry : Collections.list(jarFile.entries())) {
+                if (isBuiltins(entry.getName())) {
+                    try (InputStream in = jarFile.getInputStream(entry)) {
+                        addBuiltinsNames(in.readAllBytes(), names);
+                    }
+                    continue;
+                }
+                String className = classNameOf(entry.getName());
+                if (className == null)
+                    continue;
+                try {
+                    Class<?> type = Class.forName(className, false, loader);
+                    for (Method method : type.getDeclaredMethods()) {
+                        addMethod(method, names);
+                    }
+                    addMetadataNames(type, names);
+                } catch (LinkageError e) {
+                    // Classes that need optional dependencies cannot be inspected, skip them
+                }
+            }
+        }
+        for (Class<?> type : MAPPED_TYPES) {
+            addMethods(type, names);
+        }
+
+        byte[] database = encode(new ArrayList<>(names));
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        Files.write(output, database);
+        System.out.println("Wrote " + names.size() + " names, " + database.length + " bytes to " + output);
+    }
+
+    private static String classNameOf(String entryName) {
+        if (!entryName.endsWith(".class") || entryName.startsWith("META-INF/"))
+            return null;
+        String className = entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.');
+        int lastDot = className.lastIndexOf('.');
+        String packageName = lastDot < 0 ? "" : className.substring(0, lastDot);
+        return PACKAGES.contains(packageName) ? className : null;
+    }
+
+    private static boolean isBuiltins(String entryName) {
+        if (!entryName.endsWith(".kotlin_builtins"))
+            return false;
+        int lastSlash = entryName.lastIndexOf('/');
+        return lastSlash > 0 && PACKAGES.contains(entryName.substring(0, lastSlash).replace('/', '.'));
+    }
+
+    // Metadata kinds: 1 class, 2 file facade, 5 part of a multi-file facade; others declare no functions
+    private static void addMetadataNames(Class<?> type, Set<String> names) {
+        for (Annotation annotation : type.getDeclaredAnnotations()) {
+            Class<? extends Annotation> annotationType = annotation.annotationType();
+            if (!annotationType.getName().equals("kotlin.Metadata"))
+                continue;
+            try {
+                int kind = (Integer) annotationType.getMethod("k").invoke(annotation);
+                String[] d1 = (String[]) annotationType.getMethod("d1").invoke(annotation);
+                String[] d2 = (String[]) annotationType.getMethod("d2").invoke(annotation);
+                if (kind != 1 && kind != 2 && kind != 5)
+                    return;
+                byte[] proto = decodeMetadata(d1);
+                if (proto == null) {
+                    System.err.println("Skipping metadata of " + type.getName() + ": unknown encoding");
+                    return;
+                }
+                ProtoReader reader = new ProtoReader(proto, 0, proto.length);
+                // The string table comes first, length-prefixed, then the class or package
+                int tableLength = (int) reader.varint();
+                Map<Integer, Integer> redirects = stringRedirects(new ProtoReader(proto, reader.pos, reader.pos + tableLength));
+                reader.pos += tableLength;
+                int functionField = kind == 1 ? CLASS_FUNCTION : PACKAGE_FUNCTION;
+                for (int nameIndex : functionNames(reader, functionField)) {
+                    Integer index = redirects.getOrDefault(nameIndex, nameIndex);
+                    if (index >= 0 && index < d2.length)
+                        addName(d2[index], names);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                System.err.println("Skipping metadata of " + type.getName() + ": " + e);
+            }
+        }
+    }
+
+    // Current compilers store d1 as one byte per char after a leading U+0000
+    private static byte[] decodeMetadata(String[] d1) {
+        if (d1.length == 0 || d1[0].isEmpty() || d1[0].charAt(0) != '\u0000')
+            return null;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < d1.length; i++) {
+            for (int j = i == 0 ? 1 : 0; j < d1[i].length(); j++) {
+                bytes.write(d1[i].charAt(j));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the records of a JVM string table. A name index normally points straight into d2; records
+     * with a range or an explicit string change that, and names that are not plain d2 entries map to -1.
+     */
+    private static Map<Integer, Integer> stringRedirects(ProtoReader table) {
+        Map<Integer, Integer> redirects = new HashMap<>();
+        int index = 0;
+        while (table.hasMore()) {
+            int tag = (int) table.varint();
+            if (tag >>> 3 != 1 || (tag & 7) != 2) {
+                table.skip(tag & 7);
+                continue;
+            }
+            ProtoReader record = table.message();
+            int range = 1;
+            boolean plain = true;
+            while (record.hasMore()) {
+                int field = (int) record.varint();
+                if (field >>> 3 == 1 && (field & 7) == 0)
+                    range = (int) record.varint();
+                else {
+                    // A predefined string, a literal or an operation on the d2 entry
+                    plain = false;
+                    record.skip(field & 7);
+                }
+            }
+            for (int i = 0; i < range; i++, index++) {
+                if (!plain)
+                    redirects.put(index, -1);
+            }
+        }
+        return redirects;
+    }
+
+    private static void addBuiltinsNames(byte[] data, Set<String> names) throws IOException {
+        // A version header of big-endian ints, then the package fragment
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(data));
+        int versionLength = header.readInt();
+        int start = 4 + 4 * versionLength;
+        List<String> strings = new ArrayList<>();
+        List<ProtoReader> packages = new ArrayList<>();
+        List<ProtoReader> classes = new ArrayList<>();
+        ProtoReader fragment = new ProtoReader(data, start, data.length);
+        while (fragment.hasMore()) {
+            int tag = (int) fragment.varint();
+            int field = tag >>> 3;
+            if ((tag & 7) != 2) {
+                fragment.skip(tag & 7);
+            } else if (field == FRAGMENT_STRINGS) {
+                ProtoReader table = fragment.message();
+                while (table.hasMore()) {
+                    int entry = (int) table.varint();
+                    if ((entry & 7) == 2)
+                        strings.add(table.string());
+                    else
+                        table.skip(entry & 7);
+                }
+            } else if (field == FRAGMENT_PACKAGE) {
+                packages.add(fragment.message());
+            } else if (field == FRAGMENT_CLASS) {
+                classes.add(fragment.message());
+            } else {
+                fragment.skip(2);
+            }
+        }
+        List<Integer> indexes = new ArrayList<>();
+        for (ProtoReader p : packages) {
+            indexes.addAll(functionNames(p, PACKAGE_FUNCTION));
+        }
+        for (ProtoReader c : classes) {
+            indexes.addAll(functionNames(c, CLASS_FUNCTION));
+        }
+        for (int index : indexes) {
+            if (index >= 0 && index < strings.size())
+                addName(strings.get(index), names);
+        }
+    }
+
+    // Name indexes of the functions a Package or Class message declares
+    private static List<Integer> functionNames(ProtoReader container, int functionField) {
+        List<Integer> indexes = new ArrayList<>();
+        while (container.hasMore()) {
+            int tag = (int) container.varint();
+            if (tag >>> 3 != functionField || (tag & 7) != 2) {
+                container.skip(tag & 7);
+                continue;
+            }
+            ProtoReader function = container.message();
+            while (function.hasMore()) {
+                int field = (int) function.varint();
+                if (field >>> 3 == FUNCTION_NAME && (field & 7) == 0)
+                    indexes.add((int) function.varint());
+                else
+                    function.skip(field & 7);
+            }
+        }
+        return indexes;
+    }
+
+    // Field numbers from Kotlin's metadata.proto and builtins.proto
+    private static final int PACKAGE_FUNCTION = 3;
+    private static final int CLASS_FUNCTION = 9;
+    private static final int FUNCTION_NAME = 2;
+    private static final int FRAGMENT_STRINGS = 1;
+    private static final int FRAGMENT_PACKAGE = 3;
+    private static final int FRAGMENT_CLASS = 4;
+
+    /**
+     * Just enough protobuf wire format to walk messages: varints and length-delimited fields.
+     */
+    private static final class ProtoReader {
+        private final byte[] data;
+        private final int end;
+        int pos;
+
+        ProtoReader(byte[] data, int pos, int end) {
+            this.data = data;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        boolean hasMore() {
+            return pos < end;
+        }
+
+        long varint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0)
+                    return value;
+            }
+        }
+
+        ProtoReader message() {
+            int length = (int) varint();
+            ProtoReader inner = new ProtoReader(data, pos, pos + length);
+            pos += length;
+            return inner;
+        }
+
+        String string() {
+            int length = (int) varint();
+            String value = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        void skip(int wireType) {
+            switch (wireType) {
+                case 0: varint(); break;
+                case 1: pos += 8; break;
+                case 2: message(); break;
+                case 5: pos += 4; break;
+                default: throw new IllegalStateException("Unsupported wire type " + wireType);
+            }
+        }
+    }
+
+    private static void addMethods(Class<?> type, Set<String> names) {
+        for (Method method : type.getMethods()) {
+            addMethod(method, names);
+        }
+    }
+
+    private static void addMethod(Method method, Set<String> names) {
+        if (!method.isSynthetic())
+            addName(method.getName(), names);
+    }
+
+    private static void addName(String name, Set<String> names) {
+        if (IDENTIFIER.matcher(name).matches())
+            names.add(name);
+    }
+
+    static byte[] encode(List<String> sortedNames) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        List<Integer> blockOffsets = new ArrayList<>();
+        byte[] previous = new byte[0];
+
+        for (int i = 0; i < sortedNames.size(); i++) {
+            byte[] name = sortedNames.get(i).getBytes(StandardCharsets.UTF_8);
+            if (i % StdlibSymbols.BLOCK_SIZE == 0) {
+                blockOffsets.add(data.size());
+                StdlibSymbols.writeVarInt(data, name.length);
+                data.write(name);
+            } else {
+                int shared = 0;
+                while (shared < name.length && shared < previous.length && name[shared] == previous[shared]) {
+                    shared++;
+                }
+                StdlibSymbols.writeVarInt(data, shared);
+                StdlibSymbols.writeVarInt(data, name.length - shared);
+                data.write(name, shared, name.length - shared);
+            }
+            previous = name;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(StdlibSymbols.MAGIC);
+        header.flush();
+
+        DataOutputStream body = new DataOutputStream(
+                new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION)));
+        body.writeInt(StdlibSymbols.FORMAT_VERSION);
+        body.writeInt(sortedNames.size());
+        body.writeInt(blockOffsets.size());
+        for (int offset : blockOffsets) {
+            body.writeInt(offset);
+        }
+        data.writeTo(body);
+        body.close();
+        return out.toByteArray();
+    }
+
+    // Lookups compare unsigned UTF-8 bytes, so the names must be sorted the same way
+    private static int compareUtf8(String a, String b) {
+        byte[] x = a.getBytes(StandardCharsets.UTF_8);
+        byte[] y = b.getBytes(StandardCharsets.UTF_8);
+        return StdlibSymbols.compare(x, 0, x.length, y, y.length);
+    }
+}
@@ -0,0 +1,412 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Headless entry point that runs the {@link KotlinAnalyzer} inspections over files and directories,
+ * for CI. Files are analyzed on all cores; only a small window of finished reports is held at a time
+ * and written in path order, so memory stays flat however many files there are.
+ *
+ * Usage: java -cp core/target/classes:ui/target/classes BatchAnalyzer [options] path...
+ *
+ * Exit codes: 0 no findings at the --fail-on level, 1 findings, 2 bad arguments or a missing or unreadable
+ * path given, 3 files below a given directory that could not be read.
+ */
+public class BatchAnalyzer {
+    static final int EXIT_OK = 0;
+    static final int EXIT_FINDINGS = 1;
+    static final int EXIT_USAGE = 2;
+    static final int EXIT_IO = 3;
+
+    private static final String SARIF_SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+    private static final String TOOL_NAME = "mini-intellij-analyzer";
+
+    enum Format { JSONL, SARIF }
+
+    enum FailOn { ERROR, WARNING, NONE }
+
+    /**
+     * Everything written for one file; built on a worker thread and dropped once written.
+     */
+    private static final class FileReport {
+        final Path file;
+        final List<String> records = new ArrayList<>();
+        final Set<String> rules = new HashSet<>();
+        List<AnalysisResult.InspectionCost> costs = Collections.emptyList();
+        long bytes;
+        int errors;
+        int warnings;
+        String failure;
+
+        FileReport(Path file) {
+            this.file = file;
+        }
+    }
+
+    private final Format format;
+    private final FailOn failOn;
+    private final int threads;
+    private final boolean crossFile;
+    private final boolean reportCosts;
+    private final Path base = Paths.get("").toAbsolutePath();
+    private final KotlinAnalyzer analyzer = new KotlinAnalyzer();
+
+    BatchAnalyzer(Format format, FailOn failOn, int threads, boolean crossFile,
+                  InspectionProfile profile, boolean reportCosts) {
+        this.format = format;
+        this.failOn = failOn;
+        this.threads = threads;
+        this.crossFile = crossFile;
+        this.reportCosts = reportCosts;
+        analyzer.setProfile(profile);
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Format format = Format.JSONL;
+        FailOn failOn = FailOn.ERROR;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean crossFile = false;
+        boolean reportCosts = false;
+        Path profileFile = null;
+        Path output = null;
+        List<Path> roots = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--format":
+                        format = Format.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT));
+                        break;
+                    case "--fail-on":
+                        failOn = FailOn.valueOf(value(args, ++i, arg).toUpperCase(Locale.ROOT));
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                        if (threads < 1)
+                            throw new IllegalArgumentException("--threads must be at least 1");
+                        break;
+                    case "--output":
+                        output = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--project":
+                        crossFile = true;
+                        break;
+                    case "--profile":
+                        profileFile = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--costs":
+                        reportCosts = true;
+                        break;
+                    case "--help":
+                        printUsage(out);
+                        return EXIT_OK;
+                    default:
+                        if (arg.startsWith("--"))
+                            throw new IllegalArgumentException("Unknown option " + arg);
+                        roots.add(Paths.get(arg));
+                }
+            }
+            if (roots.isEmpty())
+                throw new IllegalArgumentException("No paths given");
+            // Checked up front so a mistyped path is a usage error, not an I/O failure halfway through
+            for (Path root : roots) {
+                if (!Files.exists(root))
+                    throw new IllegalArgumentException("No such file or directory: " + root);
+                if (!Files.isReadable(root))
+                    throw new IllegalArgumentException("Cannot read " + root);
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            printUsage(err);
+            return EXIT_USAGE;
+        }
+
+        BatchAnalyzer batch;
+        try {
+            InspectionProfile profile = InspectionProfile.defaults();
+            if (profileFile != null) {
+                if (!Files.exists(profileFile))
+                    throw new NoSuchFileException(profileFile.toString());
+                profile = InspectionProfile.load(profileFile);
+            }
+            batch = new BatchAnalyzer(format, failOn, threads, crossFile, profile, reportCosts);
+        } catch (IOException e) {
+            err.println("Cannot read profile: " + e.getMessage());
+            return EXIT_USAGE;
+        }
+        try {
+            if (output == null)
+                return batch.analyze(roots, new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), err);
+            try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                return batch.analyze(roots, writer, err);
+            }
+        } catch (IOException e) {
+            err.println("Batch analysis failed: " + e.getMessage());
+            return EXIT_IO;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_IO;
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length)
+            throw new IllegalArgumentException(option + " needs a value");
+        return args[index];
+    }
+
+    private static void printUsage(PrintStream stream) {
+        stream.println("Usage: BatchAnalyzer [options] path...");
+        stream.println("  Analyzes every .kts/.kt file below the given files and directories.");
+        stream.println("  --format jsonl|sarif       output format (default jsonl)");
+        stream.println("  --output FILE              write the report to FILE instead of stdout");
+        stream.println("  --fail-on error|warning|none  findings that make the exit code 1 (default error)");
+        stream.println("  --threads N                worker threads (default: all cores)");
+        stream.println("  --project                  accept calls to functions declared in any analyzed file");
+        stream.println("  --profile FILE             inspection profile (<id>.enabled, <id>.severity properties)");
+        stream.println("  --costs                    print the time and allocations of each inspection to stderr");
+    }
+
+    int analyze(List<Path> roots, Writer writer, PrintStream err) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        List<Path> files = collectFiles(roots);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "batch-analyzer-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        long bytes = 0;
+        int errors = 0;
+        int warnings = 0;
+        int unreadable = 0;
+        Set<String> rules = new TreeSet<>();
+        // Per inspection: {nanos, allocated bytes, findings}, summed over all files
+        Map<String, long[]> costs = new LinkedHashMap<>();
+        try {
+            if (crossFile)
+                analyzer.setKnownFunctions(collectFunctions(files, pool));
+
+            if (format == Format.SARIF) {
+                writer.write("{\"$schema\":" + Json.quote(SARIF_SCHEMA) + ",\"version\":\"2.1.0\",\"runs\":[{\"results\":[");
+            }
+
+            // Reports are written in submission order; the window bounds how many wait in memory
+            int window = threads * 4;
+            Deque<Future<FileReport>> pending = new ArrayDeque<>();
+            boolean first = true;
+            Iterator<Path> it = files.iterator();
+            while (it.hasNext() || !pending.isEmpty()) {
+                while (it.hasNext() && pending.size() < window) {
+                    Path file = it.next();
+                    pending.add(pool.submit(() -> analyzeFile(file)));
+                }
+                FileReport report = pending.poll().get();
+                for (String record : report.records) {
+                    if (format == Format.SARIF && !first)
+                        writer.write(',');
+                    writer.write(record);
+                    if (format == Format.JSONL)
+                        writer.write('\n');
+                    first = false;
+                }
+                bytes += report.bytes;
+                errors += report.errors;
+                warnings += report.warnings;
+                rules.addAll(report.rules);
+                for (AnalysisResult.InspectionCost cost : report.costs) {
+                    long[] total = costs.computeIfAbsent(cost.getInspectionId(), id -> new long[3]);
+                    total[0] += cost.getNanos();
+                    total[1] += cost.getAllocatedBytes();
+                    total[2] += cost.getFindings();
+                }
+                if (report.failure != null) {
+                    unreadable++;
+                    err.println("Could not read " + report.file + ": " + report.failure);
+                }
+            }
+
+            if (format == Format.SARIF) {
+                writer.write("],\"tool\":{\"driver\":{\"name\":" + Json.quote(TOOL_NAME) + ",\"rules\":[");
+                boolean firstRule = true;
+                for (String rule : rules) {
+                    if (!firstRule)
+                        writer.write(',');
+                    writer.write("{\"id\":" + Json.quote(rule) + ",\"shortDescription\":{\"text\":" + Json.quote(ruleDescription(rule)) + "}}");
+                    firstRule = false;
+                }
+                writer.write("]}}}]}\n");
+            }
+            writer.flush();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        err.printf("Analyzed %d files (%s) in %.2f s: %.0f files/s, %d errors, %d warnings%s%n",
+                files.size(), RunMetrics.formatBytes(bytes), seconds, files.size() / Math.max(seconds, 1e-9),
+                errors, warnings, unreadable > 0 ? ", " + unreadable + " unreadable" : "");
+        if (reportCosts)
+            printCosts(costs, err);
+
+        if (unreadable > 0)
+            return EXIT_IO;
+        if (failOn == FailOn.ERROR && errors > 0 || failOn == FailOn.WARNING && errors + warnings > 0)
+            return EXIT_FINDINGS;
+        return EXIT_OK;
+    }
+
+    // Most expensive first; times are summed over the worker threads, so they can exceed the wall time
+    private static void printCosts(Map<String, long[]> costs, PrintStream err) {
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(costs.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        err.printf("%-24s %12s %12s %10s%n", "Inspection", "Time", "Allocated", "Findings");
+        for (Map.Entry<String, long[]> entry : entries) {
+            long[] total = entry.getValue();
+            err.printf("%-24s %9.1f ms %12s %10d%n", entry.getKey(), total[0] / 1e6,
+                    RunMetrics.formatBytes(total[1]), total[2]);
+        }
+    }
+
+    /**
+     * Source files below the roots, sorted so reports come out in the same order every run.
+     * Hidden directories are skipped, as in project mode.
+     */
+    private static List<Path> collectFiles(List<Path> roots) throws IOException {
+        Set<Path> files = new TreeSet<>();
+        for (Path root : roots) {
+            if (!Files.exists(root))
+                throw new NoSuchFileException(root.toString());
+            if (!Files.isDirectory(root)) {
+                files.add(root.normalize());
+                continue;
+            }
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (!dir.equals(root) && dir.getFileName().toString().startsWith("."))
+                        return FileVisitResult.SKIP_SUBTREE;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && ProjectIndex.isSourceFile(file))
+                        files.add(file.normalize());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // Reported when the file itself is read
+                    files.add(file.normalize());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return new ArrayList<>(files);
+    }
+
+    // First pass for --project: only the declared names are kept, not the texts
+    private static Set<String> collectFunctions(List<Path> files, ExecutorService pool) throws InterruptedException {
+        Set<String> functions = ConcurrentHashMap.newKeySet();
+        List<Callable<Void>> tasks = new ArrayList<>(files.size());
+        for (Path file : files) {
+            tasks.add(() -> {
+                try {
+                    functions.addAll(ProjectIndex.extractFunctions(readSource(file)));
+                } catch (IOException e) {
+                    // Reported by the analysis pass
+                }
+                return null;
+            });
+        }
+        pool.invokeAll(tasks);
+        return functions;
+    }
+
+    private static String readSource(Path file) throws IOException {
+        return decode(Files.readAllBytes(file));
+    }
+
+    // Line breaks are normalized as when the editor loads a file, so columns match the IDE
+    private static String decode(byte[] raw) {
+        return new String(raw, StandardCharsets.UTF_8).replace("\r\n", "\n");
+    }
+
+    private FileReport analyzeFile(Path file) {
+        FileReport report = new FileReport(file);
+        String code;
+        try {
+            byte[] raw = Files.readAllBytes(file);
+            report.bytes = raw.length;
+            code = decode(raw);
+        } catch (IOException e) {
+            report.failure = e.getMessage() != null ? e.getMessage() : e.toString();
+            return report;
+        }
+
+        String uri = relativeUri(file);
+        AnalysisResult result = analyzer.analyze(code);
+        report.costs = result.getCosts();
+        for (Diagnostic diag : result.getDiagnostics()) {
+            String rule = diag.getInspectionId() != null ? diag.getInspectionId() : "other";
+            report.rules.add(rule);
+            if (diag.getSeverity() == Diagnostic.Severity.ERROR)
+                report.errors++;
+            else
+                report.warnings++;
+            report.records.add(format == Format.SARIF ? toSarif(uri, rule, diag) : toJsonLine(uri, rule, diag));
+        }
+        return report;
+    }
+
+    private String relativeUri(Path file) {
+        Path absolute = file.toAbsolutePath().normalize();
+        Path shown = absolute.startsWith(base) ? base.relativize(absolute) : absolute;
+        return shown.toString().replace(File.separatorChar, '/');
+    }
+
+    private static String toJsonLine(String uri, String rule, Diagnostic diag) {
+        return "{"
+                + "\"file\":" + Json.quote(uri) + ","
+                + "\"line\":" + diag.getLine() + ","
+                + "\"column\":" + diag.getColumn() + ","
+                + "\"severity\":\"" + diag.getSeverity().name().toLowerCase(Locale.ROOT) + "\","
+                + "\"rule\":" + Json.quote(rule) + ","
+                + "\"message\":" + Json.quote(diag.getMessage())
+                + "}";
+    }
+
+    private static String toSarif(String uri, String rule, Diagnostic diag) {
+        return "{"
+                + "\"ruleId\":" + Json.quote(rule) + ","
+                + "\"level\":\"" + (diag.getSeverity() == Diagnostic.Severity.ERROR ? "error" : "warning") + "\","
+                + "\"message\":{\"text\":" + Json.quote(diag.getMessage()) + "},"
+                + "\"locations\":[{\"physicalLocation\":{"
+                + "\"artifactLocation\":{\"uri\":" + Json.quote(uri) + "},"
+                + "\"region\":{\"startLine\":" + diag.getLine() + ",\"startColumn\":" + diag.getColumn()
+                + ",\"charOffset\":" + diag.getStartOffset()
+                + ",\"charLength\":" + Math.max(0, diag.getEndOffset() - diag.getStartOffset()) + "}"
+                + "}}]"
+                + "}";
+    }
+
+    private static String ruleDescription(String rule) {
+        for (Inspection inspection : KotlinAnalyzer.installedInspections()) {
+            if (inspection.getId().equals(rule))
+                return inspection.getDescription();
+        }
+        return "Other inspection";
+    }
+}
@@ -0,0 +1,159 @@
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Measured iterations of a {@link ScriptBenchmark} together with summary statistics.
+ */
+public class BenchmarkResult {
+    private static final int HISTOGRAM_BUCKETS = 10;
+    private static final int HISTOGRAM_WIDTH = 40;
+
+    private final long finishedAtMillis;
+    private final int warmupIterations;
+    private final int parallelism;
+    private final boolean cancelled;
+    private final List<RunMetrics> runs;
+    private final long[] sortedWallMillis;
+
+    public BenchmarkResult(long finishedAtMillis, int warmupIterations, int parallelism, boolean cancelled, List<RunMetrics> runs) {
+        this.finishedAtMillis = finishedAtMillis;
+        this.warmupIterations = warmupIterations;
+        this.parallelism = parallelism;
+        this.cancelled = cancelled;
+        this.runs = runs;
+        this.sortedWallMillis = runs.stream().mapToLong(RunMetrics::getWallMillis).sorted().toArray();
+    }
+
+    public List<RunMetrics> getRuns() {
+        return runs;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getMin() {
+        return percentile(0);
+    }
+
+    public long getMedian() {
+        return percentile(50);
+    }
+
+    public long getP90() {
+        return percentile(90);
+    }
+
+    public long getP99() {
+        return percentile(99);
+    }
+
+    public long getMax() {
+        return percentile(100);
+    }
+
+    /**
+     * Nearest-rank percentile of the wall time in milliseconds.
+     */
+    public long percentile(double p) {
+        if (sortedWallMillis.length == 0) return 0;
+        int rank = (int) Math.ceil(p / 100.0 * sortedWallMillis.length);
+        return sortedWallMillis[Math.max(0, Math.min(rank - 1, sortedWallMillis.length - 1))];
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Benchmark: %d measured run(s), %d warmup, parallelism %d%s%n",
+                runs.size(), warmupIterations, parallelism, cancelled ? " (cancelled)" : ""));
+        if (runs.isEmpty())
+            return sb.toString();
+
+        sb.append(String.format("  wall   min %s   median %s   p90 %s   p99 %s   max %s%n",
+                RunMetrics.formatMillis(getMin()), RunMetrics.formatMillis(getMedian()),
+                RunMetrics.formatMillis(getP90()), RunMetrics.formatMillis(getP99()),
+                RunMetrics.formatMillis(getMax())));
+        double cpu = average(RunMetrics::getCpuMillis);
+        double rss = average(RunMetrics::getPeakRssBytes);
+        sb.append(String.format("  mean   compile %s   exec %s   CPU %s   peak RSS %s%n",
+                RunMetrics.formatMillis((long) average(RunMetrics::getCompileMillis)),
+                RunMetrics.formatMillis((long) average(RunMetrics::getExecuteMillis)),
+                cpu >= 0 ? RunMetrics.formatMillis((long) cpu) : "n/a",
+                rss >= 0 ? RunMetrics.formatBytes((long) rss) : "n/a"));
+
+        long failures = runs.stream().filter(r -> r.getExitCode() != 0).count();
+        if (failures > 0)
+            sb.append("  ").append(failures).append(" run(s) exited with a non-zero exit code\n");
+
+        sb.append("\n").append(histogram());
+        return sb.toString();
+    }
+
+    private double average(java.util.function.ToLongFunction<RunMetrics> metric) {
+        return runs.stream().mapToLong(metric).filter(v -> v >= 0).average().orElse(-1);
+    }
+
+    private String histogram() {
+        long min = getMin();
+        long max = getMax();
+        long bucketWidth = Math.max(1, (max - min + HISTOGRAM_BUCKETS) / HISTOGRAM_BUCKETS);
+        int[] counts = new int[HISTOGRAM_BUCKETS];
+        for (long wall : sortedWallMillis) {
+            counts[(int) Math.min(HISTOGRAM_BUCKETS - 1, (wall - min) / bucketWidth)]++;
+        }
+        int maxCount = Arrays.stream(counts).max().orElse(1);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            long from = min + i * bucketWidth;
+            int bar = (int) Math.round((double) counts[i] / maxCount * HISTOGRAM_WIDTH);
+            sb.append(String.format("  %10s | %-" + HISTOGRAM_WIDTH + "s %d%n",
+                    RunMetrics.formatMillis(from), "#".repeat(bar), counts[i]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Describes how this result differs from a baseline result.
+     */
+    public String compareTo(BenchmarkResult baseline) {
+        StringBuilder sb = new StringBuilder("Comparison (baseline -> this):\n");
+        appendDelta(sb, "min", baseline.getMin(), getMin());
+        appendDelta(sb, "median", baseline.getMedian(), getMedian());
+        appendDelta(sb, "p90", baseline.getP90(), getP90());
+        appendDelta(sb, "p99", baseline.getP99(), getP99());
+        appendDelta(sb, "max", baseline.getMax(), getMax());
+        return sb.toString();
+    }
+
+    private static void appendDelta(StringBuilder sb, String name, long before, long after) {
+        double change = before == 0 ? 0 : (after - before) * 100.0 / before;
+        sb.append(String.format("  %-7s %10s -> %10s   %+.1f%%%n", name,
+                RunMetrics.formatMillis(before), RunMetrics.formatMillis(after), change));
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append("  \"finishedAt\": \"").append(Instant.ofEpochMilli(finishedAtMillis)).append("\",\n");
+        sb.append("  \"warmupIterations\": ").append(warmupIterations).append(",\n");
+        sb.append("  \"parallelism\": ").append(parallelism).append(",\n");
+        sb.append("  \"cancelled\": ").append(cancelled).append(",\n");
+        sb.append("  \"runs\": ").append(RunMetrics.toJsonArray(runs).trim()).append("\n");
+        return sb.append("}\n").toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static BenchmarkResult fromJson(String json) {
+        Map<String, Object> root = (Map<String, Object>) Json.parse(json);
+        List<RunMetrics> runs = new ArrayList<>();
+        for (Object run : (List<Object>) root.get("runs")) {
+            runs.add(RunMetrics.fromJson((Map<String, Object>) run));
+        }
+        return new BenchmarkResult(
+                Instant.parse((String) root.get("finishedAt")).toEpochMilli(),
+                ((Number) root.get("warmupIterations")).intValue(),
+                ((Number) root.get("parallelism")).intValue(),
+                Boolean.TRUE.equals(root.get("cancelled")),
+                runs
+        );
+    }
+}
@@ -0,0 +1,263 @@
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Folding of fun and class bodies. A folded body keeps its first and last line visible and hides the
+ * lines in between: their paragraph views report a height of zero and do not paint. Folds are anchored
+ * to document positions and dropped when their braces stop pairing up. Moving the caret into a folded
+ * body unfolds it. Only used from the EDT.
+ *
+ * The editor must use {@link #getEditorKit()} so its paragraphs are laid out by views that know about folds.
+ */
+public class CodeFolding {
+    private static final Color MARKER_COLOR = new Color(120, 120, 120);
+
+    private final JTextPane editorPane;
+    private final SnapshotDocument document;
+    private final EditorStructure structure;
+    private final FoldingEditorKit editorKit = new FoldingEditorKit();
+
+    // Opening braces of the folded bodies
+    private final List<Position> folds = new ArrayList<>();
+
+    // Hidden lines as sorted, merged [first, last] pairs, recomputed after edits and fold changes
+    private int[] hiddenRanges = new int[0];
+    private int revision;
+    private final List<ChangeListener> listeners = new ArrayList<>();
+
+    public CodeFolding(JTextPane editorPane, SnapshotDocument document, EditorStructure structure) {
+        this.editorPane = editorPane;
+        this.document = document;
+        this.structure = structure;
+        structure.addChangeListener(e -> refresh());
+        editorPane.addCaretListener(e -> {
+            int line = document.getDefaultRootElement().getElementIndex(e.getDot());
+            if (isHidden(line))
+                SwingUtilities.invokeLater(() -> unfoldLine(line));
+        });
+    }
+
+    public StyledEditorKit getEditorKit() {
+        return editorKit;
+    }
+
+    /** Listeners are told whenever the set of hidden lines changes. */
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /** Changes whenever the set of hidden lines does. */
+    public int getRevision() {
+        return revision;
+    }
+
+    public boolean isHidden(int line) {
+        int low = 0;
+        int high = hiddenRanges.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (line < hiddenRanges[mid * 2]) {
+                high = mid - 1;
+            } else if (line > hiddenRanges[mid * 2 + 1]) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Folds the innermost fun or class body around the end of the caret line, so a header line folds its own body. */
+    public void foldAtCaret() {
+        Element line = document.getDefaultRootElement().getElement(
+                document.getDefaultRootElement().getElementIndex(editorPane.getCaretPosition()));
+        BlockStructure.Block body = structure.getStructure().declarationAt(line.getEndOffset() - 1);
+        // A caret left inside the body would unfold it again straight away
+        if (body != null && fold(body.getOpenOffset()))
+            editorPane.setCaretPosition(body.getOpenOffset() + 1);
+    }
+
+    /** Unfolds the folds that start on the caret line. */
+    public void unfoldAtCaret() {
+        unfoldLine(document.getDefaultRootElement().getElementIndex(editorPane.getCaretPosition()));
+    }
+
+    public void foldAll() {
+        for (BlockStructure.Block body : structure.getStructure().getDeclarations()) {
+            fold(body.getOpenOffset());
+        }
+        // Same for the caret here: move it to the header line of the outermost body around it
+        int caret = editorPane.getCaretPosition();
+        BlockStructure.Block outer = null;
+        for (BlockStructure.Block body = structure.getStructure().declarationAt(caret); body != null; body = body.getParent()) {
+            if (body.getDeclarationKind() != null)
+                outer = body;
+        }
+        if (outer != null)
+            editorPane.setCaretPosition(outer.getOpenOffset() + 1);
+    }
+
+    public void unfoldAll() {
+        folds.clear();
+        refresh();
+    }
+
+    private boolean fold(int openOffset) {
+        for (Position position : folds) {
+            if (position.getOffset() == openOffset)
+                return false;
+        }
+        try {
+            folds.add(document.createPosition(openOffset));
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+            return false;
+        }
+        refresh();
+        return true;
+    }
+
+    private void unfoldLine(int line) {
+        // A hidden line unfolds every fold around it, a visible one the folds that start on it
+        folds.removeIf(position -> {
+            int[] lines = foldLines(position.getOffset());
+            return lines == null || lines[0] <= line && line < lines[1];
+        });
+        refresh();
+    }
+
+    // First and last line of the fold whose brace is at the offset, or null if it no longer folds anything
+    private int[] foldLines(int openOffset) {
+        int[] pair = structure.getStructure().pairAt(openOffset);
+        if (pair == null || pair[0] != openOffset)
+            return null;
+        Element root = document.getDefaultRootElement();
+        int first = root.getElementIndex(pair[0]);
+        int last = root.getElementIndex(pair[1]);
+        return last - first >= 2 ? new int[]{first, last} : null;
+    }
+
+    private void refresh() {
+        List<int[]> ranges = new ArrayList<>();
+        for (int i = folds.size() - 1; i >= 0; i--) {
+            int[] lines = foldLines(folds.get(i).getOffset());
+            if (lines == null) {
+                folds.remove(i);
+            } else {
+                ranges.add(new int[]{lines[0] + 1, lines[1] - 1});
+            }
+        }
+        ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+        int[] merged = new int[ranges.size() * 2];
+        int count = 0;
+        for (int[] range : ranges) {
+            if (count > 0 && range[0] <= merged[count - 1] + 1) {
+                merged[count - 1] = Math.max(merged[count - 1], range[1]);
+            } else {
+                merged[count++] = range[0];
+                merged[count++] = range[1];
+            }
+        }
+        merged = Arrays.copyOf(merged, count);
+        if (Arrays.equals(merged, hiddenRanges))
+            return;
+        hiddenRanges = merged;
+        revision++;
+
+        // Paragraph heights are cached by the section view; make it ask again
+        View section = editorPane.getUI().getRootView(editorPane).getView(0);
+        if (section != null) {
+            for (int i = 0; i < section.getViewCount(); i++) {
+                section.getView(i).preferenceChanged(null, false, true);
+            }
+        }
+        editorPane.revalidate();
+        editorPane.repaint();
+
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : listeners) {
+            listener.stateChanged(event);
+        }
+    }
+
+    private boolean isFoldStart(int line) {
+        for (Position position : folds) {
+            int[] lines = foldLines(position.getOffset());
+            if (lines != null && lines[0] == line)
+                return true;
+        }
+        return false;
+    }
+
+    private class FoldingEditorKit extends StyledEditorKit {
+        private final ViewFactory factory = element -> {
+            String kind = element.getName();
+            if (AbstractDocument.ParagraphElementName.equals(kind))
+                return new FoldableParagraphView(element);
+            if (AbstractDocument.SectionElementName.equals(kind))
+                return new BoxView(element, View.Y_AXIS);
+            if (StyleConstants.ComponentElementName.equals(kind))
+                return new ComponentView(element);
+            if (StyleConstants.IconElementName.equals(kind))
+                return new IconView(element);
+            return new LabelView(element);
+        };
+
+        @Override
+        public ViewFactory getViewFactory() {
+            return factory;
+        }
+    }
+
+    private class FoldableParagraphView extends ParagraphView {
+        FoldableParagraphView(Element element) {
+            super(element);
+        }
+
+        private int line() {
+            return document.getDefaultRootElement().getElementIndex(getStartOffset());
+        }
+
+        @Override
+        public float getMinimumSpan(int axis) {
+            return axis == Y_AXIS && isHidden(line()) ? 0 : super.getMinimumSpan(axis);
+        }
+
+        @Override
+        public float getPreferredSpan(int axis) {
+            return axis == Y_AXIS && isHidden(line()) ? 0 : super.getPreferredSpan(axis);
+        }
+
+        @Override
+        public float getMaximumSpan(int axis) {
+            return axis == Y_AXIS && isHidden(line()) ? 0 : super.getMaximumSpan(axis);
+        }
+
+        @Override
+        public void paint(Graphics g, Shape a) {
+            int line = line();
+            if (isHidden(line))
+                return;
+            super.paint(g, a);
+            if (!isFoldStart(line))
+                return;
+            try {
+                Rectangle end = modelToView(getEndOffset() - 1, a, Position.Bias.Forward).getBounds();
+                FontMetrics metrics = g.getFontMetrics();
+                int width = metrics.stringWidth(" ... ");
+                g.setColor(MARKER_COLOR);
+                g.drawRoundRect(end.x + 4, end.y + 2, width, end.height - 4, 6, 6);
+                g.drawString(" ... ", end.x + 4, end.y + metrics.getAscent());
+            } catch (BadLocationException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import javax.swing.*;
+import javax.swing.text.*;
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.BasicStroke;
+import java.util.*;
+import java.util.List;
+
+public class CodeHighlighter {
+    private final JTextPane textPane;
+    
+    private UnderlineHighlightPainter errorPainter;
+    private UnderlineHighlightPainter warningPainter;
+    private List<Object> underlineHighlights = new ArrayList<>();
+    // What each underline is for, at the same index
+    private List<Diagnostic> underlinedDiagnostics = new ArrayList<>();
+    
+    public CodeHighlighter(JTextPane textPane) {
+        this.textPane = textPane;
+        errorPainter = new UnderlineHighlightPainter(Color.RED);
+        warningPainter = new UnderlineHighlightPainter(Color.YELLOW);
+    }
+    
+    public void applyUnderlines(AnalysisResult result) {
+        if (result == null) {
+            clearUnderlines();
+            return;
+        }
+        
+        SwingUtilities.invokeLater(() -> {
+            Instrumentation.Timing timing = Instrumentation.begin(Instrumentation.Subsystem.UNDERLINES);
+            try {
+                // Remove old underlines
+                clearUnderlines();
+                
+                // Add new underlines
+                addUnderlines(result.getDiagnostics());
+                
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                timing.end(result.getDiagnostics().size());
+            }
+        });
+    }
+    
+    /**
+     * Applies a partial result right away, on the EDT: underlines its inspections had in its region are
+     * replaced by its findings, all others stay where edits have moved them.
+     */
+    public void applyRegionUnderlines(AnalysisResult partial) {
+        Instrumentation.Timing timing = Instrumentation.begin(Instrumentation.Subsystem.UNDERLINES);
+        try {
+            Highlighter highlighter = textPane.getHighlighter();
+            Set<String> inspections = partial.getRegionInspections();
+            List<Object> keptHighlights = new ArrayList<>(underlineHighlights.size());
+            List<Diagnostic> keptDiagnostics = new ArrayList<>(underlinedDiagnostics.size());
+            for (int i = 0; i < underlineHighlights.size(); i++) {
+                Highlighter.Highlight highlight = (Highlighter.Highlight) underlineHighlights.get(i);
+                Diagnostic diag = underlinedDiagnostics.get(i);
+                int start = highlight.getStartOffset();
+                if (inspections.contains(diag.getInspectionId())
+                        && start >= partial.getRegionStart() && start < partial.getRegionEnd()) {
+                    highlighter.removeHighlight(highlight);
+                } else {
+                    keptHighlights.add(highlight);
+                    keptDiagnostics.add(diag);
+                }
+            }
+            underlineHighlights = keptHighlights;
+            underlinedDiagnostics = keptDiagnostics;
+            addUnderlines(partial.getDiagnostics());
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            timing.end(partial.getDiagnostics().size());
+        }
+    }
+    
+    /**
+     * The findings currently underlined, at the offsets their underlines have now, in text order.
+     */
+    public List<Diagnostic> getUnderlinedDiagnostics() {
+        Element root = textPane.getDocument().getDefaultRootElement();
+        List<Diagnostic> diagnostics = new ArrayList<>(underlinedDiagnostics.size());
+        for (int i = 0; i < underlineHighlights.size(); i++) {
+            Highlighter.Highlight highlight = (Highlighter.Highlight) underlineHighlights.get(i);
+            Diagnostic diag = underlinedDiagnostics.get(i);
+            int start = highlight.getStartOffset();
+            int line = root.getElementIndex(start);
+            diagnostics.add(new Diagnostic(diag.getSeverity(), diag.getMessage(), line + 1,
+                start - root.getElement(line).getStartOffset() + 1, start, highlight.getEndOffset(),
+                diag.getInspectionId()));
+        }
+        diagnostics.sort(Comparator.comparingInt(Diagnostic::getStartOffset));
+        return diagnostics;
+    }
+    
+    private void addUnderlines(List<Diagnostic> diagnostics) throws BadLocationException {
+        int length = textPane.getDocument().getLength();
+        Highlighter highlighter = textPane.getHighlighter();
+        
+        for (Diagnostic diag : diagnostics) {
+            UnderlineHighlightPainter painter = getPainterForSeverity(diag.getSeverity());
+            
+            int startOffset = diag.getStartOffset();
+            int endOffset = diag.getEndOffset();
+            
+            // Validate offsets
+            if (startOffset >= 0 && endOffset <= length && startOffset < endOffset) {
+                Object highlight = highlighter.addHighlight(startOffset, endOffset, painter);
+                underlineHighlights.add(highlight);
+                underlinedDiagnostics.add(diag);
+            }
+        }
+    }
+    
+    private void clearUnderlines() {
+        Highlighter highlighter = textPane.getHighlighter();
+        for (Object highlight : underlineHighlights) {
+            highlighter.removeHighlight(highlight);
+        }
+        underlineHighlights.clear();
+        underlinedDiagnostics.clear();
+    }
+    
+    private UnderlineHighlightPainter getPainterForSeverity(Diagnostic.Severity severity) {
+        switch (severity) {
+            case ERROR:   return errorPainter;
+            case WARNING: return warningPainter;
+            default:      return warningPainter;
+        }
+    }
+    
+    /**
+     * Custom highlighter painter for straight underlines.
+     */
+    private static class UnderlineHighlightPainter extends DefaultHighlighter.DefaultHighlightPainter {
+        private Color color;
+        
+        public UnderlineHighlightPainter(Color color) {
+            super(null);
+            this.color = color;
+        }
+        
+        @Override
+        public Shape paintLayer(Graphics g, int offs0, int offs1, Shape bounds, JTextComponent c, View view) {
+            Graphics2D g2d = (Graphics2D) g;
+            
+            try {
+                // Get the rectangle for the text region
+                Rectangle r0 = c.modelToView2D(offs0).getBounds();
+                Rectangle r1 = c.modelToView2D(offs1).getBounds();
+                
+                if (r0.y == r1.y) {
+                    // Same line
+                    Rectangle rect = r0.union(r1);
+                    drawUnderline(g2d, rect.x, rect.y + rect.height - 2, rect.width);
+                } else {
+                    // Multi-line (just draw under first line)
+                    int width = bounds.getBounds().x + bounds.getBounds().width - r0.x;
+                    drawUnderline(g2d, r0.x, r0.y + r0.height - 2, width);
+                }
+                
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            
+            return null;
+        }
+        
+        private void drawUnderline(Graphics2D g2d, int x, int y, int width) {
+            g2d.setColor(color);
+            g2d.setStroke(new BasicStroke(1.5f));
+            g2d.drawLine(x, y, x + width, y);
+        }
+    }
+}
+
@@ -0,0 +1,220 @@
+import java.util.*;
+
+/**
+ * Completion candidates kept in a sorted map, so all names starting with a prefix form one contiguous
+ * range. Candidates come from keywords, the stdlib symbol database and the declarations of the current
+ * script; declarations are updated incrementally by diffing against the previous set.
+ *
+ * Ranking prefers names the user accepted often and recently, then names whose case matches the prefix,
+ * then declarations over keywords over stdlib names, then shorter names. Built on any thread, then only
+ * used from the EDT.
+ */
+public class CompletionIndex {
+    public static final int SOURCE_DECLARATION = 1;
+    public static final int SOURCE_KEYWORD = 2;
+    public static final int SOURCE_STDLIB = 4;
+
+    // Bounds the work for very short prefixes on huge indexes; names the user accepted before are
+    // looked at separately, so the scan cut-off never hides them
+    private static final int MAX_SCANNED = 10_000;
+    private static final int RECENCY_WINDOW = 100;
+
+    public static final class Candidate {
+        private final String name;
+        private int sources;
+
+        Candidate(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDeclaration() {
+            return (sources & SOURCE_DECLARATION) != 0;
+        }
+
+        public boolean isKeyword() {
+            return (sources & SOURCE_KEYWORD) != 0;
+        }
+    }
+
+    /**
+     * Outcome of one query: the best candidates and how many names matched in total.
+     */
+    public static final class Result {
+        private final List<Candidate> candidates;
+        private final int matchCount;
+        private final boolean truncated;
+
+        Result(List<Candidate> candidates, int matchCount, boolean truncated) {
+            this.candidates = candidates;
+            this.matchCount = matchCount;
+            this.truncated = truncated;
+        }
+
+        public List<Candidate> getCandidates() {
+            return candidates;
+        }
+
+        public int getMatchCount() {
+            return matchCount;
+        }
+
+        /** Whether more names matched than were scanned, so the match count is a lower bound. */
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+
+    // Keyed by lower-case name + '\0' + name: case-insensitive order, but "Foo" and "foo" stay separate
+    private final TreeMap<String, Candidate> entries = new TreeMap<>();
+    private final Set<String> declarations = new HashSet<>();
+    private final Map<String, int[]> usage = new HashMap<>(); // name -> {accept count, last accept tick}
+    private int tick;
+    private final LatencyRecorder latency = new LatencyRecorder("completion", 1024);
+
+    public CompletionIndex() {
+        for (String keyword : KotlinKeywords.KEYWORDS) {
+            add(keyword, SOURCE_KEYWORD);
+        }
+        for (String name : StdlibSymbols.names()) {
+            add(name, SOURCE_STDLIB);
+        }
+    }
+
+    public LatencyRecorder getLatency() {
+        return latency;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Replaces the declaration names of the current script. Only names that appeared or disappeared
+     * since the last call touch the index.
+     */
+    public void updateDeclarations(Collection<String> names) {
+        Set<String> current = new HashSet<>(names);
+        for (Iterator<String> it = declarations.iterator(); it.hasNext(); ) {
+            String name = it.next();
+            if (!current.contains(name)) {
+                remove(name, SOURCE_DECLARATION);
+                it.remove();
+            }
+        }
+        for (String name : current) {
+            if (declarations.add(name))
+                add(name, SOURCE_DECLARATION);
+        }
+    }
+
+    public void add(String name, int source) {
+        entries.computeIfAbsent(key(name), k -> new Candidate(name)).sources |= source;
+    }
+
+    public void remove(String name, int source) {
+        String key = key(name);
+        Candidate candidate = entries.get(key);
+        if (candidate == null)
+            return;
+        candidate.sources &= ~source;
+        if (candidate.sources == 0)
+            entries.remove(key);
+    }
+
+    /**
+     * Remembers that a candidate was picked, which moves it up in later results.
+     */
+    public void recordAccepted(String name) {
+        int[] stats = usage.computeIfAbsent(name, n -> new int[2]);
+        stats[0]++;
+        stats[1] = ++tick;
+    }
+
+    /**
+     * Returns the best candidates starting with the prefix (case-insensitively), at most limit of them.
+     */
+    public Result query(String prefix, int limit) {
+        long start = System.nanoTime();
+        String lower = prefix.toLowerCase(Locale.ROOT);
+        SortedMap<String, Candidate> range = lower.isEmpty()
+                ? entries
+                : entries.subMap(lower, lower + Character.MAX_VALUE);
+
+        // Min-heap of the best candidates so far; the weakest one is evicted first
+        PriorityQueue<Object[]> best = new PriorityQueue<>(limit + 1,
+                (a, b) -> Long.compare((Long) a[0], (Long) b[0]));
+        int matches = 0;
+        String lastScanned = null;
+        boolean truncated = false;
+        for (Map.Entry<String, Candidate> entry : range.entrySet()) {
+            if (matches == MAX_SCANNED) {
+                truncated = true;
+                break;
+            }
+            matches++;
+            offer(best, limit, entry.getValue(), prefix);
+            lastScanned = entry.getKey();
+        }
+        if (truncated) {
+            // Accepted names past the cut-off still compete
+            for (String name : usage.keySet()) {
+                String key = key(name);
+                Candidate candidate = entries.get(key);
+                if (candidate != null && key.compareTo(lastScanned) > 0 && key.startsWith(lower))
+                    offer(best, limit, candidate, prefix);
+            }
+        }
+
+        List<Object[]> ordered = new ArrayList<>(best);
+        ordered.sort((a, b) -> {
+            int c = Long.compare((Long) b[0], (Long) a[0]);
+            return c != 0 ? c : ((Candidate) a[1]).name.compareTo(((Candidate) b[1]).name);
+        });
+        List<Candidate> result = new ArrayList<>(ordered.size());
+        for (Object[] entry : ordered) {
+            result.add((Candidate) entry[1]);
+        }
+        latency.record(System.nanoTime() - start);
+        return new Result(result, matches, truncated);
+    }
+
+    private void offer(PriorityQueue<Object[]> best, int limit, Candidate candidate, String prefix) {
+        if (candidate.name.equals(prefix))
+            return; // already typed out
+        long score = score(candidate, prefix);
+        if (best.size() < limit) {
+            best.add(new Object[]{score, candidate});
+        } else if (score > (Long) best.peek()[0]) {
+            best.poll();
+            best.add(new Object[]{score, candidate});
+        }
+    }
+
+    private long score(Candidate candidate, String prefix) {
+        long score = 0;
+        int[] stats = usage.get(candidate.name);
+        if (stats != null) {
+            int recency = Math.max(0, RECENCY_WINDOW - (tick - stats[1]));
+            score += (long) Math.min(stats[0], 1000) * 10 + recency;
+        }
+        score <<= 1;
+        if (candidate.name.startsWith(prefix))
+            score |= 1;
+        score <<= 2;
+        if (candidate.isDeclaration()) score |= 3;
+        else if (candidate.isKeyword()) score |= 2;
+        else score |= 1;
+        // Shorter names first
+        score <<= 8;
+        score |= 255 - Math.min(candidate.name.length(), 255);
+        return score;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT) + '\0' + name;
+    }
+}
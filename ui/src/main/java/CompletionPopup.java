@@ -0,0 +1,245 @@
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Ctrl+Space completion popup for the editor. While it is open, typing narrows the list,
+ * Up/Down move the selection, Enter or Tab inserts the selected name and Escape closes it.
+ */
+public class CompletionPopup {
+    private static final int MAX_VISIBLE_CANDIDATES = 50;
+
+    private final JTextPane editorPane;
+    private final CompletionIndex index;
+
+    private final JPopupMenu popup = new JPopupMenu();
+    private final DefaultListModel<CompletionIndex.Candidate> model = new DefaultListModel<>();
+    private final JList<CompletionIndex.Candidate> list = new JList<>(model);
+    private final JLabel footer = new JLabel(" ");
+
+    private int prefixStart;
+    private boolean inserting;
+
+    public CompletionPopup(JTextPane editorPane, CompletionIndex index) {
+        this.editorPane = editorPane;
+        this.index = index;
+        initComponents();
+        attachListeners();
+    }
+
+    private void initComponents() {
+        list.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        list.setBackground(ColorPalette.TABLE_BACKGROUND);
+        list.setForeground(ColorPalette.TEXT_COLOR);
+        list.setSelectionBackground(ColorPalette.SELECTION_BACKGROUND);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setFocusable(false);
+        list.setVisibleRowCount(10);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> l, Object value, int i, boolean selected, boolean focus) {
+                CompletionIndex.Candidate candidate = (CompletionIndex.Candidate) value;
+                String kind = candidate.isDeclaration() ? "  (script)" : candidate.isKeyword() ? "  (keyword)" : "";
+                return super.getListCellRendererComponent(l, candidate.getName() + kind, i, selected, focus);
+            }
+        });
+
+        footer.setFont(new Font("Arial", Font.PLAIN, 11));
+        footer.setForeground(ColorPalette.TITLE_COLOR);
+        footer.setBorder(new EmptyBorder(2, 5, 2, 5));
+
+        JScrollPane scroll = new JScrollPane(list);
+        scroll.setPreferredSize(new Dimension(320, 200));
+        popup.setLayout(new BorderLayout());
+        popup.add(scroll, BorderLayout.CENTER);
+        popup.add(footer, BorderLayout.SOUTH);
+        popup.setFocusable(false); // typing keeps going to the editor
+        popup.setBackground(ColorPalette.BACKGROUND_DARK);
+    }
+
+    private void attachListeners() {
+        editorPane.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, InputEvent.CTRL_DOWN_MASK), "complete");
+        editorPane.getActionMap().put("complete", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                show();
+            }
+        });
+
+        // Key listeners run before the editor's key bindings, so consuming here keeps the caret still
+        editorPane.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible())
+                    return;
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        moveSelection(1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_UP:
+                        moveSelection(-1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ENTER:
+                    case KeyEvent.VK_TAB:
+                        accept();
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        popup.setVisible(false);
+                        e.consume();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+
+        editorPane.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                refreshLater();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                refreshLater();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+
+        editorPane.addCaretListener(e -> {
+            if (popup.isVisible() && (e.getDot() < prefixStart || e.getDot() > prefixEnd()))
+                popup.setVisible(false);
+        });
+
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2)
+                    accept();
+            }
+        });
+    }
+
+    public void show() {
+        prefixStart = identifierStart(editorPane.getCaretPosition());
+        if (!refresh())
+            return;
+        try {
+            Rectangle2D caret = editorPane.modelToView2D(prefixStart);
+            if (caret != null)
+                popup.show(editorPane, (int) caret.getX(), (int) (caret.getY() + caret.getHeight()));
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void refreshLater() {
+        if (popup.isVisible() && !inserting)
+            SwingUtilities.invokeLater(() -> {
+                if (popup.isVisible() && !refresh())
+                    popup.setVisible(false);
+            });
+    }
+
+    /**
+     * Re-queries the index for the text between the prefix start and the caret.
+     * Returns false when there is nothing to offer.
+     */
+    private boolean refresh() {
+        int caret = editorPane.getCaretPosition();
+        if (caret < prefixStart)
+            return false;
+        String prefix;
+        try {
+            prefix = editorPane.getDocument().getText(prefixStart, caret - prefixStart);
+        } catch (BadLocationException e) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (!Character.isJavaIdentifierPart(prefix.charAt(i)))
+                return false;
+        }
+
+        CompletionIndex.Result result = index.query(prefix, MAX_VISIBLE_CANDIDATES);
+        if (result.getCandidates().isEmpty())
+            return false;
+
+        model.clear();
+        for (CompletionIndex.Candidate candidate : result.getCandidates()) {
+            model.addElement(candidate);
+        }
+        list.setSelectedIndex(0);
+        list.ensureIndexIsVisible(0);
+        LatencyRecorder latency = index.getLatency();
+        footer.setText(result.getCandidates().size() + " of " + result.getMatchCount() + (result.isTruncated() ? "+" : "") + " matches  |  p99 "
+                + String.format("%.2f", latency.percentile(99) / 1e6) + " ms");
+        return true;
+    }
+
+    private void moveSelection(int delta) {
+        int size = model.getSize();
+        if (size == 0)
+            return;
+        int selected = (list.getSelectedIndex() + delta + size) % size;
+        list.setSelectedIndex(selected);
+        list.ensureIndexIsVisible(selected);
+    }
+
+    private void accept() {
+        CompletionIndex.Candidate candidate = list.getSelectedValue();
+        popup.setVisible(false);
+        if (candidate == null)
+            return;
+
+        Document document = editorPane.getDocument();
+        int end = prefixEnd();
+        inserting = true;
+        try {
+            // One replace, so undo takes back the whole completion
+            ((AbstractDocument) document).replace(prefixStart, end - prefixStart, candidate.getName(), null);
+            index.recordAccepted(candidate.getName());
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        } finally {
+            inserting = false;
+        }
+    }
+
+    // The identifier under the caret extends past it when completing in the middle of a word
+    private int prefixEnd() {
+        Document document = editorPane.getDocument();
+        int end = editorPane.getCaretPosition();
+        try {
+            while (end < document.getLength() && Character.isJavaIdentifierPart(document.getText(end, 1).charAt(0)))
+                end++;
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+        return end;
+    }
+
+    private int identifierStart(int caret) {
+        Document document = editorPane.getDocument();
+        int start = caret;
+        try {
+            while (start > 0 && Character.isJavaIdentifierPart(document.getText(start - 1, 1).charAt(0)))
+                start--;
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+        return start;
+    }
+}
@@ -0,0 +1,189 @@
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Asynchronous loading and saving of editor documents.
+ * Files are read through memory-mapped windows and decoded incrementally on a background
+ * thread; the decoded text is inserted into the document in chunks on the EDT.
+ */
+public final class DocumentFiles {
+
+    public interface ProgressListener {
+        void onProgress(long bytesDone, long totalBytes);
+        void onComplete(boolean crlf);
+        void onError(Exception e);
+    }
+
+    private static final long MAP_WINDOW_BYTES = 64L * 1024 * 1024;
+    private static final int CHUNK_CHARS = 256 * 1024;
+    private static final int SAVE_BUFFER_CHARS = 64 * 1024;
+    // How many decoded chunks may wait for the EDT at once
+    private static final int MAX_PENDING_CHUNKS = 4;
+
+    private DocumentFiles() {}
+
+    /**
+     * Handle for a running load that can be cancelled.
+     */
+    public static class LoadTask {
+        private volatile boolean cancelled;
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Appends the contents of a UTF-8 file to the document. CRLF line endings are normalized to LF;
+     * the listener is told whether any were found so they can be restored on save.
+     */
+    public static LoadTask load(Path file, Document document, ProgressListener listener) {
+        LoadTask task = new LoadTask();
+        Thread loader = new Thread(() -> {
+            try {
+                boolean crlf = decodeInto(file, document, listener, task);
+                SwingUtilities.invokeLater(() -> {
+                    if (!task.isCancelled())
+                        listener.onComplete(crlf);
+                });
+            } catch (Exception e) {
+                SwingUtilities.invokeLater(() -> listener.onError(e));
+            }
+        }, "document-loader");
+        loader.setDaemon(true);
+        loader.start();
+        return task;
+    }
+
+    private static boolean decodeInto(Path file, Document document, ProgressListener listener, LoadTask task)
+            throws IOException, InterruptedException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        Semaphore pending = new Semaphore(MAX_PENDING_CHUNKS);
+        CharBuffer chars = CharBuffer.allocate(CHUNK_CHARS);
+        boolean crlf = false;
+        boolean pendingCr = false;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+
+            while (!task.isCancelled()) {
+                // Windows start where decoding stopped, so a multi-byte sequence is never split
+                long windowSize = Math.min(MAP_WINDOW_BYTES, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                boolean endOfInput = position + windowSize >= size;
+
+                while (!task.isCancelled()) {
+                    CoderResult result = decoder.decode(window, chars, endOfInput);
+                    if (endOfInput && result.isUnderflow())
+                        decoder.flush(chars);
+
+                    chars.flip();
+                    StringBuilder chunk = new StringBuilder(chars.remaining() + 1);
+                    if (pendingCr) {
+                        chunk.append('\r');
+                        pendingCr = false;
+                    }
+                    chunk.append(chars);
+                    chars.clear();
+
+                    // Hold back a trailing CR until we know whether an LF follows
+                    if (!(endOfInput && result.isUnderflow()) && chunk.length() > 0
+                            && chunk.charAt(chunk.length() - 1) == '\r') {
+                        chunk.setLength(chunk.length() - 1);
+                        pendingCr = true;
+                    }
+                    String text = chunk.toString();
+                    if (text.contains("\r\n")) {
+                        crlf = true;
+                        text = text.replace("\r\n", "\n");
+                    }
+
+                    long done = position + window.position();
+                    insertOnEdt(document, text, pending, listener, done, size, task);
+
+                    if (result.isUnderflow())
+                        break;
+                }
+
+                position += window.position();
+                if (endOfInput)
+                    break;
+            }
+        }
+
+        // Wait until every chunk has been inserted
+        pending.acquire(MAX_PENDING_CHUNKS);
+        return crlf;
+    }
+
+    private static void insertOnEdt(Document document, String text, Semaphore pending, ProgressListener listener,
+                                    long bytesDone, long totalBytes, LoadTask task) throws InterruptedException {
+        pending.acquire();
+        SwingUtilities.invokeLater(() -> {
+            try {
+                // Chunks of a cancelled load must not end up in the document that replaced it
+                if (task.isCancelled())
+                    return;
+                if (!text.isEmpty())
+                    document.insertString(document.getLength(), text, null);
+                listener.onProgress(bytesDone, totalBytes);
+            } catch (BadLocationException e) {
+                e.printStackTrace();
+            } finally {
+                pending.release();
+            }
+        });
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to the target and moves it into place,
+     * so the target is never left half-written. Runs on the calling thread.
+     */
+    public static void save(TextSnapshot snapshot, Path target, boolean crlf) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, "." + target.getFileName(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                char[] buffer = new char[SAVE_BUFFER_CHARS];
+                for (int start = 0; start < snapshot.length(); start += SAVE_BUFFER_CHARS) {
+                    int end = Math.min(snapshot.length(), start + SAVE_BUFFER_CHARS);
+                    snapshot.getChars(start, end, buffer, 0);
+                    if (crlf) {
+                        for (int i = 0; i < end - start; i++) {
+                            if (buffer[i] == '\n') writer.write('\r');
+                            writer.write(buffer[i]);
+                        }
+                    } else {
+                        writer.write(buffer, 0, end - start);
+                    }
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
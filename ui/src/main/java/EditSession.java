@@ -0,0 +1,214 @@
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A timed sequence of edits to a script, for replaying typing into the editor. Sessions are stored as
+ * JSON Lines: a first line {"initialText": ...} followed by one {"at": ms, "offset": n, "remove": n,
+ * "text": ...} line per edit, with times relative to the start of the session. {@link Recorder} writes
+ * them from a live document; {@link #synthetic} makes one up.
+ */
+public class EditSession {
+    private static final String[] WORDS = {
+        "value", "count", "index", "name", "items", "total", "result", "buffer", "node", "key"
+    };
+
+    private final String initialText;
+    private final List<Edit> edits;
+
+    /**
+     * Replaces {@code remove} characters at {@code offset} with {@code text}; a keystroke, a backspace
+     * or a paste.
+     */
+    public static final class Edit {
+        final long atMillis;
+        final int offset;
+        final int remove;
+        final String text;
+
+        Edit(long atMillis, int offset, int remove, String text) {
+            this.atMillis = atMillis;
+            this.offset = offset;
+            this.remove = remove;
+            this.text = text;
+        }
+
+        public long getAtMillis() {
+            return atMillis;
+        }
+
+        public void applyTo(AbstractDocument document) throws BadLocationException {
+            // replace() is what typing into a JTextPane goes through
+            document.replace(offset, remove, text, null);
+        }
+    }
+
+    public EditSession(String initialText, List<Edit> edits) {
+        this.initialText = initialText;
+        this.edits = edits;
+    }
+
+    public String getInitialText() {
+        return initialText;
+    }
+
+    public List<Edit> getEdits() {
+        return edits;
+    }
+
+    public long getDurationMillis() {
+        return edits.isEmpty() ? 0 : edits.get(edits.size() - 1).atMillis;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static EditSession load(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty())
+            throw new IOException(file + " is empty");
+        try {
+            Map<String, Object> header = (Map<String, Object>) Json.parse(lines.get(0));
+            String initialText = (String) header.getOrDefault("initialText", "");
+            List<Edit> edits = new ArrayList<>();
+            for (String line : lines.subList(1, lines.size())) {
+                if (line.isBlank())
+                    continue;
+                Map<String, Object> edit = (Map<String, Object>) Json.parse(line);
+                edits.add(new Edit(
+                        ((Number) edit.get("at")).longValue(),
+                        ((Number) edit.get("offset")).intValue(),
+                        ((Number) edit.getOrDefault("remove", 0)).intValue(),
+                        (String) edit.getOrDefault("text", "")));
+            }
+            return new EditSession(initialText, edits);
+        } catch (RuntimeException e) {
+            throw new IOException(file + " is not a session file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Someone typing statements into the middle of a script of the given size: 60-180 ms between keys,
+     * a pause now and then between words, typos fixed with backspace and an occasional pasted block.
+     * The same arguments always give the same session.
+     */
+    public static EditSession synthetic(int scriptLines, int keystrokes, long seed) {
+        Random random = new Random(seed);
+        StringBuilder script = new StringBuilder();
+        int function = 0;
+        for (int lines = 0; lines < scriptLines; lines += 7) {
+            script.append("fun f").append(function).append("(a: Int, b: String): Int {\n");
+            script.append("    // ").append(WORDS[function % WORDS.length]).append(" is checked first\n");
+            script.append("    val s").append(function).append(" = \"").append(WORDS[function % WORDS.length]).append(" ${a} $b\"\n");
+            script.append("    println(f").append(Math.max(0, function - 1)).append("(a + 1, s").append(function).append("))\n");
+            script.append("    return a\n");
+            script.append("}\n\n");
+            function++;
+        }
+        String initialText = script.toString();
+
+        // Type into the body of the middle function
+        int caret = initialText.indexOf("    return a\n", initialText.length() / 2);
+        List<Edit> edits = new ArrayList<>();
+        long at = 0;
+        int typed = 0;
+        while (typed < keystrokes) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (typed > 0 && random.nextInt(12) == 0) {
+                // A pasted block arrives as one insert
+                StringBuilder block = new StringBuilder();
+                for (int i = 0; i < 5; i++) {
+                    block.append("    val ").append(word).append(typed).append('_').append(i)
+                            .append(" = a * ").append(i).append(" // pasted\n");
+                }
+                at += 300 + random.nextInt(500);
+                edits.add(new Edit(at, caret, 0, block.toString()));
+                caret += block.length();
+                typed++;
+                continue;
+            }
+            String statement = random.nextBoolean()
+                    ? "    val " + word + typed + " = \"" + word + " ${a}\"\n"
+                    : "    println(f" + random.nextInt(function) + "(a, b))\n";
+            for (int i = 0; i < statement.length() && typed < keystrokes; i++) {
+                char c = statement.charAt(i);
+                at += 60 + random.nextInt(121);
+                if (c == ' ' && random.nextInt(4) == 0)
+                    at += 400 + random.nextInt(800);
+                if (Character.isLetter(c) && random.nextInt(20) == 0) {
+                    edits.add(new Edit(at, caret, 0, "x"));
+                    at += 150 + random.nextInt(200);
+                    edits.add(new Edit(at, caret, 1, ""));
+                    at += 60 + random.nextInt(121);
+                    typed += 2;
+                }
+                edits.add(new Edit(at, caret, 0, String.valueOf(c)));
+                caret++;
+                typed++;
+            }
+        }
+        return new EditSession(initialText, edits);
+    }
+
+    /**
+     * Writes every edit of a document to a session file as it happens, starting from the text the
+     * document has now. A replace is recorded as its remove and its insert.
+     */
+    public static final class Recorder implements DocumentListener {
+        private final AbstractDocument document;
+        private final BufferedWriter writer;
+        private final long startNanos = System.nanoTime();
+
+        public Recorder(AbstractDocument document, Path file) throws IOException {
+            this.document = document;
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            try {
+                writeLine("{\"initialText\": " + Json.quote(document.getText(0, document.getLength())) + "}");
+            } catch (BadLocationException e) {
+                throw new IllegalStateException(e);
+            }
+            document.addDocumentListener(this);
+        }
+
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            try {
+                record(e.getOffset(), 0, document.getText(e.getOffset(), e.getLength()));
+            } catch (BadLocationException ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            record(e.getOffset(), e.getLength(), "");
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+        }
+
+        private void record(int offset, int remove, String text) {
+            long at = (System.nanoTime() - startNanos) / 1_000_000;
+            writeLine("{\"at\": " + at + ", \"offset\": " + offset + ", \"remove\": " + remove
+                    + ", \"text\": " + Json.quote(text) + "}");
+        }
+
+        // Flushed per line, so the file is complete whenever the IDE is closed
+        private void writeLine(String line) {
+            try {
+                writer.write(line);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                System.err.println("Session recording stopped: " + e.getMessage());
+                document.removeDocumentListener(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the caches of all open editors under one budget. Editors are ordered by when they were last
+ * active; when the total goes over the budget, the caches of the editors used longest ago are released
+ * until it fits again. The active editor is never released, so a single huge script can exceed the
+ * budget on its own. Sized by -Dkotlin.ide.editorCacheMb. Only used from the EDT.
+ */
+public class EditorMemoryBudget {
+    public static final long DEFAULT_BYTES = Long.getLong("kotlin.ide.editorCacheMb", 128) << 20;
+
+    private final long maxBytes;
+    // Least recently active first
+    private final List<ScriptEditor> editors = new ArrayList<>();
+
+    public EditorMemoryBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public void add(ScriptEditor editor) {
+        editors.add(0, editor);
+    }
+
+    public void remove(ScriptEditor editor) {
+        editors.remove(editor);
+    }
+
+    /**
+     * Makes the editor the active one, all others background ones, and releases caches if needed.
+     */
+    public void activate(ScriptEditor editor) {
+        editors.remove(editor);
+        editors.add(editor);
+        for (ScriptEditor other : editors) {
+            if (other != editor)
+                other.setActive(false);
+        }
+        editor.setActive(true);
+        enforce();
+    }
+
+    /**
+     * Releases caches of background editors, oldest first, until the total fits the budget.
+     */
+    public void enforce() {
+        long total = getUsedBytes();
+        for (ScriptEditor editor : editors) {
+            if (total <= maxBytes)
+                return;
+            if (editor.isActive())
+                continue;
+            long bytes = editor.getCacheBytes();
+            if (bytes > 0) {
+                editor.releaseCaches();
+                total -= bytes;
+            }
+        }
+    }
+
+    public long getUsedBytes() {
+        long total = 0;
+        for (ScriptEditor editor : editors) {
+            total += editor.getCacheBytes();
+        }
+        return total;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
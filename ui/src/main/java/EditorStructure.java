@@ -0,0 +1,99 @@
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a {@link BlockStructure} in step with the editor document and highlights the bracket pair
+ * at the caret. Listeners are told after every edit, once the tree has been updated. Only used from the EDT.
+ */
+public class EditorStructure {
+    private static final Color MATCH_COLOR = new Color(59, 81, 65);
+
+    private final JTextPane editorPane;
+    private final SnapshotDocument document;
+    private BlockStructure structure;
+    private final List<ChangeListener> listeners = new ArrayList<>();
+
+    private final Highlighter.HighlightPainter matchPainter = new DefaultHighlighter.DefaultHighlightPainter(MATCH_COLOR);
+    private final List<Object> matchHighlights = new ArrayList<>();
+    private boolean matchUpdatePending;
+
+    public EditorStructure(JTextPane editorPane, SnapshotDocument document) {
+        this.editorPane = editorPane;
+        this.document = document;
+        this.structure = BlockStructure.build(document.snapshot());
+        attachListeners();
+    }
+
+    public BlockStructure getStructure() {
+        return structure;
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    private void attachListeners() {
+        document.addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                structure.applyEdit(document.snapshot(), e.getOffset(), 0, e.getLength());
+                fireChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                structure.applyEdit(document.snapshot(), e.getOffset(), e.getLength(), 0);
+                fireChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+
+        // The caret moves before this class sees the edit, so the lookup waits for the tree to catch up
+        editorPane.addCaretListener(e -> {
+            if (matchUpdatePending)
+                return;
+            matchUpdatePending = true;
+            SwingUtilities.invokeLater(() -> {
+                matchUpdatePending = false;
+                updateMatchHighlight();
+            });
+        });
+    }
+
+    private void fireChanged() {
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : listeners) {
+            listener.stateChanged(event);
+        }
+    }
+
+    private void updateMatchHighlight() {
+        Highlighter highlighter = editorPane.getHighlighter();
+        for (Object tag : matchHighlights) {
+            highlighter.removeHighlight(tag);
+        }
+        matchHighlights.clear();
+
+        int[] pair = structure.findMatchingBrackets(editorPane.getCaretPosition());
+        if (pair == null)
+            return;
+        try {
+            matchHighlights.add(highlighter.addHighlight(pair[0], pair[0] + 1, matchPainter));
+            matchHighlights.add(highlighter.addHighlight(pair[1], pair[1] + 1, matchPainter));
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.InvocationEvent;
+
+/**
+ * Notices EDT events that run longer than a threshold and samples the EDT's stack while they are still
+ * running, so a hitch can be traced to the code that caused it. The stall is reported to
+ * {@link Instrumentation} with the sampled stack, and its duration is added when the event finishes.
+ *
+ * A dispatch that opens a modal dialog runs further events from inside itself; the time spent waiting
+ * in such a nested loop is not counted as a stall.
+ */
+public class EdtWatchdog {
+    private final long thresholdNanos;
+    private final WatchedQueue queue = new WatchedQueue();
+
+    private final class WatchedQueue extends EventQueue {
+        volatile Thread edt;
+        // Start of the current uninterrupted stretch of dispatching, 0 when idle
+        volatile long busySinceNanos;
+        volatile long dispatchCount;
+        volatile String eventType;
+        volatile Instrumentation.Stall stall;
+        private int depth;
+
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            edt = Thread.currentThread();
+            String outerType = eventType;
+            if (depth++ > 0)
+                finishStretch();
+            startStretch(describe(event));
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                finishStretch();
+                if (--depth > 0)
+                    startStretch(outerType);
+                else
+                    busySinceNanos = 0;
+            }
+        }
+
+        // Everything posted with invokeLater is an InvocationEvent; its runnable says where it came from
+        private String describe(AWTEvent event) {
+            if (!(event instanceof InvocationEvent))
+                return event.getClass().getSimpleName();
+            String params = event.paramString();
+            int start = params.indexOf("runnable=");
+            int end = params.indexOf(",notifier=");
+            return start >= 0 && end > start ? params.substring(start + "runnable=".length(), end) : params;
+        }
+
+        private void startStretch(String type) {
+            stall = null;
+            eventType = type;
+            dispatchCount++;
+            busySinceNanos = System.nanoTime();
+        }
+
+        private void finishStretch() {
+            Instrumentation.Stall finished = stall;
+            if (finished != null)
+                Instrumentation.stallFinished(finished, System.nanoTime() - busySinceNanos);
+            stall = null;
+        }
+    }
+
+    public EdtWatchdog(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis * 1_000_000;
+    }
+
+    public void install() {
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(queue);
+        Thread watcher = new Thread(this::watch, "edt-watchdog");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch() {
+        long pollMillis = Math.max(1, thresholdNanos / 5_000_000);
+        long sampledDispatch = -1;
+        while (true) {
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long since = queue.busySinceNanos;
+            long dispatch = queue.dispatchCount;
+            Thread edt = queue.edt;
+            if (since == 0 || edt == null || dispatch == sampledDispatch || System.nanoTime() - since < thresholdNanos)
+                continue;
+
+            sampledDispatch = dispatch;
+            Instrumentation.Stall stall = new Instrumentation.Stall(
+                    System.currentTimeMillis() - (System.nanoTime() - since) / 1_000_000,
+                    queue.eventType, edt.getStackTrace());
+            Instrumentation.recordStall(stall);
+            // The event may have finished while the stack was taken; then the stall is not finished by it
+            if (queue.dispatchCount == dispatch && queue.busySinceNanos == since)
+                queue.stall = stall;
+            else
+                Instrumentation.stallFinished(stall, thresholdNanos);
+        }
+    }
+}
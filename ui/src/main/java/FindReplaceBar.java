@@ -0,0 +1,511 @@
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Find/replace bar above the editor. Searches run on a background thread over a document snapshot and
+ * stream their match offsets back in batches, so the count grows live and the EDT never scans the text.
+ * Only the matches inside the visible part of the editor get a highlight.
+ */
+public class FindReplaceBar extends JPanel {
+    private static final int PUBLISH_BATCH = 4096;
+    private static final long PUBLISH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final JTextPane editorPane;
+    private final SnapshotDocument document;
+
+    private final JTextField findField = new JTextField(24);
+    private final JTextField replaceField = new JTextField(24);
+    private final JCheckBox regexBox = new JCheckBox("Regex");
+    private final JCheckBox matchCaseBox = new JCheckBox("Match case");
+    private final JLabel countLabel = new JLabel(" ");
+    private final JPanel replaceRow = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+    private final Color findForeground = findField.getForeground();
+
+    private final AnalysisPool.Client analysisClient;
+    // Bumped for every new search or replace-all; workers stop as soon as theirs is outdated
+    private final AtomicLong generation = new AtomicLong();
+
+    private TextSearch search;
+    private long searchVersion = -1;
+    private int[] matchStarts = new int[0];
+    private int[] matchEnds = new int[0];
+    private int matchCount;
+    private boolean searchComplete;
+    private int currentMatch = -1;
+    private boolean selectOnArrival;
+    private boolean researchPending;
+    private String notice = "";
+
+    private final Highlighter.HighlightPainter matchPainter = new DefaultHighlighter.DefaultHighlightPainter(new Color(90, 90, 40));
+    private final Highlighter.HighlightPainter currentPainter = new DefaultHighlighter.DefaultHighlightPainter(new Color(150, 120, 30));
+    private final List<Object> highlights = new ArrayList<>();
+    private JViewport viewport;
+
+    public FindReplaceBar(JTextPane editorPane, SnapshotDocument document) {
+        this(editorPane, document, AnalysisPool.shared().newClient());
+    }
+
+    /**
+     * A bar that searches on the shared pool, as the given client.
+     */
+    public FindReplaceBar(JTextPane editorPane, SnapshotDocument document, AnalysisPool.Client analysisClient) {
+        super(new BorderLayout());
+        this.editorPane = editorPane;
+        this.document = document;
+        this.analysisClient = analysisClient;
+        initComponents();
+        attachListeners();
+        setVisible(false);
+    }
+
+    private void initComponents() {
+        setBackground(ColorPalette.BACKGROUND_DARK);
+
+        JPanel findRow = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+        findRow.setBackground(ColorPalette.BACKGROUND_DARK);
+        findRow.add(createLabel("Find:"));
+        findRow.add(findField);
+        findRow.add(createButton("Prev", e -> navigate(false)));
+        findRow.add(createButton("Next", e -> navigate(true)));
+        findRow.add(styleCheckBox(matchCaseBox));
+        findRow.add(styleCheckBox(regexBox));
+        countLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+        countLabel.setForeground(ColorPalette.TITLE_COLOR);
+        findRow.add(countLabel);
+
+        replaceRow.setBackground(ColorPalette.BACKGROUND_DARK);
+        replaceRow.add(createLabel("Replace:"));
+        replaceRow.add(replaceField);
+        replaceRow.add(createButton("Replace", e -> replaceCurrent()));
+        replaceRow.add(createButton("Replace All", e -> replaceAll()));
+
+        JButton closeButton = createButton("x", e -> close());
+        closeButton.setToolTipText("Close (Escape)");
+
+        add(findRow, BorderLayout.NORTH);
+        add(replaceRow, BorderLayout.CENTER);
+        add(closeButton, BorderLayout.EAST);
+    }
+
+    private JLabel createLabel(String text) {
+        JLabel label = new JLabel(text);
+        label.setFont(new Font("Arial", Font.BOLD, 12));
+        label.setForeground(ColorPalette.TEXT_COLOR);
+        return label;
+    }
+
+    private JButton createButton(String text, java.awt.event.ActionListener action) {
+        JButton button = new JButton(text);
+        button.setFont(new Font("Arial", Font.BOLD, 12));
+        button.setBackground(ColorPalette.BACKGROUND_COLOR);
+        button.setForeground(ColorPalette.TEXT_COLOR);
+        button.setFocusPainted(false);
+        button.setBorderPainted(false);
+        button.setOpaque(true);
+        button.addActionListener(action);
+        return button;
+    }
+
+    private JCheckBox styleCheckBox(JCheckBox box) {
+        box.setFont(new Font("Arial", Font.BOLD, 12));
+        box.setBackground(ColorPalette.BACKGROUND_DARK);
+        box.setForeground(ColorPalette.TEXT_COLOR);
+        box.setFocusPainted(false);
+        box.addActionListener(e -> queryChanged());
+        return box;
+    }
+
+    private void attachListeners() {
+        findField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        findField.addActionListener(e -> navigate(true));
+        findField.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, InputEvent.SHIFT_DOWN_MASK), "previous");
+        findField.getActionMap().put("previous", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                navigate(false);
+            }
+        });
+        replaceField.addActionListener(e -> replaceCurrent());
+
+        getInputMap(WHEN_ANCESTOR_OF_FOCUSED_COMPONENT).put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "close");
+        getActionMap().put("close", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                close();
+            }
+        });
+
+        // Offsets go stale with every edit, so the open bar searches again once the edit burst is over
+        document.addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                documentChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                documentChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+    }
+
+    /**
+     * Opens the bar, seeded with the selected text if it is on a single line.
+     */
+    public void open(boolean withReplace) {
+        replaceRow.setVisible(withReplace);
+        String selected = editorPane.getSelectedText();
+        if (selected != null && !selected.isEmpty() && selected.indexOf('\n') < 0)
+            findField.setText(selected);
+        setVisible(true);
+        revalidate();
+
+        if (viewport == null) {
+            viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, editorPane);
+            if (viewport != null)
+                viewport.addChangeListener(e -> updateVisibleHighlights());
+        }
+        findField.requestFocusInWindow();
+        findField.selectAll();
+        queryChanged();
+    }
+
+    public void close() {
+        setVisible(false);
+        generation.incrementAndGet();
+        clearHighlights();
+        editorPane.requestFocusInWindow();
+    }
+
+    private void queryChanged() {
+        if (!isVisible())
+            return;
+        selectOnArrival = true;
+        notice = "";
+        startSearch();
+    }
+
+    private void documentChanged() {
+        if (!isVisible() || researchPending)
+            return;
+        researchPending = true;
+        SwingUtilities.invokeLater(() -> {
+            researchPending = false;
+            if (isVisible())
+                startSearch();
+        });
+    }
+
+    private void startSearch() {
+        long gen = generation.incrementAndGet();
+        matchCount = 0;
+        currentMatch = -1;
+        searchComplete = false;
+        clearHighlights();
+        findField.setForeground(findForeground);
+
+        String text = findField.getText();
+        if (text.isEmpty()) {
+            search = null;
+            countLabel.setText(" ");
+            return;
+        }
+        try {
+            search = new TextSearch(text, regexBox.isSelected(), matchCaseBox.isSelected());
+        } catch (PatternSyntaxException e) {
+            search = null;
+            findField.setForeground(ColorPalette.ERROR_COLOR);
+            countLabel.setText("Invalid regex: " + e.getDescription());
+            return;
+        }
+
+        TextSnapshot snapshot = document.snapshot();
+        searchVersion = snapshot.getVersion();
+        TextSearch query = search;
+        countLabel.setText("Searching...");
+        analysisClient.submit(() -> runSearch(gen, query, snapshot));
+    }
+
+    private void runSearch(long gen, TextSearch query, TextSnapshot snapshot) {
+        int[] starts = new int[PUBLISH_BATCH];
+        int[] ends = new int[PUBLISH_BATCH];
+        int[] count = {0};
+        long[] lastPublish = {System.nanoTime()};
+        try {
+            query.find(snapshot, (start, end) -> {
+                if (generation.get() != gen)
+                    return false;
+                starts[count[0]] = start;
+                ends[count[0]] = end;
+                if (++count[0] == PUBLISH_BATCH || System.nanoTime() - lastPublish[0] > PUBLISH_INTERVAL_NANOS) {
+                    publish(gen, starts, ends, count[0], false);
+                    count[0] = 0;
+                    lastPublish[0] = System.nanoTime();
+                }
+                return true;
+            });
+            if (generation.get() == gen)
+                publish(gen, starts, ends, count[0], true);
+        } catch (RuntimeException | StackOverflowError e) {
+            // Deeply nested regexes can overflow the matcher's recursion
+            SwingUtilities.invokeLater(() -> {
+                if (generation.get() == gen)
+                    countLabel.setText("Search failed: " + e.getClass().getSimpleName());
+            });
+        }
+    }
+
+    private void publish(long gen, int[] starts, int[] ends, int count, boolean done) {
+        int[] batchStarts = Arrays.copyOf(starts, count);
+        int[] batchEnds = Arrays.copyOf(ends, count);
+        SwingUtilities.invokeLater(() -> appendMatches(gen, batchStarts, batchEnds, done));
+    }
+
+    private void appendMatches(long gen, int[] starts, int[] ends, boolean done) {
+        if (generation.get() != gen)
+            return;
+        if (matchCount + starts.length > matchStarts.length) {
+            int capacity = Math.max(matchStarts.length * 2, matchCount + starts.length);
+            matchStarts = Arrays.copyOf(matchStarts, capacity);
+            matchEnds = Arrays.copyOf(matchEnds, capacity);
+        }
+        System.arraycopy(starts, 0, matchStarts, matchCount, starts.length);
+        System.arraycopy(ends, 0, matchEnds, matchCount, ends.length);
+        matchCount += starts.length;
+        searchComplete = done;
+
+        // While typing a query, jump to the first match after the caret, like the editor's own search
+        if (selectOnArrival && matchCount > 0) {
+            int caret = Math.min(editorPane.getSelectionStart(), editorPane.getCaretPosition());
+            int index = firstMatchEndingAfter(caret);
+            if (index < matchCount) {
+                selectOnArrival = false;
+                selectMatch(index);
+                return;
+            }
+            if (done) {
+                selectOnArrival = false;
+                selectMatch(0);
+                return;
+            }
+        }
+        if (done)
+            selectOnArrival = false;
+        updateCountLabel();
+        updateVisibleHighlights();
+    }
+
+    private void updateCountLabel() {
+        String suffix = searchComplete ? "" : "...";
+        String count;
+        if (matchCount == 0)
+            count = searchComplete ? "No matches" : "Searching...";
+        else if (currentMatch >= 0)
+            count = (currentMatch + 1) + " of " + matchCount + suffix;
+        else
+            count = matchCount + " matches" + suffix;
+        countLabel.setText(notice + count);
+    }
+
+    private boolean matchesCurrent() {
+        return search != null && searchVersion == document.getVersion();
+    }
+
+    private void navigate(boolean forward) {
+        if (!matchesCurrent() || matchCount == 0)
+            return;
+        int index;
+        if (forward) {
+            int from = editorPane.getSelectionEnd();
+            index = firstMatchEndingAfter(from);
+            // A match ending exactly at the caret is the one already selected
+            while (index < matchCount && matchStarts[index] < from) index++;
+            if (index == matchCount)
+                index = 0;
+        } else {
+            int from = editorPane.getSelectionStart();
+            index = firstMatchEndingAfter(from) - 1;
+            while (index >= 0 && matchStarts[index] >= from) index--;
+            if (index < 0)
+                index = matchCount - 1;
+        }
+        selectMatch(index);
+    }
+
+    private void selectMatch(int index) {
+        currentMatch = index;
+        editorPane.select(matchStarts[index], matchEnds[index]);
+        try {
+            Rectangle2D bounds = editorPane.modelToView2D(matchStarts[index]);
+            if (bounds != null)
+                editorPane.scrollRectToVisible(bounds.getBounds());
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+        updateCountLabel();
+        updateVisibleHighlights();
+    }
+
+    // Binary search over the sorted, non-overlapping matches
+    private int firstMatchEndingAfter(int offset) {
+        int low = 0;
+        int high = matchCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (matchEnds[mid] <= offset)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private void updateVisibleHighlights() {
+        clearHighlights();
+        if (!isVisible() || matchCount == 0 || !matchesCurrent())
+            return;
+
+        Rectangle visible = editorPane.getVisibleRect();
+        int from = editorPane.viewToModel2D(new Point(visible.x, visible.y));
+        int to = editorPane.viewToModel2D(new Point(visible.x + visible.width, visible.y + visible.height));
+        Highlighter highlighter = editorPane.getHighlighter();
+        for (int i = firstMatchEndingAfter(from); i < matchCount && matchStarts[i] <= to; i++) {
+            try {
+                highlights.add(highlighter.addHighlight(matchStarts[i], matchEnds[i],
+                        i == currentMatch ? currentPainter : matchPainter));
+            } catch (BadLocationException e) {
+                break;
+            }
+        }
+    }
+
+    private void clearHighlights() {
+        Highlighter highlighter = editorPane.getHighlighter();
+        for (Object highlight : highlights) {
+            highlighter.removeHighlight(highlight);
+        }
+        highlights.clear();
+    }
+
+    private void replaceCurrent() {
+        if (!matchesCurrent() || !editorPane.isEditable())
+            return;
+        if (currentMatch < 0) {
+            navigate(true);
+            return;
+        }
+        int start = matchStarts[currentMatch];
+        int end = matchEnds[currentMatch];
+        String replacement;
+        try {
+            replacement = search.replacementFor(document.snapshot(), start, end, replaceField.getText());
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            countLabel.setText("Invalid replacement: " + e.getMessage());
+            return;
+        }
+        if (replacement == null) {
+            navigate(true);
+            return;
+        }
+        try {
+            document.replaceRanges(new int[]{start}, new int[]{end}, new String[]{replacement}, 1);
+            editorPane.setCaretPosition(start + replacement.length());
+            // The search restarts after the edit; move on to the next match once it arrives
+            selectOnArrival = true;
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Collects every match with its replacement on the worker, then applies them as one undoable edit.
+     */
+    private void replaceAll() {
+        if (search == null || !editorPane.isEditable())
+            return;
+        long gen = generation.incrementAndGet();
+        TextSearch query = search;
+        TextSnapshot snapshot = document.snapshot();
+        String replacement = replaceField.getText();
+        countLabel.setText("Replacing...");
+
+        analysisClient.submit(() -> {
+            int[][] ranges = {new int[256], new int[256]};
+            String[][] texts = {new String[256]};
+            int[] count = {0};
+            try {
+                query.findReplacements(snapshot, replacement, (start, end, text) -> {
+                    if (generation.get() != gen)
+                        return false;
+                    int n = count[0];
+                    if (n == ranges[0].length) {
+                        ranges[0] = Arrays.copyOf(ranges[0], n * 2);
+                        ranges[1] = Arrays.copyOf(ranges[1], n * 2);
+                        texts[0] = Arrays.copyOf(texts[0], n * 2);
+                    }
+                    ranges[0][n] = start;
+                    ranges[1][n] = end;
+                    texts[0][n] = text;
+                    count[0]++;
+                    return true;
+                });
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                SwingUtilities.invokeLater(() -> {
+                    if (generation.get() == gen)
+                        countLabel.setText("Invalid replacement: " + e.getMessage());
+                });
+                return;
+            }
+
+            SwingUtilities.invokeLater(() -> {
+                if (generation.get() != gen)
+                    return;
+                if (document.getVersion() != snapshot.getVersion()) {
+                    // Edited while the matches were collected; the offsets no longer apply
+                    startSearch();
+                    return;
+                }
+                try {
+                    document.replaceRanges(ranges[0], ranges[1], texts[0], count[0]);
+                } catch (BadLocationException e) {
+                    e.printStackTrace();
+                }
+                notice = "Replaced " + count[0] + "  |  ";
+                startSearch();
+            });
+        });
+    }
+}
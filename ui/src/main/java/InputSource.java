@@ -0,0 +1,55 @@
+import java.nio.file.Path;
+
+/**
+ * Where a script run reads its standard input from.
+ */
+public class InputSource {
+    public enum Type {
+        NONE,
+        FILE,
+        TEXT,
+        INTERACTIVE
+    }
+
+    public static final InputSource NONE = new InputSource(Type.NONE, null, null);
+    public static final InputSource INTERACTIVE = new InputSource(Type.INTERACTIVE, null, null);
+
+    private final Type type;
+    private final Path file;
+    private final String text;
+
+    private InputSource(Type type, Path file, String text) {
+        this.type = type;
+        this.file = file;
+        this.text = text;
+    }
+
+    public static InputSource fromFile(Path file) {
+        return new InputSource(Type.FILE, file, null);
+    }
+
+    public static InputSource fromText(String text) {
+        return new InputSource(Type.TEXT, null, text);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String describe() {
+        switch (type) {
+            case FILE:        return "file " + file.getFileName();
+            case TEXT:        return "text (" + text.length() + " chars)";
+            case INTERACTIVE: return "interactive";
+            default:          return "none";
+        }
+    }
+}
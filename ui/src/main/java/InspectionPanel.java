@@ -1,6 +1,7 @@
 import javax.swing.*;
 import javax.swing.border.*;
 import javax.swing.table.*;
+import javax.swing.text.Element;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.*;
@@ -24,7 +25,27 @@ public class InspectionPanel extends JPanel {
         statusLabel.setFont(new Font("Arial", Font.BOLD, 12));
         statusLabel.setForeground(Color.WHITE);
         statusLabel.setBorder(new EmptyBorder(5, 5, 5, 5));
+        add(statusLabel, BorderLayout.NORTH);
         
+        // Border with title
+        TitledBorder border = BorderFactory.createTitledBorder(
+            BorderFactory.createLineBorder(ColorPalette.GRID_COLOR),
+            "Inspections",
+            TitledBorder.LEFT,
+            TitledBorder.TOP,
+            new Font("Arial", Font.BOLD, 12),
+                ColorPalette.TITLE_COLOR
+        );
+        setBorder(border);
+    }
+    
+    /**
+     * Builds the table. Loading JTable and its renderers is a noticeable part of startup, so the IDE
+     * calls this once its first frame is painted; the first result shown builds it otherwise.
+     */
+    public void initTable() {
+        if (tableModel != null)
+            return;
         tableModel = new InspectionTableModel();
         inspectionTable = new JTable(tableModel);
         
@@ -93,20 +114,8 @@ public class InspectionPanel extends JPanel {
         scrollPane.setBorder(new LineBorder(ColorPalette.GRID_COLOR));
         scrollPane.getViewport().setBackground(ColorPalette.TABLE_BACKGROUND);
         
-        // Layout
-        add(statusLabel, BorderLayout.NORTH);
         add(scrollPane, BorderLayout.CENTER);
-        
-        // Border with title
-        TitledBorder border = BorderFactory.createTitledBorder(
-            BorderFactory.createLineBorder(ColorPalette.GRID_COLOR),
-            "Inspections",
-            TitledBorder.LEFT,
-            TitledBorder.TOP,
-            new Font("Arial", Font.BOLD, 12),
-                ColorPalette.TITLE_COLOR
-        );
-        setBorder(border);
+        revalidate();
     }
     
     private String getMessageForSeverity(Diagnostic.Severity severity) {
@@ -126,6 +135,7 @@ public class InspectionPanel extends JPanel {
     }
     
     public void updateInspections(AnalysisResult result) {
+        initTable();
         if (result == null) {
             tableModel.clear();
             statusLabel.setText(" No analysis available");
@@ -133,7 +143,9 @@ public class InspectionPanel extends JPanel {
         }
         
         List<Diagnostic> diagnostics = result.getDiagnostics();
+        Instrumentation.Timing timing = Instrumentation.begin(Instrumentation.Subsystem.INSPECTION_TABLE);
         tableModel.setDiagnostics(diagnostics);
+        timing.end(diagnostics.size());
         
         // Update status label
         int errors = result.getErrorCount();
@@ -162,20 +174,18 @@ public class InspectionPanel extends JPanel {
     }
     
     private void navigateToIssue(Diagnostic diag) {
-        String text = editorPane.getText();
-        String[] lines = text.split("\n", -1);
+        // Line offsets come from the document's line elements, no need to copy the text
+        Element root = editorPane.getDocument().getDefaultRootElement();
 
         int line = diag.getLine();
         int column = diag.getColumn();
 
-        if (line < 1 || line > lines.length)
+        if (line < 1 || line > root.getElementCount())
             return;
 
-        int offset = 0;
-        for (int i = 0; i < line - 1; i++) {
-            offset += lines[i].length() + 1;
-        }
-        offset += Math.max(0, Math.min(column - 1, lines[line - 1].length()));
+        Element lineElement = root.getElement(line - 1);
+        int lineLength = lineElement.getEndOffset() - lineElement.getStartOffset() - 1;
+        int offset = lineElement.getStartOffset() + Math.max(0, Math.min(column - 1, lineLength));
 
         editorPane.setCaretPosition(offset);
         editorPane.requestFocusInWindow();
@@ -184,19 +194,13 @@ public class InspectionPanel extends JPanel {
     }
     
     private void highlightLine(int lineNumber) {
-        String text = editorPane.getText();
-        String[] lines = text.split("\n", -1);
+        Element root = editorPane.getDocument().getDefaultRootElement();
 
-        if (lineNumber < 1 || lineNumber > lines.length)
+        if (lineNumber < 1 || lineNumber > root.getElementCount())
             return;
 
-        int offset = 0;
-        for (int i = 0; i < lineNumber - 1; i++) {
-            offset += lines[i].length() + 1;
-        }
-
-        int lineLength = lines[lineNumber - 1].length();
-        editorPane.select(offset, offset + lineLength);
+        Element lineElement = root.getElement(lineNumber - 1);
+        editorPane.select(lineElement.getStartOffset(), lineElement.getEndOffset() - 1);
     }
     
     /**
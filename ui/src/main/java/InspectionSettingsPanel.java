@@ -0,0 +1,177 @@
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.border.LineBorder;
+import javax.swing.border.TitledBorder;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns inspections on and off and sets their severity, next to what each one cost in the latest
+ * analysis, so a slow inspection can be found and disabled.
+ */
+public class InspectionSettingsPanel extends JPanel {
+    private static final String[] COLUMNS = {"On", "Inspection", "Severity", "Time", "Allocated", "Findings", "Description"};
+
+    private final List<Inspection> inspections = KotlinAnalyzer.installedInspections();
+    private final InspectionTableModel tableModel = new InspectionTableModel();
+    private final JLabel sharedPassLabel = new JLabel();
+    private final List<ProfileListener> listeners = new ArrayList<>();
+    private InspectionProfile profile;
+    private Map<String, AnalysisResult.InspectionCost> costs = new HashMap<>();
+
+    /**
+     * Told on the EDT whenever the user changes the profile.
+     */
+    public interface ProfileListener {
+        void profileChanged(InspectionProfile profile);
+    }
+
+    private final class InspectionTableModel extends AbstractTableModel {
+        @Override
+        public int getRowCount() {
+            return inspections.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            if (column == 0)
+                return Boolean.class;
+            if (column == 2)
+                return Diagnostic.Severity.class;
+            return String.class;
+        }
+
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return column == 0 || column == 2;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Inspection inspection = inspections.get(row);
+            AnalysisResult.InspectionCost cost = costs.get(inspection.getId());
+            switch (column) {
+                case 0: return profile.isEnabled(inspection);
+                case 1: return inspection.getId();
+                case 2: return profile.getSeverity(inspection);
+                case 3: return cost != null ? formatMillis(cost.getNanos()) : "";
+                case 4: return cost != null ? RunMetrics.formatBytes(cost.getAllocatedBytes()) : "";
+                case 5: return cost != null ? String.valueOf(cost.getFindings()) : "";
+                default: return inspection.getDescription();
+            }
+        }
+
+        @Override
+        public void setValueAt(Object value, int row, int column) {
+            String id = inspections.get(row).getId();
+            if (column == 0)
+                profile = profile.withEnabled(id, (Boolean) value);
+            else if (column == 2 && value != null)
+                profile = profile.withSeverity(id, (Diagnostic.Severity) value);
+            else
+                return;
+            fireTableRowsUpdated(row, row);
+            for (ProfileListener listener : listeners) {
+                listener.profileChanged(profile);
+            }
+        }
+    }
+
+    public InspectionSettingsPanel(InspectionProfile profile) {
+        this.profile = profile;
+        setLayout(new BorderLayout());
+        setBackground(ColorPalette.BACKGROUND_DARK);
+        initComponents();
+    }
+
+    private void initComponents() {
+        JTable table = new JTable(tableModel);
+        table.setBackground(ColorPalette.TABLE_BACKGROUND);
+        table.setForeground(Color.WHITE);
+        table.setGridColor(ColorPalette.GRID_COLOR);
+        table.setSelectionBackground(ColorPalette.SELECTION_BACKGROUND);
+        table.setSelectionForeground(Color.WHITE);
+        table.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        table.setRowHeight(22);
+        table.setDefaultEditor(Diagnostic.Severity.class,
+                new DefaultCellEditor(new JComboBox<>(Diagnostic.Severity.values())));
+        DefaultTableCellRenderer rightAligned = new DefaultTableCellRenderer();
+        rightAligned.setHorizontalAlignment(SwingConstants.RIGHT);
+        for (int column = 3; column <= 5; column++) {
+            table.getColumnModel().getColumn(column).setCellRenderer(rightAligned);
+        }
+        table.getColumnModel().getColumn(0).setMaxWidth(40);
+        table.getColumnModel().getColumn(1).setPreferredWidth(150);
+        table.getColumnModel().getColumn(2).setPreferredWidth(80);
+        table.getColumnModel().getColumn(6).setPreferredWidth(280);
+
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setBorder(new LineBorder(ColorPalette.GRID_COLOR));
+        scrollPane.getViewport().setBackground(ColorPalette.TABLE_BACKGROUND);
+
+        sharedPassLabel.setFont(new Font("Arial", Font.PLAIN, 11));
+        sharedPassLabel.setForeground(ColorPalette.TITLE_COLOR);
+        sharedPassLabel.setBorder(new EmptyBorder(4, 4, 4, 4));
+        updateSharedPassLabel();
+
+        add(scrollPane, BorderLayout.CENTER);
+        add(sharedPassLabel, BorderLayout.SOUTH);
+
+        setBorder(BorderFactory.createTitledBorder(
+                BorderFactory.createLineBorder(ColorPalette.GRID_COLOR),
+                "Inspections",
+                TitledBorder.LEFT,
+                TitledBorder.TOP,
+                new Font("Arial", Font.BOLD, 12),
+                ColorPalette.TITLE_COLOR));
+    }
+
+    public void addProfileListener(ProfileListener listener) {
+        listeners.add(listener);
+    }
+
+    public InspectionProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Shows the costs of an analysis. Inspections that did not run in it have empty cost cells.
+     */
+    public void showCosts(AnalysisResult result) {
+        Map<String, AnalysisResult.InspectionCost> byId = new HashMap<>();
+        for (AnalysisResult.InspectionCost cost : result.getCosts()) {
+            byId.put(cost.getInspectionId(), cost);
+        }
+        costs = byId;
+        tableModel.fireTableRowsUpdated(0, inspections.size() - 1);
+        updateSharedPassLabel();
+    }
+
+    private void updateSharedPassLabel() {
+        AnalysisResult.InspectionCost shared = costs.get(AnalysisResult.InspectionCost.DRIVER);
+        sharedPassLabel.setText(shared == null
+                ? " Costs appear after the next analysis"
+                : " Latest analysis; the shared pass (lines, calls, symbols, brackets) took "
+                    + formatMillis(shared.getNanos()) + " and " + RunMetrics.formatBytes(shared.getAllocatedBytes()));
+    }
+
+    private static String formatMillis(long nanos) {
+        double millis = nanos / 1e6;
+        return millis < 10 ? String.format("%.2f ms", millis) : String.format("%.0f ms", millis);
+    }
+}
@@ -0,0 +1,1660 @@
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+import java.awt.*;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class KotlinIDE extends JFrame {
+    // The editor of the selected tab and its parts
+    private JTextPane editorPane;
+    private SnapshotDocument editorDocument;
+    private ProjectIndex projectIndex;
+    private JList<Path> projectFileList;
+    private JScrollPane projectScroll;
+    private FindReplaceBar findReplaceBar;
+    private CodeFolding codeFolding;
+    private OutlinePanel outlinePanel;
+    private UndoJournal undoJournal;
+    private JDialog metricsDialog;
+    private JDialog inspectionsDialog;
+    private InspectionSettingsPanel inspectionSettings;
+    private InspectionProfile inspectionProfile;
+    private JTabbedPane editorTabs;
+    private JSplitPane bottomSplitPane;
+    private final List<EditorTab> tabs = new ArrayList<>();
+    private EditorTab activeTab;
+    private final EditorMemoryBudget editorBudget = new EditorMemoryBudget(EditorMemoryBudget.DEFAULT_BYTES);
+    private boolean deferredInitDone;
+    private JTextPane outputPane;
+    private JTextArea lineNumberArea;
+    private SimpleAttributeSet stdoutStyle;
+    private SimpleAttributeSet stderrStyle;
+
+    private JButton runButton;
+    private JButton benchmarkButton;
+    private JButton compareButton;
+    private JButton stopButton;
+    private JButton clearButton;
+    private JButton exportMetricsButton;
+    private JButton limitsButton;
+    private JButton resetReplButton;
+    private JCheckBox replModeCheckBox;
+    private JCheckBox watchModeCheckBox;
+    private JComboBox<String> inputSourceCombo;
+    private JTextField inputField;
+    private JButton sendEofButton;
+    private JProgressBar inputProgressBar;
+
+    private JLabel statusLabel;
+    private JLabel exitCodeLabel;
+    private JLabel metricsLabel;
+
+    private final List<RunMetrics> runHistory = new ArrayList<>();
+    private RunLimits runLimits = RunLimits.NONE;
+    private InputSource inputSource = InputSource.NONE;
+    private int benchmarkIterations = 10;
+    private int benchmarkWarmup = 2;
+    private int benchmarkParallelism = 1;
+
+    // Watch mode: quiet time after a clean analysis, and the least time between two runs it starts
+    private static final int WATCH_DELAY_MS = 300;
+    private static final long WATCH_MIN_INTERVAL_MS = 2000;
+    private static final long STALL_THRESHOLD_MS = Long.getLong("kotlin.ide.stallThresholdMs", 50);
+    // Types one key once started up and exits after it is painted; used by StartupTraining
+    static final String STARTUP_PROBE_PROPERTY = "kotlin.ide.startupProbe";
+
+    private static final File BENCHMARK_DIR = new File(System.getProperty("user.home"), ".kotlin-ide/benchmarks");
+
+    private ScriptExecutor scriptExecutor;
+    private ScriptBenchmark scriptBenchmark;
+    private final ReplSession replSession = new ReplSession();
+    // Bumped by every run; output of a run with an older number is dropped
+    private int runGeneration;
+    private long lastRunMillis;
+    // The tab and undo state version whose text ran last, so watch mode can tell "same text" in O(1)
+    private EditorTab lastRunTab;
+    private long lastRunState;
+    private javax.swing.Timer watchTimer;
+    private long watchVersion;
+    private ScriptEditor scriptEditor;
+    private KotlinAnalyzer kotlinAnalyzer;
+    private InspectionPanel inspectionPanel;
+    private boolean firstFramePainted;
+
+    /**
+     * One open script: its editor, the file it came from and the state of that file.
+     */
+    private static final class EditorTab {
+        final ScriptEditor editor;
+        final JPanel component = new JPanel(new BorderLayout());
+        final JProgressBar progressBar = new JProgressBar(0, 1000);
+        Path file;
+        long savedVersion;
+        boolean crlf;
+        DocumentFiles.LoadTask loadTask;
+
+        EditorTab(ScriptEditor editor) {
+            this.editor = editor;
+        }
+
+        boolean isModified() {
+            return editor.getUndoJournal().getStateVersion() != savedVersion;
+        }
+
+        // An untitled tab nobody typed into yet, which opening a file can take over
+        boolean isBlank() {
+            return file == null && loadTask == null && !isModified();
+        }
+
+        String getName() {
+            return file != null ? file.getFileName().toString() : "untitled";
+        }
+
+        String getTitle() {
+            return getName() + (isModified() ? " *" : "");
+        }
+    }
+    
+    // Regex to match error locations: filename:line:column
+    private static final Pattern ERROR_LOCATION_PATTERN = Pattern.compile("(\\w+\\.kts):(\\d+):(\\d+)");
+
+    public KotlinIDE() {
+        new EdtWatchdog(STALL_THRESHOLD_MS).install();
+        setTitle("Mini IntelliJ");
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setSize(1500, 800);
+        setLocationRelativeTo(null);
+
+        initComponents();
+        placeComponents();
+        attachListeners();
+        newTab();
+        editorPane.setText("// Add Kotlin Script Below...\n");
+        undoJournal.discardAll();
+        activeTab.savedVersion = undoJournal.getStateVersion();
+        updateTabTitle(activeTab);
+        recordSession(System.getProperty("kotlin.ide.recordSession"));
+        watchFirstKeystroke();
+
+        setVisible(true);
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (!firstFramePainted) {
+            firstFramePainted = true;
+            StartupMetrics.mark(StartupMetrics.FIRST_FRAME);
+            SwingUtilities.invokeLater(this::initDeferred);
+        }
+    }
+
+    /**
+     * Everything the first frame can do without, started once it is on screen.
+     */
+    private void initDeferred() {
+        for (EditorTab tab : tabs) {
+            tab.editor.initDeferred();
+        }
+        deferredInitDone = true;
+        StartupMetrics.mark(StartupMetrics.DEFERRED_INIT);
+        if (Boolean.getBoolean(STARTUP_PROBE_PROPERTY))
+            typeProbeKey();
+    }
+
+    private void watchFirstKeystroke() {
+        editorPane.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyTyped(KeyEvent e) {
+                editorPane.removeKeyListener(this);
+                StartupMetrics.markAt(StartupMetrics.FIRST_KEYSTROKE, e.getWhen());
+                // The typed text is repainted in an event queued after this one, so the event after that sees it
+                SwingUtilities.invokeLater(() -> SwingUtilities.invokeLater(() -> {
+                    StartupMetrics.mark(StartupMetrics.FIRST_KEYSTROKE_PAINTED);
+                    StartupMetrics.report();
+                    if (Boolean.getBoolean(STARTUP_PROBE_PROPERTY))
+                        System.exit(0);
+                }));
+            }
+        });
+    }
+
+    // Key events go to the focus owner, so the key is typed once the editor has the focus
+    private void typeProbeKey() {
+        Runnable type = () -> {
+            editorPane.setCaretPosition(editorDocument.getLength());
+            editorPane.dispatchEvent(new KeyEvent(editorPane, KeyEvent.KEY_TYPED, System.currentTimeMillis(),
+                    0, KeyEvent.VK_UNDEFINED, 'x'));
+        };
+        if (editorPane.isFocusOwner()) {
+            type.run();
+            return;
+        }
+        editorPane.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusGained(FocusEvent e) {
+                editorPane.removeFocusListener(this);
+                SwingUtilities.invokeLater(type);
+            }
+        });
+        editorPane.requestFocusInWindow();
+    }
+
+    private void initComponents() {
+        inspectionProfile = loadInspectionProfile();
+        editorTabs = new JTabbedPane();
+        editorTabs.setFont(new Font("Arial", Font.PLAIN, 12));
+
+        projectFileList = new JList<>(new DefaultListModel<>());
+        projectFileList.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        projectFileList.setBackground(ColorPalette.BACKGROUND_DARK);
+        projectFileList.setForeground(ColorPalette.TEXT_COLOR);
+        projectFileList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                // Show paths relative to the project root
+                Object shown = projectIndex != null ? projectIndex.getRoot().relativize((Path) value) : value;
+                return super.getListCellRendererComponent(list, shown, index, isSelected, cellHasFocus);
+            }
+        });
+        projectScroll = new JScrollPane(projectFileList);
+        projectScroll.setPreferredSize(new Dimension(220, 0));
+        projectScroll.setVisible(false); // shown once a project is open
+
+        outputPane = new JTextPane();
+        outputPane.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        outputPane.setEditable(false);
+        outputPane.setBackground(ColorPalette.OUTPUT_BACKGROUND);
+
+        // Initialize text styles for colored output
+        stdoutStyle = new SimpleAttributeSet();
+        StyleConstants.setForeground(stdoutStyle, ColorPalette.TEXT_COLOR);
+        stderrStyle = new SimpleAttributeSet();
+        StyleConstants.setForeground(stderrStyle, ColorPalette.ERROR_COLOR);
+
+        // Make error locations clickable
+        outputPane.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 1) {
+                    handleOutputClick(e.getPoint());
+                }
+            }
+        });
+        outputPane.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+
+        runButton = new JButton("Run");
+        runButton.setFont(new Font("Arial", Font.BOLD, 14));
+        runButton.setBackground(ColorPalette.SUCCESS_COLOR);
+        runButton.setForeground(ColorPalette.TEXT_COLOR);
+        runButton.setFocusPainted(false);
+        runButton.setBorderPainted(false);
+        runButton.setOpaque(true);
+
+        benchmarkButton = new JButton("Benchmark");
+        benchmarkButton.setFont(new Font("Arial", Font.BOLD, 14));
+        benchmarkButton.setBackground(ColorPalette.SUCCESS_COLOR);
+        benchmarkButton.setForeground(ColorPalette.TEXT_COLOR);
+        benchmarkButton.setFocusPainted(false);
+        benchmarkButton.setBorderPainted(false);
+        benchmarkButton.setOpaque(true);
+
+        compareButton = new JButton("Compare...");
+        compareButton.setFont(new Font("Arial", Font.BOLD, 12));
+        compareButton.setBackground(ColorPalette.BACKGROUND_DARK);
+        compareButton.setForeground(ColorPalette.TEXT_COLOR);
+        compareButton.setFocusPainted(false);
+        compareButton.setBorderPainted(false);
+        compareButton.setOpaque(true);
+
+        replModeCheckBox = new JCheckBox("REPL mode");
+        replModeCheckBox.setFont(new Font("Arial", Font.BOLD, 12));
+        replModeCheckBox.setBackground(ColorPalette.BACKGROUND_COLOR);
+        replModeCheckBox.setForeground(ColorPalette.TEXT_COLOR);
+        replModeCheckBox.setFocusPainted(false);
+        replModeCheckBox.setToolTipText("Keep a kotlinc REPL running and only re-evaluate changed top-level statements");
+
+        watchModeCheckBox = new JCheckBox("Watch");
+        watchModeCheckBox.setFont(new Font("Arial", Font.BOLD, 12));
+        watchModeCheckBox.setBackground(ColorPalette.BACKGROUND_COLOR);
+        watchModeCheckBox.setForeground(ColorPalette.TEXT_COLOR);
+        watchModeCheckBox.setFocusPainted(false);
+        watchModeCheckBox.setToolTipText("Run the script again whenever an edit leaves it without errors, stopping the previous run");
+
+        watchTimer = new javax.swing.Timer(WATCH_DELAY_MS, e -> watchRun());
+        watchTimer.setRepeats(false);
+
+        resetReplButton = new JButton("Reset REPL");
+        resetReplButton.setFont(new Font("Arial", Font.BOLD, 12));
+        resetReplButton.setBackground(ColorPalette.BACKGROUND_DARK);
+        resetReplButton.setForeground(ColorPalette.TEXT_COLOR);
+        resetReplButton.setFocusPainted(false);
+        resetReplButton.setBorderPainted(false);
+        resetReplButton.setOpaque(true);
+        resetReplButton.setEnabled(false); // enabled while REPL mode is on
+
+        inputSourceCombo = new JComboBox<>(new String[]{"stdin: none", "stdin: file...", "stdin: text...", "stdin: interactive"});
+        inputSourceCombo.setFont(new Font("Arial", Font.PLAIN, 12));
+        inputSourceCombo.setToolTipText("Standard input for the next run");
+
+        inputField = new JTextField();
+        inputField.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        inputField.setBackground(ColorPalette.OUTPUT_BACKGROUND);
+        inputField.setForeground(ColorPalette.TEXT_COLOR);
+        inputField.setCaretColor(ColorPalette.TEXT_COLOR);
+        inputField.setToolTipText("Type a line and press Enter to send it to the running script");
+        inputField.setEnabled(false); // enabled while an interactive run is active
+
+        sendEofButton = new JButton("EOF");
+        sendEofButton.setFont(new Font("Arial", Font.BOLD, 12));
+        sendEofButton.setBackground(ColorPalette.BACKGROUND_DARK);
+        sendEofButton.setForeground(ColorPalette.TEXT_COLOR);
+        sendEofButton.setFocusPainted(false);
+        sendEofButton.setBorderPainted(false);
+        sendEofButton.setOpaque(true);
+        sendEofButton.setEnabled(false);
+
+        inputProgressBar = new JProgressBar(0, 1000);
+        inputProgressBar.setStringPainted(true);
+        inputProgressBar.setVisible(false);
+
+        stopButton = new JButton("Stop");
+        stopButton.setFont(new Font("Arial", Font.BOLD, 14));
+        stopButton.setBackground(ColorPalette.ERROR_COLOR);
+        stopButton.setForeground(ColorPalette.TEXT_COLOR);
+        stopButton.setFocusPainted(false);
+        stopButton.setBorderPainted(false);
+        stopButton.setOpaque(true);
+        stopButton.setEnabled(false); // will be enabled when script starts running
+
+        clearButton = new JButton("Clear");
+        clearButton.setFont(new Font("Arial", Font.BOLD, 12));
+        clearButton.setBackground(ColorPalette.ERROR_COLOR);
+        clearButton.setForeground(ColorPalette.TEXT_COLOR);
+        clearButton.setFocusPainted(false);
+        clearButton.setBorderPainted(false);
+        clearButton.setOpaque(true);
+
+        exportMetricsButton = new JButton("Export Metrics");
+        exportMetricsButton.setFont(new Font("Arial", Font.BOLD, 12));
+        exportMetricsButton.setBackground(ColorPalette.BACKGROUND_DARK);
+        exportMetricsButton.setForeground(ColorPalette.TEXT_COLOR);
+        exportMetricsButton.setFocusPainted(false);
+        exportMetricsButton.setBorderPainted(false);
+        exportMetricsButton.setOpaque(true);
+        exportMetricsButton.setEnabled(false); // enabled once a run has produced metrics
+
+        limitsButton = new JButton("Limits...");
+        limitsButton.setFont(new Font("Arial", Font.BOLD, 12));
+        limitsButton.setBackground(ColorPalette.BACKGROUND_DARK);
+        limitsButton.setForeground(ColorPalette.TEXT_COLOR);
+        limitsButton.setFocusPainted(false);
+        limitsButton.setBorderPainted(false);
+        limitsButton.setOpaque(true);
+
+        statusLabel = new JLabel(" ");
+        statusLabel.setFont(new Font("Arial", Font.BOLD, 14));
+        statusLabel.setForeground(ColorPalette.TEXT_COLOR);
+
+        exitCodeLabel = new JLabel(" ");
+        exitCodeLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+        exitCodeLabel.setForeground(ColorPalette.TEXT_COLOR);
+
+        metricsLabel = new JLabel(" ");
+        metricsLabel.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        metricsLabel.setForeground(ColorPalette.TITLE_COLOR);
+    }
+
+    private void placeComponents() {
+        setJMenuBar(createMenuBar());
+
+        setLayout(new BorderLayout(10, 10));
+        getContentPane().setBackground(ColorPalette.BACKGROUND_COLOR);
+
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
+        controlPanel.setBackground(ColorPalette.BACKGROUND_COLOR);
+        controlPanel.add(runButton);
+        controlPanel.add(benchmarkButton);
+        controlPanel.add(replModeCheckBox);
+        controlPanel.add(watchModeCheckBox);
+        controlPanel.add(resetReplButton);
+        controlPanel.add(inputSourceCombo);
+        controlPanel.add(stopButton);
+        controlPanel.add(clearButton);
+        controlPanel.add(limitsButton);
+        controlPanel.add(compareButton);
+        controlPanel.add(new JLabel("   "));
+        controlPanel.add(statusLabel);
+        controlPanel.add(new JLabel("   "));
+        controlPanel.add(exitCodeLabel);
+        controlPanel.add(new JLabel("   "));
+        controlPanel.add(metricsLabel);
+        controlPanel.add(exportMetricsButton);
+
+        add(controlPanel, BorderLayout.NORTH);
+
+        // First pane split is for editor/output and inspection panel
+        JSplitPane mainSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT);
+        mainSplitPane.setResizeWeight(0.8);
+        mainSplitPane.setBackground(ColorPalette.BACKGROUND_COLOR);
+
+        // Second pane split is for script editor and script output
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT);
+        splitPane.setResizeWeight(0.5);
+        splitPane.setDividerLocation(0.5);
+        splitPane.setBackground(ColorPalette.BACKGROUND_COLOR);
+
+        // Left side: Script Editor with line numbers
+        JPanel editorPanel = new JPanel(new BorderLayout());
+        editorPanel.setBackground(ColorPalette.BACKGROUND_COLOR);
+        TitledBorder editorBorder = BorderFactory.createTitledBorder(
+                BorderFactory.createEmptyBorder(),
+                "Kotlin Script Editor",
+                TitledBorder.LEFT,
+                TitledBorder.TOP,
+                new Font("Arial", Font.BOLD, 12),
+                ColorPalette.TEXT_COLOR
+        );
+        editorPanel.setBorder(editorBorder);
+
+        editorPanel.add(editorTabs, BorderLayout.CENTER);
+        editorPanel.add(projectScroll, BorderLayout.WEST);
+
+        // Right side: Script Output
+        JPanel outputPanel = new JPanel(new BorderLayout());
+        outputPanel.setBackground(ColorPalette.BACKGROUND_COLOR);
+        TitledBorder outputBorder = BorderFactory.createTitledBorder(
+                BorderFactory.createEmptyBorder(),
+                "Script Output",
+                TitledBorder.LEFT,
+                TitledBorder.TOP,
+                new Font("Arial", Font.BOLD, 12),
+                ColorPalette.TEXT_COLOR
+        );
+        outputPanel.setBorder(outputBorder);
+
+        JScrollPane outputScroll = new JScrollPane(outputPane);
+        outputScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
+        outputScroll.getViewport().setBackground(ColorPalette.OUTPUT_BACKGROUND);
+        outputPanel.add(outputScroll, BorderLayout.CENTER);
+
+        JPanel inputPanel = new JPanel(new BorderLayout(5, 0));
+        inputPanel.setBackground(ColorPalette.BACKGROUND_COLOR);
+        inputPanel.add(inputProgressBar, BorderLayout.NORTH);
+        inputPanel.add(inputField, BorderLayout.CENTER);
+        inputPanel.add(sendEofButton, BorderLayout.EAST);
+        outputPanel.add(inputPanel, BorderLayout.SOUTH);
+
+        splitPane.setLeftComponent(editorPanel);
+        splitPane.setRightComponent(outputPanel);
+
+        // Inspection panel and structure outline of the selected tab go at the bottom
+        bottomSplitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT);
+        bottomSplitPane.setResizeWeight(0.7);
+        bottomSplitPane.setBackground(ColorPalette.BACKGROUND_COLOR);
+
+        mainSplitPane.setTopComponent(splitPane);
+        mainSplitPane.setBottomComponent(bottomSplitPane);
+        mainSplitPane.setDividerLocation(500);
+
+        add(mainSplitPane, BorderLayout.CENTER);
+    }
+
+    private void appendToOutput(String text, SimpleAttributeSet style) {
+        Instrumentation.Timing timing = Instrumentation.begin(Instrumentation.Subsystem.OUTPUT);
+        try {
+            StyledDocument doc = outputPane.getStyledDocument();
+            doc.insertString(doc.getLength(), text, style);
+            outputPane.setCaretPosition(doc.getLength());
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        } finally {
+            timing.end(text.length());
+        }
+    }
+
+    private void attachListeners() {
+        editorTabs.addChangeListener(e -> {
+            int index = editorTabs.getSelectedIndex();
+            if (index >= 0 && tabs.get(index) != activeTab)
+                activateTab(tabs.get(index));
+        });
+        runButton.addActionListener(e -> runScript());
+        benchmarkButton.addActionListener(e -> benchmarkScript());
+        replModeCheckBox.addActionListener(e -> {
+            resetReplButton.setEnabled(replModeCheckBox.isSelected());
+            if (!replModeCheckBox.isSelected())
+                replSession.reset();
+        });
+        watchModeCheckBox.addActionListener(e -> {
+            if (!watchModeCheckBox.isSelected())
+                watchTimer.stop();
+        });
+        resetReplButton.addActionListener(e -> {
+            replSession.reset();
+            appendToOutput("\n>>> REPL reset, the next run starts from a fresh session\n", stdoutStyle);
+        });
+        compareButton.addActionListener(e -> compareBenchmarks());
+        stopButton.addActionListener(e -> stopScript());
+        clearButton.addActionListener(e -> outputPane.setText(""));
+        exportMetricsButton.addActionListener(e -> exportRunHistory());
+        limitsButton.addActionListener(e -> editRunLimits());
+        inputSourceCombo.addActionListener(e -> chooseInputSource());
+        inputField.addActionListener(e -> {
+            if (scriptExecutor != null) {
+                String line = inputField.getText();
+                appendToOutput(line + "\n", stdoutStyle);
+                scriptExecutor.sendInput(line);
+                inputField.setText("");
+            }
+        });
+        projectFileList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                Path file = projectFileList.getSelectedValue();
+                if (e.getClickCount() == 2 && file != null)
+                    openInTab(file);
+            }
+        });
+        sendEofButton.addActionListener(e -> {
+            if (scriptExecutor != null)
+                scriptExecutor.closeInput();
+            setInteractiveInputEnabled(false);
+        });
+    }
+    
+    private JMenuBar createMenuBar() {
+        JMenuBar menuBar = new JMenuBar();
+        JMenu fileMenu = new JMenu("File");
+
+        JMenuItem newTabItem = new JMenuItem("New Tab");
+        newTabItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_T, InputEvent.CTRL_DOWN_MASK));
+        newTabItem.addActionListener(e -> newTab());
+
+        JMenuItem closeTabItem = new JMenuItem("Close Tab");
+        closeTabItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_W, InputEvent.CTRL_DOWN_MASK));
+        closeTabItem.addActionListener(e -> closeTab(activeTab));
+
+        JMenuItem openItem = new JMenuItem("Open...");
+        openItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O, InputEvent.CTRL_DOWN_MASK));
+        openItem.addActionListener(e -> openFile());
+
+        JMenuItem openProjectItem = new JMenuItem("Open Project...");
+        openProjectItem.addActionListener(e -> openProject());
+
+        JMenuItem saveItem = new JMenuItem("Save");
+        saveItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK));
+        saveItem.addActionListener(e -> saveFile(false));
+
+        JMenuItem saveAsItem = new JMenuItem("Save As...");
+        saveAsItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        saveAsItem.addActionListener(e -> saveFile(true));
+
+        fileMenu.add(newTabItem);
+        fileMenu.add(openItem);
+        fileMenu.add(openProjectItem);
+        fileMenu.add(saveItem);
+        fileMenu.add(saveAsItem);
+        fileMenu.addSeparator();
+        fileMenu.add(closeTabItem);
+        menuBar.add(fileMenu);
+
+        JMenu editMenu = new JMenu("Edit");
+
+        JMenuItem undoItem = new JMenuItem("Undo");
+        undoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+        undoItem.addActionListener(e -> {
+            if (editorPane.isEditable())
+                afterUndoRedo(undoJournal.undo());
+        });
+
+        JMenuItem redoItem = new JMenuItem("Redo");
+        redoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        redoItem.addActionListener(e -> {
+            if (editorPane.isEditable())
+                afterUndoRedo(undoJournal.redo());
+        });
+
+        JMenuItem findItem = new JMenuItem("Find...");
+        findItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK));
+        findItem.addActionListener(e -> findReplaceBar.open(false));
+
+        JMenuItem replaceItem = new JMenuItem("Replace...");
+        replaceItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_R, InputEvent.CTRL_DOWN_MASK));
+        replaceItem.addActionListener(e -> findReplaceBar.open(true));
+
+        editMenu.add(undoItem);
+        editMenu.add(redoItem);
+        editMenu.addSeparator();
+        editMenu.add(findItem);
+        editMenu.add(replaceItem);
+        menuBar.add(editMenu);
+
+        JMenu navigateMenu = new JMenu("Navigate");
+
+        JMenuItem declarationItem = new JMenuItem("Go to Declaration");
+        declarationItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_B, InputEvent.CTRL_DOWN_MASK));
+        declarationItem.addActionListener(e -> goToDefinition(editorPane.getCaretPosition()));
+
+        JMenuItem usagesItem = new JMenuItem("Find Usages");
+        usagesItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F7, InputEvent.ALT_DOWN_MASK));
+        usagesItem.addActionListener(e -> findUsages(editorPane.getCaretPosition()));
+
+        navigateMenu.add(declarationItem);
+        navigateMenu.add(usagesItem);
+        menuBar.add(navigateMenu);
+
+        JMenu codeMenu = new JMenu("Code");
+
+        JMenuItem foldItem = new JMenuItem("Fold");
+        foldItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, InputEvent.CTRL_DOWN_MASK));
+        foldItem.addActionListener(e -> codeFolding.foldAtCaret());
+
+        JMenuItem unfoldItem = new JMenuItem("Unfold");
+        unfoldItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, InputEvent.CTRL_DOWN_MASK));
+        unfoldItem.addActionListener(e -> codeFolding.unfoldAtCaret());
+
+        JMenuItem foldAllItem = new JMenuItem("Fold All");
+        foldAllItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        foldAllItem.addActionListener(e -> codeFolding.foldAll());
+
+        JMenuItem unfoldAllItem = new JMenuItem("Unfold All");
+        unfoldAllItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        unfoldAllItem.addActionListener(e -> codeFolding.unfoldAll());
+
+        codeMenu.add(foldItem);
+        codeMenu.add(unfoldItem);
+        codeMenu.add(foldAllItem);
+        codeMenu.add(unfoldAllItem);
+        codeMenu.addSeparator();
+
+        JMenuItem inspectionsItem = new JMenuItem("Inspections...");
+        inspectionsItem.addActionListener(e -> showInspections());
+        codeMenu.add(inspectionsItem);
+        menuBar.add(codeMenu);
+
+        JMenu viewMenu = new JMenu("View");
+
+        JMenuItem metricsItem = new JMenuItem("Metrics...");
+        metricsItem.addActionListener(e -> showMetrics());
+
+        viewMenu.add(metricsItem);
+        menuBar.add(viewMenu);
+        return menuBar;
+    }
+
+    private void showMetrics() {
+        if (metricsDialog == null) {
+            metricsDialog = new JDialog(this, "Metrics", false);
+            metricsDialog.setContentPane(new MetricsPanel());
+            metricsDialog.setSize(720, 560);
+            metricsDialog.setLocationRelativeTo(this);
+        }
+        metricsDialog.setVisible(true);
+    }
+
+    private void showInspections() {
+        if (inspectionsDialog == null) {
+            InspectionSettingsPanel settings = new InspectionSettingsPanel(inspectionProfile);
+            settings.addProfileListener(profile -> {
+                inspectionProfile = profile;
+                for (EditorTab tab : tabs) {
+                    tab.editor.setInspectionProfile(profile);
+                }
+                try {
+                    profile.save(InspectionProfile.DEFAULT_FILE);
+                } catch (IOException e) {
+                    System.err.println("Cannot save inspection profile: " + e.getMessage());
+                }
+            });
+            inspectionSettings = settings;
+            inspectionsDialog = new JDialog(this, "Inspections", false);
+            inspectionsDialog.setContentPane(settings);
+            inspectionsDialog.setSize(820, 300);
+            inspectionsDialog.setLocationRelativeTo(this);
+        }
+        inspectionsDialog.setVisible(true);
+    }
+
+    private static InspectionProfile loadInspectionProfile() {
+        try {
+            return InspectionProfile.load(InspectionProfile.DEFAULT_FILE);
+        } catch (IOException e) {
+            System.err.println("Cannot load inspection profile, using defaults: " + e.getMessage());
+            return InspectionProfile.defaults();
+        }
+    }
+
+    /**
+     * Records the edits made in the first tab for LatencyReplay when -Dkotlin.ide.recordSession=FILE is set.
+     */
+    private void recordSession(String file) {
+        if (file == null)
+            return;
+        try {
+            new EditSession.Recorder(editorDocument, Path.of(file));
+        } catch (IOException e) {
+            System.err.println("Cannot record session to " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void afterUndoRedo(int caret) {
+        if (caret < 0)
+            return;
+        editorPane.setCaretPosition(caret);
+        // The journal now knows the text matches an earlier state, which may be saved or analyzed already
+        scriptEditor.triggerAnalysis();
+        updateTabTitle(activeTab);
+    }
+
+    private boolean isModified() {
+        return activeTab.isModified();
+    }
+
+    private void updateTitle() {
+        setTitle("Mini IntelliJ - " + activeTab.getTitle());
+    }
+
+    private void updateTabTitle(EditorTab tab) {
+        int index = tabs.indexOf(tab);
+        if (index < 0)
+            return;
+        String title = tab.getTitle();
+        if (!title.equals(editorTabs.getTitleAt(index)))
+            editorTabs.setTitleAt(index, title);
+        editorTabs.setToolTipTextAt(index, tab.file != null ? tab.file.toString() : null);
+        if (tab == activeTab)
+            updateTitle();
+    }
+
+    /**
+     * Opens an empty untitled tab and selects it.
+     */
+    private EditorTab newTab() {
+        EditorTab tab = new EditorTab(new ScriptEditor());
+        ScriptEditor editor = tab.editor;
+        editor.getAnalyzer().setProfile(inspectionProfile);
+        editor.setProjectContext(projectIndex, null);
+        JTextPane pane = editor.getEditorPane();
+
+        // Ctrl+click jumps to the declaration of the identifier under the mouse
+        pane.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 1 && (e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0) {
+                    goToDefinition(pane.viewToModel2D(e.getPoint()));
+                }
+            }
+        });
+        editor.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                updateTabTitle(tab);
+            }
+
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                updateTabTitle(tab);
+            }
+
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+            }
+        });
+        editor.addAnalysisListener((result, snapshot) -> {
+            // Analyses add to the caches, of background tabs too
+            editorBudget.enforce();
+            if (inspectionSettings != null && tab == activeTab)
+                inspectionSettings.showCosts(result);
+            if (tab == activeTab)
+                scheduleWatchRun(result, snapshot);
+        });
+
+        JPanel editorWithLines = new JPanel(new BorderLayout());
+        JScrollPane editorScroll = new JScrollPane(pane);
+        editorScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
+        editorWithLines.add(editorScroll, BorderLayout.CENTER);
+
+        JScrollPane lineScroll = new JScrollPane(editor.getLineNumberArea());
+        lineScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_NEVER);
+        lineScroll.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        editorWithLines.add(lineScroll, BorderLayout.WEST);
+
+        // Sync line numbers with editor scrolling
+        editorScroll.getVerticalScrollBar().addAdjustmentListener(
+                e -> lineScroll.getVerticalScrollBar().setValue(e.getValue()));
+
+        tab.progressBar.setStringPainted(true);
+        tab.progressBar.setVisible(false);
+        tab.component.add(editor.getFindReplaceBar(), BorderLayout.NORTH);
+        tab.component.add(editorWithLines, BorderLayout.CENTER);
+        tab.component.add(tab.progressBar, BorderLayout.SOUTH);
+
+        tab.savedVersion = editor.getUndoJournal().getStateVersion();
+        tabs.add(tab);
+        editorBudget.add(editor);
+        if (deferredInitDone)
+            editor.initDeferred();
+        // Selecting it fires the change listener, which activates it
+        editorTabs.addTab(tab.getTitle(), tab.component);
+        editorTabs.setSelectedComponent(tab.component);
+        return tab;
+    }
+
+    private void activateTab(EditorTab tab) {
+        // A pending watch run was for the text of the tab being left
+        watchTimer.stop();
+        activeTab = tab;
+        scriptEditor = tab.editor;
+        editorPane = scriptEditor.getEditorPane();
+        editorDocument = scriptEditor.getDocument();
+        codeFolding = scriptEditor.getCodeFolding();
+        kotlinAnalyzer = scriptEditor.getAnalyzer();
+        inspectionPanel = scriptEditor.getInspectionPanel();
+        findReplaceBar = scriptEditor.getFindReplaceBar();
+        outlinePanel = scriptEditor.getOutlinePanel();
+        undoJournal = scriptEditor.getUndoJournal();
+        lineNumberArea = scriptEditor.getLineNumberArea();
+
+        int divider = bottomSplitPane.getDividerLocation();
+        bottomSplitPane.setLeftComponent(inspectionPanel);
+        bottomSplitPane.setRightComponent(outlinePanel);
+        if (divider > 0)
+            bottomSplitPane.setDividerLocation(divider);
+        editorBudget.activate(scriptEditor);
+        updateTitle();
+        editorPane.requestFocusInWindow();
+    }
+
+    private void closeTab(EditorTab tab) {
+        if (tab.isModified()) {
+            int choice = JOptionPane.showConfirmDialog(this,
+                    tab.getName() + " has unsaved changes. Close it anyway?",
+                    "Close Tab", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            if (choice != JOptionPane.YES_OPTION)
+                return;
+        }
+        if (tab.loadTask != null)
+            tab.loadTask.cancel();
+        tab.editor.dispose();
+        editorBudget.remove(tab.editor);
+        if (lastRunTab == tab)
+            lastRunTab = null;
+        int index = tabs.indexOf(tab);
+        tabs.remove(index);
+        if (tabs.isEmpty()) {
+            activeTab = null;
+            editorTabs.remove(index);
+            newTab();
+        } else {
+            // Removing the selected tab selects a neighbour, which the change listener activates
+            editorTabs.remove(index);
+        }
+    }
+
+    private void openFile() {
+        Path current = activeTab.file;
+        JFileChooser chooser = new JFileChooser(current != null ? current.toFile().getParentFile() : null);
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        openInTab(chooser.getSelectedFile().toPath());
+    }
+
+    /**
+     * Selects the tab that has the file open, or loads it into the current tab if that is still
+     * blank, or into a new one.
+     */
+    private void openInTab(Path file) {
+        for (EditorTab tab : tabs) {
+            if (file.equals(tab.file)) {
+                editorTabs.setSelectedComponent(tab.component);
+                return;
+            }
+        }
+        loadFile(activeTab.isBlank() ? activeTab : newTab(), file);
+    }
+
+    private void loadFile(EditorTab tab, Path file) {
+        if (tab.loadTask != null)
+            tab.loadTask.cancel();
+
+        SnapshotDocument document = tab.editor.getDocument();
+        UndoJournal journal = tab.editor.getUndoJournal();
+        JTextPane pane = tab.editor.getEditorPane();
+        JProgressBar progressBar = tab.progressBar;
+
+        // The loaded text replaces the history; recording resumes once it is in
+        journal.setRecording(false);
+        try {
+            document.remove(0, document.getLength());
+        } catch (BadLocationException ex) {
+            ex.printStackTrace();
+        }
+
+        // The editor stays scrollable while chunks arrive, but edits would interleave with them
+        pane.setEditable(false);
+        progressBar.setValue(0);
+        progressBar.setString("Loading " + file.getFileName());
+        progressBar.setVisible(true);
+        tab.file = file;
+        tab.editor.setProjectContext(projectIndex, file);
+        updateTabTitle(tab);
+
+        DocumentFiles.LoadTask task = DocumentFiles.load(file, document, new DocumentFiles.ProgressListener() {
+            @Override
+            public void onProgress(long bytesDone, long totalBytes) {
+                progressBar.setValue(totalBytes == 0 ? 1000 : (int) (bytesDone * 1000 / totalBytes));
+                progressBar.setString("Loading " + file.getFileName() + "  "
+                        + RunMetrics.formatBytes(bytesDone) + " / " + RunMetrics.formatBytes(totalBytes));
+            }
+
+            @Override
+            public void onComplete(boolean crlf) {
+                finishLoading(tab);
+                tab.crlf = crlf;
+                tab.savedVersion = journal.getStateVersion();
+                journal.setRecording(true);
+                pane.setCaretPosition(0);
+                updateTabTitle(tab);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                finishLoading(tab);
+                journal.setRecording(true);
+                tab.file = null;
+                tab.editor.setProjectContext(projectIndex, null);
+                updateTabTitle(tab);
+                JOptionPane.showMessageDialog(KotlinIDE.this,
+                        "Could not open file: " + e.getMessage(),
+                        "Open Failed",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        });
+        tab.loadTask = task;
+    }
+
+    private void openProject() {
+        JFileChooser chooser = new JFileChooser(projectIndex != null ? projectIndex.getRoot().toFile() : null);
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setDialogTitle("Open Project Directory");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+
+        if (projectIndex != null)
+            projectIndex.close();
+
+        statusLabel.setText("Indexing project...");
+        statusLabel.setForeground(ColorPalette.TEXT_COLOR);
+        ((DefaultListModel<Path>) projectFileList.getModel()).clear();
+        projectScroll.setVisible(true);
+        revalidate();
+
+        ProjectIndex index = new ProjectIndex(chooser.getSelectedFile().toPath(), new ProjectIndex.IndexListener() {
+            @Override
+            public void onIndexed(int fileCount, int symbolCount, int parsedCount, long elapsedMillis) {
+                SwingUtilities.invokeLater(() -> {
+                    statusLabel.setText("Indexed " + fileCount + " files (" + parsedCount + " parsed), "
+                            + symbolCount + " functions in " + RunMetrics.formatMillis(elapsedMillis));
+                    refreshProjectFiles();
+                    projectChanged();
+                });
+            }
+
+            @Override
+            public void onFileChanged(Path file) {
+                SwingUtilities.invokeLater(() -> {
+                    refreshProjectFiles();
+                    projectChanged();
+                });
+            }
+
+            @Override
+            public void onError(Exception e) {
+                SwingUtilities.invokeLater(() -> {
+                    statusLabel.setText("Indexing failed");
+                    statusLabel.setForeground(ColorPalette.ERROR_COLOR);
+                    JOptionPane.showMessageDialog(KotlinIDE.this,
+                            "Could not index project: " + e.getMessage(),
+                            "Project Failed",
+                            JOptionPane.ERROR_MESSAGE);
+                });
+            }
+        });
+        projectIndex = index;
+        for (EditorTab tab : tabs) {
+            tab.editor.setProjectContext(index, tab.file);
+        }
+        index.start();
+    }
+
+    // Every tab may call into the changed files; background tabs re-analyze after the active one
+    private void projectChanged() {
+        for (EditorTab tab : tabs) {
+            tab.editor.projectChanged();
+        }
+    }
+
+    private void refreshProjectFiles() {
+        if (projectIndex == null)
+            return;
+        List<Path> files = projectIndex.getFiles();
+        DefaultListModel<Path> model = (DefaultListModel<Path>) projectFileList.getModel();
+        if (files.size() == model.size() && files.equals(Collections.list(model.elements())))
+            return;
+        model.clear();
+        model.addAll(files);
+    }
+
+    private void finishLoading(EditorTab tab) {
+        tab.loadTask = null;
+        tab.editor.getEditorPane().setEditable(true);
+        tab.progressBar.setVisible(false);
+    }
+
+    private void saveFile(boolean askForPath) {
+        EditorTab tab = activeTab;
+        Path target = tab.file;
+        if (askForPath || target == null) {
+            JFileChooser chooser = new JFileChooser(target != null ? target.toFile().getParentFile() : null);
+            chooser.setSelectedFile(target != null ? target.toFile() : new File("script.kts"));
+            if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+                return;
+            target = chooser.getSelectedFile().toPath();
+        }
+
+        Path destination = target;
+        TextSnapshot snapshot = editorDocument.snapshot();
+        long state = undoJournal.getStateVersion();
+        boolean crlf = tab.crlf;
+        statusLabel.setText("Saving...");
+        statusLabel.setForeground(ColorPalette.TEXT_COLOR);
+
+        // The snapshot is immutable, so writing it does not need to hold up the EDT
+        Thread saver = new Thread(() -> {
+            try {
+                DocumentFiles.save(snapshot, destination, crlf);
+                SwingUtilities.invokeLater(() -> {
+                    tab.file = destination;
+                    tab.editor.setProjectContext(projectIndex, destination);
+                    tab.savedVersion = state;
+                    statusLabel.setText("Saved " + destination.getFileName());
+                    updateTabTitle(tab);
+                });
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    statusLabel.setText(" ");
+                    JOptionPane.showMessageDialog(KotlinIDE.this,
+                            "Could not save file: " + ex.getMessage(),
+                            "Save Failed",
+                            JOptionPane.ERROR_MESSAGE);
+                });
+            }
+        }, "document-saver");
+        saver.setDaemon(true);
+        saver.start();
+    }
+
+    private void goToDefinition(int offset) {
+        ScriptEditor editor = scriptEditor;
+        editor.withSymbolTable(table -> {
+            if (editor == scriptEditor)
+                goToDefinition(table.symbolAt(offset));
+        });
+    }
+
+    private void goToDefinition(SymbolTable.Symbol symbol) {
+        if (symbol == null) {
+            statusLabel.setText("No declaration found");
+            statusLabel.setForeground(ColorPalette.TEXT_COLOR);
+            return;
+        }
+        editorPane.setCaretPosition(symbol.getDeclarationEnd());
+        editorPane.moveCaretPosition(symbol.getDeclarationStart());
+        editorPane.requestFocusInWindow();
+    }
+
+    private void findUsages(int offset) {
+        ScriptEditor editor = scriptEditor;
+        editor.withSymbolTable(table -> {
+            if (editor == scriptEditor)
+                findUsages(table.symbolAt(offset));
+        });
+    }
+
+    private void findUsages(SymbolTable.Symbol symbol) {
+        if (symbol == null) {
+            statusLabel.setText("No symbol at caret");
+            statusLabel.setForeground(ColorPalette.TEXT_COLOR);
+            return;
+        }
+
+        List<Integer> offsets = new ArrayList<>();
+        offsets.add(symbol.getDeclarationStart());
+        offsets.addAll(symbol.getReferences());
+
+        DefaultListModel<String> model = new DefaultListModel<>();
+        Element root = editorDocument.getDefaultRootElement();
+        for (int i = 0; i < offsets.size(); i++) {
+            int usage = offsets.get(i);
+            Element line = root.getElement(root.getElementIndex(usage));
+            String lineText;
+            try {
+                lineText = editorDocument.getText(line.getStartOffset(), line.getEndOffset() - line.getStartOffset()).trim();
+            } catch (BadLocationException ex) {
+                lineText = "";
+            }
+            model.addElement((i == 0 ? "declaration  " : "") + (root.getElementIndex(usage) + 1) + ":"
+                    + (usage - line.getStartOffset() + 1) + "  " + lineText);
+        }
+
+        JList<String> usageList = new JList<>(model);
+        usageList.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        usageList.addListSelectionListener(e -> {
+            int index = usageList.getSelectedIndex();
+            if (!e.getValueIsAdjusting() && index >= 0) {
+                int start = offsets.get(index);
+                editorPane.setCaretPosition(start + symbol.getName().length());
+                editorPane.moveCaretPosition(start);
+            }
+        });
+
+        JDialog dialog = new JDialog(this, "Usages of " + symbol.getName() + " (" + symbol.getReferences().size() + ")", false);
+        dialog.add(new JScrollPane(usageList));
+        dialog.setSize(600, 300);
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
+    private void runScript() {
+        String scriptContent = editorPane.getText();
+
+        if (scriptContent.trim().isEmpty()) {
+            JOptionPane.showMessageDialog(this,
+                    "There is nothing to run.",
+                    "Empty Script",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        lastRunMillis = System.currentTimeMillis();
+        lastRunTab = activeTab;
+        lastRunState = undoJournal.getStateVersion();
+        if (replModeCheckBox.isSelected()) {
+            runInRepl(scriptContent);
+            return;
+        }
+
+        int generation = ++runGeneration;
+        runButton.setEnabled(false);
+        benchmarkButton.setEnabled(false);
+        stopButton.setEnabled(true);
+        statusLabel.setText("Running...");
+        statusLabel.setForeground(ColorPalette.SUCCESS_COLOR);
+        exitCodeLabel.setText(" ");
+        metricsLabel.setText(" ");
+        outputPane.setText("");
+        appendToOutput(">>> Starting script execution...\n\n", stdoutStyle);
+
+        ScriptExecutor.OutputListener runListener = new ScriptExecutor.OutputListener() {
+            @Override
+            public void onOutput(String line) {
+                SwingUtilities.invokeLater(() -> {
+                    if (generation != runGeneration)
+                        return;
+                    appendToOutput(line + "\n", stdoutStyle);
+                });
+            }
+
+            @Override
+            public void onError(String line) {
+                SwingUtilities.invokeLater(() -> {
+                    if (generation != runGeneration)
+                        return;
+                    appendToOutput(line + "\n", stderrStyle);
+                });
+            }
+
+            @Override
+            public void onLimitExceeded(RunLimits.Limit limit, String message) {
+                SwingUtilities.invokeLater(() -> {
+                    if (generation != runGeneration)
+                        return;
+                    appendToOutput("\n>>> " + message + "\n", stderrStyle);
+                    statusLabel.setText("Limit exceeded: " + limit.getDescription());
+                    statusLabel.setForeground(ColorPalette.ERROR_COLOR);
+                });
+            }
+
+            @Override
+            public void onMetrics(RunMetrics metrics) {
+                SwingUtilities.invokeLater(() -> {
+                    // A superseded run still counts in the history, it just is not shown
+                    runHistory.add(metrics);
+                    if (generation != runGeneration)
+                        return;
+                    metricsLabel.setText(metrics.toSummary());
+                    exportMetricsButton.setEnabled(true);
+                });
+            }
+
+            @Override
+            public void onInputProgress(long bytesSent, long totalBytes) {
+                SwingUtilities.invokeLater(() -> {
+                    if (generation != runGeneration)
+                        return;
+                    int permille = totalBytes == 0 ? 1000 : (int) (bytesSent * 1000 / totalBytes);
+                    inputProgressBar.setValue(permille);
+                    inputProgressBar.setString("stdin " + RunMetrics.formatBytes(bytesSent)
+                            + " / " + RunMetrics.formatBytes(totalBytes));
+                });
+            }
+
+            @Override
+            public void onComplete(int exitCode) {
+                SwingUtilities.invokeLater(() -> {
+                    if (generation != runGeneration)
+                        return;
+                    runButton.setEnabled(true);
+                    benchmarkButton.setEnabled(true);
+                    stopButton.setEnabled(false);
+                    setInteractiveInputEnabled(false);
+                    inputProgressBar.setVisible(false);
+                    if (runHistory.isEmpty() || runHistory.get(runHistory.size() - 1).getLimitExceeded() == null) {
+                        statusLabel.setText("Finished");
+                        statusLabel.setForeground(ColorPalette.TEXT_COLOR);
+                    }
+
+                    if (exitCode == 0) {
+                        exitCodeLabel.setText("Exit Code: 0");
+                        exitCodeLabel.setForeground(ColorPalette.SUCCESS_COLOR);
+                    } else {
+                        exitCodeLabel.setText("Exit Code: " + exitCode);
+                        exitCodeLabel.setForeground(ColorPalette.ERROR_COLOR);
+                    }
+
+                    appendToOutput("\n>>> Script finished with exit code: " + exitCode + "\n", stdoutStyle);
+                });
+            }
+        };
+
+        // An unmodified saved script can be run in place instead of being written out again
+        Path currentFile = activeTab.file;
+        if (currentFile != null && currentFile.toString().endsWith(".kts") && !isModified()) {
+            scriptExecutor = new ScriptExecutor(currentFile, runListener, runLimits);
+        } else {
+            scriptExecutor = new ScriptExecutor(scriptContent, runListener, runLimits);
+        }
+
+        scriptExecutor.setInputSource(inputSource);
+        if (inputSource.getType() != InputSource.Type.NONE)
+            appendToOutput(">>> stdin: " + inputSource.describe() + "\n\n", stdoutStyle);
+        if (inputSource.getType() == InputSource.Type.FILE) {
+            inputProgressBar.setValue(0);
+            inputProgressBar.setString("stdin");
+            inputProgressBar.setVisible(true);
+        }
+        setInteractiveInputEnabled(inputSource.getType() == InputSource.Type.INTERACTIVE);
+
+        scriptExecutor.start();
+    }
+
+    /**
+     * Watch mode: once an analysis of the active tab's text finds no errors, runs the script after a short
+     * quiet time, and no sooner than WATCH_MIN_INTERVAL_MS after the previous run started. Any edit in
+     * between moves the run to the next clean analysis.
+     */
+    private void scheduleWatchRun(AnalysisResult result, TextSnapshot snapshot) {
+        if (!watchModeCheckBox.isSelected() || result.getErrorCount() > 0
+                || snapshot.getVersion() != editorDocument.getVersion())
+            return;
+        watchVersion = snapshot.getVersion();
+        long sinceLastRun = System.currentTimeMillis() - lastRunMillis;
+        watchTimer.setInitialDelay((int) Math.max(WATCH_DELAY_MS, WATCH_MIN_INTERVAL_MS - sinceLastRun));
+        watchTimer.restart();
+    }
+
+    private void watchRun() {
+        if (!watchModeCheckBox.isSelected() || editorDocument.getVersion() != watchVersion || scriptBenchmark != null)
+            return;
+        // Run was pressed meanwhile
+        long wait = WATCH_MIN_INTERVAL_MS - (System.currentTimeMillis() - lastRunMillis);
+        if (wait > 0) {
+            watchTimer.setInitialDelay((int) wait);
+            watchTimer.restart();
+            return;
+        }
+        // Undo back to the text that ran last, or a re-analysis without an edit, needs no run
+        if (activeTab == lastRunTab && undoJournal.getStateVersion() == lastRunState
+                || isBlank(editorDocument.snapshot()))
+            return;
+
+        // Resetting a REPL mid-cell would throw away its warm state, so the run waits for the cell
+        if (replSession.isEvaluating()) {
+            watchTimer.setInitialDelay(WATCH_DELAY_MS);
+            watchTimer.restart();
+            return;
+        }
+
+        // The previous run is superseded; its remaining output is dropped by the run generation
+        if (scriptExecutor != null)
+            scriptExecutor.stop();
+        boolean editing = editorPane.isFocusOwner();
+        runScript();
+        // Interactive stdin would take the focus from the editor being typed in
+        if (editing)
+            editorPane.requestFocusInWindow();
+    }
+
+    private static boolean isBlank(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private void setInteractiveInputEnabled(boolean enabled) {
+        inputField.setEnabled(enabled);
+        sendEofButton.setEnabled(enabled);
+        if (enabled)
+            inputField.requestFocusInWindow();
+    }
+
+    private void chooseInputSource() {
+        switch (inputSourceCombo.getSelectedIndex()) {
+            case 1: {
+                JFileChooser chooser = new JFileChooser();
+                chooser.setDialogTitle("Select file to feed into stdin");
+                if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                    inputSource = InputSource.fromFile(chooser.getSelectedFile().toPath());
+                    inputSourceCombo.setToolTipText("stdin: " + chooser.getSelectedFile().getAbsolutePath());
+                } else {
+                    inputSourceCombo.setSelectedIndex(0);
+                }
+                break;
+            }
+            case 2: {
+                JTextArea textArea = new JTextArea(inputSource.getType() == InputSource.Type.TEXT ? inputSource.getText() : "", 15, 50);
+                textArea.setFont(new Font("Monospaced", Font.PLAIN, 13));
+                int choice = JOptionPane.showConfirmDialog(this, new JScrollPane(textArea), "Text for stdin",
+                        JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+                if (choice == JOptionPane.OK_OPTION) {
+                    inputSource = InputSource.fromText(textArea.getText());
+                } else {
+                    inputSourceCombo.setSelectedIndex(0);
+                }
+                break;
+            }
+            case 3:
+                inputSource = InputSource.INTERACTIVE;
+                break;
+            default:
+                inputSource = InputSource.NONE;
+                inputSourceCombo.setToolTipText("Standard input for the next run");
+        }
+    }
+
+    private void runInRepl(String scriptContent) {
+        int generation = ++runGeneration;
+        runButton.setEnabled(false);
+        benchmarkButton.setEnabled(false);
+        stopButton.setEnabled(true);
+        statusLabel.setText("Evaluating...");
+        statusLabel.setForeground(ColorPalette.SUCCESS_COLOR);
+        exitCodeLabel.setText(" ");
+        metricsLabel.setText(" ");
+        outputPane.setText("");
+
+        try {
+            int sent = replSession.evaluate(scriptContent, new ScriptExecutor.OutputListener() {
+                @Override
+                public void onOutput(String line) {
+                    SwingUtilities.invokeLater(() -> {
+                        if (generation == runGeneration)
+                            appendToOutput(line + "\n", stdoutStyle);
+                    });
+                }
+
+                @Override
+                public void onError(String line) {
+                    SwingUtilities.invokeLater(() -> {
+                        if (generation == runGeneration)
+                            appendToOutput(line + "\n", stderrStyle);
+                    });
+                }
+
+                @Override
+                public void onComplete(int exitCode) {
+                    SwingUtilities.invokeLater(() -> {
+                        if (generation != runGeneration)
+                            return;
+                        runButton.setEnabled(true);
+                        benchmarkButton.setEnabled(true);
+                        stopButton.setEnabled(false);
+                        statusLabel.setText(exitCode == 0 ? "REPL ready" : "REPL stopped");
+                        statusLabel.setForeground(exitCode == 0 ? ColorPalette.TEXT_COLOR : ColorPalette.ERROR_COLOR);
+                    });
+                }
+            });
+            appendToOutput(sent == 0
+                    ? ">>> No changes since the last evaluation\n"
+                    : ">>> Re-evaluating " + sent + " cell(s) in the REPL...\n\n", stdoutStyle);
+        } catch (IOException | IllegalStateException ex) {
+            appendToOutput("Error starting REPL: " + ex.getMessage() + "\n", stderrStyle);
+            appendToOutput("Make sure 'kotlinc' is installed and in your PATH environment variable\n", stderrStyle);
+            runButton.setEnabled(true);
+            benchmarkButton.setEnabled(true);
+            stopButton.setEnabled(false);
+            statusLabel.setText("REPL failed");
+            statusLabel.setForeground(ColorPalette.ERROR_COLOR);
+        }
+    }
+
+    private void benchmarkScript() {
+        String scriptContent = editorPane.getText();
+        if (scriptContent.trim().isEmpty()) {
+            JOptionPane.showMessageDialog(this,
+                    "There is nothing to benchmark.",
+                    "Empty Script",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        JSpinner iterationsSpinner = new JSpinner(new SpinnerNumberModel(benchmarkIterations, 1, 10000, 1));
+        JSpinner warmupSpinner = new JSpinner(new SpinnerNumberModel(benchmarkWarmup, 0, 1000, 1));
+        JSpinner parallelismSpinner = new JSpinner(new SpinnerNumberModel(benchmarkParallelism, 1,
+                Runtime.getRuntime().availableProcessors(), 1));
+
+        JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
+        panel.add(new JLabel("Measured iterations:"));
+        panel.add(iterationsSpinner);
+        panel.add(new JLabel("Warmup iterations:"));
+        panel.add(warmupSpinner);
+        panel.add(new JLabel("Parallel runs:"));
+        panel.add(parallelismSpinner);
+
+        int choice = JOptionPane.showConfirmDialog(this, panel, "Benchmark Script",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION)
+            return;
+
+        benchmarkIterations = (Integer) iterationsSpinner.getValue();
+        benchmarkWarmup = (Integer) warmupSpinner.getValue();
+        benchmarkParallelism = (Integer) parallelismSpinner.getValue();
+
+        runButton.setEnabled(false);
+        benchmarkButton.setEnabled(false);
+        stopButton.setEnabled(true);
+        statusLabel.setText("Benchmarking...");
+        statusLabel.setForeground(ColorPalette.SUCCESS_COLOR);
+        exitCodeLabel.setText(" ");
+        metricsLabel.setText(" ");
+        outputPane.setText("");
+        appendToOutput(">>> Starting benchmark...\n\n", stdoutStyle);
+
+        scriptBenchmark = new ScriptBenchmark(scriptContent, benchmarkWarmup, benchmarkIterations,
+                benchmarkParallelism, runLimits);
+        scriptBenchmark.setInputSource(inputSource);
+        scriptBenchmark.start(new ScriptBenchmark.ProgressListener() {
+            @Override
+            public void onProgress(String message) {
+                SwingUtilities.invokeLater(() -> appendToOutput(message + "\n", stdoutStyle));
+            }
+
+            @Override
+            public void onComplete(BenchmarkResult result) {
+                SwingUtilities.invokeLater(() -> {
+                    scriptBenchmark = null;
+                    runButton.setEnabled(true);
+                    benchmarkButton.setEnabled(true);
+                    stopButton.setEnabled(false);
+                    statusLabel.setText(result.isCancelled() ? "Benchmark cancelled" : "Benchmark finished");
+                    statusLabel.setForeground(result.isCancelled() ? ColorPalette.ERROR_COLOR : ColorPalette.TEXT_COLOR);
+
+                    appendToOutput("\n" + result.report(), stdoutStyle);
+                    if (!result.getRuns().isEmpty()) {
+                        runHistory.addAll(result.getRuns());
+                        exportMetricsButton.setEnabled(true);
+                        saveBenchmarkResult(result);
+                    }
+                });
+            }
+        });
+    }
+
+    private void saveBenchmarkResult(BenchmarkResult result) {
+        try {
+            Files.createDirectories(BENCHMARK_DIR.toPath());
+            File file = new File(BENCHMARK_DIR, "benchmark-" + System.currentTimeMillis() + ".json");
+            Files.write(file.toPath(), result.toJson().getBytes(StandardCharsets.UTF_8));
+            appendToOutput("\n>>> Results saved to " + file.getAbsolutePath() + "\n", stdoutStyle);
+        } catch (IOException ex) {
+            appendToOutput("\n>>> Could not save benchmark results: " + ex.getMessage() + "\n", stderrStyle);
+        }
+    }
+
+    private void compareBenchmarks() {
+        JFileChooser chooser = new JFileChooser(BENCHMARK_DIR);
+        chooser.setDialogTitle("Select baseline benchmark");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        File baselineFile = chooser.getSelectedFile();
+
+        chooser.setDialogTitle("Select benchmark to compare");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        File candidateFile = chooser.getSelectedFile();
+
+        try {
+            BenchmarkResult baseline = BenchmarkResult.fromJson(Files.readString(baselineFile.toPath()));
+            BenchmarkResult candidate = BenchmarkResult.fromJson(Files.readString(candidateFile.toPath()));
+            appendToOutput("\n>>> " + baselineFile.getName() + " vs " + candidateFile.getName() + "\n", stdoutStyle);
+            appendToOutput(candidate.compareTo(baseline), stdoutStyle);
+        } catch (IOException | RuntimeException ex) {
+            JOptionPane.showMessageDialog(this,
+                    "Could not compare benchmarks: " + ex.getMessage(),
+                    "Compare Failed",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void stopScript() {
+        if (replSession.isEvaluating()) {
+            // A half-evaluated REPL state cannot be trusted, so start over
+            replSession.reset();
+            appendToOutput("\n>>> REPL evaluation stopped, session reset\n", stderrStyle);
+            return;
+        }
+        if (scriptBenchmark != null) {
+            scriptBenchmark.cancel();
+            appendToOutput("\n>>> Benchmark cancelled\n", stderrStyle);
+            return;
+        }
+        if (scriptExecutor != null) {
+            // Its onComplete would otherwise report "Finished" over "Stopped"
+            runGeneration++;
+            scriptExecutor.stop();
+            appendToOutput("\n>>> Script execution stopped\n", stderrStyle);
+            statusLabel.setText("Stopped");
+            statusLabel.setForeground(ColorPalette.ERROR_COLOR);
+            setInteractiveInputEnabled(false);
+            inputProgressBar.setVisible(false);
+            runButton.setEnabled(true);
+            benchmarkButton.setEnabled(true);
+            stopButton.setEnabled(false);
+        }
+    }
+    
+    private void editRunLimits() {
+        // All limits are entered in seconds / megabytes, 0 disables the limit
+        JSpinner wallSpinner = new JSpinner(new SpinnerNumberModel((int) (runLimits.getWallTimeoutMillis() / 1000), 0, 86400, 1));
+        JSpinner cpuSpinner = new JSpinner(new SpinnerNumberModel((int) (runLimits.getCpuTimeMillis() / 1000), 0, 86400, 1));
+        JSpinner memorySpinner = new JSpinner(new SpinnerNumberModel((int) (runLimits.getMaxMemoryBytes() / (1024 * 1024)), 0, 1024 * 1024, 64));
+        JSpinner outputSpinner = new JSpinner(new SpinnerNumberModel((int) (runLimits.getMaxOutputBytes() / (1024 * 1024)), 0, 1024 * 1024, 1));
+
+        JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
+        panel.add(new JLabel("Wall-clock timeout (s):"));
+        panel.add(wallSpinner);
+        panel.add(new JLabel("CPU time (s):"));
+        panel.add(cpuSpinner);
+        panel.add(new JLabel("Max memory (MB):"));
+        panel.add(memorySpinner);
+        panel.add(new JLabel("Max output (MB):"));
+        panel.add(outputSpinner);
+        panel.add(new JLabel("0 disables a limit"));
+
+        int choice = JOptionPane.showConfirmDialog(this, panel, "Run Limits",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION)
+            return;
+
+        runLimits = new RunLimits(
+                ((Number) wallSpinner.getValue()).longValue() * 1000,
+                ((Number) cpuSpinner.getValue()).longValue() * 1000,
+                ((Number) memorySpinner.getValue()).longValue() * 1024 * 1024,
+                ((Number) outputSpinner.getValue()).longValue() * 1024 * 1024
+        );
+    }
+
+    private void exportRunHistory() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("run-history.json"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+
+        try {
+            Files.write(chooser.getSelectedFile().toPath(),
+                    RunMetrics.toJsonArray(runHistory).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this,
+                    "Could not export metrics: " + ex.getMessage(),
+                    "Export Failed",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void handleOutputClick(Point point) {
+        try {
+            int offset = outputPane.viewToModel2D(point);
+            StyledDocument doc = outputPane.getStyledDocument();
+            
+            // Find the line containing the click
+            String text = doc.getText(0, doc.getLength());
+            int lineStart = text.lastIndexOf('\n', offset - 1) + 1;
+            int lineEnd = text.indexOf('\n', offset);
+            String line = text.substring(lineStart, lineEnd);
+            
+            Matcher matcher = ERROR_LOCATION_PATTERN.matcher(line);
+            if (matcher.find()) {
+                int errorLine = Integer.parseInt(matcher.group(2));
+                int errorColumn = Integer.parseInt(matcher.group(3));
+                navigateToPosition(errorLine, errorColumn);
+            }
+        } catch (BadLocationException ex) {
+            // Ignore clicks that don't match error pattern
+        }
+    }
+    
+    private void navigateToPosition(int line, int column) {
+        try {
+            Element root = editorDocument.getDefaultRootElement();
+            
+            if (line < 1 || line > root.getElementCount())
+                return;
+
+            // Calculate offset from the line element
+            Element lineElement = root.getElement(line - 1);
+            int lineLength = lineElement.getEndOffset() - lineElement.getStartOffset() - 1;
+            int offset = lineElement.getStartOffset() + Math.max(0, Math.min(column - 1, lineLength));
+            
+            editorPane.setCaretPosition(offset);
+            editorPane.requestFocusInWindow();
+
+            editorPane.select(offset, offset + lineLength); //Highlight the line
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples of an operation and reports percentiles over them.
+ */
+public class LatencyRecorder {
+    private final String name;
+    private final long[] samples;
+    private int next;
+    private int size;
+    private long total;
+
+    public LatencyRecorder(String name, int capacity) {
+        this.name = name;
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+        total++;
+    }
+
+    /**
+     * Nearest-rank percentile of the retained samples in nanoseconds, or 0 when nothing was recorded.
+     */
+    public synchronized long percentile(double p) {
+        if (size == 0)
+            return 0;
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(p / 100.0 * size);
+        return sorted[Math.max(0, Math.min(size - 1, rank - 1))];
+    }
+
+    public synchronized long getCount() {
+        return total;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String toSummary() {
+        return String.format("%s p50 %.2f ms, p99 %.2f ms (%d samples)",
+                name, percentile(50) / 1e6, percentile(99) / 1e6, getCount());
+    }
+}
@@ -0,0 +1,411 @@
+import javax.swing.*;
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Replays an {@link EditSession} into a headless {@link ScriptEditor} at the recorded pace and measures
+ * how long each edit takes to show up: keystroke to syntax highlighting applied, keystroke to
+ * diagnostics underlined, and how busy the EDT was meanwhile. These include the highlighter's and the
+ * analyzer's debounce delays and every document listener, which microbenchmarks leave out. Settle
+ * times measure each update from the edit it shows, so they do not depend on how long typing went on.
+ *
+ * Usage: java -Djava.awt.headless=true -cp core/target/classes:ui/target/classes LatencyReplay [options]
+ *
+ * With --baseline the results are compared against a stored run; exit codes: 0 within the baseline,
+ * 1 regression, 2 bad arguments, 3 unreadable or unwritable files or a session that never settled.
+ */
+public class LatencyReplay {
+    static final int EXIT_OK = 0;
+    static final int EXIT_REGRESSION = 1;
+    static final int EXIT_USAGE = 2;
+    static final int EXIT_IO = 3;
+
+    private static final long SETTLE_TIMEOUT_MS = 30_000;
+    // Latencies within this much of the baseline never count as a regression, whatever the tolerance
+    private static final double LATENCY_SLACK_MS = 25;
+    private static final double BUSY_SLACK_PERCENT = 2;
+    private static final String[] KINDS = {"highlight", "diagnostics", "highlightSettle", "diagnosticsSettle"};
+
+    /**
+     * Measures how long the EDT spends dispatching events.
+     */
+    private static final class TimingEventQueue extends EventQueue {
+        volatile long busyNanos;
+        volatile long longestNanos;
+
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            long start = System.nanoTime();
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                busyNanos += elapsed;
+                if (elapsed > longestNanos)
+                    longestNanos = elapsed;
+            }
+        }
+    }
+
+    /**
+     * When a version of the text was typed or reached the screen, in nanoseconds.
+     */
+    private static final class Mark {
+        final long version;
+        final long nanos;
+
+        Mark(long version, long nanos) {
+            this.version = version;
+            this.nanos = nanos;
+        }
+    }
+
+    private final List<Mark> edits = Collections.synchronizedList(new ArrayList<>());
+    private final List<Mark> highlights = Collections.synchronizedList(new ArrayList<>());
+    private final List<Mark> diagnostics = Collections.synchronizedList(new ArrayList<>());
+    private final TimingEventQueue eventQueue = new TimingEventQueue();
+    private ScriptEditor editor;
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Path sessionFile = null;
+        int scriptLines = 2000;
+        int keystrokes = 200;
+        long seed = 42;
+        Path baseline = null;
+        boolean updateBaseline = false;
+        double tolerance = 0.25;
+        Path output = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--session":
+                        sessionFile = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--lines":
+                        scriptLines = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--keystrokes":
+                        keystrokes = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "--baseline":
+                        baseline = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--update-baseline":
+                        updateBaseline = true;
+                        break;
+                    case "--tolerance":
+                        tolerance = Double.parseDouble(value(args, ++i, arg));
+                        if (tolerance < 0)
+                            throw new IllegalArgumentException("--tolerance must not be negative");
+                        break;
+                    case "--output":
+                        output = Paths.get(value(args, ++i, arg));
+                        break;
+                    case "--help":
+                        printUsage(out);
+                        return EXIT_OK;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (updateBaseline && baseline == null)
+                throw new IllegalArgumentException("--update-baseline needs --baseline");
+            if (scriptLines < 1 || keystrokes < 1)
+                throw new IllegalArgumentException("--lines and --keystrokes must be at least 1");
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            printUsage(err);
+            return EXIT_USAGE;
+        }
+
+        try {
+            EditSession session = sessionFile != null
+                    ? EditSession.load(sessionFile)
+                    : EditSession.synthetic(scriptLines, keystrokes, seed);
+            String name = sessionFile != null
+                    ? sessionFile.getFileName().toString()
+                    : "synthetic " + scriptLines + " lines, " + keystrokes + " keystrokes, seed " + seed;
+            err.println("Replaying " + name + " (" + session.getEdits().size() + " edits over "
+                    + RunMetrics.formatMillis(session.getDurationMillis()) + ")");
+
+            Map<String, Object> result = new LatencyReplay().replay(session);
+            result.put("session", name);
+            out.print(report(result));
+            String json = toJson(result);
+            if (output != null)
+                Files.writeString(output, json, StandardCharsets.UTF_8);
+
+            if (baseline == null)
+                return EXIT_OK;
+            if (updateBaseline) {
+                Files.writeString(baseline, json, StandardCharsets.UTF_8);
+                err.println("Baseline written to " + baseline);
+                return EXIT_OK;
+            }
+            Map<String, Object> stored = readResult(baseline);
+            List<String> regressions = compare(stored, result, tolerance, out);
+            if (regressions.isEmpty()) {
+                out.println("No latency regressions against " + baseline);
+                return EXIT_OK;
+            }
+            for (String regression : regressions) {
+                err.println("Regression: " + regression);
+            }
+            return EXIT_REGRESSION;
+        } catch (IOException e) {
+            err.println("Latency replay failed: " + e.getMessage());
+            return EXIT_IO;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_IO;
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length)
+            throw new IllegalArgumentException(option + " needs a value");
+        return args[index];
+    }
+
+    private static void printUsage(PrintStream stream) {
+        stream.println("Usage: LatencyReplay [options]");
+        stream.println("  Replays typing into a headless editor and reports keystroke latencies.");
+        stream.println("  --session FILE       replay a recorded session (default: a synthetic one)");
+        stream.println("  --lines N            size of the synthetic script (default 2000)");
+        stream.println("  --keystrokes N       keystrokes in the synthetic session (default 200)");
+        stream.println("  --seed N             seed of the synthetic session (default 42)");
+        stream.println("  --baseline FILE      fail when results are worse than this stored run");
+        stream.println("  --update-baseline    store this run as the baseline instead of comparing");
+        stream.println("  --tolerance F        allowed slowdown as a fraction of the baseline (default 0.25)");
+        stream.println("  --output FILE        also write the results as JSON to FILE");
+        stream.println("  --help               show this help");
+    }
+
+    private Map<String, Object> replay(EditSession session) throws IOException, InterruptedException {
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(eventQueue);
+        onEdt(() -> {
+            editor = new ScriptEditor();
+            editor.initDeferred();
+            editor.getSyntaxHighlighter().addHighlightListener(
+                    snapshot -> highlights.add(new Mark(snapshot.getVersion(), System.nanoTime())));
+            editor.addAnalysisListener(
+                    (result, snapshot) -> diagnostics.add(new Mark(snapshot.getVersion(), System.nanoTime())));
+            editor.getEditorPane().setText(session.getInitialText());
+            editor.getUndoJournal().discardAll();
+        });
+        // Measure from a fully highlighted and analyzed script, as after opening a file
+        awaitSettled();
+
+        long startNanos = System.nanoTime();
+        long busyBefore = eventQueue.busyNanos;
+        eventQueue.longestNanos = 0;
+        for (EditSession.Edit edit : session.getEdits()) {
+            long due = startNanos + edit.getAtMillis() * 1_000_000;
+            long wait = due - System.nanoTime();
+            if (wait > 0)
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            // The keystroke happens when it is due; time it waits behind other EDT work counts too
+            SwingUtilities.invokeLater(() -> {
+                try {
+                    edit.applyTo(editor.getDocument());
+                    edits.add(new Mark(editor.getDocument().getVersion(), due));
+                } catch (javax.swing.text.BadLocationException e) {
+                    throw new IllegalStateException("Session does not match the text: " + e.getMessage(), e);
+                }
+            });
+        }
+        awaitSettled();
+        long endNanos = System.nanoTime();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("edits", edits.size());
+        result.put("highlight", percentiles(latencies(highlights)));
+        result.put("diagnostics", percentiles(latencies(diagnostics)));
+        result.put("highlightSettle", percentiles(settleTimes(highlights)));
+        result.put("diagnosticsSettle", percentiles(settleTimes(diagnostics)));
+        result.put("edtBusyPercent", round((eventQueue.busyNanos - busyBefore) * 100.0 / (endNanos - startNanos)));
+        result.put("longestEdtEventMs", round(eventQueue.longestNanos / 1e6));
+        return result;
+    }
+
+    private void onEdt(Runnable task) throws InterruptedException {
+        try {
+            SwingUtilities.invokeAndWait(task);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Waits until the last version of the text has been both highlighted and analyzed
+    private void awaitSettled() throws InterruptedException, IOException {
+        long deadline = System.currentTimeMillis() + SETTLE_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            long[] version = new long[1];
+            onEdt(() -> version[0] = editor.getDocument().getVersion());
+            if (reached(highlights, version[0]) && reached(diagnostics, version[0]))
+                return;
+            Thread.sleep(20);
+        }
+        throw new IOException("the editor did not settle within " + SETTLE_TIMEOUT_MS / 1000 + " s");
+    }
+
+    private static boolean reached(List<Mark> marks, long version) {
+        synchronized (marks) {
+            return !marks.isEmpty() && marks.get(marks.size() - 1).version >= version;
+        }
+    }
+
+    /**
+     * For every edit, the time until the first on-screen update of its version or a later one. Updates
+     * come in version order, since stale highlights and results are dropped before reaching the screen.
+     */
+    private List<Double> latencies(List<Mark> updates) {
+        List<Double> latencies = new ArrayList<>();
+        synchronized (updates) {
+            int next = 0;
+            for (Mark edit : edits) {
+                while (next < updates.size() && updates.get(next).version < edit.version)
+                    next++;
+                if (next < updates.size())
+                    latencies.add((updates.get(next).nanos - edit.nanos) / 1e6);
+            }
+        }
+        Collections.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * For every on-screen update during the replay, the time since the edit that produced its version:
+     * the debounce delay plus the work, as seen once typing pauses. Unlike the per-keystroke latencies
+     * this does not depend on how long the typing went on, so it moves with the editor's own cost.
+     */
+    private List<Double> settleTimes(List<Mark> updates) {
+        Map<Long, Long> editNanos = new HashMap<>();
+        synchronized (edits) {
+            for (Mark edit : edits) {
+                editNanos.put(edit.version, edit.nanos);
+            }
+        }
+        List<Double> times = new ArrayList<>();
+        synchronized (updates) {
+            for (Mark update : updates) {
+                Long typed = editNanos.get(update.version);
+                if (typed != null)
+                    times.add((update.nanos - typed) / 1e6);
+            }
+        }
+        Collections.sort(times);
+        return times;
+    }
+
+    private static Map<String, Object> percentiles(List<Double> sorted) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("p50", round(percentile(sorted, 50)));
+        summary.put("p95", round(percentile(sorted, 95)));
+        summary.put("p99", round(percentile(sorted, 99)));
+        summary.put("max", round(percentile(sorted, 100)));
+        return summary;
+    }
+
+    // Nearest-rank percentile, as in BenchmarkResult
+    private static double percentile(List<Double> sorted, double p) {
+        if (sorted.isEmpty()) return 0;
+        int rank = (int) Math.ceil(p / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, Math.min(rank - 1, sorted.size() - 1)));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String report(Map<String, Object> result) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Keystroke latency over %s edits (%s)%n", result.get("edits"), result.get("session")));
+        sb.append(String.format("  %-18s %9s %9s %9s %9s%n", "", "p50", "p95", "p99", "max"));
+        for (String kind : KINDS) {
+            Map<String, Object> summary = (Map<String, Object>) result.get(kind);
+            sb.append(String.format("  %-18s %7.1fms %7.1fms %7.1fms %7.1fms%n", kind,
+                    summary.get("p50"), summary.get("p95"), summary.get("p99"), summary.get("max")));
+        }
+        sb.append(String.format("  EDT busy %.1f%%, longest event %.1f ms%n",
+                result.get("edtBusyPercent"), result.get("longestEdtEventMs")));
+        return sb.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String toJson(Map<String, Object> result) {
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append("  \"session\": ").append(Json.quote((String) result.get("session"))).append(",\n");
+        sb.append("  \"edits\": ").append(result.get("edits")).append(",\n");
+        for (String kind : KINDS) {
+            Map<String, Object> summary = (Map<String, Object>) result.get(kind);
+            sb.append("  \"").append(kind).append("\": {");
+            String separator = "";
+            for (Map.Entry<String, Object> entry : summary.entrySet()) {
+                sb.append(separator).append('"').append(entry.getKey()).append("\": ").append(entry.getValue());
+                separator = ", ";
+            }
+            sb.append("},\n");
+        }
+        sb.append("  \"edtBusyPercent\": ").append(result.get("edtBusyPercent")).append(",\n");
+        sb.append("  \"longestEdtEventMs\": ").append(result.get("longestEdtEventMs")).append("\n");
+        return sb.append("}\n").toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readResult(Path file) throws IOException {
+        try {
+            return (Map<String, Object>) Json.parse(Files.readString(file, StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new IOException(file + " is not a latency result: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Prints the baseline next to this run and returns the metrics that got worse by more than the
+     * tolerance. Percentiles above p95, the settle p95 (there are only a few dozen settles) and the
+     * longest EDT event are shown but not checked; a single GC pause moves them.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<String> compare(Map<String, Object> baseline, Map<String, Object> current, double tolerance, PrintStream out) {
+        List<String> regressions = new ArrayList<>();
+        out.println("Comparison (baseline -> this):");
+        for (String kind : KINDS) {
+            Map<String, Object> before = (Map<String, Object>) baseline.get(kind);
+            Map<String, Object> after = (Map<String, Object>) current.get(kind);
+            for (String p : new String[]{"p50", "p95", "p99"}) {
+                double was = ((Number) before.get(p)).doubleValue();
+                double now = ((Number) after.get(p)).doubleValue();
+                out.println(String.format("  %-18s %-4s %8.1fms -> %8.1fms", kind, p, was, now));
+                boolean checked = p.equals("p50") || p.equals("p95") && !kind.endsWith("Settle");
+                if (checked && now > was * (1 + tolerance) + LATENCY_SLACK_MS)
+                    regressions.add(String.format("%s %s %.1f ms, baseline %.1f ms", kind, p, now, was));
+            }
+        }
+        double was = ((Number) baseline.get("edtBusyPercent")).doubleValue();
+        double now = ((Number) current.get("edtBusyPercent")).doubleValue();
+        out.println(String.format("  %-23s %8.1f%%  -> %8.1f%%", "EDT busy", was, now));
+        if (now > was * (1 + tolerance) + BUSY_SLACK_PERCENT)
+            regressions.add(String.format("EDT busy %.1f%%, baseline %.1f%%", now, was));
+        return regressions;
+    }
+}
@@ -1,5 +1,6 @@
 public class Main {
     public static void main(String[] args) {
+        StartupMetrics.mark(StartupMetrics.MAIN);
         KotlinIDE ide = new KotlinIDE();
     }
 }
@@ -0,0 +1,219 @@
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.border.LineBorder;
+import javax.swing.border.TitledBorder;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Rolling per-subsystem timings from {@link Instrumentation} and the latest EDT stalls with the stack
+ * the watchdog sampled. Refreshes once a second while it is showing.
+ */
+public class MetricsPanel extends JPanel {
+    private static final int REFRESH_MS = 1000;
+    private static final String[] COLUMNS = {"Subsystem", "Count", "p50", "p95", "p99", "Max", "Last size"};
+
+    private final SummaryTableModel summaryModel = new SummaryTableModel();
+    private final DefaultListModel<Instrumentation.Stall> stallModel = new DefaultListModel<>();
+    private final JList<Instrumentation.Stall> stallList = new JList<>(stallModel);
+    private final JTextArea stackArea = new JTextArea();
+    private final Timer refreshTimer = new Timer(REFRESH_MS, e -> refresh());
+
+    private static final class SummaryTableModel extends AbstractTableModel {
+        private final Instrumentation.Subsystem[] subsystems = Instrumentation.Subsystem.values();
+        private final Instrumentation.Summary[] summaries = new Instrumentation.Summary[subsystems.length];
+
+        void refresh() {
+            for (int i = 0; i < subsystems.length; i++) {
+                summaries[i] = Instrumentation.summarize(subsystems[i]);
+            }
+            fireTableRowsUpdated(0, subsystems.length - 1);
+        }
+
+        @Override
+        public int getRowCount() {
+            return subsystems.length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Instrumentation.Summary summary = summaries[row];
+            if (column == 0)
+                return subsystems[row].getLabel();
+            if (summary == null || summary.count == 0)
+                return column == 1 ? "0" : "";
+            switch (column) {
+                case 1: return String.valueOf(summary.count);
+                case 2: return formatMillis(summary.p50);
+                case 3: return formatMillis(summary.p95);
+                case 4: return formatMillis(summary.p99);
+                case 5: return formatMillis(summary.max);
+                default: return summary.lastSize + " " + subsystems[row].getUnit();
+            }
+        }
+    }
+
+    public MetricsPanel() {
+        setLayout(new BorderLayout());
+        setBackground(ColorPalette.BACKGROUND_DARK);
+        initComponents();
+        refresh();
+    }
+
+    private void initComponents() {
+        JTable table = new JTable(summaryModel);
+        table.setBackground(ColorPalette.TABLE_BACKGROUND);
+        table.setForeground(Color.WHITE);
+        table.setGridColor(ColorPalette.GRID_COLOR);
+        table.setSelectionBackground(ColorPalette.SELECTION_BACKGROUND);
+        table.setSelectionForeground(Color.WHITE);
+        table.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        table.setRowHeight(22);
+        DefaultTableCellRenderer rightAligned = new DefaultTableCellRenderer();
+        rightAligned.setHorizontalAlignment(SwingConstants.RIGHT);
+        for (int column = 1; column < COLUMNS.length; column++) {
+            table.getColumnModel().getColumn(column).setCellRenderer(rightAligned);
+        }
+        table.getColumnModel().getColumn(0).setPreferredWidth(140);
+        table.getColumnModel().getColumn(6).setPreferredWidth(140);
+        JScrollPane tableScroll = new JScrollPane(table);
+        tableScroll.setBorder(new LineBorder(ColorPalette.GRID_COLOR));
+        tableScroll.getViewport().setBackground(ColorPalette.TABLE_BACKGROUND);
+        tableScroll.setPreferredSize(new Dimension(0, 180));
+
+        stallList.setBackground(ColorPalette.TABLE_BACKGROUND);
+        stallList.setForeground(Color.WHITE);
+        stallList.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        stallList.setCellRenderer(new DefaultListCellRenderer() {
+            private final SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss.SSS");
+
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                Instrumentation.Stall stall = (Instrumentation.Stall) value;
+                String duration = stall.durationNanos < 0 ? "running" : formatMillis(stall.durationNanos / 1e6);
+                String text = time.format(new Date(stall.atMillis)) + "  " + duration + "  " + stall.eventType;
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        stallList.addListSelectionListener(e -> {
+            Instrumentation.Stall stall = stallList.getSelectedValue();
+            stackArea.setText(stall != null ? stall.stackText() : "");
+            stackArea.setCaretPosition(0);
+        });
+        stackArea.setEditable(false);
+        stackArea.setBackground(ColorPalette.TABLE_BACKGROUND);
+        stackArea.setForeground(ColorPalette.TEXT_COLOR);
+        stackArea.setFont(new Font("Monospaced", Font.PLAIN, 11));
+
+        JSplitPane stallSplit = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                new JScrollPane(stallList), new JScrollPane(stackArea));
+        stallSplit.setResizeWeight(0.4);
+        stallSplit.setBorder(BorderFactory.createTitledBorder(
+                BorderFactory.createLineBorder(ColorPalette.GRID_COLOR),
+                "EDT stalls",
+                TitledBorder.LEFT,
+                TitledBorder.TOP,
+                new Font("Arial", Font.BOLD, 12),
+                ColorPalette.TITLE_COLOR));
+
+        JButton exportButton = new JButton("Export...");
+        exportButton.addActionListener(e -> export());
+        JButton clearButton = new JButton("Clear");
+        clearButton.addActionListener(e -> {
+            Instrumentation.clear();
+            refresh();
+        });
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 5));
+        buttons.setBackground(ColorPalette.BACKGROUND_DARK);
+        buttons.add(clearButton);
+        buttons.add(exportButton);
+
+        JLabel hint = new JLabel(" Durations of the last " + Instrumentation.WINDOW_SIZE + " operations per subsystem");
+        hint.setFont(new Font("Arial", Font.PLAIN, 11));
+        hint.setForeground(ColorPalette.TITLE_COLOR);
+        hint.setBorder(new EmptyBorder(4, 4, 4, 4));
+
+        JPanel top = new JPanel(new BorderLayout());
+        top.setBackground(ColorPalette.BACKGROUND_DARK);
+        top.add(hint, BorderLayout.NORTH);
+        top.add(tableScroll, BorderLayout.CENTER);
+
+        add(top, BorderLayout.NORTH);
+        add(stallSplit, BorderLayout.CENTER);
+        add(buttons, BorderLayout.SOUTH);
+
+        setBorder(BorderFactory.createTitledBorder(
+                BorderFactory.createLineBorder(ColorPalette.GRID_COLOR),
+                "Metrics",
+                TitledBorder.LEFT,
+                TitledBorder.TOP,
+                new Font("Arial", Font.BOLD, 12),
+                ColorPalette.TITLE_COLOR));
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        refreshTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        refreshTimer.stop();
+        super.removeNotify();
+    }
+
+    private void refresh() {
+        summaryModel.refresh();
+        Instrumentation.Stall selected = stallList.getSelectedValue();
+        List<Instrumentation.Stall> stalls = Instrumentation.getStalls();
+        if (!stalls.equals(Collections.list(stallModel.elements()))) {
+            stallModel.clear();
+            stallModel.addAll(stalls);
+            if (selected != null && stalls.contains(selected))
+                stallList.setSelectedValue(selected, false);
+        } else {
+            // Durations of stalls that were still running may have arrived
+            stallList.repaint();
+        }
+    }
+
+    private void export() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("ide-metrics.json"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        try {
+            Files.writeString(chooser.getSelectedFile().toPath(), Instrumentation.toJson(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this,
+                    "Could not export metrics: " + ex.getMessage(),
+                    "Export Failed",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private static String formatMillis(double millis) {
+        return millis < 10 ? String.format("%.2f ms", millis) : String.format("%.0f ms", millis);
+    }
+}
@@ -0,0 +1,127 @@
+import javax.swing.*;
+import javax.swing.border.LineBorder;
+import javax.swing.border.TitledBorder;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+/**
+ * Tree of the fun, class, interface and object declarations of the script, nested as in the source.
+ * Rebuilt from the {@link EditorStructure} a moment after typing stops; clicking an entry moves the
+ * caret to its header.
+ */
+public class OutlinePanel extends JPanel {
+    private static final int REFRESH_DELAY_MS = 300;
+
+    private final JTextPane editorPane;
+    private final EditorStructure structure;
+    private final DefaultMutableTreeNode rootNode = new DefaultMutableTreeNode("script");
+    private final DefaultTreeModel treeModel = new DefaultTreeModel(rootNode);
+    private final JTree tree = new JTree(treeModel);
+    private final Timer refreshTimer;
+
+    /**
+     * One declaration in the tree; the offset is from the last refresh.
+     */
+    private static final class Entry {
+        final String label;
+        final int headerOffset;
+
+        Entry(String label, int headerOffset) {
+            this.label = label;
+            this.headerOffset = headerOffset;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    public OutlinePanel(JTextPane editorPane, EditorStructure structure) {
+        this.editorPane = editorPane;
+        this.structure = structure;
+        setLayout(new BorderLayout());
+        setBackground(ColorPalette.BACKGROUND_DARK);
+        initComponents();
+
+        refreshTimer = new Timer(REFRESH_DELAY_MS, e -> refresh());
+        refreshTimer.setRepeats(false);
+        structure.addChangeListener(e -> refreshTimer.restart());
+        refresh();
+    }
+
+    private void initComponents() {
+        tree.setRootVisible(false);
+        tree.setShowsRootHandles(true);
+        tree.setBackground(ColorPalette.TABLE_BACKGROUND);
+        tree.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        DefaultTreeCellRenderer renderer = new DefaultTreeCellRenderer();
+        renderer.setBackgroundNonSelectionColor(ColorPalette.TABLE_BACKGROUND);
+        renderer.setBackgroundSelectionColor(ColorPalette.SELECTION_BACKGROUND);
+        renderer.setTextNonSelectionColor(Color.WHITE);
+        renderer.setTextSelectionColor(Color.WHITE);
+        renderer.setBorderSelectionColor(ColorPalette.SELECTION_BACKGROUND);
+        renderer.setLeafIcon(null);
+        renderer.setOpenIcon(null);
+        renderer.setClosedIcon(null);
+        tree.setCellRenderer(renderer);
+
+        // Click to navigate to the declaration
+        tree.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                TreePath path = tree.getPathForLocation(e.getX(), e.getY());
+                if (path == null)
+                    return;
+                Object value = ((DefaultMutableTreeNode) path.getLastPathComponent()).getUserObject();
+                if (value instanceof Entry) {
+                    int offset = Math.min(((Entry) value).headerOffset, editorPane.getDocument().getLength());
+                    editorPane.setCaretPosition(offset);
+                    editorPane.requestFocusInWindow();
+                }
+            }
+        });
+
+        JScrollPane scrollPane = new JScrollPane(tree);
+        scrollPane.setBorder(new LineBorder(ColorPalette.GRID_COLOR));
+        scrollPane.getViewport().setBackground(ColorPalette.TABLE_BACKGROUND);
+        add(scrollPane, BorderLayout.CENTER);
+
+        TitledBorder border = BorderFactory.createTitledBorder(
+            BorderFactory.createLineBorder(ColorPalette.GRID_COLOR),
+            "Structure",
+            TitledBorder.LEFT,
+            TitledBorder.TOP,
+            new Font("Arial", Font.BOLD, 12),
+                ColorPalette.TITLE_COLOR
+        );
+        setBorder(border);
+    }
+
+    private void refresh() {
+        rootNode.removeAllChildren();
+        addDeclarations(rootNode, structure.getStructure().getRoot());
+        treeModel.reload();
+        for (int row = 0; row < tree.getRowCount(); row++) {
+            tree.expandRow(row);
+        }
+    }
+
+    // Declarations nested in plain blocks (e.g. a local fun inside an if) hang off the nearest declaration
+    private static void addDeclarations(DefaultMutableTreeNode parent, BlockStructure.Block block) {
+        for (BlockStructure.Block child : block.getChildren()) {
+            DefaultMutableTreeNode node = parent;
+            if (child.getDeclarationKind() != null) {
+                String name = child.getDeclarationName() != null ? child.getDeclarationName() : "<anonymous>";
+                node = new DefaultMutableTreeNode(new Entry(child.getDeclarationKind() + " " + name, child.getHeaderOffset()));
+                parent.add(node);
+            }
+            addDeclarations(node, child);
+        }
+    }
+}
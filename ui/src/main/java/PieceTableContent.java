@@ -0,0 +1,469 @@
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Piece-table implementation of the Swing document content.
+ * The original text and all inserted text live in append-only buffers; the document is a list
+ * of pieces pointing into them. Every edit publishes a new immutable piece list, which lets
+ * {@link #snapshot()} hand out a consistent {@link TextSnapshot} in O(1) from any thread.
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+    private static final int INITIAL_ADD_CAPACITY = 1024;
+    private static final int MIN_PURGE_SIZE = 256;
+
+    /**
+     * Published piece list. Replaced as a whole on every edit.
+     */
+    private static final class State {
+        final TextSnapshot.Piece[] pieces;
+        final int[] offsets;
+        final int length;
+        final long version;
+
+        State(TextSnapshot.Piece[] pieces, long version) {
+            this.pieces = pieces;
+            this.offsets = new int[pieces.length];
+            int offset = 0;
+            for (int i = 0; i < pieces.length; i++) {
+                offsets[i] = offset;
+                offset += pieces[i].length;
+            }
+            this.length = offset;
+            this.version = version;
+        }
+    }
+
+    private char[] addBuffer = new char[INITIAL_ADD_CAPACITY];
+    private int addLength;
+    private volatile State state;
+
+    // Positions, sorted by offset. Like GapContent, marks before the boundary store their offset
+    // directly and marks after it store it relative to markDelta, so repeated edits at one place
+    // only touch the marks between the old and new edit location.
+    private final MarkVector marks = new MarkVector();
+    private int boundaryIndex;
+    private int boundaryOffset;
+    private int markDelta;
+    private int purgeSize = MIN_PURGE_SIZE;
+
+    public PieceTableContent() {
+        // Swing documents always end with an implied newline
+        char[] initial = {'\n'};
+        state = new State(new TextSnapshot.Piece[]{new TextSnapshot.Piece(initial, 0, 1)}, 0);
+    }
+
+    /**
+     * Returns an immutable snapshot of the document text, without the implied trailing newline.
+     */
+    public TextSnapshot snapshot() {
+        State s = state;
+        return new TextSnapshot(s.version, s.pieces, s.offsets, s.length - 1);
+    }
+
+    public long getVersion() {
+        return state.version;
+    }
+
+    public int getPieceCount() {
+        return state.pieces.length;
+    }
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        synchronized (marks) {
+            if (marks.size() >= purgeSize)
+                purgeMarks();
+
+            Mark mark = new Mark();
+            MarkRef ref = new MarkRef(mark);
+            mark.ref = ref;
+
+            int index;
+            if (offset < boundaryOffset) {
+                ref.raw = offset;
+                index = searchMarks(0, boundaryIndex, offset);
+                boundaryIndex++;
+            } else {
+                ref.after = true;
+                ref.raw = offset - markDelta;
+                index = searchMarks(boundaryIndex, marks.size(), offset);
+            }
+            marks.add(index, ref);
+            return mark;
+        }
+    }
+
+    @Override
+    public int length() {
+        return state.length;
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        State s = state;
+        if (where < 0 || where >= s.length)
+            throw new BadLocationException("Invalid insert", where);
+        if (str.isEmpty())
+            return null;
+
+        int len = str.length();
+        int index = findPieceAt(s, where);
+        List<TextSnapshot.Piece> pieces = new ArrayList<>(s.pieces.length + 2);
+
+        // Typing extends the piece that was appended last instead of creating a new one
+        boolean extendPrevious = index > 0 && s.offsets[index] == where && endsAtAddTail(s.pieces[index - 1]);
+        int addStart = append(str);
+
+        for (int i = 0; i < s.pieces.length; i++) {
+            TextSnapshot.Piece piece = s.pieces[i];
+            if (i == index - 1 && extendPrevious) {
+                pieces.add(new TextSnapshot.Piece(addBuffer, piece.start, piece.length + len));
+            } else if (i == index) {
+                int split = where - s.offsets[i];
+                if (split > 0)
+                    pieces.add(new TextSnapshot.Piece(piece.buffer, piece.start, split));
+                if (!extendPrevious)
+                    pieces.add(new TextSnapshot.Piece(addBuffer, addStart, len));
+                pieces.add(new TextSnapshot.Piece(piece.buffer, piece.start + split, piece.length - split));
+            } else {
+                pieces.add(piece);
+            }
+        }
+
+        state = new State(pieces.toArray(new TextSnapshot.Piece[0]), s.version + 1);
+        updateMarksForInsert(where, len);
+        return new InsertEdit(where, len);
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        State s = state;
+        if (where < 0 || nitems < 0 || where + nitems >= s.length)
+            throw new BadLocationException("Invalid remove", where);
+        if (nitems == 0)
+            return null;
+
+        String removed = getString(where, nitems);
+        int end = where + nitems;
+        List<TextSnapshot.Piece> pieces = new ArrayList<>(s.pieces.length + 1);
+
+        for (int i = 0; i < s.pieces.length; i++) {
+            TextSnapshot.Piece piece = s.pieces[i];
+            int pieceStart = s.offsets[i];
+            int pieceEnd = pieceStart + piece.length;
+            if (pieceEnd <= where || pieceStart >= end) {
+                pieces.add(piece);
+                continue;
+            }
+            // Keep whatever part of the piece lies outside the removed range
+            if (pieceStart < where)
+                pieces.add(new TextSnapshot.Piece(piece.buffer, piece.start, where - pieceStart));
+            if (pieceEnd > end)
+                pieces.add(new TextSnapshot.Piece(piece.buffer, piece.start + (end - pieceStart), pieceEnd - end));
+        }
+
+        state = new State(pieces.toArray(new TextSnapshot.Piece[0]), s.version + 1);
+        updateMarksForRemove(where, nitems);
+        return new RemoveEdit(where, removed);
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        State s = state;
+        checkRange(s, where, len);
+        return new TextSnapshot(s.version, s.pieces, s.offsets, s.length).subSequence(where, where + len);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        State s = state;
+        checkRange(s, where, len);
+        if (len == 0) {
+            txt.array = new char[0];
+            txt.offset = 0;
+            txt.count = 0;
+            return;
+        }
+
+        // Hand out the piece buffer directly when the range lies inside one piece
+        int index = findPieceAt(s, where);
+        TextSnapshot.Piece piece = s.pieces[index];
+        int offsetInPiece = where - s.offsets[index];
+        int available = piece.length - offsetInPiece;
+        if (available >= len || txt.isPartialReturn()) {
+            txt.array = piece.buffer;
+            txt.offset = piece.start + offsetInPiece;
+            txt.count = Math.min(len, available);
+            return;
+        }
+
+        char[] chars = new char[len];
+        new TextSnapshot(s.version, s.pieces, s.offsets, s.length).getChars(where, where + len, chars, 0);
+        txt.array = chars;
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    private static void checkRange(State s, int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > s.length)
+            throw new BadLocationException("Invalid range", where);
+    }
+
+    /**
+     * Index of the piece containing the given offset.
+     */
+    private static int findPieceAt(State s, int offset) {
+        int low = 0;
+        int high = s.pieces.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (s.offsets[mid] <= offset) low = mid;
+            else high = mid - 1;
+        }
+        return low;
+    }
+
+    private boolean endsAtAddTail(TextSnapshot.Piece piece) {
+        return piece.buffer == addBuffer && piece.start + piece.length == addLength;
+    }
+
+    /**
+     * Appends to the add buffer and returns the start index of the appended text.
+     * Growing copies into a new array; older snapshots keep referring to the previous one.
+     */
+    private int append(String str) {
+        int needed = addLength + str.length();
+        if (needed > addBuffer.length) {
+            char[] grown = new char[Math.max(needed, addBuffer.length * 2)];
+            System.arraycopy(addBuffer, 0, grown, 0, addLength);
+            addBuffer = grown;
+        }
+        int start = addLength;
+        str.getChars(0, str.length(), addBuffer, start);
+        addLength = needed;
+        return start;
+    }
+
+    // Marks follow the same rules as javax.swing.text.StringContent
+
+    private void updateMarksForInsert(int offset, int length) {
+        if (offset == 0)
+            offset = 1; // positions at 0 stay at the start of the document
+        synchronized (marks) {
+            moveBoundary(offset);
+            markDelta += length;
+        }
+    }
+
+    private void updateMarksForRemove(int offset, int length) {
+        int end = offset + length;
+        synchronized (marks) {
+            moveBoundary(offset);
+            // Marks inside the removed range collapse onto its start
+            for (int i = boundaryIndex; i < marks.size(); i++) {
+                MarkRef ref = marks.get(i);
+                if (ref.offset() >= end)
+                    break;
+                ref.raw = offset - markDelta + length;
+            }
+            markDelta -= length;
+        }
+    }
+
+    /**
+     * Re-encodes marks so that exactly those with an offset below the given one are before the boundary.
+     */
+    private void moveBoundary(int offset) {
+        while (boundaryIndex > 0 && marks.get(boundaryIndex - 1).offset() >= offset) {
+            MarkRef ref = marks.get(--boundaryIndex);
+            ref.raw = ref.raw - markDelta;
+            ref.after = true;
+        }
+        while (boundaryIndex < marks.size() && marks.get(boundaryIndex).offset() < offset) {
+            MarkRef ref = marks.get(boundaryIndex++);
+            ref.raw = ref.raw + markDelta;
+            ref.after = false;
+        }
+        boundaryOffset = offset;
+    }
+
+    private int searchMarks(int from, int to, int offset) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (marks.get(mid).offset() < offset) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Drops marks whose positions were garbage collected. The next purge happens once the list has
+     * doubled again, so purging stays amortized O(1) per created position.
+     */
+    private void purgeMarks() {
+        List<MarkRef> live = new ArrayList<>(marks.size());
+        int liveBeforeBoundary = 0;
+        for (int i = 0; i < marks.size(); i++) {
+            MarkRef ref = marks.get(i);
+            if (ref.get() == null)
+                continue;
+            live.add(ref);
+            if (i < boundaryIndex)
+                liveBeforeBoundary++;
+        }
+        marks.setAll(live);
+        boundaryIndex = liveBeforeBoundary;
+        purgeSize = Math.max(MIN_PURGE_SIZE, live.size() * 2);
+    }
+
+    /**
+     * Array of marks with a gap at the last insertion index, like GapContent's MarkVector. Inserting
+     * a block of lines creates one position per line, each right after the previous one; with a gap
+     * that costs O(1) per position instead of shifting every mark behind the insertion point.
+     */
+    private static final class MarkVector {
+        private MarkRef[] array = new MarkRef[16];
+        private int gapStart;
+        private int gapLength = array.length;
+
+        int size() {
+            return array.length - gapLength;
+        }
+
+        MarkRef get(int index) {
+            return index < gapStart ? array[index] : array[index + gapLength];
+        }
+
+        void add(int index, MarkRef ref) {
+            if (gapLength == 0)
+                grow();
+            moveGap(index);
+            array[gapStart++] = ref;
+            gapLength--;
+        }
+
+        void setAll(List<MarkRef> refs) {
+            array = refs.toArray(new MarkRef[Math.max(16, refs.size() * 2)]);
+            gapStart = refs.size();
+            gapLength = array.length - refs.size();
+        }
+
+        private void moveGap(int index) {
+            if (index < gapStart)
+                System.arraycopy(array, index, array, index + gapLength, gapStart - index);
+            else if (index > gapStart)
+                System.arraycopy(array, gapStart + gapLength, array, gapStart, index - gapStart);
+            gapStart = index;
+        }
+
+        private void grow() {
+            MarkRef[] grown = new MarkRef[array.length * 2];
+            int tail = array.length - gapStart;
+            System.arraycopy(array, 0, grown, 0, gapStart);
+            System.arraycopy(array, gapStart, grown, grown.length - tail, tail);
+            gapLength = grown.length - array.length;
+            array = grown;
+        }
+    }
+
+    /**
+     * Offset bookkeeping for a position. Kept in the sorted list even after the position itself
+     * is collected, so the list order stays valid until the next purge.
+     */
+    private final class MarkRef extends WeakReference<Mark> {
+        int raw;
+        boolean after;
+
+        MarkRef(Mark mark) {
+            super(mark);
+        }
+
+        int offset() {
+            return after ? raw + markDelta : raw;
+        }
+    }
+
+    private final class Mark implements Position {
+        MarkRef ref;
+
+        @Override
+        public int getOffset() {
+            synchronized (marks) {
+                return ref.offset();
+            }
+        }
+    }
+
+    private final class InsertEdit extends AbstractUndoableEdit {
+        private final int offset;
+        private final int length;
+        private String text;
+
+        InsertEdit(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                text = getString(offset, length);
+                remove(offset, length);
+            } catch (BadLocationException e) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+                insertString(offset, text);
+            } catch (BadLocationException e) {
+                throw new CannotRedoException();
+            }
+        }
+    }
+
+    private final class RemoveEdit extends AbstractUndoableEdit {
+        private final int offset;
+        private final String text;
+
+        RemoveEdit(int offset, String text) {
+            this.offset = offset;
+            this.text = text;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            try {
+                insertString(offset, text);
+            } catch (BadLocationException e) {
+                throw new CannotUndoException();
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            try {
+                remove(offset, text.length());
+            } catch (BadLocationException e) {
+                throw new CannotRedoException();
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Long-lived kotlinc REPL process used by the REPL execution mode.
+ * The session remembers which cells it has evaluated and only sends the first changed
+ * cell and everything after it, so expensive setup at the top of a script runs once.
+ */
+public class ReplSession {
+    private static final String CELL_DONE_MARKER = "\u0001KIDE_CELL_DONE ";
+    private static final long RESET_GRACE_MS = 500;
+
+    private final List<String> evaluatedCells = new ArrayList<>();
+
+    private volatile Process process;
+    private BufferedWriter input;
+    private volatile ScriptExecutor.OutputListener listener;
+    private volatile List<ScriptCells.Cell> pendingCells = Collections.emptyList();
+    private volatile int currentCell;
+    private volatile boolean evaluating;
+
+    public synchronized boolean isEvaluating() {
+        return evaluating;
+    }
+
+    /**
+     * Evaluates the changed cells of the given script. Output of every cell is prefixed with its
+     * source location and delivered to the listener, followed by onComplete once the last cell finished.
+     * Returns the number of cells sent to the REPL.
+     */
+    public synchronized int evaluate(String code, ScriptExecutor.OutputListener listener) throws IOException {
+        if (evaluating)
+            throw new IllegalStateException("REPL is still evaluating");
+
+        List<ScriptCells.Cell> cells = ScriptCells.split(code);
+        int firstChanged = 0;
+        while (firstChanged < cells.size() && firstChanged < evaluatedCells.size()
+                && cells.get(firstChanged).getText().equals(evaluatedCells.get(firstChanged))) {
+            firstChanged++;
+        }
+
+        List<ScriptCells.Cell> toEvaluate = cells.subList(firstChanged, cells.size());
+        if (toEvaluate.isEmpty()) {
+            listener.onComplete(0);
+            return 0;
+        }
+
+        ensureStarted();
+
+        this.listener = listener;
+        this.pendingCells = new ArrayList<>(toEvaluate);
+        this.currentCell = 0;
+        this.evaluating = true;
+
+        while (evaluatedCells.size() > firstChanged) {
+            evaluatedCells.remove(evaluatedCells.size() - 1);
+        }
+        for (int i = 0; i < toEvaluate.size(); i++) {
+            ScriptCells.Cell cell = toEvaluate.get(i);
+            evaluatedCells.add(cell.getText());
+            input.write(cell.getText());
+            input.write("\n");
+            // The marker tells the reader where this cell's output ends
+            input.write("println(\"\\u0001KIDE_CELL_DONE " + i + "\")\n");
+        }
+        input.flush();
+        return toEvaluate.size();
+    }
+
+    /**
+     * Stops the REPL process and forgets all evaluated state. The next evaluation starts a fresh REPL.
+     */
+    public synchronized void reset() {
+        if (process != null && process.isAlive())
+            ScriptExecutor.terminateProcessTree(process, RESET_GRACE_MS);
+        process = null;
+        input = null;
+        evaluatedCells.clear();
+
+        ScriptExecutor.OutputListener current = listener;
+        if (evaluating && current != null) {
+            evaluating = false;
+            current.onComplete(-1);
+        }
+    }
+
+    private void ensureStarted() throws IOException {
+        if (process != null && process.isAlive())
+            return;
+
+        evaluatedCells.clear();
+        ProcessBuilder pb = new ProcessBuilder(ScriptExecutor.kotlincCommand());
+        pb.directory(new File(System.getProperty("java.io.tmpdir")));
+        Process started = pb.start();
+        process = started;
+        input = new BufferedWriter(new OutputStreamWriter(started.getOutputStream(), StandardCharsets.UTF_8));
+
+        startReader(started, started.getInputStream(), false);
+        startReader(started, started.getErrorStream(), true);
+        started.onExit().thenAccept(this::onProcessExit);
+    }
+
+    private void startReader(Process owner, InputStream stream, boolean isError) {
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (owner == process)
+                        handleLine(stripPrompt(line), isError);
+                }
+            } catch (IOException e) {
+                // Stream closed by reset
+            }
+        }, isError ? "repl-stderr" : "repl-stdout");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void handleLine(String line, boolean isError) {
+        ScriptExecutor.OutputListener current = listener;
+        if (current == null || !evaluating)
+            return;
+
+        int marker = line.indexOf(CELL_DONE_MARKER);
+        if (marker >= 0) {
+            int finished = Integer.parseInt(line.substring(marker + CELL_DONE_MARKER.length()).trim());
+            currentCell = finished + 1;
+            if (currentCell >= pendingCells.size()) {
+                evaluating = false;
+                current.onComplete(0);
+            }
+            return;
+        }
+        if (line.isEmpty())
+            return;
+
+        String attributed = locationOf(currentCell) + " " + line;
+        if (isError) current.onError(attributed);
+        else current.onOutput(attributed);
+    }
+
+    private String locationOf(int cellIndex) {
+        List<ScriptCells.Cell> cells = pendingCells;
+        if (cellIndex >= cells.size())
+            return "[repl]";
+        // Same file:line:column shape as compiler errors so the location is clickable
+        return "[repl.kts:" + cells.get(cellIndex).getStartLine() + ":1]";
+    }
+
+    private void onProcessExit(Process exited) {
+        ScriptExecutor.OutputListener current = listener;
+        synchronized (this) {
+            if (exited != process)
+                return;
+            process = null;
+            input = null;
+            evaluatedCells.clear();
+        }
+        if (evaluating && current != null) {
+            evaluating = false;
+            current.onError("REPL process exited with code " + exited.exitValue());
+            current.onComplete(exited.exitValue());
+        }
+    }
+
+    private static String stripPrompt(String line) {
+        String stripped = line;
+        while (stripped.startsWith(">>> ") || stripped.startsWith("... ")) {
+            stripped = stripped.substring(4);
+        }
+        return stripped;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Per-run resource limits enforced by {@link ScriptExecutor}.
+ * A value of 0 means the limit is disabled.
+ */
+public class RunLimits {
+    public enum Limit {
+        WALL_TIME("wall-clock timeout"),
+        CPU_TIME("CPU time"),
+        MEMORY("memory"),
+        OUTPUT("output size");
+
+        private final String description;
+
+        Limit(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    public static final RunLimits NONE = new RunLimits(0, 0, 0, 0);
+
+    private final long wallTimeoutMillis;
+    private final long cpuTimeMillis;
+    private final long maxMemoryBytes;
+    private final long maxOutputBytes;
+
+    public RunLimits(long wallTimeoutMillis, long cpuTimeMillis, long maxMemoryBytes, long maxOutputBytes) {
+        this.wallTimeoutMillis = wallTimeoutMillis;
+        this.cpuTimeMillis = cpuTimeMillis;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxOutputBytes = maxOutputBytes;
+    }
+
+    public long getWallTimeoutMillis() {
+        return wallTimeoutMillis;
+    }
+
+    public long getCpuTimeMillis() {
+        return cpuTimeMillis;
+    }
+
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    public long getMaxOutputBytes() {
+        return maxOutputBytes;
+    }
+
+    /**
+     * Returns the first limit exceeded by the given usage, or null if the run is within all limits.
+     */
+    public Limit check(long wallMillis, long cpuMillis, long memoryBytes, long outputBytes) {
+        if (wallTimeoutMillis > 0 && wallMillis > wallTimeoutMillis) return Limit.WALL_TIME;
+        if (cpuTimeMillis > 0 && cpuMillis > cpuTimeMillis) return Limit.CPU_TIME;
+        if (maxMemoryBytes > 0 && memoryBytes > maxMemoryBytes) return Limit.MEMORY;
+        if (maxOutputBytes > 0 && outputBytes > maxOutputBytes) return Limit.OUTPUT;
+        return null;
+    }
+
+    public String getLimitValue(Limit limit) {
+        switch (limit) {
+            case WALL_TIME: return RunMetrics.formatMillis(wallTimeoutMillis);
+            case CPU_TIME:  return RunMetrics.formatMillis(cpuTimeMillis);
+            case MEMORY:    return RunMetrics.formatBytes(maxMemoryBytes);
+            case OUTPUT:    return RunMetrics.formatBytes(maxOutputBytes);
+            default:        return "";
+        }
+    }
+}
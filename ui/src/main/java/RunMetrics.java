@@ -0,0 +1,161 @@
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resource usage collected for a single script run.
+ * Values that could not be measured on this platform are reported as -1.
+ */
+public class RunMetrics {
+    private final long startedAtMillis;
+    private final long compileMillis;
+    private final long executeMillis;
+    private final long cpuMillis;
+    private final long peakRssBytes;
+    private final long stdoutBytes;
+    private final long stdoutLines;
+    private final long stderrBytes;
+    private final long stderrLines;
+    private final int exitCode;
+    private final RunLimits.Limit limitExceeded;
+
+    public RunMetrics(long startedAtMillis, long compileMillis, long executeMillis, long cpuMillis, long peakRssBytes,
+                      long stdoutBytes, long stdoutLines, long stderrBytes, long stderrLines, int exitCode,
+                      RunLimits.Limit limitExceeded) {
+        this.startedAtMillis = startedAtMillis;
+        this.compileMillis = compileMillis;
+        this.executeMillis = executeMillis;
+        this.cpuMillis = cpuMillis;
+        this.peakRssBytes = peakRssBytes;
+        this.stdoutBytes = stdoutBytes;
+        this.stdoutLines = stdoutLines;
+        this.stderrBytes = stderrBytes;
+        this.stderrLines = stderrLines;
+        this.exitCode = exitCode;
+        this.limitExceeded = limitExceeded;
+    }
+
+    public long getStartedAtMillis() {
+        return startedAtMillis;
+    }
+
+    public long getWallMillis() {
+        return compileMillis + executeMillis;
+    }
+
+    public long getCompileMillis() {
+        return compileMillis;
+    }
+
+    public long getExecuteMillis() {
+        return executeMillis;
+    }
+
+    public long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    public long getPeakRssBytes() {
+        return peakRssBytes;
+    }
+
+    public long getStdoutBytes() {
+        return stdoutBytes;
+    }
+
+    public long getStdoutLines() {
+        return stdoutLines;
+    }
+
+    public long getStderrBytes() {
+        return stderrBytes;
+    }
+
+    public long getStderrLines() {
+        return stderrLines;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * The resource limit that caused the run to be terminated, or null if it ended on its own.
+     */
+    public RunLimits.Limit getLimitExceeded() {
+        return limitExceeded;
+    }
+
+    /**
+     * One-line summary shown next to the exit code.
+     */
+    public String toSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Wall ").append(formatMillis(getWallMillis()))
+          .append(" (compile ").append(formatMillis(compileMillis))
+          .append(" / exec ").append(formatMillis(executeMillis)).append(")");
+        sb.append("   CPU ").append(cpuMillis >= 0 ? formatMillis(cpuMillis) : "n/a");
+        sb.append("   Peak RSS ").append(peakRssBytes >= 0 ? formatBytes(peakRssBytes) : "n/a");
+        sb.append("   out ").append(stdoutLines).append(" lines / ").append(formatBytes(stdoutBytes));
+        sb.append("   err ").append(stderrLines).append(" lines / ").append(formatBytes(stderrBytes));
+        if (limitExceeded != null)
+            sb.append("   killed: ").append(limitExceeded.getDescription());
+        return sb.toString();
+    }
+
+    public String toJson() {
+        return "{"
+                + "\"startedAt\":\"" + Instant.ofEpochMilli(startedAtMillis) + "\","
+                + "\"exitCode\":" + exitCode + ","
+                + "\"wallMillis\":" + getWallMillis() + ","
+                + "\"compileMillis\":" + compileMillis + ","
+                + "\"executeMillis\":" + executeMillis + ","
+                + "\"cpuMillis\":" + cpuMillis + ","
+                + "\"peakRssBytes\":" + peakRssBytes + ","
+                + "\"stdoutBytes\":" + stdoutBytes + ","
+                + "\"stdoutLines\":" + stdoutLines + ","
+                + "\"stderrBytes\":" + stderrBytes + ","
+                + "\"stderrLines\":" + stderrLines + ","
+                + "\"limitExceeded\":" + (limitExceeded != null ? "\"" + limitExceeded + "\"" : "null")
+                + "}";
+    }
+
+    public static String toJsonArray(List<RunMetrics> history) {
+        StringBuilder sb = new StringBuilder("[\n");
+        for (int i = 0; i < history.size(); i++) {
+            sb.append("  ").append(history.get(i).toJson());
+            if (i < history.size() - 1) sb.append(",");
+            sb.append("\n");
+        }
+        return sb.append("]\n").toString();
+    }
+
+    public static RunMetrics fromJson(Map<String, Object> json) {
+        Object limit = json.get("limitExceeded");
+        return new RunMetrics(
+                Instant.parse((String) json.get("startedAt")).toEpochMilli(),
+                ((Number) json.get("compileMillis")).longValue(),
+                ((Number) json.get("executeMillis")).longValue(),
+                ((Number) json.get("cpuMillis")).longValue(),
+                ((Number) json.get("peakRssBytes")).longValue(),
+                ((Number) json.get("stdoutBytes")).longValue(),
+                ((Number) json.get("stdoutLines")).longValue(),
+                ((Number) json.get("stderrBytes")).longValue(),
+                ((Number) json.get("stderrLines")).longValue(),
+                ((Number) json.get("exitCode")).intValue(),
+                limit != null ? RunLimits.Limit.valueOf((String) limit) : null
+        );
+    }
+
+    static String formatMillis(long millis) {
+        if (millis < 1000) return millis + " ms";
+        return String.format("%.2f s", millis / 1000.0);
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a script repeatedly through {@link ScriptExecutor} and collects the metrics of every
+ * measured iteration. Warmup iterations are executed first and discarded.
+ */
+public class ScriptBenchmark {
+
+    public interface ProgressListener {
+        void onProgress(String message);
+        void onComplete(BenchmarkResult result);
+    }
+
+    private final String scriptContent;
+    private final int warmupIterations;
+    private final int iterations;
+    private final int parallelism;
+    private final RunLimits limits;
+    private InputSource inputSource = InputSource.NONE;
+
+    private final Set<ScriptExecutor> activeRuns = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    public ScriptBenchmark(String scriptContent, int warmupIterations, int iterations, int parallelism, RunLimits limits) {
+        this.scriptContent = scriptContent;
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.parallelism = Math.max(1, parallelism);
+        this.limits = limits;
+    }
+
+    /**
+     * Sets the stdin fed to every iteration. Interactive input cannot be replayed and is ignored.
+     */
+    public void setInputSource(InputSource inputSource) {
+        if (inputSource.getType() != InputSource.Type.INTERACTIVE)
+            this.inputSource = inputSource;
+    }
+
+    public void start(ProgressListener listener) {
+        Thread thread = new Thread(() -> {
+            try {
+                if (warmupIterations > 0) {
+                    listener.onProgress("Warmup: " + warmupIterations + " iteration(s)");
+                    runIterations(warmupIterations, "warmup", listener);
+                }
+                listener.onProgress("Measuring: " + iterations + " iteration(s), parallelism " + parallelism);
+                List<RunMetrics> measured = runIterations(iterations, "run", listener);
+                listener.onComplete(new BenchmarkResult(System.currentTimeMillis(), warmupIterations, parallelism,
+                        cancelled, measured));
+            } catch (Exception e) {
+                listener.onProgress("Benchmark failed: " + e.getMessage());
+                listener.onComplete(new BenchmarkResult(System.currentTimeMillis(), warmupIterations, parallelism,
+                        true, Collections.emptyList()));
+            }
+        }, "script-benchmark");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (ScriptExecutor run : activeRuns) {
+            run.stop();
+        }
+    }
+
+    private List<RunMetrics> runIterations(int count, String phase, ProgressListener listener) throws InterruptedException {
+        List<RunMetrics> results = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger completed = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                futures.add(pool.submit(() -> {
+                    if (cancelled)
+                        return null;
+                    RunMetrics metrics = runOnce();
+                    if (metrics != null) {
+                        results.add(metrics);
+                        listener.onProgress(String.format("  %s %d/%d: %s, exit code %d", phase,
+                                completed.incrementAndGet(), count,
+                                RunMetrics.formatMillis(metrics.getWallMillis()), metrics.getExitCode()));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return new ArrayList<>(results);
+    }
+
+    private RunMetrics runOnce() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        RunMetrics[] metrics = new RunMetrics[1];
+
+        ScriptExecutor executor = new ScriptExecutor(scriptContent, new ScriptExecutor.OutputListener() {
+            @Override
+            public void onOutput(String line) {}
+
+            @Override
+            public void onError(String line) {}
+
+            @Override
+            public void onMetrics(RunMetrics m) {
+                metrics[0] = m;
+            }
+
+            @Override
+            public void onComplete(int exitCode) {
+                done.countDown();
+            }
+        }, limits);
+
+        executor.setInputSource(inputSource);
+        activeRuns.add(executor);
+        try {
+            executor.start();
+            done.await();
+        } finally {
+            activeRuns.remove(executor);
+        }
+        return metrics[0];
+    }
+}
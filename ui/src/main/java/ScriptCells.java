@@ -0,0 +1,128 @@
+import java.util.*;
+
+/**
+ * Splits a script into top-level cells for the REPL execution mode.
+ * A cell ends at the end of a line where all brackets are balanced, unless the next
+ * code line continues the statement (e.g. starts with '.', 'else' or 'catch').
+ */
+public final class ScriptCells {
+
+    public static class Cell {
+        private final int startLine;
+        private final int endLine;
+        private final String text;
+
+        public Cell(int startLine, int endLine, String text) {
+            this.startLine = startLine;
+            this.endLine = endLine;
+            this.text = text;
+        }
+
+        /** First line of the cell, 1-based. */
+        public int getStartLine() {
+            return startLine;
+        }
+
+        /** Last line of the cell, 1-based and inclusive. */
+        public int getEndLine() {
+            return endLine;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    private static final String[] CONTINUATION_PREFIXES = {".", "?.", "?:", "&&", "||", "else", "catch", "finally"};
+
+    private ScriptCells() {}
+
+    public static List<Cell> split(String code) {
+        List<Cell> cells = new ArrayList<>();
+        String[] lines = code.split("\n", -1);
+
+        int depth = 0;
+        boolean inBlockComment = false;
+        boolean inRawString = false;
+        int cellStart = -1;
+
+        for (int lineNum = 0; lineNum < lines.length; lineNum++) {
+            String line = lines[lineNum];
+            if (cellStart < 0) {
+                if (isBlankOrComment(line) && !inBlockComment)
+                    continue;
+                cellStart = lineNum;
+            }
+
+            // Track bracket depth, ignoring brackets inside strings and comments
+            boolean inString = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (inBlockComment) {
+                    if (line.startsWith("*/", i)) {
+                        inBlockComment = false;
+                        i++;
+                    }
+                } else if (inRawString) {
+                    if (line.startsWith("\"\"\"", i)) {
+                        inRawString = false;
+                        i += 2;
+                    }
+                } else if (inString) {
+                    if (c == '\\') i++;
+                    else if (c == '"') inString = false;
+                } else if (line.startsWith("//", i)) {
+                    break;
+                } else if (line.startsWith("/*", i)) {
+                    inBlockComment = true;
+                    i++;
+                } else if (line.startsWith("\"\"\"", i)) {
+                    inRawString = true;
+                    i += 2;
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '(' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ')' || c == ']') {
+                    depth = Math.max(0, depth - 1);
+                }
+            }
+
+            boolean complete = depth == 0 && !inBlockComment && !inRawString
+                    && !continuesOnNextLine(lines, lineNum + 1);
+            if (complete || lineNum == lines.length - 1) {
+                cells.add(createCell(lines, cellStart, lineNum));
+                cellStart = -1;
+            }
+        }
+        return cells;
+    }
+
+    private static Cell createCell(String[] lines, int start, int end) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = start; i <= end; i++) {
+            sb.append(lines[i]);
+            if (i < end) sb.append('\n');
+        }
+        return new Cell(start + 1, end + 1, sb.toString());
+    }
+
+    private static boolean continuesOnNextLine(String[] lines, int from) {
+        for (int i = from; i < lines.length; i++) {
+            if (isBlankOrComment(lines[i]))
+                continue;
+            String trimmed = lines[i].trim();
+            for (String prefix : CONTINUATION_PREFIXES) {
+                if (trimmed.startsWith(prefix))
+                    return true;
+            }
+            return false;
+        }
+        return false;
+    }
+
+    private static boolean isBlankOrComment(String line) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() || trimmed.startsWith("//");
+    }
+}
@@ -0,0 +1,422 @@
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The editor pane and everything that reacts to its edits: highlighting, bracket structure, folding,
+ * analysis with its underlines and inspections, completion, find/replace, the outline, undo and the line
+ * numbers. Holds no window, so it can be built and driven headlessly (see {@link LatencyReplay});
+ * {@link KotlinIDE} lays its components out in the frame, one editor per tab.
+ *
+ * Background work of all editors shares one {@link AnalysisPool}. An inactive editor runs its work after
+ * that of the active one and can be asked to release its caches and style runs, which it rebuilds once
+ * it is active again.
+ */
+public class ScriptEditor {
+    private static final long UNDO_HISTORY_BYTES = 16L << 20;
+    private static final int ANALYSIS_CACHE_SIZE = 4;
+    // Rough heap cost of retained state, for EditorMemoryBudget, measured on generated scripts: a style
+    // run splits leaf elements, each with its positions and view; analysis results are mostly symbol tables
+    private static final long STYLE_RUN_BYTES = 200;
+    private static final long DIAGNOSTIC_BYTES = 120;
+    private static final long SYMBOL_BYTES = 100;
+    private static final long OCCURRENCE_BYTES = 40;
+
+    private static boolean warmedUp;
+
+    private final AnalysisPool.Client analysisClient;
+
+    private final JTextPane editorPane;
+    private final SnapshotDocument editorDocument;
+    private final EditorStructure editorStructure;
+    private final CodeFolding codeFolding;
+    private final SyntaxHighlighter syntaxHighlighter;
+    private final KotlinAnalyzer kotlinAnalyzer;
+    private final InspectionPanel inspectionPanel;
+    private final CodeHighlighter codeHighlighter;
+    private CompletionIndex completionIndex;
+    private final FindReplaceBar findReplaceBar;
+    private final OutlinePanel outlinePanel;
+    private final UndoJournal undoJournal;
+    private final JTextArea lineNumberArea;
+    private final List<AnalysisListener> analysisListeners = new ArrayList<>();
+
+    // Analysis results by text state, so undo and redo get theirs back without re-analyzing
+    private final Map<Long, AnalysisResult> analysisCache = new LinkedHashMap<Long, AnalysisResult>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, AnalysisResult> eldest) {
+            return size() > ANALYSIS_CACHE_SIZE;
+        }
+    };
+    private SymbolTable symbolTable;
+    private long symbolTableVersion = -1;
+    // Lookups waiting for the analysis of the text they were asked on
+    private final List<Consumer<SymbolTable>> symbolLookups = new ArrayList<>();
+    private long symbolLookupVersion = -1;
+    private int displayedLineCount;
+    private int displayedFoldRevision;
+    private boolean cachesReleased;
+    private boolean inspectionRefreshPending;
+
+    /**
+     * Told on the EDT once an analysis result is on screen, underlines included.
+     */
+    public interface AnalysisListener {
+        void analysisShown(AnalysisResult result, TextSnapshot snapshot);
+    }
+
+    public ScriptEditor() {
+        this(AnalysisPool.shared());
+    }
+
+    public ScriptEditor(AnalysisPool analysisPool) {
+        analysisClient = analysisPool.newClient();
+        editorPane = new JTextPane();
+        editorDocument = new SnapshotDocument();
+        editorStructure = new EditorStructure(editorPane, editorDocument);
+        codeFolding = new CodeFolding(editorPane, editorDocument, editorStructure);
+        // The kit installs its own empty document, so it has to come first
+        editorPane.setEditorKit(codeFolding.getEditorKit());
+        editorPane.setStyledDocument(editorDocument);
+        editorPane.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        editorPane.setBackground(ColorPalette.BACKGROUND_COLOR);
+        editorPane.setCaretColor(ColorPalette.TEXT_COLOR);
+        syntaxHighlighter = new SyntaxHighlighter(editorPane, analysisClient);
+
+        // Initialize analysis components
+        kotlinAnalyzer = new KotlinAnalyzer(analysisClient);
+        inspectionPanel = new InspectionPanel(editorPane);
+        codeHighlighter = new CodeHighlighter(editorPane);
+        findReplaceBar = new FindReplaceBar(editorPane, editorDocument, analysisClient);
+        outlinePanel = new OutlinePanel(editorPane, editorStructure);
+        codeFolding.addChangeListener(e -> updateLineNumbers());
+
+        undoJournal = new UndoJournal(editorDocument, UNDO_HISTORY_BYTES);
+
+        lineNumberArea = new JTextArea("1");
+        lineNumberArea.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        lineNumberArea.setEditable(false);
+        lineNumberArea.setBackground(ColorPalette.BACKGROUND_COLOR);
+        lineNumberArea.setForeground(ColorPalette.TEXT_COLOR);
+        lineNumberArea.setBorder(new EmptyBorder(0, 5, 0, 5));
+
+        editorDocument.addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                updateLineNumbers();
+                triggerAnalysis();
+            }
+
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                updateLineNumbers();
+                triggerAnalysis();
+            }
+
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+                updateLineNumbers();
+            }
+        });
+    }
+
+    /**
+     * Sets up what the first frame does not need: the inspection table now, and the completion index
+     * in the background, together with a warm-up analysis for the first editor. Completion starts
+     * working once the index is built. Called once per editor; for the first, after the first frame is
+     * painted.
+     */
+    public void initDeferred() {
+        inspectionPanel.initTable();
+        analysisClient.submit(() -> {
+            CompletionIndex index = new CompletionIndex();
+            warmUp();
+            SwingUtilities.invokeLater(() -> installCompletion(index));
+        });
+    }
+
+    // Loads the lexer, the inspections and the stdlib database before the first real analysis
+    private static synchronized void warmUp() {
+        if (warmedUp)
+            return;
+        warmedUp = true;
+        new KotlinAnalyzer().analyze("fun main() {\n    val s = \"warm\"\n    println(s)\n}\n");
+    }
+
+    private void installCompletion(CompletionIndex index) {
+        completionIndex = index;
+        new CompletionPopup(editorPane, index);
+        if (symbolTable != null)
+            updateDeclarations();
+    }
+
+    /**
+     * Makes this the editor the user works in, or one in the background. Background editors highlight
+     * nothing and their analysis waits for that of the active editor. Activating an editor rebuilds
+     * what {@link #releaseCaches} freed.
+     */
+    public void setActive(boolean active) {
+        analysisClient.setForeground(active);
+        syntaxHighlighter.setActive(active);
+        if (active && cachesReleased) {
+            cachesReleased = false;
+            triggerAnalysis();
+        }
+    }
+
+    public boolean isActive() {
+        return analysisClient.isForeground();
+    }
+
+    /**
+     * Frees the analysis results, symbol table, underlines and style runs of a background editor.
+     * The text, folds and undo history stay.
+     */
+    public void releaseCaches() {
+        kotlinAnalyzer.cancelPending();
+        analysisCache.clear();
+        symbolTable = null;
+        symbolTableVersion = -1;
+        symbolLookups.clear();
+        codeHighlighter.applyUnderlines(null);
+        inspectionPanel.updateInspections(null);
+        syntaxHighlighter.releaseStyles();
+        cachesReleased = true;
+    }
+
+    /**
+     * Estimated heap held by what {@link #releaseCaches} frees.
+     */
+    public long getCacheBytes() {
+        long bytes = syntaxHighlighter.getAppliedRunCount() * STYLE_RUN_BYTES;
+        for (AnalysisResult result : analysisCache.values()) {
+            bytes += result.getDiagnostics().size() * DIAGNOSTIC_BYTES;
+            SymbolTable table = result.getSymbolTable();
+            if (table != null && table != symbolTable)
+                bytes += table.getSymbols().size() * SYMBOL_BYTES + table.getOccurrenceCount() * OCCURRENCE_BYTES;
+        }
+        if (symbolTable != null)
+            bytes += symbolTable.getSymbols().size() * SYMBOL_BYTES + symbolTable.getOccurrenceCount() * OCCURRENCE_BYTES;
+        return bytes;
+    }
+
+    /**
+     * Stops this editor's background work for good, when its tab is closed.
+     */
+    public void dispose() {
+        kotlinAnalyzer.cancelPending();
+        syntaxHighlighter.setActive(false);
+        findReplaceBar.close();
+    }
+
+    public JTextPane getEditorPane() {
+        return editorPane;
+    }
+
+    public SnapshotDocument getDocument() {
+        return editorDocument;
+    }
+
+    public CodeFolding getCodeFolding() {
+        return codeFolding;
+    }
+
+    public SyntaxHighlighter getSyntaxHighlighter() {
+        return syntaxHighlighter;
+    }
+
+    public KotlinAnalyzer getAnalyzer() {
+        return kotlinAnalyzer;
+    }
+
+    public InspectionPanel getInspectionPanel() {
+        return inspectionPanel;
+    }
+
+    public FindReplaceBar getFindReplaceBar() {
+        return findReplaceBar;
+    }
+
+    public OutlinePanel getOutlinePanel() {
+        return outlinePanel;
+    }
+
+    public UndoJournal getUndoJournal() {
+        return undoJournal;
+    }
+
+    public JTextArea getLineNumberArea() {
+        return lineNumberArea;
+    }
+
+    public void addAnalysisListener(AnalysisListener listener) {
+        analysisListeners.add(listener);
+    }
+
+    private void updateLineNumbers() {
+        // The document already tracks lines as elements, so counting them needs no text copy
+        int lines = editorDocument.getDefaultRootElement().getElementCount();
+        if (lines == displayedLineCount && codeFolding.getRevision() == displayedFoldRevision)
+            return;
+        displayedLineCount = lines;
+        displayedFoldRevision = codeFolding.getRevision();
+
+        // Folded lines have no height in the editor, so they get no number here either
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= lines; i++) {
+            if (!codeFolding.isHidden(i - 1))
+                sb.append(i).append("\n");
+        }
+
+        lineNumberArea.setText(sb.toString());
+    }
+
+    /**
+     * Analyzes with the given inspections from now on; results cached under the old profile are dropped.
+     */
+    public void setInspectionProfile(InspectionProfile profile) {
+        kotlinAnalyzer.setProfile(profile);
+        analysisCache.clear();
+        triggerAnalysis();
+    }
+
+    /**
+     * Resolves calls against the given project from now on; results cached without it are dropped.
+     */
+    public void setProjectContext(ProjectIndex projectIndex, Path currentFile) {
+        kotlinAnalyzer.setProjectContext(projectIndex, currentFile);
+        projectChanged();
+    }
+
+    /**
+     * Re-analyzes after the project index changed, since cached results may resolve calls differently.
+     */
+    public void projectChanged() {
+        analysisCache.clear();
+        triggerAnalysis();
+    }
+
+    /**
+     * Analyzes the current text after the analyzer's debounce delay, or shows the cached result when the
+     * text is back at a state that was analyzed before. On large scripts the lines on screen are checked
+     * first and their findings shown before the rest of the file is done.
+     */
+    public void triggerAnalysis() {
+        TextSnapshot snapshot = editorDocument.snapshot();
+        long state = undoJournal.getStateVersion();
+        AnalysisResult cached = analysisCache.get(state);
+        if (cached != null) {
+            showAnalysis(cached, snapshot);
+            return;
+        }
+        int[] focus = focusRange();
+        kotlinAnalyzer.analyzeAsync(snapshot, focus[0], focus[1], partial -> {
+            SwingUtilities.invokeLater(() -> {
+                if (snapshot.getVersion() == editorDocument.getVersion())
+                    showPartialAnalysis(partial);
+            });
+        }, result -> {
+            SwingUtilities.invokeLater(() -> {
+                analysisCache.put(state, result);
+                // Offsets of a stale result no longer match the text; a newer analysis is already scheduled
+                if (snapshot.getVersion() != editorDocument.getVersion())
+                    return;
+                showAnalysis(result, snapshot);
+            });
+        });
+    }
+
+    // The lines on screen, or the caret's when nothing is laid out yet
+    private int[] focusRange() {
+        int caret = editorPane.getCaretPosition();
+        Rectangle visible = editorPane.getVisibleRect();
+        if (visible.isEmpty())
+            return new int[]{caret, caret};
+        int start = editorPane.viewToModel2D(new Point(visible.x, visible.y));
+        int end = editorPane.viewToModel2D(new Point(visible.x + visible.width, visible.y + visible.height));
+        return start >= 0 && end >= start ? new int[]{start, end} : new int[]{caret, caret};
+    }
+
+    private void showPartialAnalysis(AnalysisResult partial) {
+        codeHighlighter.applyRegionUnderlines(partial);
+        // The table is rebuilt from all underlines, so partials that arrive together share one rebuild
+        if (inspectionRefreshPending)
+            return;
+        inspectionRefreshPending = true;
+        long version = editorDocument.getVersion();
+        SwingUtilities.invokeLater(() -> {
+            // Not when a whole result was shown meanwhile
+            if (!inspectionRefreshPending)
+                return;
+            inspectionRefreshPending = false;
+            if (version == editorDocument.getVersion())
+                inspectionPanel.updateInspections(new AnalysisResult(codeHighlighter.getUnderlinedDiagnostics()));
+        });
+    }
+
+    private void showAnalysis(AnalysisResult result, TextSnapshot snapshot) {
+        inspectionRefreshPending = false;
+        inspectionPanel.updateInspections(result);
+        codeHighlighter.applyUnderlines(result);
+        if (result.getSymbolTable() != null) {
+            symbolTable = result.getSymbolTable();
+            symbolTableVersion = snapshot.getVersion();
+            if (completionIndex != null)
+                updateDeclarations();
+            runSymbolLookups();
+        }
+        StartupMetrics.mark(StartupMetrics.FIRST_ANALYSIS);
+        if (!analysisListeners.isEmpty()) {
+            // applyUnderlines adds the highlights in an event of its own, which is queued ahead of this one
+            SwingUtilities.invokeLater(() -> {
+                for (AnalysisListener listener : analysisListeners) {
+                    listener.analysisShown(result, snapshot);
+                }
+            });
+        }
+    }
+
+    private void updateDeclarations() {
+        List<String> names = new ArrayList<>();
+        for (SymbolTable.Symbol symbol : symbolTable.getSymbols()) {
+            names.add(symbol.getName());
+        }
+        completionIndex.updateDeclarations(names);
+    }
+
+    /**
+     * Runs the action with the symbol table of the current text: right away when the last analysis saw
+     * this text, otherwise once the analysis already scheduled for it is shown, so navigating right after
+     * an edit never lexes on the EDT. A lookup is dropped if the text changes again before that, since its
+     * offsets no longer apply. The action runs on the EDT.
+     */
+    public void withSymbolTable(Consumer<SymbolTable> action) {
+        long version = editorDocument.getVersion();
+        if (symbolTable != null && symbolTableVersion == version) {
+            action.accept(symbolTable);
+            return;
+        }
+        if (symbolLookupVersion != version)
+            symbolLookups.clear();
+        symbolLookupVersion = version;
+        symbolLookups.add(action);
+    }
+
+    private void runSymbolLookups() {
+        if (symbolLookups.isEmpty())
+            return;
+        List<Consumer<SymbolTable>> lookups = new ArrayList<>(symbolLookups);
+        symbolLookups.clear();
+        if (symbolTableVersion != symbolLookupVersion)
+            return;
+        for (Consumer<SymbolTable> lookup : lookups) {
+            lookup.accept(symbolTable);
+        }
+    }
+}
@@ -0,0 +1,490 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+public class ScriptExecutor {
+
+    public interface OutputListener {
+        void onOutput(String line);
+        void onError(String line);
+        void onComplete(int exitCode);
+
+        default void onMetrics(RunMetrics metrics) {}
+
+        default void onLimitExceeded(RunLimits.Limit limit, String message) {}
+
+        default void onInputProgress(long bytesSent, long totalBytes) {}
+    }
+
+    private static final String SCRIPT_PREFIX = "script";
+    private static final String SCRIPT_SUFFIX = ".kts";
+    private static final long SAMPLE_INTERVAL_MS = 100;
+    private static final long LIMIT_GRACE_MS = 2000;
+    private static final long STOP_GRACE_MS = 1000;
+    private static final long INPUT_CHUNK_BYTES = 1024 * 1024;
+
+    private String scriptContent;
+    private File scriptFile;
+    private final boolean temporaryScript;
+    private OutputListener listener;
+    private Process process;
+    private ExecutorService executor;
+    private boolean running;
+    private final RunLimits limits;
+    private volatile long startNanos;
+    private volatile RunLimits.Limit exceededLimit;
+    private InputSource inputSource = InputSource.NONE;
+    private volatile OutputStream processInput;
+
+    // Metrics for the current run
+    private ScheduledExecutorService sampler;
+    private final Map<Long, Long> cpuNanosByPid = new ConcurrentHashMap<>();
+    private final AtomicLong peakRssBytes = new AtomicLong(-1);
+    private final AtomicLong firstOutputNanos = new AtomicLong();
+    private final AtomicLong stdoutLines = new AtomicLong();
+    private final AtomicLong stderrLines = new AtomicLong();
+    private CountingInputStream stdoutCounter;
+    private CountingInputStream stderrCounter;
+
+    public ScriptExecutor(String scriptContent, OutputListener listener) {
+        this(scriptContent, listener, RunLimits.NONE);
+    }
+
+    public ScriptExecutor(String scriptContent, OutputListener listener, RunLimits limits) {
+        this.scriptContent = scriptContent;
+        this.temporaryScript = true;
+        this.listener = listener;
+        this.limits = limits;
+        this.executor = Executors.newFixedThreadPool(2);
+    }
+
+    /**
+     * Runs an existing .kts file directly instead of writing the content to a temporary file.
+     */
+    public ScriptExecutor(Path scriptPath, OutputListener listener, RunLimits limits) {
+        this.scriptFile = scriptPath.toFile();
+        this.temporaryScript = false;
+        this.listener = listener;
+        this.limits = limits;
+        this.executor = Executors.newFixedThreadPool(2);
+    }
+
+    /**
+     * Sets where the script's standard input comes from. Must be called before {@link #start()}.
+     */
+    public void setInputSource(InputSource inputSource) {
+        this.inputSource = inputSource;
+    }
+
+    /**
+     * Sends a line to the script's standard input when running with an interactive input source.
+     */
+    public void sendInput(String line) {
+        OutputStream in = processInput;
+        if (in == null || inputSource.getType() != InputSource.Type.INTERACTIVE)
+            return;
+        try {
+            in.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            in.flush();
+        } catch (IOException e) {
+            listener.onError("Error writing to stdin: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the script's standard input so that it sees end of file.
+     */
+    public void closeInput() {
+        OutputStream in = processInput;
+        processInput = null;
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {}
+        }
+    }
+
+    public void start() {
+        running = true;
+        new Thread(() -> {
+            try {
+                execute();
+            } catch (Exception e) {
+                listener.onError("Error: " + e.getMessage());
+                listener.onComplete(-1);
+            }
+        }).start();
+    }
+
+    private void execute() {
+        int exitCode = -1;
+        long startedAtMillis = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        Instrumentation.Timing timing = Instrumentation.begin(Instrumentation.Subsystem.SCRIPT_RUN);
+
+        try {
+            if (temporaryScript)
+                scriptFile = writeScriptToFile();
+            String scriptPath = scriptFile.getAbsolutePath();
+
+            ProcessBuilder pb = new ProcessBuilder();
+            pb.command(kotlincCommand("-script", scriptPath));
+
+            // Set working directory to temporary OS folder
+            pb.directory(new File(System.getProperty("java.io.tmpdir")));
+
+            pb.redirectErrorStream(false);
+            startNanos = System.nanoTime();
+            process = pb.start();
+            stdoutCounter = new CountingInputStream(process.getInputStream());
+            stderrCounter = new CountingInputStream(process.getErrorStream());
+            startSampling();
+            feedInput(process);
+
+            // Stream stdout
+            Future<?> stdoutFuture = executor.submit(() -> {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(stdoutCounter))) {
+                    String line;
+                    while ((line = reader.readLine()) != null && running) {
+                        markFirstOutput();
+                        stdoutLines.incrementAndGet();
+                        listener.onOutput(line);
+                    }
+                } catch (IOException e) {
+                    if (running) {
+                        listener.onError("Error reading stdout: " + e.getMessage());
+                    }
+                }
+            });
+
+            // Stream stderr
+            Future<?> stderrFuture = executor.submit(() -> {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(stderrCounter))) {
+                    String line;
+                    while ((line = reader.readLine()) != null && running) {
+                        markFirstOutput();
+                        stderrLines.incrementAndGet();
+                        listener.onError(line);
+                    }
+                } catch (IOException e) {
+                    if (running) {
+                        listener.onError("Error reading stderr: " + e.getMessage());
+                    }
+                }
+            });
+
+            exitCode = process.waitFor();
+            stdoutFuture.get(2, TimeUnit.SECONDS);
+            stderrFuture.get(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            listener.onError("Script execution interrupted");
+            exitCode = -1;
+        } catch (TimeoutException e) {
+            listener.onError("Timeout waiting for output streams");
+        } catch (IOException e) {
+            listener.onError("Error executing script: " + e.getMessage());
+            listener.onError("Make sure 'kotlinc' is installed and in your PATH environment variable");
+            exitCode = -1;
+        } catch (Exception e) {
+            listener.onError("Unexpected error: " + e.getMessage());
+            e.printStackTrace();
+            exitCode = -1;
+        } finally {
+            long endNanos = System.nanoTime();
+            running = false;
+            stopSampling();
+            cleanup();
+            timing.end(stdoutLines.get() + stderrLines.get());
+            listener.onMetrics(buildMetrics(startedAtMillis, endNanos, exitCode));
+            listener.onComplete(exitCode);
+        }
+    }
+
+    /**
+     * Connects the configured input source to the process' stdin. File input is streamed on a
+     * background thread with FileChannel.transferTo in fixed-size chunks, so the file is never
+     * held in memory and progress can be reported between chunks.
+     */
+    private void feedInput(Process p) {
+        processInput = p.getOutputStream();
+        switch (inputSource.getType()) {
+            case INTERACTIVE:
+                return;
+            case NONE:
+                closeInput();
+                return;
+            default:
+                break;
+        }
+
+        Thread feeder = new Thread(() -> {
+            try {
+                if (inputSource.getType() == InputSource.Type.TEXT) {
+                    processInput.write(inputSource.getText().getBytes(StandardCharsets.UTF_8));
+                } else {
+                    transferFile(inputSource.getFile(), processInput);
+                }
+            } catch (IOException e) {
+                // A script that exits without reading all of its input closes the pipe
+                if (p.isAlive() && running)
+                    listener.onError("Error writing to stdin: " + e.getMessage());
+            } finally {
+                closeInput();
+            }
+        }, "script-stdin-feeder");
+        feeder.setDaemon(true);
+        feeder.start();
+    }
+
+    private void transferFile(Path file, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long size = channel.size();
+            long position = 0;
+            listener.onInputProgress(0, size);
+            while (position < size && running) {
+                long sent = channel.transferTo(position, Math.min(INPUT_CHUNK_BYTES, size - position), target);
+                if (sent <= 0)
+                    break;
+                position += sent;
+                listener.onInputProgress(position, size);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Builds the command line for invoking kotlinc, going through cmd.exe on Windows
+     * where kotlinc is a batch file.
+     */
+    static List<String> kotlincCommand(String... args) {
+        List<String> command = new ArrayList<>();
+        if (System.getProperty("os.name", "").toLowerCase().startsWith("windows")) {
+            command.add("cmd.exe");
+            command.add("/c");
+        }
+        command.add("kotlinc");
+        command.addAll(Arrays.asList(args));
+        return command;
+    }
+
+    private void markFirstOutput() {
+        firstOutputNanos.compareAndSet(0, System.nanoTime());
+    }
+
+    /**
+     * Periodically samples CPU time and resident memory of the launched process and every
+     * process it spawned (kotlinc starts a separate JVM for the script).
+     */
+    private void startSampling() {
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "script-metrics-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        sampler.scheduleAtFixedRate(this::sample, 0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopSampling() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            try {
+                sampler.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void sample() {
+        Process p = process;
+        if (p == null || !p.isAlive())
+            return;
+
+        List<ProcessHandle> tree = processTree(p.toHandle());
+        long rssSum = 0;
+        boolean rssAvailable = false;
+        for (ProcessHandle handle : tree) {
+            handle.info().totalCpuDuration()
+                    .ifPresent(cpu -> cpuNanosByPid.merge(handle.pid(), cpu.toNanos(), Math::max));
+
+            long rss = readProcStatusKb(handle.pid(), "VmRSS:");
+            if (rss >= 0) {
+                rssSum += rss * 1024;
+                rssAvailable = true;
+            }
+        }
+        if (rssAvailable)
+            peakRssBytes.accumulateAndGet(rssSum, Math::max);
+
+        enforceLimits(p, rssSum);
+    }
+
+    private void enforceLimits(Process p, long currentRssBytes) {
+        if (exceededLimit != null)
+            return;
+
+        long wallMillis = Duration.ofNanos(System.nanoTime() - startNanos).toMillis();
+        long cpuMillis = Duration.ofNanos(cpuNanosByPid.values().stream().mapToLong(Long::longValue).sum()).toMillis();
+        long outputBytes = stdoutCounter.getCount() + stderrCounter.getCount();
+
+        RunLimits.Limit limit = limits.check(wallMillis, cpuMillis, currentRssBytes, outputBytes);
+        if (limit == null)
+            return;
+
+        exceededLimit = limit;
+        String message = "Script exceeded " + limit.getDescription() + " limit of " + limits.getLimitValue(limit)
+                + ", terminating process tree";
+        listener.onLimitExceeded(limit, message);
+        terminateProcessTree(p, LIMIT_GRACE_MS);
+    }
+
+    /**
+     * Terminates the process and all of its descendants, first asking them to exit and then
+     * forcibly destroying whatever is still alive after the grace period.
+     */
+    static void terminateProcessTree(Process p, long graceMillis) {
+        // Collect descendants before the root dies, since orphans are re-parented and can no longer be found
+        List<ProcessHandle> tree = processTree(p.toHandle());
+        for (ProcessHandle handle : tree) {
+            handle.destroy();
+        }
+
+        Thread reaper = new Thread(() -> {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(graceMillis);
+            for (ProcessHandle handle : tree) {
+                long remaining = deadline - System.nanoTime();
+                try {
+                    if (remaining > 0)
+                        handle.onExit().get(remaining, TimeUnit.NANOSECONDS);
+                } catch (Exception e) {
+                    // Still alive after the grace period, destroyed below
+                }
+                if (handle.isAlive())
+                    handle.destroyForcibly();
+            }
+        }, "script-process-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    private static List<ProcessHandle> processTree(ProcessHandle root) {
+        List<ProcessHandle> tree = root.descendants().collect(Collectors.toList());
+        tree.add(0, root);
+        return tree;
+    }
+
+    /**
+     * Reads a kB value such as VmRSS from /proc/[pid]/status. Returns -1 where /proc is not available.
+     */
+    private static long readProcStatusKb(long pid, String key) {
+        Path status = Paths.get("/proc", String.valueOf(pid), "status");
+        try (BufferedReader reader = Files.newBufferedReader(status)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(key)) {
+                    String[] parts = line.substring(key.length()).trim().split("\\s+");
+                    return Long.parseLong(parts[0]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Process already gone or not a Linux system
+        }
+        return -1;
+    }
+
+    private RunMetrics buildMetrics(long startedAtMillis, long endNanos, int exitCode) {
+        // kotlinc -script compiles and runs in one process, so the compile phase is taken
+        // to end when the script produces its first byte of output.
+        long first = firstOutputNanos.get();
+        long compileEnd = first == 0 ? endNanos : first;
+        long compileMillis = Duration.ofNanos(compileEnd - startNanos).toMillis();
+        long executeMillis = Duration.ofNanos(endNanos - compileEnd).toMillis();
+
+        long cpuMillis = cpuNanosByPid.isEmpty()
+                ? -1
+                : Duration.ofNanos(cpuNanosByPid.values().stream().mapToLong(Long::longValue).sum()).toMillis();
+
+        return new RunMetrics(
+                startedAtMillis,
+                compileMillis,
+                executeMillis,
+                cpuMillis,
+                peakRssBytes.get(),
+                stdoutCounter != null ? stdoutCounter.getCount() : 0,
+                stdoutLines.get(),
+                stderrCounter != null ? stderrCounter.getCount() : 0,
+                stderrLines.get(),
+                exitCode,
+                exceededLimit
+        );
+    }
+
+    private File writeScriptToFile() throws IOException {
+        // Each run gets its own file so that benchmark runs can execute in parallel
+        File file = Files.createTempFile(SCRIPT_PREFIX, SCRIPT_SUFFIX).toFile();
+        Files.write(file.toPath(), scriptContent.getBytes());
+        return file;
+    }
+
+    public void stop() {
+        running = false;
+        if (process != null && process.isAlive())
+            terminateProcessTree(process, STOP_GRACE_MS);
+
+        cleanup();
+    }
+
+    private void cleanup() {
+        if (executor != null && !executor.isShutdown())
+            executor.shutdownNow();
+
+        try {
+            if (temporaryScript && scriptFile != null)
+                Files.deleteIfExists(scriptFile.toPath());
+        } catch (IOException e) {}
+    }
+
+    /**
+     * Counts the raw bytes read from a process stream.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong count = new AtomicLong();
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count.addAndGet(n);
+            return n;
+        }
+
+        long getCount() {
+            return count.get();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Element;
+import javax.swing.text.StyleContext;
+
+/**
+ * Styled document backed by a {@link PieceTableContent}, so background readers
+ * can work from cheap immutable snapshots instead of copying the text with getText().
+ */
+public class SnapshotDocument extends DefaultStyledDocument {
+    private final PieceTableContent content;
+    private boolean replacing;
+
+    public SnapshotDocument() {
+        this(new PieceTableContent());
+    }
+
+    private SnapshotDocument(PieceTableContent content) {
+        super(content, new StyleContext());
+        this.content = content;
+    }
+
+    /**
+     * Returns an immutable snapshot of the current text in O(1). Safe to call from any thread.
+     */
+    public TextSnapshot snapshot() {
+        return content.snapshot();
+    }
+
+    public long getVersion() {
+        return content.getVersion();
+    }
+
+    /**
+     * Replaces several ranges as a single undoable edit. Ranges are given in document order and must
+     * not overlap. Must run on the EDT.
+     *
+     * Every piece table edit copies the piece list, so thousands of separate edits would be quadratic;
+     * instead the span from the first to the last range is rebuilt once and swapped in with one remove
+     * and one insert. Positions inside that span collapse to its start.
+     */
+    public void replaceRanges(int[] starts, int[] ends, String[] replacements, int count) throws BadLocationException {
+        if (count == 0)
+            return;
+        TextSnapshot text = snapshot();
+        int spanStart = starts[0];
+        int spanEnd = ends[count - 1];
+        StringBuilder sb = new StringBuilder(spanEnd - spanStart);
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                sb.append(text, ends[i - 1], starts[i]);
+            sb.append(replacements[i]);
+        }
+
+        replace(spanStart, spanEnd - spanStart, sb.toString(), null);
+    }
+
+    /**
+     * Replaces all character styling with the given attributes, leaving each paragraph one run.
+     * setCharacterAttributes keeps runs split wherever a style used to change, so only this frees the
+     * elements highlighting built up. Not undoable and does not change the version. Must run on the EDT.
+     */
+    public void resetCharacterAttributes(AttributeSet attributes) {
+        writeLock();
+        try {
+            Element root = getDefaultRootElement();
+            DefaultDocumentEvent change = new DefaultDocumentEvent(0, getLength(), DocumentEvent.EventType.CHANGE);
+            for (int i = 0; i < root.getElementCount(); i++) {
+                BranchElement paragraph = (BranchElement) root.getElement(i);
+                if (paragraph.getElementCount() == 1 && paragraph.getElement(0).getAttributes().isEqual(attributes))
+                    continue;
+                Element[] removed = new Element[paragraph.getElementCount()];
+                for (int j = 0; j < removed.length; j++) {
+                    removed[j] = paragraph.getElement(j);
+                }
+                Element[] added = {createLeafElement(paragraph, attributes, paragraph.getStartOffset(), paragraph.getEndOffset())};
+                paragraph.replace(0, removed.length, added);
+                change.addEdit(new ElementEdit(paragraph, 0, removed, added));
+            }
+            change.end();
+            fireChangedUpdate(change);
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Whether the events being delivered come from one {@link #replace} call, which removes and then
+     * inserts. Typing goes through replace too, as does replaceRanges.
+     */
+    public boolean isReplacing() {
+        return replacing;
+    }
+
+    @Override
+    public void replace(int offset, int length, String text, AttributeSet attrs) throws BadLocationException {
+        boolean outer = !replacing;
+        replacing = true;
+        try {
+            super.replace(offset, length, text, attrs);
+        } finally {
+            if (outer)
+                replacing = false;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Milestones of one start of the IDE, in milliseconds since the JVM started: entering
+ * main, the first painted frame, the end of the work deferred until after it, and the first keystroke
+ * with how long it took to reach the screen. Each milestone is kept the first time it is reached.
+ *
+ * With -Dkotlin.ide.startupReport=FILE the milestones are written to FILE as JSON, and summed up on
+ * stderr, once the first keystroke has been painted.
+ */
+public final class StartupMetrics {
+    public static final String MAIN = "main";
+    public static final String FIRST_FRAME = "firstFrame";
+    public static final String DEFERRED_INIT = "deferredInit";
+    public static final String FIRST_KEYSTROKE = "firstKeystroke";
+    public static final String FIRST_KEYSTROKE_PAINTED = "firstKeystrokePainted";
+    public static final String FIRST_ANALYSIS = "firstAnalysis";
+
+    private static final String REPORT_PROPERTY = "kotlin.ide.startupReport";
+
+    // Wall-clock times; they are made relative to the JVM start only when read, so that marking a
+    // milestone does not load java.lang.management during startup
+    private static final Map<String, Long> milestones = new LinkedHashMap<>();
+
+    private StartupMetrics() {
+    }
+
+    public static void mark(String milestone) {
+        markAt(milestone, System.currentTimeMillis());
+    }
+
+    /**
+     * Records a milestone that happened at the given wall-clock time, such as the time of an input event.
+     */
+    public static synchronized void markAt(String milestone, long atMillis) {
+        milestones.putIfAbsent(milestone, atMillis);
+    }
+
+    /**
+     * Milliseconds from process start to the milestone, or -1 if it has not been reached.
+     */
+    public static synchronized long get(String milestone) {
+        Long at = milestones.get(milestone);
+        return at != null ? at - jvmStartMillis() : -1;
+    }
+
+    private static long jvmStartMillis() {
+        return ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    public static synchronized String toJson() {
+        long start = jvmStartMillis();
+        StringBuilder sb = new StringBuilder("{");
+        String separator = "";
+        for (Map.Entry<String, Long> entry : milestones.entrySet()) {
+            sb.append(separator).append(Json.quote(entry.getKey() + "Ms")).append(": ").append(entry.getValue() - start);
+            separator = ", ";
+        }
+        return sb.append("}\n").toString();
+    }
+
+    public static synchronized String summary() {
+        long start = jvmStartMillis();
+        StringBuilder sb = new StringBuilder("Startup:");
+        String separator = " ";
+        for (Map.Entry<String, Long> entry : milestones.entrySet()) {
+            sb.append(separator).append(entry.getKey()).append(' ').append(entry.getValue() - start).append(" ms");
+            separator = ", ";
+        }
+        long key = get(FIRST_KEYSTROKE);
+        long painted = get(FIRST_KEYSTROKE_PAINTED);
+        if (key >= 0 && painted >= 0)
+            sb.append(" (first keystroke on screen after ").append(painted - key).append(" ms)");
+        return sb.toString();
+    }
+
+    /**
+     * Writes the report asked for with -Dkotlin.ide.startupReport; does nothing without it.
+     */
+    public static void report() {
+        String file = System.getProperty(REPORT_PROPERTY);
+        if (file == null)
+            return;
+        System.err.println(summary());
+        try {
+            Files.writeString(Path.of(file), toJson(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Cannot write startup report to " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import javax.swing.*;
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The training run of the appcds profile: starts up the way the IDE does and exits, so the JVM can
+ * archive every class that was loaded on the way (-XX:ArchiveClassesAtExit). With a display it runs
+ * {@link Main} with {@link KotlinIDE#STARTUP_PROBE_PROPERTY}, which types one key and exits once it is
+ * painted. Build machines usually have no display; then it builds a headless {@link ScriptEditor},
+ * the settings and metrics panels, types into the editor and waits for the first analysis.
+ *
+ * Usage: java -XX:ArchiveClassesAtExit=kotlin-ide.jsa -cp core/target/classes:ui/target/classes StartupTraining
+ */
+public class StartupTraining {
+    private static final long TIMEOUT_MS = 60_000;
+
+    private static final String SAMPLE =
+            "// Startup training\n" +
+            "val numbers = listOf(1, 2, 3)\n" +
+            "var total = 0\n" +
+            "\n" +
+            "fun square(x: Int): Int {\n" +
+            "    return x * x\n" +
+            "}\n" +
+            "\n" +
+            "for (n in numbers) {\n" +
+            "    total += square(n)\n" +
+            "}\n" +
+            "println(\"Total: $total\")\n";
+
+    public static void main(String[] args) throws Exception {
+        Thread timeout = new Thread(() -> {
+            try {
+                Thread.sleep(TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            System.err.println("Startup training did not finish within " + TIMEOUT_MS + " ms");
+            System.exit(1);
+        }, "startup-training-timeout");
+        timeout.setDaemon(true);
+        timeout.start();
+
+        if (!GraphicsEnvironment.isHeadless()) {
+            System.setProperty(KotlinIDE.STARTUP_PROBE_PROPERTY, "true");
+            Main.main(args);
+            return;
+        }
+
+        StartupMetrics.mark(StartupMetrics.MAIN);
+        CountDownLatch analyzed = new CountDownLatch(1);
+        SwingUtilities.invokeAndWait(() -> {
+            ScriptEditor editor = new ScriptEditor();
+            editor.addAnalysisListener((result, snapshot) -> analyzed.countDown());
+            editor.initDeferred();
+            StartupMetrics.mark(StartupMetrics.DEFERRED_INIT);
+
+            JTextPane editorPane = editor.getEditorPane();
+            editorPane.setText(SAMPLE);
+            editorPane.setCaretPosition(editorPane.getDocument().getLength());
+            for (char c : "println(square(total))\n".toCharArray()) {
+                editorPane.replaceSelection(String.valueOf(c));
+            }
+            editor.withSymbolTable(table -> table.symbolAt(0));
+
+            new InspectionSettingsPanel(InspectionProfile.defaults());
+            new MetricsPanel();
+        });
+        if (!analyzed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            System.err.println("Startup training saw no analysis");
+            System.exit(1);
+        }
+        // The background warm-up had the analyzer's debounce delay to finish; this runs its hand-over to the EDT
+        SwingUtilities.invokeAndWait(() -> {
+        });
+        System.err.println(StartupMetrics.summary());
+        System.exit(0);
+    }
+}
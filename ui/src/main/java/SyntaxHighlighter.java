@@ -0,0 +1,222 @@
+import javax.swing.*;
+import javax.swing.text.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SyntaxHighlighter {
+    private final JTextPane textPane;
+    private final StyledDocument document;
+
+    private final Style defaultStyle;
+    private final Style keywordStyle;
+    private final Style commentStyle;
+    private final Style stringStyle;
+
+    // We will be using regex to match words (potential keywords) since building the lexer, parser and then generating the AST is a bit too much work...
+    private static final Pattern WORD_PATTERN = Pattern.compile("\\b\\w+\\b");
+    private static final Pattern COMMENT_PATTERN = Pattern.compile("//.*");
+    private static final Pattern STRING_PATTERN = Pattern.compile("\"([^\"\\\\]|\\\\.)*\"");
+    private static final Pattern STRING_OR_COMMENT_PATTERN =
+            Pattern.compile(STRING_PATTERN.pattern() + "|" + COMMENT_PATTERN.pattern());
+
+    private final List<HighlightListener> highlightListeners = new ArrayList<>();
+
+    /**
+     * Told on the EDT after the styles for a snapshot have been applied to the document.
+     */
+    public interface HighlightListener {
+        void highlighted(TextSnapshot snapshot);
+    }
+
+    private final AnalysisPool.Client analysisClient;
+    private boolean active = true;
+    private int appliedRunCount;
+
+    public SyntaxHighlighter(JTextPane textPane) {
+        this(textPane, AnalysisPool.shared().newClient());
+    }
+
+    /**
+     * A highlighter that finds tokens on the shared pool, as the given client.
+     */
+    public SyntaxHighlighter(JTextPane textPane, AnalysisPool.Client analysisClient) {
+        this.textPane = textPane;
+        this.analysisClient = analysisClient;
+        this.document = textPane.getStyledDocument();
+
+        defaultStyle = textPane.addStyle("Default", null);
+        StyleConstants.setForeground(defaultStyle, Color.WHITE);
+
+        keywordStyle = textPane.addStyle("Keyword", null);
+        StyleConstants.setForeground(keywordStyle, Color.ORANGE);
+        StyleConstants.setBold(keywordStyle, true);
+
+        commentStyle = textPane.addStyle("Comment", null);
+        StyleConstants.setForeground(commentStyle, Color.GREEN);
+        StyleConstants.setItalic(commentStyle, true);
+
+        stringStyle = textPane.addStyle("String", null);
+        StyleConstants.setForeground(stringStyle, Color.ORANGE);
+
+        document.addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                scheduleHighlight();
+            }
+
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                scheduleHighlight();
+            }
+
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+                scheduleHighlight();
+            }
+        });
+    }
+
+    public void addHighlightListener(HighlightListener listener) {
+        highlightListeners.add(listener);
+    }
+
+    private javax.swing.Timer highlightTimer;
+    private long highlightedVersion = -1;
+
+    /**
+     * Inactive highlighters ignore edits until they are made active again, which highlights whatever
+     * changed in the meantime.
+     */
+    public void setActive(boolean active) {
+        this.active = active;
+        if (!active) {
+            if (highlightTimer != null)
+                highlightTimer.stop();
+        } else {
+            highlightAll();
+        }
+    }
+
+    /**
+     * Frees the style runs applied to the document, which are most of a highlighted document's memory;
+     * they are rebuilt the next time the highlighter runs.
+     */
+    public void releaseStyles() {
+        if (document instanceof SnapshotDocument)
+            ((SnapshotDocument) document).resetCharacterAttributes(defaultStyle);
+        else
+            document.setCharacterAttributes(0, document.getLength(), defaultStyle, true);
+        appliedRunCount = 0;
+        highlightedVersion = -1;
+    }
+
+    /**
+     * Number of style runs currently applied to the document.
+     */
+    public int getAppliedRunCount() {
+        return appliedRunCount;
+    }
+
+    private void scheduleHighlight() {
+        if (!active)
+            return;
+        if (highlightTimer != null && highlightTimer.isRunning()) {
+            highlightTimer.restart();
+        } else {
+            highlightTimer = new javax.swing.Timer(500, e -> highlightAll());
+            highlightTimer.setRepeats(false);
+            highlightTimer.start();
+        }
+    }
+
+    private void highlightAll() {
+        TextSnapshot snapshot = takeSnapshot();
+        // Applying styles fires changedUpdate, which must not trigger another pass over unchanged text
+        if (snapshot == null || snapshot.getVersion() >= 0 && snapshot.getVersion() == highlightedVersion)
+            return;
+
+        // Tokens are found on a background thread; only applying the styles happens on the EDT
+        analysisClient.submit(() -> {
+            List<StyleRun> runs = computeStyleRuns(snapshot);
+            SwingUtilities.invokeLater(() -> applyStyleRuns(snapshot, runs));
+        });
+    }
+
+    private TextSnapshot takeSnapshot() {
+        if (document instanceof SnapshotDocument)
+            return ((SnapshotDocument) document).snapshot();
+        try {
+            return TextSnapshot.of(document.getText(0, document.getLength()), -1);
+        } catch (BadLocationException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    private List<StyleRun> computeStyleRuns(TextSnapshot text) {
+        List<StyleRun> runs = new ArrayList<>();
+
+        // Strings and comments are matched together, so whichever starts first wins
+        // and keywords inside them are never highlighted
+        Matcher matcher = STRING_OR_COMMENT_PATTERN.matcher(text);
+        int gapStart = 0;
+        while (matcher.find()) {
+            collectKeywords(text, gapStart, matcher.start(), runs);
+            Style style = matcher.group().startsWith("//") ? commentStyle : stringStyle;
+            runs.add(new StyleRun(matcher.start(), matcher.end() - matcher.start(), style));
+            gapStart = matcher.end();
+        }
+        collectKeywords(text, gapStart, text.length(), runs);
+        return runs;
+    }
+
+    private void collectKeywords(CharSequence text, int start, int end, List<StyleRun> runs) {
+        if (start >= end)
+            return;
+
+        Matcher matcher = WORD_PATTERN.matcher(text);
+        matcher.region(start, end);
+        while (matcher.find()) {
+            int length = matcher.end() - matcher.start();
+            if (length <= KotlinKeywords.MAX_KEYWORD_LENGTH && KotlinKeywords.KEYWORDS.contains(text.subSequence(matcher.start(), matcher.end()).toString())) {
+                runs.add(new StyleRun(matcher.start(), length, keywordStyle));
+            }
+        }
+    }
+
+    private void applyStyleRuns(TextSnapshot snapshot, List<StyleRun> runs) {
+        // A newer edit has already scheduled another pass with up-to-date offsets
+        if (document instanceof SnapshotDocument && ((SnapshotDocument) document).getVersion() != snapshot.getVersion())
+            return;
+
+        highlightedVersion = snapshot.getVersion();
+        appliedRunCount = runs.size();
+        Instrumentation.Timing timing = Instrumentation.begin(Instrumentation.Subsystem.HIGHLIGHT);
+        int length = Math.min(snapshot.length(), document.getLength());
+
+        // Reset all to default style
+        document.setCharacterAttributes(0, length, defaultStyle, true);
+        for (StyleRun run : runs) {
+            document.setCharacterAttributes(run.start, run.length, run.style, false);
+        }
+        timing.end(runs.size());
+        for (HighlightListener listener : highlightListeners) {
+            listener.highlighted(snapshot);
+        }
+    }
+
+    private static class StyleRun {
+        final int start;
+        final int length;
+        final Style style;
+
+        StyleRun(int start, int length, Style style) {
+            this.start = start;
+            this.length = length;
+            this.style = style;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One compiled find query. Literal queries use Boyer-Moore-Horspool, regex queries java.util.regex;
+ * both read the text through CharSequence, so a {@link TextSnapshot} is searched without copying it.
+ * Instances are immutable and can be used from any thread.
+ */
+public final class TextSearch {
+
+    public interface MatchSink {
+        /**
+         * Receives one match; returning false stops the search.
+         */
+        boolean onMatch(int start, int end);
+    }
+
+    public interface ReplacementSink {
+        boolean onReplacement(int start, int end, String replacement);
+    }
+
+    private final String text;
+    private final boolean matchCase;
+    private final Pattern pattern;
+
+    // Horspool bad-character shifts, indexed by the low byte of a char. Chars sharing a slot keep the
+    // smallest shift of any of them, which only makes the search skip less, never miss a match.
+    private final int[] shifts;
+    private final char[] needle;
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException if regex is set and the text is not a valid pattern
+     */
+    public TextSearch(String text, boolean regex, boolean matchCase) {
+        this.text = text;
+        this.matchCase = matchCase;
+        if (regex) {
+            pattern = Pattern.compile(text, matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            shifts = null;
+            needle = null;
+        } else {
+            pattern = null;
+            // Folded per char, as the text is, so the needle never changes length
+            needle = new char[text.length()];
+            for (int i = 0; i < needle.length; i++) {
+                needle[i] = fold(text.charAt(i));
+            }
+            shifts = new int[256];
+            int last = needle.length - 1;
+            Arrays.fill(shifts, needle.length);
+            for (int i = 0; i < last; i++) {
+                int slot = needle[i] & 0xFF;
+                shifts[slot] = Math.min(shifts[slot], last - i);
+            }
+        }
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isRegex() {
+        return pattern != null;
+    }
+
+    /**
+     * Reports every non-empty match in order. Matches do not overlap.
+     */
+    public void find(CharSequence haystack, MatchSink sink) {
+        if (text.isEmpty())
+            return;
+        if (pattern != null) {
+            Matcher matcher = pattern.matcher(haystack);
+            while (matcher.find()) {
+                if (matcher.end() > matcher.start() && !sink.onMatch(matcher.start(), matcher.end()))
+                    return;
+            }
+            return;
+        }
+
+        int last = needle.length - 1;
+        int limit = haystack.length() - needle.length;
+        int pos = 0;
+        while (pos <= limit) {
+            int i = last;
+            while (i >= 0 && fold(haystack.charAt(pos + i)) == needle[i]) i--;
+            if (i < 0) {
+                if (!sink.onMatch(pos, pos + needle.length))
+                    return;
+                pos += needle.length;
+            } else {
+                pos += shifts[fold(haystack.charAt(pos + last)) & 0xFF];
+            }
+        }
+    }
+
+    /**
+     * Text that replaces the match at [start, end). For regex queries, group references like $1 in
+     * the replacement are expanded. Returns null when the query does not match exactly that range.
+     */
+    public String replacementFor(CharSequence haystack, int start, int end, String replacement) {
+        if (pattern == null) {
+            if (end - start != needle.length)
+                return null;
+            for (int i = 0; i < needle.length; i++) {
+                if (fold(haystack.charAt(start + i)) != needle[i])
+                    return null;
+            }
+            return replacement;
+        }
+
+        Matcher matcher = pattern.matcher(haystack);
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        matcher.region(start, haystack.length());
+        if (!matcher.lookingAt() || matcher.end() != end)
+            return null;
+        return expand(matcher, replacement);
+    }
+
+    /**
+     * Reports the replacement text for every match, in order; used by replace-all.
+     */
+    public void findReplacements(CharSequence haystack, String replacement, ReplacementSink sink) {
+        if (pattern == null) {
+            find(haystack, (start, end) -> sink.onReplacement(start, end, replacement));
+            return;
+        }
+        if (text.isEmpty())
+            return;
+        Matcher matcher = pattern.matcher(haystack);
+        while (matcher.find()) {
+            if (matcher.end() > matcher.start()
+                    && !sink.onReplacement(matcher.start(), matcher.end(), expand(matcher, replacement)))
+                return;
+        }
+    }
+
+    /**
+     * Expands $n, ${name} and backslash escapes like Matcher.appendReplacement, but for one match only
+     * (appendReplacement would also copy all the text before the match).
+     */
+    static String expand(Matcher matcher, String replacement) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < replacement.length()) {
+            char c = replacement.charAt(i++);
+            if (c == '\\' && i < replacement.length()) {
+                sb.append(replacement.charAt(i++));
+            } else if (c == '$' && i < replacement.length() && replacement.charAt(i) == '{') {
+                int close = replacement.indexOf('}', i);
+                if (close < 0)
+                    throw new IllegalArgumentException("unclosed group name in replacement");
+                String group = matcher.group(replacement.substring(i + 1, close));
+                if (group != null) sb.append(group);
+                i = close + 1;
+            } else if (c == '$' && i < replacement.length() && Character.isDigit(replacement.charAt(i))) {
+                // Like Matcher, take as many digits as still name an existing group
+                int group = replacement.charAt(i++) - '0';
+                while (i < replacement.length() && Character.isDigit(replacement.charAt(i))) {
+                    int next = group * 10 + replacement.charAt(i) - '0';
+                    if (next > matcher.groupCount())
+                        break;
+                    group = next;
+                    i++;
+                }
+                if (group > matcher.groupCount())
+                    throw new IndexOutOfBoundsException("no group " + group);
+                String value = matcher.group(group);
+                if (value != null) sb.append(value);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private char fold(char c) {
+        return matchCase ? c : Character.toLowerCase(c);
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Immutable, versioned view of the editor text at one point in time.
+ * Snapshots share the piece table's buffers, so taking one is O(1) and reading it from a
+ * background thread never blocks or copies the live document.
+ */
+public final class TextSnapshot implements CharSequence {
+
+    /**
+     * A run of characters in one of the piece table's buffers.
+     * Buffers are append-only, so the characters a piece refers to never change.
+     */
+    static final class Piece {
+        final char[] buffer;
+        final int start;
+        final int length;
+
+        Piece(char[] buffer, int start, int length) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+    private final long version;
+    private final Piece[] pieces;
+    private final int[] pieceOffsets;
+    private final int length;
+
+    // Index of the last piece read by charAt; sequential reads hit it without a search
+    private int cursor;
+
+    TextSnapshot(long version, Piece[] pieces, int[] pieceOffsets, int length) {
+        this.version = version;
+        this.pieces = pieces;
+        this.pieceOffsets = pieceOffsets;
+        this.length = length;
+    }
+
+    public static TextSnapshot of(String text, long version) {
+        char[] chars = text.toCharArray();
+        return new TextSnapshot(version, new Piece[]{new Piece(chars, 0, chars.length)}, new int[]{0}, chars.length);
+    }
+
+    /**
+     * Document version this snapshot was taken at. Versions increase with every edit.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+
+        // The cursor is only a hint, so a stale value from another reader thread is harmless
+        int p = cursor;
+        if (p >= pieces.length || index < pieceOffsets[p] || index >= pieceOffsets[p] + pieces[p].length) {
+            p = findPiece(index);
+            cursor = p;
+        }
+        Piece piece = pieces[p];
+        return piece.buffer[piece.start + index - pieceOffsets[p]];
+    }
+
+    /**
+     * Copies the characters in [start, end) into dst starting at dstBegin.
+     */
+    public void getChars(int start, int end, char[] dst, int dstBegin) {
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException("range [" + start + ", " + end + "), length " + length);
+
+        int p = start < end ? findPiece(start) : pieces.length;
+        int pos = start;
+        while (pos < end) {
+            Piece piece = pieces[p];
+            int offsetInPiece = pos - pieceOffsets[p];
+            int count = Math.min(piece.length - offsetInPiece, end - pos);
+            System.arraycopy(piece.buffer, piece.start + offsetInPiece, dst, dstBegin + pos - start, count);
+            pos += count;
+            p++;
+        }
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length);
+    }
+
+    private int findPiece(int index) {
+        int low = 0;
+        int high = pieces.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (pieceOffsets[mid] <= index) low = mid;
+            else high = mid - 1;
+        }
+        // Skip empty pieces that share the offset of the following piece
+        while (pieces[low].length == 0 && low < pieces.length - 1) {
+            low++;
+        }
+        return low;
+    }
+}
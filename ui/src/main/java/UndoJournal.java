@@ -0,0 +1,392 @@
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Undo/redo history of a {@link SnapshotDocument}, recorded from document events as plain text
+ * replacements (offset, removed text, inserted text) instead of Swing edit objects.
+ *
+ * Typing and backspacing runs are coalesced into one entry until the caret jumps, a line ends or the
+ * user pauses. The remove and insert of one {@link SnapshotDocument#replace} call (typing over a
+ * selection, replace-all) always become one entry. Large texts, and older entries past the most
+ * recent few, are deflated. The estimated size of the whole history never exceeds the cap given to the constructor: the oldest
+ * entries are dropped first, and an edit too large to fit clears the history.
+ *
+ * Every text state is identified by the document version at which it first appeared, so after undo or
+ * redo {@link #getStateVersion()} names an earlier version with the same text, whose analysis results
+ * still apply. Only used from the EDT.
+ */
+public class UndoJournal {
+    private static final long COALESCE_WINDOW_MS = 1000;
+    private static final int MAX_COALESCED_CHARS = 4096;
+    private static final int KEEP_UNCOMPRESSED = 16;
+    private static final int COMPRESS_MIN_CHARS = 512;
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final SnapshotDocument document;
+    private final long maxBytes;
+
+    private final Deque<Entry> undoStack = new ArrayDeque<>();
+    private final Deque<Entry> redoStack = new ArrayDeque<>();
+    private long usedBytes;
+
+    // Text before the event being recorded, for the removed text of a remove
+    private TextSnapshot previous;
+    private long lastState;
+    // After undo/redo the document at aliasVersion has the text of the earlier state aliasState
+    private long aliasVersion = -1;
+    private long aliasState;
+    private boolean applying;
+    // Entry holding the remove half of the replace() call in progress
+    private Entry replaceEntry;
+    private boolean recording = true;
+
+    /**
+     * One text replacement. The texts are kept either as Strings or, once sealed, possibly deflated.
+     */
+    private static final class Entry {
+        int offset;
+        String removed;
+        String inserted;
+        byte[] packedRemoved;
+        byte[] packedInserted;
+        long stateBefore;
+        long stateAfter;
+        long lastTime;
+        boolean sealed;
+
+        String removed() {
+            return packedRemoved != null ? unpack(packedRemoved) : removed;
+        }
+
+        String inserted() {
+            return packedInserted != null ? unpack(packedInserted) : inserted;
+        }
+
+        int insertedLength() {
+            return inserted != null ? inserted.length() : unpack(packedInserted).length();
+        }
+
+        long bytes() {
+            return ENTRY_OVERHEAD + size(removed, packedRemoved) + size(inserted, packedInserted);
+        }
+
+        private static long size(String text, byte[] packed) {
+            return packed != null ? packed.length : text.length() * 2L;
+        }
+    }
+
+    public UndoJournal(SnapshotDocument document, long maxBytes) {
+        this.document = document;
+        this.maxBytes = maxBytes;
+        this.previous = document.snapshot();
+        this.lastState = document.getVersion();
+        document.addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                TextSnapshot current = document.snapshot();
+                if (!applying)
+                    recordInsert(e.getOffset(), current.subSequence(e.getOffset(), e.getOffset() + e.getLength()), current.getVersion());
+                previous = current;
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                TextSnapshot current = document.snapshot();
+                if (!applying)
+                    recordRemove(e.getOffset(), previous.subSequence(e.getOffset(), e.getOffset() + e.getLength()), current.getVersion());
+                previous = current;
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+    }
+
+    /**
+     * Version of the earliest document state known to have the current text. Equal to the document's
+     * own version except right after undo or redo.
+     */
+    public long getStateVersion() {
+        long version = document.getVersion();
+        return version == aliasVersion ? aliasState : version;
+    }
+
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    /** Estimated memory held by the history, in bytes. */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Edits made while recording is off are not undoable and clear the history, since the recorded
+     * offsets would no longer fit the text. Used while a file is loading.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+        discardAll();
+    }
+
+    public void discardAll() {
+        undoStack.clear();
+        redoStack.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Reverts the newest entry and returns the offset the caret belongs at, or -1 if there was nothing to undo.
+     */
+    public int undo() {
+        Entry entry = undoStack.pollLast();
+        if (entry == null)
+            return -1;
+        entry.sealed = true;
+        String removed = entry.removed();
+        apply(entry.offset, entry.insertedLength(), removed, entry.stateBefore);
+        redoStack.addLast(entry);
+        return entry.offset + removed.length();
+    }
+
+    /**
+     * Re-applies the most recently undone entry and returns the caret offset, or -1 if there was nothing to redo.
+     */
+    public int redo() {
+        Entry entry = redoStack.pollLast();
+        if (entry == null)
+            return -1;
+        String inserted = entry.inserted();
+        apply(entry.offset, entry.removed().length(), inserted, entry.stateAfter);
+        undoStack.addLast(entry);
+        return entry.offset + inserted.length();
+    }
+
+    private void apply(int offset, int removeLength, String insert, long state) {
+        applying = true;
+        try {
+            if (removeLength > 0)
+                document.remove(offset, removeLength);
+            if (!insert.isEmpty())
+                document.insertString(offset, insert, null);
+        } catch (BadLocationException e) {
+            // The entries no longer fit the text; nothing sensible is left to undo
+            e.printStackTrace();
+            discardAll();
+        } finally {
+            applying = false;
+        }
+        aliasVersion = document.getVersion();
+        aliasState = state;
+        lastState = state;
+    }
+
+    private void recordInsert(int offset, String text, long version) {
+        long stateBefore = lastState;
+        lastState = version;
+        if (!startEdit())
+            return;
+
+        long now = System.currentTimeMillis();
+        Entry last = undoStack.peekLast();
+        Entry replaced = replaceEntry;
+        replaceEntry = null;
+        if (last != null && last == replaced && document.isReplacing() && offset == last.offset) {
+            // The insert half of a replace: typing over a selection, replace-all, completion
+            usedBytes -= last.bytes();
+            last.inserted = text;
+            last.stateAfter = version;
+            last.lastTime = now;
+            if (text.length() > 1 || text.indexOf('\n') >= 0)
+                seal(last);
+            usedBytes += last.bytes();
+            trim();
+            return;
+        }
+        if (canExtend(last, now) && text.length() == 1 && text.charAt(0) != '\n'
+                && offset == last.offset + last.inserted.length() && last.inserted.length() < MAX_COALESCED_CHARS) {
+            // Typing on at the end of the run
+            usedBytes -= last.bytes();
+            last.inserted += text;
+            last.stateAfter = version;
+            last.lastTime = now;
+            usedBytes += last.bytes();
+            trim();
+            return;
+        }
+        push(offset, "", text, stateBefore, version, now);
+    }
+
+    private void recordRemove(int offset, String text, long version) {
+        long stateBefore = lastState;
+        lastState = version;
+        if (!startEdit())
+            return;
+
+        long now = System.currentTimeMillis();
+        Entry last = undoStack.peekLast();
+        replaceEntry = null;
+        if (!document.isReplacing() && canExtend(last, now) && text.length() == 1) {
+            int insertedEnd = last.offset + last.inserted.length();
+            if (!last.inserted.isEmpty() && offset + 1 == insertedEnd) {
+                // Backspace over text typed in this run
+                usedBytes -= last.bytes();
+                last.inserted = last.inserted.substring(0, last.inserted.length() - 1);
+                last.stateAfter = version;
+                last.lastTime = now;
+                if (last.inserted.isEmpty() && last.removed.isEmpty()) {
+                    undoStack.pollLast(); // back where the run started
+                } else {
+                    usedBytes += last.bytes();
+                }
+                return;
+            }
+            if (last.inserted.isEmpty() && last.removed.length() < MAX_COALESCED_CHARS
+                    && (offset + 1 == last.offset || offset == last.offset)) {
+                // Backspace or Delete held down
+                usedBytes -= last.bytes();
+                if (offset == last.offset) {
+                    last.removed += text;
+                } else {
+                    last.removed = text + last.removed;
+                    last.offset = offset;
+                }
+                last.stateAfter = version;
+                last.lastTime = now;
+                usedBytes += last.bytes();
+                trim();
+                return;
+            }
+        }
+        push(offset, text, "", stateBefore, version, now);
+        if (document.isReplacing())
+            replaceEntry = undoStack.peekLast();
+    }
+
+    // Redo entries branch off the old text, so a new edit drops them
+    private boolean startEdit() {
+        if (!recording) {
+            discardAll();
+            return false;
+        }
+        for (Entry entry : redoStack) {
+            usedBytes -= entry.bytes();
+        }
+        redoStack.clear();
+        return true;
+    }
+
+    private static boolean canExtend(Entry last, long now) {
+        return last != null && !last.sealed && now - last.lastTime < COALESCE_WINDOW_MS;
+    }
+
+    private void push(int offset, String removed, String inserted, long stateBefore, long stateAfter, long now) {
+        Entry last = undoStack.peekLast();
+        if (last != null)
+            last.sealed = true;
+
+        Entry entry = new Entry();
+        entry.offset = offset;
+        entry.removed = removed;
+        entry.inserted = inserted;
+        entry.stateBefore = stateBefore;
+        entry.stateAfter = stateAfter;
+        entry.lastTime = now;
+        if (inserted.length() > 1 || inserted.indexOf('\n') >= 0 || removed.length() > 1)
+            seal(entry); // pastes, line breaks and selection deletes stand alone
+        if (entry.bytes() > maxBytes) {
+            discardAll(); // older entries could not be undone without this one
+            return;
+        }
+        undoStack.addLast(entry);
+        usedBytes += entry.bytes();
+
+        // Entries that fell out of the recent window get packed once
+        if (undoStack.size() > KEEP_UNCOMPRESSED) {
+            Iterator<Entry> it = undoStack.descendingIterator();
+            for (int i = 0; i <= KEEP_UNCOMPRESSED && it.hasNext(); i++) {
+                Entry old = it.next();
+                if (i == KEEP_UNCOMPRESSED) {
+                    usedBytes -= old.bytes();
+                    old.sealed = true;
+                    pack(old);
+                    usedBytes += old.bytes();
+                }
+            }
+        }
+        trim();
+    }
+
+    private void trim() {
+        while (usedBytes > maxBytes && !undoStack.isEmpty()) {
+            usedBytes -= undoStack.pollFirst().bytes();
+        }
+    }
+
+    // Large texts are packed as soon as the entry is complete
+    private static void seal(Entry entry) {
+        entry.sealed = true;
+        if (entry.removed != null && entry.removed.length() >= MAX_COALESCED_CHARS
+                || entry.inserted != null && entry.inserted.length() >= MAX_COALESCED_CHARS)
+            pack(entry);
+    }
+
+    private static void pack(Entry entry) {
+        if (entry.removed != null && entry.removed.length() >= COMPRESS_MIN_CHARS) {
+            entry.packedRemoved = deflate(entry.removed);
+            entry.removed = null;
+        }
+        if (entry.inserted != null && entry.inserted.length() >= COMPRESS_MIN_CHARS) {
+            entry.packedInserted = deflate(entry.inserted);
+            entry.inserted = null;
+        }
+    }
+
+    // UTF-16 keeps unpaired surrogates, which an edit can leave at its ends
+    private static byte[] deflate(String text) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(text.getBytes(StandardCharsets.UTF_16LE));
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(text.length() / 4 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static String unpack(byte[] packed) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(packed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(packed.length * 4);
+        byte[] buffer = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && inflater.needsInput())
+                    break;
+                out.write(buffer, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupt undo entry", e);
+        } finally {
+            inflater.end();
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_16LE);
+    }
+}